@@ -28,6 +28,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -49,6 +50,20 @@ public class Neo4jDriver {
      * @param printOutput    Set to true to store the outputs of the query on disk.
      */
     public static void run(String query, File cypher_results, boolean printOutput, C2SProperties props) {
+        run(query, Collections.<String, Object>emptyMap(), cypher_results, printOutput, props);
+    }
+
+    /**
+     * Method that runs Cypher query with parameters.
+     *
+     * @param query          Cypher to execute.
+     * @param parameters     Values of the parameters of the query.
+     * @param cypher_results File to store the results.
+     * @param printOutput    Set to true to store the outputs of the query on disk.
+     * @param props          C2SProperties object (should already be initialised).
+     */
+    public static void run(String query, Map<String, Object> parameters, File cypher_results, boolean printOutput,
+                           C2SProperties props) {
         // database essentials
         Driver driver = GraphDatabase.driver("bolt://localhost",
                 AuthTokens.basic(props.getNeoUN(), props.getNeoPW()));
@@ -60,14 +75,14 @@ public class Neo4jDriver {
 
         // timing unit
         long startNano = System.nanoTime();
-        session.run(query).consume();
+        session.run(query, parameters).consume();
         long endNano = System.nanoTime();
         lastExecTime = endNano - startNano;
 
 
         // only print results to the output file if the query is for reading.
         if (!query.toLowerCase().startsWith("create")) {
-            StatementResult result = session.run(query);
+            StatementResult result = session.run(query, parameters);
             int countRecords = 0;
 
             try {
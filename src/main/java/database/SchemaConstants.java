@@ -30,4 +30,10 @@ public class SchemaConstants {
     // reserved keywords in SQL that therefore cannot be used as relation names!
     public static List<String> RESERVED_KW =
             Arrays.asList("group", "user");
+
+    // optional parts of the relational schema, listed in the meta file meta_schema.txt once they have been
+    // created by the schema conversion (workspaces converted before they were added do not have them).
+    public static final String TABLE_COUNTS = "table_counts";
+    public static final String PRIMARY_KEYS = "primary_keys";
+    public static final String TYPED_EDGES_TRIGGER = "typed_edges_trigger";
 }
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package database.postgres;
+
+import production.C2SProperties;
+import production.PathSearch;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copy of the edges of the graph held in the JVM as primitive int arrays, in both directions, used to answer
+ * shortestPath queries with a breadth first search instead of a recursive query. The copy is read from the
+ * edges table of each database the first time it is needed, and thrown away whenever records are inserted or
+ * deleted, so the next search reads the edges again.
+ */
+public class AdjacencyCache implements PathSearch {
+    // with this many end nodes or fewer, a search from both ends is run for every pair of nodes; otherwise
+    // a single search from the start node finds all of the end nodes.
+    private static final int MAX_PAIR_SEARCHES = 8;
+
+    // copy of the edges of each database (by name), guarded by the class lock.
+    private static final Map<String, Graph> graphs = new HashMap<>();
+
+    private final String dbName;
+    private final C2SProperties props;
+
+    public AdjacencyCache(String dbName, C2SProperties props) {
+        this.dbName = dbName;
+        this.props = props;
+    }
+
+    /**
+     * Throw away the copy of the edges (called after every write to the database).
+     */
+    public static synchronized void invalidate() {
+        graphs.clear();
+    }
+
+    /**
+     * The edges are read while holding the class lock, so that a write invalidating the copy during the read
+     * waits for it to finish, rather than having the stale copy stored after it.
+     */
+    private static synchronized Graph getGraph(String dbName, C2SProperties props) throws SQLException {
+        Graph graph = graphs.get(dbName);
+        if (graph == null) {
+            graph = new Graph(PostgresDriver.selectInts("SELECT idl, idr FROM edges;", dbName, props));
+            graphs.put(dbName, graph);
+        }
+        return graph;
+    }
+
+    @Override
+    public List<int[]> shortestPaths(String startSQL, String endSQL, int minHops, int maxHops)
+            throws SQLException {
+        Graph g = getGraph(dbName, props);
+        int[] starts = PostgresDriver.selectInts(startSQL, dbName, props);
+        int[] ends = (endSQL == null) ? null : PostgresDriver.selectInts(endSQL, dbName, props);
+        return search(g, starts, ends, minHops, maxHops);
+    }
+
+    /**
+     * Search a graph made from the edges given, rather than read from the database (see shortestPaths).
+     *
+     * @param edges   Pairs of ids: edges[2k] is the left node and edges[2k + 1] the right node of edge k.
+     * @param starts  Ids of the nodes the path may start at.
+     * @param ends    Ids of the nodes the path may end at (null if any node may end the path).
+     * @param minHops Lower bound on the length of the path.
+     * @param maxHops Upper bound on the length of the path.
+     * @return Rows of {start id, end id, length}, one for each pair of nodes with a path between them.
+     */
+    static List<int[]> shortestPaths(int[] edges, int[] starts, int[] ends, int minHops, int maxHops) {
+        return search(new Graph(edges), starts, ends, minHops, maxHops);
+    }
+
+    private static List<int[]> search(Graph g, int[] starts, int[] ends, int minHops, int maxHops) {
+        List<int[]> rows = new ArrayList<>();
+        Search search = new Search(g);
+
+        for (int s : starts) {
+            int from = g.index(s);
+
+            if (ends != null && ends.length <= MAX_PAIR_SEARCHES) {
+                for (int e : ends) {
+                    int length = (s == e && minHops <= 1) ? 0 : search.between(from, g.index(e), minHops, maxHops);
+                    if (length >= minHops) rows.add(new int[]{s, e, length});
+                }
+            } else {
+                if (minHops == 0 && (ends == null || contains(ends, s))) rows.add(new int[]{s, s, 0});
+                if (from != -1) search.fromStart(from, ends, minHops, maxHops, s, rows);
+            }
+        }
+        return rows;
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        for (int i : ids) if (i == id) return true;
+        return false;
+    }
+
+    /**
+     * Edges in compressed sparse row form: the neighbours of the node at index i are
+     * targets[offsets[i]] to targets[offsets[i + 1] - 1]. Nodes are numbered by the position of their id in
+     * the sorted array of the ids of every node with an edge.
+     */
+    private static final class Graph {
+        private final int[] ids;
+        private final int[] outOffsets;
+        private final int[] outTargets;
+        private final int[] inOffsets;
+        private final int[] inTargets;
+
+        /**
+         * @param edges Pairs of ids: edges[2k] is the left node and edges[2k + 1] the right node of edge k.
+         */
+        Graph(int[] edges) {
+            int[] sorted = edges.clone();
+            Arrays.sort(sorted);
+            int n = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) sorted[n++] = sorted[i];
+            }
+            ids = Arrays.copyOf(sorted, n);
+
+            int numEdges = edges.length / 2;
+            int[] left = new int[numEdges];
+            int[] right = new int[numEdges];
+            for (int k = 0; k < numEdges; k++) {
+                left[k] = index(edges[2 * k]);
+                right[k] = index(edges[2 * k + 1]);
+            }
+
+            outOffsets = new int[n + 1];
+            outTargets = new int[numEdges];
+            fill(left, right, outOffsets, outTargets);
+            inOffsets = new int[n + 1];
+            inTargets = new int[numEdges];
+            fill(right, left, inOffsets, inTargets);
+        }
+
+        private static void fill(int[] from, int[] to, int[] offsets, int[] targets) {
+            for (int f : from) offsets[f + 1]++;
+            for (int i = 0; i < offsets.length - 1; i++) offsets[i + 1] += offsets[i];
+            int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+            for (int k = 0; k < from.length; k++) targets[next[from[k]]++] = to[k];
+        }
+
+        /**
+         * @return Index of the node with the id, or -1 if the node has no edges.
+         */
+        int index(int id) {
+            int i = Arrays.binarySearch(ids, id);
+            return (i < 0) ? -1 : i;
+        }
+
+        int size() {
+            return ids.length;
+        }
+    }
+
+    /**
+     * State of the breadth first searches for one query. Nodes are marked as seen with the number of the
+     * search, so the arrays are allocated once per query rather than once per search.
+     * <p>
+     * With a lower bound above one on the length of the path, the searches start from every node at the end of
+     * a path of exactly that many edges from the start node (see layer), so that a node with a shorter path is
+     * still found through a longer path within the bounds, as in the recursive query of ShortestPath.
+     */
+    private static final class Search {
+        private final Graph g;
+        private final int[] fwdSeen;
+        private final int[] fwdDepth;
+        private final int[] bwdSeen;
+        private final int[] bwdDepth;
+        private final int[] fwdQueue;
+        private final int[] bwdQueue;
+        private int stamp = 0;
+
+        Search(Graph g) {
+            this.g = g;
+            int n = g.size();
+            fwdSeen = new int[n];
+            fwdDepth = new int[n];
+            bwdSeen = new int[n];
+            bwdDepth = new int[n];
+            fwdQueue = new int[n];
+            bwdQueue = new int[n];
+        }
+
+        /**
+         * Put every node at the end of a path of exactly depth edges from the start (a node may appear on the
+         * path more than once) at the front of the forward queue.
+         *
+         * @return Number of nodes put in the queue.
+         */
+        private int layer(int from, int depth) {
+            fwdQueue[0] = from;
+            int size = 1;
+            for (int level = 0; level < depth && size > 0; level++) {
+                // the backward arrays hold the next layer while it is built.
+                stamp++;
+                int next = 0;
+                for (int q = 0; q < size; q++) {
+                    int u = fwdQueue[q];
+                    for (int i = g.outOffsets[u]; i < g.outOffsets[u + 1]; i++) {
+                        int v = g.outTargets[i];
+                        if (bwdSeen[v] == stamp) continue;
+                        bwdSeen[v] = stamp;
+                        bwdQueue[next++] = v;
+                    }
+                }
+                System.arraycopy(bwdQueue, 0, fwdQueue, 0, next);
+                size = next;
+            }
+            return size;
+        }
+
+        /**
+         * Search forwards from the start and backwards from the end at the same time, one depth at a time,
+         * always expanding the smaller of the two frontiers.
+         *
+         * @return Length of the shortest path from the start to the end (-1 if there is none within the bounds).
+         */
+        int between(int from, int to, int minHops, int maxHops) {
+            if (from == -1 || to == -1) return -1;
+
+            // length of the paths to the nodes the forward search starts from.
+            int base = 0;
+            int fwdEnd = 1;
+            if (minHops > 1) {
+                base = minHops;
+                fwdEnd = layer(from, minHops);
+            } else {
+                if (from == to) return 0;
+                fwdQueue[0] = from;
+            }
+            if (base > maxHops) return -1;
+            stamp++;
+
+            for (int q = 0; q < fwdEnd; q++) {
+                int u = fwdQueue[q];
+                if (u == to) return base;
+                fwdSeen[u] = stamp;
+                fwdDepth[u] = 0;
+            }
+            int fwdStart = 0, fwdLevel = 0;
+
+            bwdSeen[to] = stamp;
+            bwdDepth[to] = 0;
+            bwdQueue[0] = to;
+            int bwdStart = 0, bwdEnd = 1, bwdLevel = 0;
+
+            while (fwdStart < fwdEnd && bwdStart < bwdEnd && fwdLevel + bwdLevel < maxHops - base) {
+                int best = -1;
+                if (fwdEnd - fwdStart <= bwdEnd - bwdStart) {
+                    int end = fwdEnd;
+                    for (int q = fwdStart; q < end; q++) {
+                        int u = fwdQueue[q];
+                        for (int i = g.outOffsets[u]; i < g.outOffsets[u + 1]; i++) {
+                            int v = g.outTargets[i];
+                            if (bwdSeen[v] == stamp) {
+                                int length = fwdLevel + 1 + bwdDepth[v];
+                                if (best == -1 || length < best) best = length;
+                            } else if (fwdSeen[v] != stamp) {
+                                fwdSeen[v] = stamp;
+                                fwdDepth[v] = fwdLevel + 1;
+                                fwdQueue[fwdEnd++] = v;
+                            }
+                        }
+                    }
+                    fwdStart = end;
+                    fwdLevel++;
+                } else {
+                    int end = bwdEnd;
+                    for (int q = bwdStart; q < end; q++) {
+                        int u = bwdQueue[q];
+                        for (int i = g.inOffsets[u]; i < g.inOffsets[u + 1]; i++) {
+                            int v = g.inTargets[i];
+                            if (fwdSeen[v] == stamp) {
+                                int length = bwdLevel + 1 + fwdDepth[v];
+                                if (best == -1 || length < best) best = length;
+                            } else if (bwdSeen[v] != stamp) {
+                                bwdSeen[v] = stamp;
+                                bwdDepth[v] = bwdLevel + 1;
+                                bwdQueue[bwdEnd++] = v;
+                            }
+                        }
+                    }
+                    bwdStart = end;
+                    bwdLevel++;
+                }
+                if (best != -1) return base + best;
+            }
+            return -1;
+        }
+
+        /**
+         * Search forwards from the start, adding a row for every end node reached (or every node, if ends is
+         * null), and stopping early once all of the end nodes have been reached.
+         */
+        void fromStart(int from, int[] ends, int minHops, int maxHops, int startId, List<int[]> rows) {
+            int level = 0;
+            int end = 1;
+            if (minHops > 1) {
+                level = minHops;
+                end = layer(from, minHops);
+                if (level > maxHops) return;
+            }
+            stamp++;
+
+            int remaining = -1;
+            if (ends != null) {
+                // the backward arrays mark the end nodes during a search only going forwards.
+                remaining = 0;
+                for (int e : ends) {
+                    int i = g.index(e);
+                    if (i != -1 && (i != from || level > 0) && bwdSeen[i] != stamp) {
+                        bwdSeen[i] = stamp;
+                        remaining++;
+                    }
+                }
+                if (remaining == 0) return;
+            }
+
+            if (level == 0) fwdQueue[0] = from;
+            for (int q = 0; q < end; q++) {
+                int u = fwdQueue[q];
+                fwdSeen[u] = stamp;
+                if (level > 0 && (ends == null || bwdSeen[u] == stamp)) {
+                    rows.add(new int[]{startId, g.ids[u], level});
+                    if (ends != null && --remaining == 0) return;
+                }
+            }
+            int start = 0;
+
+            while (start < end && level < maxHops) {
+                int levelEnd = end;
+                level++;
+                for (int q = start; q < levelEnd; q++) {
+                    int u = fwdQueue[q];
+                    for (int i = g.outOffsets[u]; i < g.outOffsets[u + 1]; i++) {
+                        int v = g.outTargets[i];
+                        if (fwdSeen[v] == stamp) continue;
+                        fwdSeen[v] = stamp;
+                        fwdQueue[end++] = v;
+
+                        if (ends == null || bwdSeen[v] == stamp) {
+                            if (level >= minHops) rows.add(new int[]{startId, g.ids[v], level});
+                            if (ends != null && --remaining == 0) return;
+                        }
+                    }
+                }
+                start = levelEnd;
+            }
+        }
+    }
+}
@@ -29,6 +29,7 @@ import schema_conversion.SchemaConvert;
 import java.io.*;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -51,20 +52,34 @@ public class InsertSchemaPostgres {
 
         String sqlInsertNodes = insertNodes();
         String sqlInsertEdges = insertEdges();
+        // the optional parts of the schema created successfully.
+        List<String> schemaParts = new ArrayList<>();
 
         try {
             PostgresDriver.createInsert(createAdditionalNodeTables);
             PostgresDriver.createInsert(createAdditionalEdgesTables);
             PostgresDriver.createInsert(sqlInsertNodes);
             PostgresDriver.createInsert(sqlInsertEdges);
+            PostgresDriver.createInsert(addPrimaryKeys());
+            schemaParts.add(SchemaConstants.PRIMARY_KEYS);
+            if (!props.getTrigramIndexColumns().isEmpty())
+                PostgresDriver.createInsert(addTrigramIndexes(props.getTrigramIndexColumns()));
             PostgresDriver.createInsert(PostgresConstants.ADJLIST_FROM);
             PostgresDriver.createInsert(PostgresConstants.ADJLIST_TO);
+            PostgresDriver.createInsert(PostgresConstants.ADJLIST_TRIGGERS);
             PostgresDriver.createInsert(PostgresConstants.FOR_EACH_FUNC);
             PostgresDriver.createInsert(PostgresConstants.CYPHER_ITERATE);
             PostgresDriver.createInsert(PostgresConstants.UNIQUE_ARR_FUNC);
             PostgresDriver.createInsert(PostgresConstants.AUTO_SEQ_QUERY);
 
             addFieldsToMetaFile(props);
+            List<String> tables = countedTables();
+            int[] counts = countRows(tables, database, props);
+            addStatsToMetaFile(tables, counts, props);
+            PostgresDriver.createInsert(insertCounters(tables, counts));
+            schemaParts.add(SchemaConstants.TABLE_COUNTS);
+            PostgresDriver.createInsert(PostgresConstants.TYPED_EDGES_TRIGGER);
+            schemaParts.add(SchemaConstants.TYPED_EDGES_TRIGGER);
 
             // potentially risky insert, presumes no duplicated edges
             PostgresDriver.createInsert(PostgresConstants.EDGES_INDEX);
@@ -74,10 +89,33 @@ public class InsertSchemaPostgres {
                         "as there is a duplicated relationship present.");
             } else e.printStackTrace();
         } finally {
+            addSchemaPartsToMetaFile(schemaParts, props);
             PostgresDriver.closeConnection();
         }
     }
 
+    /**
+     * Store the optional parts of the schema that were created in the meta file meta_schema.txt (one per
+     * line), so that the translator only generates SQL relying on them when they exist.
+     *
+     * @param schemaParts Optional parts of the schema created (see SchemaConstants).
+     * @param props       C2SProperties object (should already be initialised).
+     */
+    private static void addSchemaPartsToMetaFile(List<String> schemaParts, C2SProperties props) {
+        try {
+            FileOutputStream fos = new FileOutputStream(props.getWspace() + "/meta_schema.txt");
+            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos));
+            for (String part : schemaParts) {
+                bw.write(part);
+                bw.newLine();
+            }
+            bw.close();
+            fos.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * All of the fields and relationships gathered during the schema conversion are stored in
      * meta files (to be used when outputting the results of the queries from both Postgres and
@@ -112,6 +150,141 @@ public class InsertSchemaPostgres {
         }
     }
 
+    /**
+     * Make the id the primary key of the nodes table and of each label table, so that a query grouping by
+     * the nodes it returns only has to group by their ids (the other columns depend on the primary key).
+     *
+     * @return SQL to execute.
+     */
+    private static String addPrimaryKeys() {
+        StringBuilder sb = new StringBuilder();
+        for (String table : countedTables()) {
+            if (table.equals("edges") || table.startsWith("e$")) continue;
+            sb.append("ALTER TABLE ").append(table).append(" ADD PRIMARY KEY (id); ");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Index the configured text properties of the nodes table and of each label table with pg_trgm, so that
+     * the LIKE and regular expression predicates that STARTS WITH, ENDS WITH, CONTAINS and =~ are translated
+     * to are answered from the index rather than by scanning the table. Properties stored as arrays (those
+     * that may contain lists) are indexed on their first value, which is what the predicates match.
+     *
+     * @param columns Names of the properties to index.
+     * @return SQL to execute.
+     */
+    private static String addTrigramIndexes(List<String> columns) {
+        StringBuilder sb = new StringBuilder("CREATE EXTENSION IF NOT EXISTS pg_trgm; ");
+        appendTrigramIndexes(sb, "nodes", SchemaConvert.nodeRelLabels, columns);
+
+        for (String label : SchemaConvert.labelMappings.keySet()) {
+            String tableLabel = label.replace(", ", "_");
+            if (SchemaConstants.RESERVED_KW.contains(tableLabel)) continue;
+            appendTrigramIndexes(sb, tableLabel, Arrays.asList(SchemaConvert.labelMappings.get(label).split(", ")),
+                    columns);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param sb         SQL to append the CREATE INDEX statements to.
+     * @param table      Table to index.
+     * @param columnDefs Definitions of the columns of the table ('name TEXT[]').
+     * @param columns    Names of the properties to index.
+     */
+    private static void appendTrigramIndexes(StringBuilder sb, String table, List<String> columnDefs,
+                                             List<String> columns) {
+        for (String def : columnDefs) {
+            String[] nameAndType = def.trim().split(" ");
+            if (nameAndType.length < 2 || !columns.contains(nameAndType[0].toLowerCase())
+                    || !nameAndType[1].startsWith("TEXT")) continue;
+
+            String column = nameAndType[0];
+            String indexed = nameAndType[1].equals("TEXT[]") ? "(" + column + "[1])" : column;
+            sb.append("CREATE INDEX ").append(table).append("_").append(column).append("_trgm ON ").append(table)
+                    .append(" USING gin (").append(indexed).append(" gin_trgm_ops); ");
+        }
+    }
+
+    /**
+     * @return Names of every node and relationship table of the new schema (including nodes and edges).
+     */
+    private static List<String> countedTables() {
+        List<String> tables = new ArrayList<>();
+        tables.add("nodes");
+        tables.add("edges");
+        for (String label : SchemaConvert.labelMappings.keySet()) {
+            String tableLabel = label.replace(", ", "_");
+            if (!SchemaConstants.RESERVED_KW.contains(tableLabel)) tables.add(tableLabel);
+        }
+        for (String rel : SchemaConvert.relTypes) tables.add("e$" + rel);
+        return tables;
+    }
+
+    /**
+     * @param tables   Tables to count the rows of.
+     * @param database Name of the Postgres database storing the new schema.
+     * @param props    C2SProperties object (should already be initialised).
+     * @return Number of rows of each table, in the same order.
+     * @throws SQLException Error counting the rows of the tables.
+     */
+    private static int[] countRows(List<String> tables, String database, C2SProperties props)
+            throws SQLException {
+        // a single row, with the count of each table in its own column.
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (String table : tables) sql.append("(SELECT count(*) FROM ").append(table).append("), ");
+        sql.setLength(sql.length() - 2);
+        sql.append(";");
+        return PostgresDriver.selectInts(sql.toString(), database, props);
+    }
+
+    /**
+     * Store the number of rows of every node and relationship table in the meta file meta_stats.txt (one
+     * 'table count' pair per line), so that the translator can estimate how selective each part of a
+     * pattern is without connecting to the database.
+     *
+     * @param tables Names of the tables.
+     * @param counts Number of rows of each table.
+     * @param props  C2SProperties object (should already be initialised).
+     */
+    private static void addStatsToMetaFile(List<String> tables, int[] counts, C2SProperties props) {
+        try {
+            FileOutputStream fos = new FileOutputStream(props.getWspace() + "/meta_stats.txt");
+            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos));
+            for (int i = 0; i < tables.size(); i++) {
+                bw.write(tables.get(i) + " " + counts[i]);
+                bw.newLine();
+            }
+            bw.close();
+            fos.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Create the table table_counts, holding the number of rows of every node and relationship table. The
+     * translations of CREATE and DELETE keep the counts up to date, so that counting every node with a label
+     * (or every relationship of a type) is a lookup rather than a scan of the table. The names are stored in
+     * lower case, as the tables are named by Postgres.
+     *
+     * @param tables Names of the tables.
+     * @param counts Number of rows of each table.
+     * @return SQL to execute.
+     */
+    private static String insertCounters(List<String> tables, int[] counts) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("CREATE TABLE table_counts(name TEXT PRIMARY KEY, total BIGINT NOT NULL); ");
+        sb.append("INSERT INTO table_counts VALUES ");
+        for (int i = 0; i < tables.size(); i++) {
+            sb.append("('").append(tables.get(i).toLowerCase()).append("', ").append(counts[i]).append("), ");
+        }
+        sb.setLength(sb.length() - 2);
+        sb.append(";");
+        return sb.toString();
+    }
+
     /**
      * If there is a label which is applied to a node only ever on its own in isolation, then store this as a
      * relation to remove unnecessary NULLs which slow execution of SQL down.
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package database.postgres;
+
+import production.PageToken;
+
+import java.util.List;
+
+/**
+ * Sort key and id of the last row of a page of a read query (see PageToken), returned by
+ * PostgresDriver.selectPage so that the token of the next page can be created from it.
+ */
+public class PageRow {
+    private final String key;
+    private final long id;
+
+    PageRow(String key, long id) {
+        this.key = key;
+        this.id = id;
+    }
+
+    /**
+     * @param colNames Columns returned by the query.
+     * @param results  Rows returned by the query.
+     * @return Sort key and id of the last row, or null if there are no rows, or the query did not return the
+     * columns of a page.
+     */
+    static PageRow last(List<String> colNames, List<? extends List<String>> results) {
+        int keyCol = colNames.indexOf(PageToken.KEY_COLUMN);
+        int idCol = colNames.indexOf(PageToken.ID_COLUMN);
+        if (keyCol == -1 || idCol == -1 || results.isEmpty()) return null;
+
+        List<String> last = results.get(results.size() - 1);
+        return new PageRow(last.get(keyCol), Long.parseLong(last.get(idCol)));
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
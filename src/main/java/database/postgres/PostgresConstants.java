@@ -23,47 +23,59 @@ package database.postgres;
  * PostgresConstants holds strings that are inserted into a relational database during the initial schema conversion.
  */
 class PostgresConstants {
-    static final String ADJLIST_FROM = "CREATE MATERIALIZED VIEW adjList_from AS (select idl as LeftNode, " +
-            "array_agg(idr ORDER BY idr asc) AS RightNode FROM edges e JOIN nodes n on e.idl = n.id GROUP BY idl);";
+    // adjacency lists: the right nodes of the edges leaving each node, and the left nodes of those arriving at it.
+    static final String ADJLIST_FROM = "CREATE TABLE adjList_from AS (select idl as LeftNode, " +
+            "array_agg(idr ORDER BY idr asc) AS RightNode FROM edges e JOIN nodes n on e.idl = n.id GROUP BY idl); " +
+            "ALTER TABLE adjList_from ADD PRIMARY KEY (LeftNode);";
 
-    static final String ADJLIST_TO = "CREATE MATERIALIZED VIEW adjList_to AS (select idr as LeftNode, " +
-            "array_agg(idl ORDER BY idl asc) AS RightNode FROM edges e JOIN nodes n on e.idr = n.id GROUP BY idr);";
+    static final String ADJLIST_TO = "CREATE TABLE adjList_to AS (select idr as LeftNode, " +
+            "array_agg(idl ORDER BY idl asc) AS RightNode FROM edges e JOIN nodes n on e.idr = n.id GROUP BY idr); " +
+            "ALTER TABLE adjList_to ADD PRIMARY KEY (LeftNode);";
 
-    static final String FOR_EACH_FUNC = "CREATE FUNCTION doForEachFunc(int[], field TEXT, newV TEXT) RETURNS void AS $$ " +
-            "DECLARE x int; r record; l text; BEGIN if array_length($1, 1) > 0 THEN FOREACH x SLICE 0 " +
-            "IN ARRAY $1 LOOP FOR r IN SELECT label from nodes where id = x LOOP " +
-            "EXECUTE 'UPDATE nodes SET ' || field || '=' || quote_literal(newV) || ' WHERE id = ' || x; " +
-            "l := replace(r.label, ', ', '_'); " +
-            "EXECUTE 'UPDATE ' || l || ' SET ' || field || '=' || quote_literal(newV) || ' WHERE id = ' || x; " +
-            "END LOOP; END LOOP; END IF; END; $$ LANGUAGE plpgsql;";
+    // the adjacency lists are kept up to date by triggers on the edges table, which rebuild the lists of only the
+    // nodes at either end of the edges inserted or deleted by each statement (rather than every list).
+    static final String ADJLIST_TRIGGERS = "CREATE INDEX edges_idl ON edges(idl); " +
+            "CREATE INDEX edges_idr ON edges(idr); " +
+            "CREATE OR REPLACE FUNCTION update_adj_lists() RETURNS trigger AS $$ BEGIN " +
+            "DELETE FROM adjList_from WHERE LeftNode IN (SELECT idl FROM changed_edges); " +
+            "INSERT INTO adjList_from SELECT idl, array_agg(idr ORDER BY idr asc) FROM edges e JOIN nodes n " +
+            "on e.idl = n.id WHERE idl IN (SELECT idl FROM changed_edges) GROUP BY idl; " +
+            "DELETE FROM adjList_to WHERE LeftNode IN (SELECT idr FROM changed_edges); " +
+            "INSERT INTO adjList_to SELECT idr, array_agg(idl ORDER BY idl asc) FROM edges e JOIN nodes n " +
+            "on e.idr = n.id WHERE idr IN (SELECT idr FROM changed_edges) GROUP BY idr; " +
+            "RETURN NULL; END; $$ LANGUAGE plpgsql; " +
+            "CREATE TRIGGER edges_insert_adj AFTER INSERT ON edges REFERENCING NEW TABLE AS changed_edges " +
+            "FOR EACH STATEMENT EXECUTE PROCEDURE update_adj_lists(); " +
+            "CREATE TRIGGER edges_delete_adj AFTER DELETE ON edges REFERENCING OLD TABLE AS changed_edges " +
+            "FOR EACH STATEMENT EXECUTE PROCEDURE update_adj_lists();";
 
-    static final String CYPHER_ITERATE = "CREATE OR REPLACE FUNCTION cypher_iterate(int[]) RETURNS int[] AS $$ \n" +
+    // FOREACH updates: one UPDATE of the nodes table, and one UPDATE of each label table the nodes are in.
+    static final String FOR_EACH_FUNC = "CREATE OR REPLACE FUNCTION doForEachFunc(int[], field TEXT, newV TEXT) " +
+            "RETURNS void AS $$ DECLARE l text; BEGIN if array_length($1, 1) > 0 THEN " +
+            "EXECUTE 'UPDATE nodes SET ' || field || '=' || quote_literal(newV) || ' WHERE id = ANY($1)' USING $1; " +
+            "FOR l IN SELECT DISTINCT replace(label, ', ', '_') FROM nodes WHERE id = ANY($1) LOOP " +
+            "EXECUTE 'UPDATE ' || l || ' SET ' || field || '=' || quote_literal(newV) || ' WHERE id = ANY($1)' " +
+            "USING $1; END LOOP; END IF; END; $$ LANGUAGE plpgsql;";
+
+    // semi-naive evaluation of ITERATE: $2 is the name of the function performing one step of the loop, and
+    // each round only the nodes collected for the first time in the round before are looped from.
+    static final String CYPHER_ITERATE = "CREATE OR REPLACE FUNCTION cypher_iterate(int[], text) " +
+            "RETURNS int[] AS $$ \n" +
             "    DECLARE\n" +
-            "\t\tr int[];\n" +
-            "\t\tt int[];\n" +
+            "\t\tdelta int[];\n" +
             "\t\tz int[];\n" +
-            "\t\tlastResults int[];\n" +
-            "\t\tcount int;\n" +
             "\tBEGIN\n" +
-            "\t\tt := array_unique($1);\n" +
-            "\t\tr := $1;\n" +
-            "\t\tlastResults := t;\n" +
-            "\t\traise notice 'Size of input array: %', array_length(r,1);\n" +
-            "\t\traise notice 'Unique elements to iterate with: %', array_length(t,1);\n" +
-            "\t\t--raise notice 'All elements are: %', r;\n" +
-            "\t\t--raise notice 'Unique elements are: %', t;\n" +
-            "\t\tcount := 0;\n" +
-            "\t\tloop EXIT WHEN array_length(t,1) is null or lastResults = z;\n" +
-            "\t\t\tlastResults := z;\n" +
-            "\t\t\tfor z in select loop_work(t) LOOP\n" +
-            "\t\t\t\traise notice 'Size of z: %', array_length(z,1);\n" +
-            "\t\t\t\tif (z <> lastResults or count = 0) then r := array_cat(r, z); end if;\n" +
-            "\t\t\t\traise notice 'Size of r: %', array_length(r,1);\n" +
-            "\t\t\t\tt := array_unique(z);\n" +
-            "\t\t\t\tcount := count + 1;\n" +
-            "\t\t\tEND LOOP;\n" +
+            "\t\tCREATE TEMP TABLE IF NOT EXISTS iterate_visited (id int PRIMARY KEY);\n" +
+            "\t\tTRUNCATE iterate_visited;\n" +
+            "\t\tINSERT INTO iterate_visited SELECT DISTINCT x FROM unnest($1) AS x WHERE x IS NOT NULL;\n" +
+            "\t\tSELECT array_agg(id) INTO delta FROM iterate_visited;\n" +
+            "\t\tloop EXIT WHEN delta is null;\n" +
+            "\t\t\tEXECUTE format('SELECT %I($1)', $2) INTO z USING delta;\n" +
+            "\t\t\tWITH added AS (INSERT INTO iterate_visited SELECT DISTINCT x FROM unnest(z) AS x " +
+            "WHERE x IS NOT NULL ON CONFLICT DO NOTHING RETURNING id)\n" +
+            "\t\t\tSELECT array_agg(id) INTO delta FROM added;\n" +
             "\t\tend loop;\n" +
-            "\t\tRETURN r;\n" +
+            "\t\tRETURN ARRAY(SELECT id FROM iterate_visited);\n" +
             "\tEND; \n" +
             "$$ LANGUAGE plpgsql;";
 
@@ -77,6 +89,15 @@ class PostgresConstants {
             "ALTER TABLE nodes ALTER id SET DEFAULT NEXTVAL('nodes_id_seq');";
 
     // indexes to improve the performance (particularly of larger databases).
+    // rows deleted from the edges table are deleted from the table of their type by a trigger, with one DELETE
+    // for each type present in the rows deleted by the statement (rather than one for every type of the graph).
+    static final String TYPED_EDGES_TRIGGER = "CREATE OR REPLACE FUNCTION delete_typed_edges() RETURNS trigger " +
+            "AS $$ DECLARE t text; BEGIN FOR t IN SELECT DISTINCT lower(type) FROM deleted_edges LOOP " +
+            "EXECUTE 'DELETE FROM ' || quote_ident('e$' || t) || ' WHERE (idl, idr) IN " +
+            "(SELECT idl, idr FROM deleted_edges WHERE lower(type) = $1)' USING t; END LOOP; RETURN NULL; END; " +
+            "$$ LANGUAGE plpgsql; CREATE TRIGGER edges_delete_typed AFTER DELETE ON edges " +
+            "REFERENCING OLD TABLE AS deleted_edges FOR EACH STATEMENT EXECUTE PROCEDURE delete_typed_edges();";
+
     static final String EDGES_INDEX = "CREATE UNIQUE INDEX edges_uniq_1 ON edges(idl, idr, type);";
 
 }
@@ -19,8 +19,11 @@
 
 package database.postgres;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
 import production.C2SMain;
 import production.C2SProperties;
+import production.PageToken;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -28,6 +31,13 @@ import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Database driver for Postgres.
@@ -39,6 +49,23 @@ public class PostgresDriver {
     private static Connection c = null;
     private static int numRecords = 0;
     private static boolean DB_OPEN = false;
+    // maximum number of prepared statements kept open on the connection.
+    private static final int MAX_PREPARED = 256;
+    // prepared statements of the connection, by SQL (least recently used first), so that Postgres can reuse
+    // the plans of queries executed more than once.
+    private static final LinkedHashMap<String, PreparedStatement> preparedStatements =
+            new LinkedHashMap<>(16, 0.75f, true);
+    // temporary views only last as long as the connection, so it is closed after a read that used them.
+    private static boolean tempViewsCreated = false;
+    // functions created by the SQL executed on the connection (prefixed by the name of the database).
+    private static final Set<String> createdFunctions = new HashSet<>();
+    // set once records have been inserted or deleted, until the adjacency lists are next refreshed.
+    private static boolean adjListsStale = false;
+    // the schema conversion keeps the adjacency lists up to date with triggers; only databases converted when
+    // they were materialized views need refreshing.
+    private static final String REFRESH_ADJ_LISTS = "DO $$ BEGIN IF EXISTS (SELECT 1 FROM pg_matviews " +
+            "WHERE matviewname = 'adjlist_from') THEN REFRESH MATERIALIZED VIEW adjList_from; " +
+            "REFRESH MATERIALIZED VIEW adjList_to; END IF; END $$; ";
 
     /**
      * Create the initial connection to the database.
@@ -65,13 +92,45 @@ public class PostgresDriver {
      */
     static void closeConnection() {
         try {
+            for (PreparedStatement ps : preparedStatements.values()) ps.close();
+            preparedStatements.clear();
+            createdFunctions.clear();
             c.close();
             DB_OPEN = false;
+            tempViewsCreated = false;
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Obtain the prepared statement of the connection for the SQL, preparing it if it has not been
+     * prepared already.
+     *
+     * @param query SQL to prepare, with ? placeholders for any parameters.
+     * @param binds Values to bind to the placeholders, in order.
+     * @return Prepared statement with the values bound.
+     * @throws SQLException Error preparing the SQL.
+     */
+    private static PreparedStatement prepare(String query, List<String> binds) throws SQLException {
+        PreparedStatement ps = preparedStatements.get(query);
+        if (ps == null) {
+            ps = c.prepareStatement(query);
+            preparedStatements.put(query, ps);
+
+            Iterator<PreparedStatement> eldest = preparedStatements.values().iterator();
+            while (preparedStatements.size() > MAX_PREPARED) {
+                eldest.next().close();
+                eldest.remove();
+            }
+        }
+
+        // bound with an unspecified type, so that Postgres infers the type of each value from where it is
+        // used, exactly as it does for the quoted literals of queries without parameters.
+        for (int i = 0; i < binds.size(); i++) ps.setObject(i + 1, binds.get(i), Types.OTHER);
+        return ps;
+    }
+
     /**
      * If the SQL begins with a CREATE keyword, then this query should be executed
      * and committed first before other queries execute. This is needed when TEMP
@@ -83,7 +142,12 @@ public class PostgresDriver {
      * @throws SQLException Error with the SQL query being executed.
      */
     public static void executeCreateView(String query, String dbName, C2SProperties props) throws SQLException {
+        // a function already created with the same SQL on this connection does not need creating again.
+        boolean function = query.trim().startsWith("CREATE OR REPLACE FUNCTION");
+        if (function && createdFunctions.contains(dbName + " " + query)) return;
+
         if (!DB_OPEN) PostgresDriver.createConnection(dbName, props);
+        refreshAdjLists(query);
         Statement stmt = c.createStatement();
 
         // timing unit for creating statements.
@@ -93,10 +157,12 @@ public class PostgresDriver {
         lastExecTimeCreate += (endNanoCreate - startNanoCreate);
 
         stmt.close();
+        if (function) createdFunctions.add(dbName + " " + query);
+        else tempViewsCreated = true;
     }
 
     /**
-     * Execute standard read SQL statement.
+     * Execute standard read SQL statement (the id column of the results is not printed).
      *
      * @param query       SQL statement
      * @param database    Database to execute statement on.
@@ -107,14 +173,76 @@ public class PostgresDriver {
      */
     public static int select(String query, String database, File pg_results, boolean printOutput, C2SProperties props)
             throws SQLException {
+        return select(query, database, pg_results, printOutput, false, props);
+    }
+
+    /**
+     * Execute standard read SQL statement.
+     *
+     * @param query       SQL statement
+     * @param database    Database to execute statement on.
+     * @param pg_results  File to store the results.
+     * @param printOutput Set to true if the output of the SQL statement should be stored in a local file.
+     * @param printID     Set to true if the id column should be printed (see TranslationContext.needToPrintID()).
+     * @param props       C2SProperties object (should already be initialised).
+     * @throws SQLException Thrown if there is an error in the SQL statement.
+     */
+    public static int select(String query, String database, File pg_results, boolean printOutput, boolean printID,
+                             C2SProperties props) throws SQLException {
+        return select(query, Collections.<String>emptyList(), database, pg_results, printOutput, printID, props);
+    }
+
+    /**
+     * Execute a read SQL statement with parameters, as a prepared statement.
+     *
+     * @param query       SQL statement, with ? placeholders for its parameters.
+     * @param binds       Values to bind to the placeholders, in order.
+     * @param database    Database to execute statement on.
+     * @param pg_results  File to store the results.
+     * @param printOutput Set to true if the output of the SQL statement should be stored in a local file.
+     * @param printID     Set to true if the id column should be printed (see TranslationContext.needToPrintID()).
+     * @param props       C2SProperties object (should already be initialised).
+     * @throws SQLException Thrown if there is an error in the SQL statement.
+     */
+    public static int select(String query, List<String> binds, String database, File pg_results,
+                             boolean printOutput, boolean printID, C2SProperties props) throws SQLException {
+        read(query, binds, database, pg_results, printOutput, printID, props);
+        return numRecords;
+    }
+
+    /**
+     * Execute the SQL of one page of a read query (see PageToken), writing its rows to a file.
+     *
+     * @param query      SQL statement, with ? placeholders for its parameters.
+     * @param binds      Values to bind to the placeholders, in order.
+     * @param database   Database to execute statement on.
+     * @param pg_results File to store the results.
+     * @param printID    Set to true if the id column should be printed (see TranslationContext.needToPrintID()).
+     * @param props      C2SProperties object (should already be initialised).
+     * @return Sort key and id of the last row of the page, or null if the page is empty.
+     * @throws SQLException Thrown if there is an error in the SQL statement.
+     */
+    public static PageRow selectPage(String query, List<String> binds, String database, File pg_results,
+                                     boolean printID, C2SProperties props) throws SQLException {
+        return read(query, binds, database, pg_results, true, printID, props);
+    }
+
+    /**
+     * Execute a read SQL statement with parameters, as a prepared statement (see select).
+     *
+     * @return Sort key and id of the last row, or null if the statement returned no rows or is not the SQL of
+     * a page.
+     */
+    private static PageRow read(String query, List<String> binds, String database, File pg_results,
+                                boolean printOutput, boolean printID, C2SProperties props) throws SQLException {
         if (!DB_OPEN) PostgresDriver.createConnection(database, props);
-        Statement stmt;
-        stmt = c.createStatement();
+        refreshAdjLists(query);
 
         // obtain the columns returned from the result.
-        ArrayList<ArrayList<String>> results = getQueryResult(query, stmt);
+        ArrayList<ArrayList<String>> results = getQueryResult(prepare(query, binds));
         ArrayList<String> colNames = results.get(0);
         results.remove(0);
+        PageRow last = PageRow.last(colNames, results);
 
         if (printOutput) {
             PrintWriter writer;
@@ -124,7 +252,8 @@ public class PostgresDriver {
                 for (ArrayList<String> as : results) {
                     int i = 0;
                     for (String column : colNames) {
-                        if ((!column.equals("id") || C2SMain.needToPrintID) && !column.equals("label")) {
+                        if ((!column.equals("id") || printID) && !column.equals("label")
+                                && !column.equals(PageToken.KEY_COLUMN) && !column.equals(PageToken.ID_COLUMN)) {
                             String result = as.get(i);
                             if (result != null) writer.println(column + " : " + result);
                         }
@@ -140,29 +269,26 @@ public class PostgresDriver {
             }
         }
 
-        C2SMain.needToPrintID = false;
         C2SMain.numResultsPostgres = numRecords;
-        PostgresDriver.closeConnection();
-        return numRecords;
+        if (tempViewsCreated) PostgresDriver.closeConnection();
+        return last;
     }
 
     /**
      * Obtain results from the database (along with additional metadata such as the columns
      * returned).
      *
-     * @param query SQL to execute.
-     * @param stm   Internal JDBC statement.
+     * @param stm Prepared statement to execute (left open, to be reused).
      * @return List of the results and column names.
      * @throws SQLException Error with the SQL.
      */
-    private static ArrayList<ArrayList<String>> getQueryResult(String query, Statement stm)
-            throws SQLException {
+    private static ArrayList<ArrayList<String>> getQueryResult(PreparedStatement stm) throws SQLException {
         ArrayList<ArrayList<String>> feedback = new ArrayList<>();
         ArrayList<String> feed;
 
         // timing unit
         long startNanoReadQuery = System.nanoTime();
-        ResultSet rs = stm.executeQuery(query);
+        ResultSet rs = stm.executeQuery();
         long endNanoReadQuery = System.nanoTime();
         lastExecTimeRead += (endNanoReadQuery - startNanoReadQuery);
 
@@ -185,10 +311,105 @@ public class PostgresDriver {
             numRecords++;
         }
 
-        stm.close();
+        rs.close();
         return feedback;
     }
 
+    /**
+     * Execute a read SQL statement returning only integer columns (such as ids), without converting the
+     * results to strings.
+     *
+     * @param query  SQL statement.
+     * @param dbName Database to execute statement on.
+     * @param props  C2SProperties object (should already be initialised).
+     * @return Values of the columns of every row, one row after the other.
+     * @throws SQLException Thrown if there is an error in the SQL statement.
+     */
+    static int[] selectInts(String query, String dbName, C2SProperties props) throws SQLException {
+        if (!DB_OPEN) createConnection(dbName, props);
+
+        long startNanoReadQuery = System.nanoTime();
+        int[] values = new int[1024];
+        int size = 0;
+        try (Statement stmt = c.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                for (int i = 1; i <= columns; i++) {
+                    if (size == values.length) values = Arrays.copyOf(values, size * 2);
+                    values[size++] = rs.getInt(i);
+                }
+            }
+        }
+        lastExecTimeRead += (System.nanoTime() - startNanoReadQuery);
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Ask Postgres for the estimated cost of a read SQL statement, without executing it.
+     *
+     * @param query  SQL statement, with ? placeholders for any parameters.
+     * @param binds  Values to bind to the placeholders, in order.
+     * @param dbName Database to plan the statement on.
+     * @param props  C2SProperties object (should already be initialised).
+     * @return Total cost of the plan chosen by Postgres for the statement.
+     * @throws SQLException Thrown if there is an error in the SQL statement.
+     */
+    public static double explainCost(String query, List<String> binds, String dbName, C2SProperties props)
+            throws SQLException {
+        if (!DB_OPEN) createConnection(dbName, props);
+
+        try (PreparedStatement ps = c.prepareStatement("EXPLAIN (FORMAT JSON) " + query)) {
+            for (int i = 0; i < binds.size(); i++) ps.setObject(i + 1, binds.get(i), Types.OTHER);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("No plan returned for: " + query);
+                JsonArray plans = new JsonParser().parse(rs.getString(1)).getAsJsonArray();
+                return plans.get(0).getAsJsonObject().getAsJsonObject("Plan").get("Total Cost").getAsDouble();
+            }
+        }
+    }
+
+    /**
+     * Allocate ids for new nodes from the sequence of the nodes table.
+     *
+     * @param count  Number of ids to allocate.
+     * @param dbName Database name of the database to allocate the ids on.
+     * @param props  C2SProperties object (should already be initialised).
+     * @return The ids allocated.
+     * @throws SQLException Error with the SQL (such as the sequence not existing).
+     */
+    public static int[] nextNodeIds(int count, String dbName, C2SProperties props) throws SQLException {
+        return selectInts("SELECT nextval('nodes_id_seq') FROM generate_series(1, " + count + ");", dbName, props);
+    }
+
+    /**
+     * Execute a number of statements inserting records as a single batch, in one transaction.
+     *
+     * @param statements SQL statements to execute.
+     * @param dbName     Database name of the database to execute the statements on.
+     * @param props      C2SProperties object (should already be initialised).
+     * @throws SQLException Error with the transaction (none of the statements are committed).
+     */
+    public static void insertBatch(List<String> statements, String dbName, C2SProperties props)
+            throws SQLException {
+        if (!DB_OPEN) createConnection(dbName, props);
+
+        long startNanoInsert = System.nanoTime();
+        c.setAutoCommit(false);
+        try (Statement stmt = c.createStatement()) {
+            for (String statement : statements) stmt.addBatch(statement);
+            stmt.executeBatch();
+            c.commit();
+        } catch (SQLException e) {
+            c.rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(true);
+        }
+        lastExecTimeInsert += (System.nanoTime() - startNanoInsert);
+
+        edgesChanged();
+    }
+
     /**
      * Method for creating an SQL statement object from an SQL argument, and then executing it.
      *
@@ -216,15 +437,68 @@ public class PostgresDriver {
      * @throws SQLException Error with the transaction.
      */
     public static void insertOrDelete(String query, String dbName, C2SProperties props) throws SQLException {
+        insertOrDelete(query, Collections.<String>emptyList(), dbName, props);
+    }
+
+    /**
+     * Method for executing an SQL statement with parameters which will either insert or delete records.
+     *
+     * @param query  SQL statement to execute, with ? placeholders for its parameters.
+     * @param binds  Values to bind to the placeholders, in order.
+     * @param dbName Database name of the database to execute the statement on.
+     * @param props  C2SProperties object (should already be initialised).
+     * @throws SQLException Error with the transaction.
+     */
+    public static void insertOrDelete(String query, List<String> binds, String dbName, C2SProperties props)
+            throws SQLException {
         if (!DB_OPEN) createConnection(dbName, props);
-        Statement stmt = c.createStatement();
+        PreparedStatement stmt = prepare(query, binds);
 
         // timing unit for creating statements.
         long startNanoInsert = System.nanoTime();
-        stmt.executeUpdate(query);
+        stmt.executeUpdate();
         long endNanoInsert = System.nanoTime();
         lastExecTimeInsert += (endNanoInsert - startNanoInsert);
 
-        stmt.close();
+        edgesChanged();
+    }
+
+    /**
+     * Called after records are inserted or deleted: the edges may have changed, so the copy used for
+     * shortestPath queries is out of date, and so are the adjacency lists (adjList_from and adjList_to) if they
+     * are materialized views, which are then refreshed before they are next read.
+     */
+    public static synchronized void edgesChanged() {
+        AdjacencyCache.invalidate();
+        adjListsStale = true;
+    }
+
+    /**
+     * Prefix SQL reading the adjacency lists with their refresh, if records were inserted or deleted since
+     * they were last refreshed (for SQL that is not executed through this driver, such as with psql).
+     *
+     * @param sql SQL to execute.
+     * @return The SQL, preceded by the refresh of the lists if they are out of date and read by the SQL.
+     */
+    public static synchronized String withFreshAdjLists(String sql) {
+        if (!adjListsStale || sql == null || !sql.toLowerCase().contains("adjlist_")) return sql;
+        adjListsStale = false;
+        return REFRESH_ADJ_LISTS + sql;
+    }
+
+    /**
+     * Refresh the adjacency lists before a statement reading them, if records were inserted or deleted since
+     * they were last refreshed (the translations of counts of neighbours and of variable length paths read
+     * them). The refresh does nothing unless the lists are materialized views.
+     *
+     * @param query SQL statement about to be executed.
+     * @throws SQLException Error refreshing the lists.
+     */
+    private static synchronized void refreshAdjLists(String query) throws SQLException {
+        if (!adjListsStale || !query.toLowerCase().contains("adjlist_")) return;
+        try (Statement stmt = c.createStatement()) {
+            stmt.executeUpdate(REFRESH_ADJ_LISTS);
+        }
+        adjListsStale = false;
     }
 }
@@ -21,6 +21,9 @@ package intermediate_rep;
 
 import com.google.gson.JsonObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class for storing nodes from a Cypher query, that are present in the MATCH clause.
  */
@@ -37,6 +40,9 @@ public class CypNode {
     // any properties of the node are stored as they are represented in Cypher: JSON object.
     private JsonObject props;
 
+    // predicates of the WHERE clause about the node, in the order they appear in the clause.
+    private List<CypWhere> conditions = new ArrayList<>();
+
     /**
      * Constructor for recording information about a Cypher node.
      * Example match clause: MATCH (a:Global:Meta)--(b {node_id : 875})--(c:Process)--{@literal >}(d) ...
@@ -72,10 +78,25 @@ public class CypNode {
         this.props = newProps;
     }
 
+    public List<CypWhere> getConditions() {
+        return conditions;
+    }
+
+    public void addCondition(CypWhere cW) {
+        this.conditions.add(cW);
+    }
+
+    /**
+     * @return True if the SQL for the node needs a WHERE clause (it has properties or WHERE predicates).
+     */
+    public boolean hasConditions() {
+        return props != null || !conditions.isEmpty();
+    }
+
     @Override
     public String toString() {
         return "(ID: " + this.id + ", LABELS: " + this.labels + ", PROPS: "
-                + this.props + ", POS: " + this.posInClause + ")";
+                + this.props + ", WHERE: " + this.conditions + ", POS: " + this.posInClause + ")";
     }
 
     public int getPosInClause() {
@@ -21,6 +21,9 @@ package intermediate_rep;
 
 import com.google.gson.JsonObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class for storing the relationships in a Cypher query.
  */
@@ -30,6 +33,8 @@ public class CypRel {
     private String type;
     private JsonObject props;
     private String direction;
+    // predicates of the WHERE clause about the relationship, in the order they appear in the clause.
+    private List<CypWhere> conditions = new ArrayList<>();
 
     /**
      * Constructor for recording information about a Cypher relationship/edge.
@@ -71,14 +76,60 @@ public class CypRel {
         this.props = o;
     }
 
+    public List<CypWhere> getConditions() {
+        return conditions;
+    }
+
+    public void addCondition(CypWhere cW) {
+        this.conditions.add(cW);
+    }
+
+    /**
+     * @return True if the SQL for the relationship needs a WHERE clause (it has properties or WHERE predicates).
+     */
+    public boolean hasConditions() {
+        return props != null || !conditions.isEmpty();
+    }
+
     public String getDirection() {
         return direction;
     }
 
+    /**
+     * @return True if the relationship is a variable length path (such as -[*1..3]->).
+     */
+    public boolean isVarLength() {
+        return direction != null && direction.startsWith("var");
+    }
+
+    /**
+     * Direction of a variable length path: 'left', 'right', or 'none'.
+     */
+    public String getVarDirection() {
+        return direction.split("#")[1];
+    }
+
+    /**
+     * Lower bound on the number of hops of a variable length path.
+     */
+    public int getMinHops() {
+        return Integer.parseInt(direction.substring(3, direction.indexOf("-")));
+    }
+
+    /**
+     * Upper bound on the number of hops of a variable length path.
+     *
+     * @return Upper bound, or -1 if the path has no upper bound (such as -[*]-> or -[*2..]->).
+     */
+    public int getMaxHops() {
+        String max = direction.substring(direction.indexOf("-") + 1, direction.indexOf("#"));
+        return max.isEmpty() ? -1 : Integer.parseInt(max);
+    }
+
     @Override
     public String toString() {
         return "(ID: " + this.id + ", TYPE: " + this.type + ", DIR: " +
-                this.direction + ", PROPS: " + this.props + ", POS: " +
+                this.direction + ", PROPS: " + this.props + ", WHERE: " + this.conditions + ", POS: " +
                 this.posInClause + ")";
     }
 
@@ -20,7 +20,7 @@
 package intermediate_rep;
 
 import exceptions.DQInvalidException;
-import query_translation.sql.utilities_sql.WithSQL;
+import production.TranslationContext;
 
 /**
  * Class for storing the return fields of a Cypher query.
@@ -53,10 +53,11 @@ public class CypReturn {
      * @param matchC     The MatchClause object associated with the same Cypher query is also needed, so that
      *                   the type of the return item can be calculated (type meaning either the return item is returning
      *                   a node, a relationship, or is part of a longer Cypher query that contains the WITH keyword.)
+     * @param ctx        Context of the translation (holds the node ids from earlier parts of a WITH query).
      * @throws DQInvalidException Error in discovering the type of the return item.
      */
-    public CypReturn(String id, String field, int count_x, int agg_func_x, String caseS, MatchClause matchC)
-            throws DQInvalidException {
+    public CypReturn(String id, String field, int count_x, int agg_func_x, String caseS, MatchClause matchC,
+                     TranslationContext ctx) throws DQInvalidException {
         this.nodeID = id;
         this.field = field;
         this.count = count_x;
@@ -67,7 +68,7 @@ public class CypReturn {
         if (this.nodeID != null) {
             // discoverType finds out whether we are returning a node or a
             // relationship.
-            this.type = discoverType(this.nodeID, matchC);
+            this.type = discoverType(this.nodeID, matchC, ctx);
         } else {
             // only case of null id is when returning *, which for now is presumed as returning nodes only.
             this.type = "node";
@@ -88,10 +89,12 @@ public class CypReturn {
      *
      * @param idReturnItem The id of the return item for which the type is being calculated for.
      * @param matchC       The MatchClause object for the Cypher input.
+     * @param ctx          Context of the translation.
      * @return String - one of ['node', 'rel', 'withNode']
      * @throws DQInvalidException Error in discovering the type of the return item.
      */
-    private String discoverType(String idReturnItem, MatchClause matchC) throws DQInvalidException {
+    private String discoverType(String idReturnItem, MatchClause matchC, TranslationContext ctx)
+            throws DQInvalidException {
         //check the nodes first
         for (CypNode cN : matchC.getNodes()) {
             if (cN.getId() != null && cN.getId().equals(idReturnItem)) {
@@ -109,7 +112,7 @@ public class CypReturn {
         }
 
         // quite experimental code - used with the keyword WITH
-        for (String s : WithSQL.withMapping.keySet()) {
+        for (String s : ctx.getWithMapping().keySet()) {
             if (s.equals(idReturnItem)) {
                 posInClause = -1;
                 return "withNode";
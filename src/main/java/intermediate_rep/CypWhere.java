@@ -21,9 +21,88 @@ package intermediate_rep;
 
 /**
  * Stores information linking to an individual predicate contained within a WHERE clause. For example, information
- * about a statement a.name = 'Ben' would be stored in one CypWhere object.
+ * about a statement a.name = 'Ben' would be stored in one CypWhere object (field: name, operator: EQ, value: 'ben').
+ * The CypWhere objects are attached to the CypNode or CypRel the predicate refers to, in the order they appear in
+ * the WHERE clause, and are turned into SQL by walking over them (see TranslateUtils).
  */
 public class CypWhere {
+    /**
+     * Operators that a predicate of the WHERE clause can use.
+     */
+    public enum Op {
+        EQ, NE, LT, GT, LE, GE, IN, NOT_IN, IS_NULL, IS_NOT_NULL,
+        // STARTS WITH, ENDS WITH, CONTAINS and =~ (a regular expression matching the whole string).
+        STARTS_WITH, NOT_STARTS_WITH, ENDS_WITH, NOT_ENDS_WITH, CONTAINS, NOT_CONTAINS, MATCHES, NOT_MATCHES,
+        // any(x in n.field WHERE x IN [...]) and any(x in n.field WHERE x = ...)
+        ANY_IN, ANY_EQ;
+
+        /**
+         * Operator for the predicate when preceded by NOT (the ANY operators have no inverse).
+         *
+         * @return Inverted operator, or null if the operator cannot be inverted.
+         */
+        public Op invert() {
+            switch (this) {
+                case EQ:
+                    return NE;
+                case NE:
+                    return EQ;
+                case LT:
+                    return GE;
+                case GT:
+                    return LE;
+                case LE:
+                    return GT;
+                case GE:
+                    return LT;
+                case IN:
+                    return NOT_IN;
+                case NOT_IN:
+                    return IN;
+                case IS_NULL:
+                    return IS_NOT_NULL;
+                case IS_NOT_NULL:
+                    return IS_NULL;
+                case STARTS_WITH:
+                    return NOT_STARTS_WITH;
+                case NOT_STARTS_WITH:
+                    return STARTS_WITH;
+                case ENDS_WITH:
+                    return NOT_ENDS_WITH;
+                case NOT_ENDS_WITH:
+                    return ENDS_WITH;
+                case CONTAINS:
+                    return NOT_CONTAINS;
+                case NOT_CONTAINS:
+                    return CONTAINS;
+                case MATCHES:
+                    return NOT_MATCHES;
+                case NOT_MATCHES:
+                    return MATCHES;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * What the value on the right hand side of the operator is.
+     */
+    public enum ValueType {
+        // a string or a number ('ben', 345).
+        LITERAL,
+        // a list of literals (['ben', 'tom']).
+        LIST,
+        // a property of another node or relationship (m.name).
+        PROPERTY,
+        // the id of another node (id(m)).
+        NODE_ID,
+        // SQL to use as it is (used by the translation of ITERATE).
+        SQL,
+        // no value (IS NULL and IS NOT NULL).
+        NONE
+    }
+
     // position in the original Cypher WHERE clause of the component.
     private int posInWhere;
     // stores string of brackets either before or after component.
@@ -31,6 +110,16 @@ public class CypWhere {
     // stores boolean operator that immediately follows this component (will be either and, or, NULL).
     private String boolOp;
 
+    // property of the node/relationship that the predicate is about.
+    private String field;
+    private Op op;
+    // text of the value as in the Cypher input (lower case, with strings in single quotes).
+    private String value;
+    private ValueType valueType = ValueType.NONE;
+    // for PROPERTY and NODE_ID values, the id of the node/relationship being referred to, and the property.
+    private String valueId;
+    private String valueField;
+
     public CypWhere(int id) {
         this.posInWhere = id;
     }
@@ -44,10 +133,22 @@ public class CypWhere {
         else return this.bracketing;
     }
 
+    public boolean hasLeftBrackets() {
+        return this.bracketing != null && this.bracketing.startsWith("(");
+    }
+
+    public boolean hasRightBrackets() {
+        return this.bracketing != null && this.bracketing.startsWith(")");
+    }
+
     public String getBoolOp() {
         return ((this.boolOp != null) ? this.boolOp : "null");
     }
 
+    public boolean hasBoolOp() {
+        return this.boolOp != null;
+    }
+
     public void setBoolOp(String boolOp) {
         this.boolOp = boolOp;
     }
@@ -62,8 +163,59 @@ public class CypWhere {
         else this.bracketing = this.bracketing + ")";
     }
 
+    /**
+     * Set the predicate itself.
+     *
+     * @param field Property of the node/relationship compared.
+     * @param op    Operator of the predicate.
+     */
+    public void setPredicate(String field, Op op) {
+        this.field = field;
+        this.op = op;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    /**
+     * Set the value the property is compared to.
+     *
+     * @param value      Text of the value.
+     * @param valueType  What the value is.
+     * @param valueId    Id of the node/relationship referred to (PROPERTY and NODE_ID values only).
+     * @param valueField Property referred to (PROPERTY values only).
+     */
+    public void setValue(String value, ValueType valueType, String valueId, String valueField) {
+        this.value = value;
+        this.valueType = valueType;
+        this.valueId = valueId;
+        this.valueField = valueField;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public ValueType getValueType() {
+        return valueType;
+    }
+
+    public String getValueId() {
+        return valueId;
+    }
+
+    public String getValueField() {
+        return valueField;
+    }
+
     @Override
     public String toString() {
-        return "POS: " + this.posInWhere + "; BRACKETING: " + this.getBracketing() + "; BOOL_OP: " + this.getBoolOp();
+        return "POS: " + this.posInWhere + "; BRACKETING: " + this.getBracketing() + "; BOOL_OP: " + this.getBoolOp()
+                + "; FIELD: " + this.field + "; OP: " + this.op + "; VALUE: " + this.value;
     }
 }
@@ -19,9 +19,12 @@
 
 package intermediate_rep;
 
+import production.TranslationContext;
 import translator.CypherWalker;
+import translator.ParsedCypher;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class definition bundles together all of the intermediate representations
@@ -38,8 +41,13 @@ public class DecodedQuery {
     private CypherWalker cypherAdditionalInfo;
     // The SQL translation is also stored in this object for completeness.
     private String sqlEquiv;
-    private ArrayList<String> withParts = new ArrayList<>();
+    // The parsed Cypher input, kept for translations that work on parts of the parse tree (multiple WITH).
+    private ParsedCypher parsedCypher;
     private ArrayList<DecodedQuery> unionParts = new ArrayList<>();
+    // names of the parameters ($name) of the Cypher input, bound when the SQL is executed.
+    private List<String> parameters = new ArrayList<>();
+    // the context the object was generated in (holding the WITH mappings), for translating it to SQL later.
+    private TranslationContext context;
 
     /**
      * Create the DecodedQuery object based on the parsing of the Cypher input.
@@ -110,12 +118,28 @@ public class DecodedQuery {
         return iterate;
     }
 
-    public ArrayList<String> getWithParts() {
-        return withParts;
+    public List<String> getParameters() {
+        return parameters;
     }
 
-    public void setWithParts(ArrayList<String> withParts) {
-        this.withParts = withParts;
+    public void setParameters(List<String> parameters) {
+        this.parameters = parameters;
+    }
+
+    public ParsedCypher getParsedCypher() {
+        return parsedCypher;
+    }
+
+    public void setParsedCypher(ParsedCypher parsedCypher) {
+        this.parsedCypher = parsedCypher;
+    }
+
+    public TranslationContext getContext() {
+        return context;
+    }
+
+    public void setContext(TranslationContext context) {
+        this.context = context;
     }
 
     public void addToUnionParts(DecodedQuery unionDQ) {
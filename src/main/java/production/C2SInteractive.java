@@ -19,18 +19,27 @@
 
 package production;
 
+import exceptions.ConversionSQLException;
 import jline.TerminalFactory;
 import jline.UnsupportedTerminal;
 import jline.console.ConsoleReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Class for running the translation part of the tool through the terminal. This is opposed to running the
  * tool with a file containing a list of Cypher queries.
  */
 class C2SInteractive {
+    // query read a page at a time by the :page and :next commands, and the token of its next page.
+    private static String pagedQuery = null;
+    private static String pageToken = null;
+
     /**
      * Method for running the tool in debug mode, where information about the queries is recorded, and where
      * printing the results to a local file is possible.
@@ -43,7 +52,9 @@ class C2SInteractive {
     static void run_debug(File f_cypher, File f_sql, String dbName, C2SProperties props) {
         System.out.println("PRINT TO FILE : " + ((C2SMain.printBool) ? "enabled" : "disabled"));
         System.out.println("Cypher to SQL Translator Tool v1.1");
-        System.out.println("To exit, type :exit.");
+        System.out.println("To exit, type :exit. To set a parameter, type :param <name> <value>.");
+        System.out.println("To run a file of CREATE queries as one batch, type :load <file>.");
+        System.out.println("To read a query a page at a time, type :page <query>, then :next for each next page.");
 
         jline.TerminalFactory.registerFlavor(jline.TerminalFactory.Flavor.WINDOWS, UnsupportedTerminal.class);
 
@@ -54,6 +65,9 @@ class C2SInteractive {
             while ((line = console.readLine()) != null) {
                 if (line.equals(":exit")) break;
                 if (line.isEmpty()) continue;
+                if (setParameter(line)) continue;
+                if (loadCreates(line, dbName, props)) continue;
+                if (readPage(line, f_sql, dbName, props)) continue;
                 try {
                     C2SMain.translateCypherToSQL(line, f_cypher, f_sql, dbName, true, props);
                 } catch (Exception e) {
@@ -80,7 +94,8 @@ class C2SInteractive {
      */
     static void run(String dbName, C2SProperties props) {
         System.out.println("Cypher to SQL Translator Tool v1.1");
-        System.out.println("To exit, type :exit.");
+        System.out.println("To exit, type :exit. To set a parameter, type :param <name> <value>.");
+        System.out.println("To run a file of CREATE queries as one batch, type :load <file>.");
 
         try {
             ConsoleReader console = new ConsoleReader();
@@ -89,6 +104,8 @@ class C2SInteractive {
             while ((line = console.readLine()) != null) {
                 if (line.equals(":exit")) break;
                 if (line.isEmpty()) continue;
+                if (setParameter(line)) continue;
+                if (loadCreates(line, dbName, props)) continue;
                 try {
                     C2SMain.translateCypherToSQL(line, null, null, dbName, false, props);
                 } catch (Exception e) {
@@ -105,4 +122,104 @@ class C2SInteractive {
             }
         }
     }
+
+    /**
+     * Handle the :load command of the console, which inserts the records of a file of CREATE queries (one per
+     * line) in a single transaction, with one multi-row INSERT for each table.
+     *
+     * @param line   Line read from the console.
+     * @param dbName Name of the relational database to insert the records into.
+     * @param props  C2SProperties object (should already be initialised).
+     * @return True if the line was a load command (and so is not Cypher to translate).
+     */
+    private static boolean loadCreates(String line, String dbName, C2SProperties props) {
+        if (!line.startsWith(":load ")) return false;
+
+        try {
+            List<String> creates = new ArrayList<>();
+            for (String cypher : Files.readAllLines(Paths.get(line.substring(":load ".length()).trim()))) {
+                if (!cypher.trim().isEmpty()) creates.add(cypher.trim());
+            }
+            C2SMain.executeCreates(creates, dbName, props);
+        } catch (IOException | ConversionSQLException e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    /**
+     * Handle the :page and :next commands of the console, which read the first page of a query, and then the
+     * page following the last one read (see C2SMain.executePage). The token of the next page is printed.
+     *
+     * @param line   Line read from the console.
+     * @param f_sql  File to store the rows of the page.
+     * @param dbName Name of the relational database to read the page from.
+     * @param props  C2SProperties object (should already be initialised).
+     * @return True if the line was a page command (and so is not Cypher to translate).
+     */
+    private static boolean readPage(String line, File f_sql, String dbName, C2SProperties props) {
+        if (line.startsWith(":page ")) {
+            pagedQuery = line.substring(":page ".length()).trim();
+            pageToken = null;
+        } else if (!line.equals(":next")) {
+            return false;
+        } else if (pagedQuery == null || pageToken == null) {
+            System.err.println("No page to read, type :page <query> first.");
+            return true;
+        }
+
+        try {
+            pageToken = C2SMain.executePage(pagedQuery, pageToken, f_sql, dbName, props);
+            System.out.println((pageToken == null) ? "NO MORE PAGES" : "NEXT PAGE : " + pageToken);
+        } catch (ConversionSQLException e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    /**
+     * Handle the :param and :params commands of the console, which set (and list) the values of the
+     * parameters ($name) used by the following Cypher inputs. Values in quotes are strings, values
+     * made up of digits are integers, and values in square brackets are lists (such as the ids of IN $ids).
+     *
+     * @param line Line read from the console.
+     * @return True if the line was a parameter command (and so is not Cypher to translate).
+     */
+    private static boolean setParameter(String line) {
+        if (line.equals(":params")) {
+            System.out.println(C2SMain.parameters);
+            return true;
+        }
+        if (!line.startsWith(":param ")) return false;
+
+        String[] parts = line.substring(":param ".length()).trim().split("\\s+", 2);
+        if (parts.length < 2) {
+            System.err.println("Usage: :param <name> <value>");
+            return true;
+        }
+
+        String value = parts[1].trim();
+        if (value.startsWith("[") && value.endsWith("]")) {
+            List<Object> list = new ArrayList<>();
+            for (String element : value.substring(1, value.length() - 1).split(",")) {
+                if (!element.trim().isEmpty()) list.add(parseValue(element.trim()));
+            }
+            C2SMain.parameters.put(parts[0], list);
+        } else {
+            C2SMain.parameters.put(parts[0], parseValue(value));
+        }
+        return true;
+    }
+
+    /**
+     * @param value Value of a parameter as typed in the console.
+     * @return The value as an integer, a string without its quotes, or the text as it is.
+     */
+    private static Object parseValue(String value) {
+        if (value.matches("-?\\d{1,18}")) return Long.parseLong(value);
+        if (value.length() > 1 && (value.startsWith("'") && value.endsWith("'")
+                || value.startsWith("\"") && value.endsWith("\"")))
+            return value.substring(1, value.length() - 1);
+        return value;
+    }
 }
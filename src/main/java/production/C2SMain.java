@@ -20,7 +20,9 @@
 package production;
 
 import database.Neo4jDriver;
+import database.postgres.AdjacencyCache;
 import database.postgres.InsertSchemaPostgres;
+import database.postgres.PageRow;
 import database.postgres.PostgresDriver;
 import exceptions.ConversionSQLException;
 import exceptions.DQInvalidException;
@@ -28,35 +30,31 @@ import intermediate_rep.DecodedQuery;
 import org.apache.commons.io.FileUtils;
 import org.neo4j.driver.v1.exceptions.ClientException;
 import org.neo4j.driver.v1.exceptions.ServiceUnavailableException;
-import query_translation.sql.conversion_types.*;
+import query_translation.sql.utilities_sql.SQLTranslate;
 import schema_conversion.SchemaConvert;
+import translator.CypherParameters;
 
 import java.io.*;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Main class for starting the application. View README.md for usage.
  */
 public class C2SMain {
-    // for optimisations based on the return clause of Cypher
-    public static final Map<String, String> labelProps = new HashMap<>();
-    // for use in deleting relationships attached to nodes
-    public static final ArrayList<String> allRelTypes = new ArrayList<>();
-
     private static final String OS = System.getProperty("os.name").toLowerCase();
     public static int numResultsNeo4j;
     public static int numResultsPostgres;
 
-    // static variable set by the translation unit if the ID needs to be returned from the Postgres database
-    // by default it is set to false as this is the same logic as Neo4j
-    public static boolean needToPrintID = false;
     // variable set at the command line to turn on/off printing to a file the results of a read query.
     static boolean printBool = false;
-    // cache for previously successful queries (saves time and computation doing repetitive work).
-    private static Map<String, String> cache = new HashMap<>();
+    // translator shared by the static methods of this class (created when the label mapping is read in).
+    private static Translator translator;
+    // values of the parameters ($name) used by the Cypher input (set with :param in the interactive tool).
+    static final Map<String, Object> parameters = new HashMap<>();
 
     /**
      * {@literal <}-schema|-translate|-s|-t{@literal >}
@@ -119,58 +117,25 @@ public class C2SMain {
     }
 
     /**
-     * This method performs two important tasks for the translator tool:
-     * - Firstly, the translator tool checks to see if it can optimise any of the queries by storing a mapping
-     * between unique keys, and the label of the node that tke key will only appear under. These mappings are
-     * stored in the labelProps object.
-     * <p>
-     * - Secondly, it reads in all the possible types of relationships
-     * (used for example when deleting nodes from the relational schema).
+     * Read in the schema metadata (the mapping between unique keys and labels, and all the types of
+     * relationships) by creating the Translator used by the static methods of this class.
      *
      * @param props C2SProperties object.
      */
     static void getLabelMapping(C2SProperties props) {
-        // open file and read in property keys, removing duplicates as they are of no use.
-        FileInputStream fis;
-        try {
-            fis = new FileInputStream(props.getWspace() + "/meta_labelProps.txt");
-            BufferedReader br = new BufferedReader(new InputStreamReader(fis));
-            String line;
-            String currentLabelType = null;
-
-            // ArrayList to keep track of duplicates.
-            ArrayList<String> dupKeys = new ArrayList<>();
-
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith("*")) {
-                    // view meta_labelProps.txt/README for more information.
-                    // Lines starting with a '*' defines the label that the following properties
-                    // in the file belong to.
-                    currentLabelType = line.substring(1, line.length() - 1);
-                } else {
-                    if (labelProps.containsKey(line)) {
-                        dupKeys.add(line);
-                    } else {
-                        labelProps.put(line, currentLabelType);
-                    }
-                }
-            }
-
-            // remove the duplicate keys.
-            for (String s : dupKeys) labelProps.remove(s);
-
-            br.close();
-            fis.close();
+        translator = new Translator(props);
+    }
 
-            // Section for reading in all the different types of relationships contained within the dataset.
-            fis = new FileInputStream(props.getWspace() + "/meta_rels.txt");
-            br = new BufferedReader(new InputStreamReader(fis));
-            while ((line = br.readLine()) != null) allRelTypes.add(line);
-            br.close();
-            fis.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Obtain the shared Translator, creating it if the label mapping has not been read in yet, or was read
+     * in using a different C2SProperties object.
+     *
+     * @param props C2SProperties object.
+     * @return Translator for props.
+     */
+    private static synchronized Translator getTranslator(C2SProperties props) {
+        if (translator == null || translator.getProps() != props) translator = new Translator(props);
+        return translator;
     }
 
     /**
@@ -317,19 +282,28 @@ public class C2SMain {
     static void translateCypherToSQL(String cypherInput, File f_cypher, File f_pg, String dbName, boolean execNeo4j,
                                      C2SProperties props) throws ConversionSQLException {
         String sql;
+        Translator t = getTranslator(props);
+        TranslationContext ctx = t.newContext();
+        if (props.isShortestPathInMemory()) ctx.setPathSearch(new AdjacencyCache(dbName, props));
+
+        // either calculate the SQL or fill in the cached template of a query of the same shape.
+        if (props.isCostBasedPlanning()) sql = t.translate(cypherInput, ctx, explainEstimator(dbName, props));
+        else sql = t.translate(cypherInput, ctx);
 
-        // either calculate the SQL or retrieve from a cache of valid translations.
-        if (cache.containsKey(cypherInput)) sql = cache.get(cypherInput);
-        else {
-            // generate the DecodedQuery object first, then use it to translate to SQL.
-            DecodedQuery dQ = getDQ(cypherInput, props);
-            sql = getTranslation(cypherInput, dQ, props);
+        // values of the parameters of the input, in the order of the placeholders in the SQL.
+        List<String> binds;
+        try {
+            binds = CypherParameters.bindValues(ctx.getBindOrder(), parameters);
+        } catch (DQInvalidException e) {
+            throw new ConversionSQLException(e.getMessage());
         }
 
         if (!execNeo4j) {
             try {
-                System.out.println(runPostgres(sql, dbName));
-                // cache.put(cypherInput, sql);
+                // psql cannot bind parameters, so their values are put in the SQL as literals.
+                String psqlSQL = PostgresDriver.withFreshAdjLists(CypherParameters.inline(sql, binds));
+                System.out.println(runPostgres(psqlSQL, dbName));
+                if (sql != null && (sql.contains("INSERT") || sql.contains("DELETE"))) PostgresDriver.edgesChanged();
             } catch (IOException ioe) {
                 ioe.printStackTrace();
             } finally {
@@ -340,13 +314,17 @@ public class C2SMain {
 
         boolean sqlExecSuccess;
         if (sql != null && !sql.isEmpty()) {
-            sqlExecSuccess = executeSQL(sql, f_pg, (printBool || cypherInput.toLowerCase().contains("count")),
-                    dbName, props);
+            sqlExecSuccess = executeSQL(sql, binds, f_pg,
+                    (printBool || cypherInput.toLowerCase().contains("count")), dbName, ctx.needToPrintID(), props);
         } else throw new ConversionSQLException("Conversion of SQL failed on input: " + cypherInput);
 
+        // the runtime of the translation chosen by the planner informs its later choices.
+        if (sqlExecSuccess && props.isCostBasedPlanning())
+            t.getPlanner().record(cypherInput, ctx, PostgresDriver.lastExecTimeRead / 1000000.0);
+
         // All the Cypher queries other than the extension
         if (!cypherInput.toLowerCase().contains("iterate"))
-            Neo4jDriver.run(cypherInput, f_cypher, printBool, props);
+            Neo4jDriver.run(cypherInput, parameters, f_cypher, printBool, props);
 
         // validate the results
         boolean fileSame = false;
@@ -368,8 +346,6 @@ public class C2SMain {
                 }
             }
 
-            if ((numResultsNeo4j == numResultsPostgres) || fileSame) cache.put(cypherInput, sql);
-
             // print the performance of Cypher and SQL on Neo4J and Postgres respectively.
             try {
                 printSummary(cypherInput, sql, f_cypher, f_pg);
@@ -381,6 +357,104 @@ public class C2SMain {
         resetExecTimes();
     }
 
+    /**
+     * @param dbName The name of the database the translations are costed on.
+     * @param props  C2SProperties object.
+     * @return Estimator costing a translation with EXPLAIN on Postgres (with the current parameter values).
+     */
+    private static CostEstimator explainEstimator(String dbName, C2SProperties props) {
+        return (sql, bindOrder) -> {
+            try {
+                return PostgresDriver.explainCost(sql, CypherParameters.bindValues(bindOrder, parameters), dbName,
+                        props);
+            } catch (DQInvalidException e) {
+                throw new SQLException(e.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Translate and execute one page of a read query (see Translator.translatePage), writing its rows to the
+     * results file.
+     *
+     * @param cypherInput Read query, ordered by a single node property and limited to the size of the page.
+     * @param token       Token returned by the previous page (null for the first page).
+     * @param f_pg        File to store the results.
+     * @param dbName      The name of the database to read the page from.
+     * @param props       C2SProperties object.
+     * @return Token of the next page, or null if the page was empty.
+     * @throws ConversionSQLException The query cannot be read a page at a time, or the token is invalid.
+     */
+    static String executePage(String cypherInput, String token, File f_pg, String dbName, C2SProperties props)
+            throws ConversionSQLException {
+        Translator t = getTranslator(props);
+        TranslationContext ctx = t.newContext();
+        String sql;
+        List<String> binds;
+        try {
+            PageToken page = (token == null) ? PageToken.first(cypherInput) : PageToken.decode(token, cypherInput);
+            sql = t.translatePage(cypherInput, page, ctx);
+            binds = CypherParameters.bindValues(ctx.getBindOrder(), parameters);
+        } catch (DQInvalidException e) {
+            throw new ConversionSQLException(e.getMessage());
+        }
+
+        PageRow last;
+        try {
+            last = PostgresDriver.selectPage(sql, binds, dbName, f_pg, ctx.needToPrintID(), props);
+            System.out.println("READ " + numResultsPostgres + " RECORDS");
+        } catch (SQLException e) {
+            System.out.println("FAILED IN executePage -- " + sql);
+            e.printStackTrace();
+            return null;
+        } finally {
+            resetExecTimes();
+        }
+
+        if (last == null) return null;
+        return PageToken.after(cypherInput, last.getKey(), last.getId()).encode();
+    }
+
+    /**
+     * Translate and execute a number of CREATE queries together: the rows of all of the queries are inserted
+     * with one multi-row INSERT for each table, in a single transaction.
+     *
+     * @param cypherInputs CREATE queries to execute.
+     * @param dbName       The name of the database to insert the records into.
+     * @param props        C2SProperties object.
+     * @throws ConversionSQLException One of the inputs is not a CREATE query (nothing is inserted).
+     */
+    static void executeCreates(List<String> cypherInputs, String dbName, C2SProperties props)
+            throws ConversionSQLException {
+        Translator t = getTranslator(props);
+        List<DecodedQuery> creates = new ArrayList<>();
+        int numNodes = 0;
+
+        for (String cypherInput : cypherInputs) {
+            TranslationContext ctx = t.newContext();
+            DecodedQuery dQ = t.getDQ(cypherInput, ctx);
+            if (dQ == null || !cypherInput.trim().toUpperCase().startsWith("CREATE") || dQ.getRc() != null
+                    || dQ.getCypherAdditionalInfo() == null || dQ.getCypherAdditionalInfo().hasDelete())
+                throw new ConversionSQLException("Not a CREATE query: " + cypherInput);
+            if (!ctx.getParsedCypher().getParameters().isEmpty())
+                throw new ConversionSQLException("Parameters cannot be used in a batch of CREATE queries: " +
+                        cypherInput);
+            creates.add(dQ);
+            numNodes += SQLTranslate.countInsertNodes(dQ);
+        }
+
+        try {
+            int[] ids = PostgresDriver.nextNodeIds(numNodes, dbName, props);
+            PostgresDriver.insertBatch(SQLTranslate.translateInsertBatch(creates, ids, t.newContext()), dbName, props);
+            System.out.println("CREATED " + numNodes + " NODES FROM " + creates.size() + " QUERIES");
+        } catch (SQLException e) {
+            System.out.println("FAILED IN executeCreates");
+            e.printStackTrace();
+        } finally {
+            resetExecTimes();
+        }
+    }
+
     /**
      * Execute the SQL command on the database.
      * If query is a concatenation of multiple queries, then perform then
@@ -389,25 +463,30 @@ public class C2SMain {
      * or not.
      *
      * @param sql         SQL to execute.
+     * @param binds       Values to bind to the placeholders of the SQL, in order.
      * @param pg_results  File to store the results.
      * @param printOutput Write the results to a file for viewing.
      * @param dbName      Name of the database the SQL will be executed on.
+     * @param printID     Print the ID of the nodes returned (set during the translation of the query).
      * @param props       C2SProperties object.
      * @return True if the execution on Postgres was successful, false otherwise.
      */
-    private static boolean executeSQL(String sql, File pg_results, boolean printOutput, String dbName,
-                                      C2SProperties props) {
+    private static boolean executeSQL(String sql, List<String> binds, File pg_results, boolean printOutput,
+                                      String dbName, boolean printID, C2SProperties props) {
+        List<String> remainingBinds = new ArrayList<>(binds);
         try {
             String indivSQL[] = sql.split(";");
             for (String q : indivSQL) {
+                List<String> qBinds = CypherParameters.takeBinds(q, remainingBinds);
                 if (q.trim().startsWith("CREATE")) {
-                    PostgresDriver.executeCreateView(q + ";", dbName, props);
+                    // views cannot have parameters, so their values are put in the SQL as literals.
+                    PostgresDriver.executeCreateView(CypherParameters.inline(q, qBinds) + ";", dbName, props);
                 } else if (q.trim().startsWith("INSERT")) {
-                    PostgresDriver.insertOrDelete(q + ";", dbName, props);
-                } else if (q.trim().startsWith("DELETE")) {
-                    PostgresDriver.insertOrDelete(q + ";", dbName, props);
+                    PostgresDriver.insertOrDelete(q + ";", qBinds, dbName, props);
+                } else if (q.trim().startsWith("DELETE") || modifiesData(q)) {
+                    PostgresDriver.insertOrDelete(q + ";", qBinds, dbName, props);
                 } else
-                    PostgresDriver.select(q + ";", dbName, pg_results, printOutput, props);
+                    PostgresDriver.select(q + ";", qBinds, dbName, pg_results, printOutput, printID, props);
             }
         } catch (SQLException e) {
             System.out.println("FAILED IN executeSQL -- " + sql);
@@ -417,6 +496,17 @@ public class C2SMain {
         return true;
     }
 
+    /**
+     * @param q Single SQL statement.
+     * @return True if the statement is a WITH query that inserts or deletes records (and returns no rows).
+     */
+    private static boolean modifiesData(String q) {
+        // string literals are removed first, so that values such as 'delete from' are not mistaken for SQL.
+        String noLiterals = q.replaceAll("'([^']|'')*'", "''");
+        return noLiterals.trim().startsWith("WITH")
+                && (noLiterals.contains("DELETE FROM ") || noLiterals.contains("INSERT INTO "));
+    }
+
     /**
      * Print summary of the translation.
      *
@@ -436,6 +526,7 @@ public class C2SMain {
                 PostgresDriver.lastExecTimeInsert)
                 / 1000000.0) +
                 " ms.");
+        System.out.println("Translation cache: " + translator.getCache());
         System.out.println("**********\n");
     }
 
@@ -490,37 +581,15 @@ public class C2SMain {
 
     /**
      * Generate DecodedQuery object from a Cypher input. Must also provide an initialised C2SProperties object.
+     * The object keeps the TranslationContext it was generated in, which getTranslation translates it in.
      *
      * @param cypherInput Cypher input to translate.
      * @param props       C2SProperties object.
      * @return A new DecodedQuery object (may also contain SQL translation in the object in some instances).
      */
     public static DecodedQuery getDQ(String cypherInput, C2SProperties props) {
-        try {
-            if (cypherInput.toLowerCase().contains(" foreach ")) {
-                ForEach_Cypher fe = new ForEach_Cypher();
-                return fe.generateDQ(cypherInput, props);
-            } else if (cypherInput.toLowerCase().contains(" with ")) {
-                if (cypherInput.toLowerCase().split(" with ").length > 2) {
-                    Multiple_With_Cypher mwc = new Multiple_With_Cypher();
-                    return mwc.generateDQ(cypherInput, props);
-                } else {
-                    With_Cypher wc = new With_Cypher();
-                    return wc.generateDQ(cypherInput, props);
-                }
-            } else if (cypherInput.toLowerCase().contains("shortestpath")) {
-                SP_Cypher spc = new SP_Cypher();
-                return spc.generateDQ(cypherInput, props);
-            } else if (cypherInput.toLowerCase().contains("iterate")) {
-                Iterate_Cypher ic = new Iterate_Cypher();
-                return ic.generateDQ(cypherInput, props);
-            } else {
-                return AbstractConversion.genDQAndSQL(cypherInput, props);
-            }
-        } catch (DQInvalidException ex) {
-            ex.printStackTrace();
-            return null;
-        }
+        Translator t = getTranslator(props);
+        return t.getDQ(cypherInput, t.newContext());
     }
 
     /**
@@ -533,33 +602,8 @@ public class C2SMain {
      * @return SQL equivalent of Cypher
      */
     public static String getTranslation(String cypherInput, DecodedQuery dQ, C2SProperties props) {
-        try {
-            if (cypherInput.toLowerCase().contains(" foreach ")) {
-                ForEach_Cypher fe = new ForEach_Cypher();
-                return fe.convertToSQL(dQ, props);
-            } else if (cypherInput.toLowerCase().contains(" with ")) {
-                if (cypherInput.toLowerCase().split(" with ").length > 2) {
-                    Multiple_With_Cypher mwc = new Multiple_With_Cypher();
-                    return mwc.convertToSQL(dQ, props);
-                } else {
-                    With_Cypher wc = new With_Cypher();
-                    return wc.convertQuery(cypherInput, props);
-                }
-            } else if (cypherInput.toLowerCase().contains("shortestpath")) {
-                SP_Cypher spc = new SP_Cypher();
-                return spc.convertToSQL(dQ, props);
-            } else if (cypherInput.toLowerCase().contains("iterate")) {
-                Iterate_Cypher ic = new Iterate_Cypher();
-                return ic.convertToSQL(dQ, props);
-            } else {
-                return dQ.getSqlEquiv();
-            }
-        } catch (DQInvalidException ex) {
-            ex.printStackTrace();
-            return null;
-        } catch (NullPointerException nulle) {
-            System.err.println("No valid DecodedQuery object presented.");
-            return null;
-        }
+        Translator t = getTranslator(props);
+        TranslationContext ctx = (dQ == null || dQ.getContext() == null) ? t.newContext() : dQ.getContext();
+        return t.getTranslation(cypherInput, dQ, ctx);
     }
-}
\ No newline at end of file
+}
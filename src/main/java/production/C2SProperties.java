@@ -24,6 +24,7 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -44,6 +45,19 @@ public class C2SProperties {
     private String neoPW;
     private String postUN;
     private String postPW;
+    // bounds of the translation cache (number of SQL templates, and their total size in characters).
+    private int cacheSize = 1000;
+    private long cacheWeight = 4000000;
+    // maximum number of hops followed for a variable length path with no upper bound (such as -[*]->).
+    private int maxPathLength = 100;
+    // search for shortest paths over a copy of the edges held in memory, rather than with recursive SQL.
+    private boolean shortestPathInMemory = false;
+    // choose between the alternative translations of each query using the costs estimated by Postgres.
+    private boolean costBasedPlanning = false;
+    // lists of more values than this in an IN predicate are compared as a single array (= ANY('{...}')).
+    private int inListArraySize = 100;
+    // text properties indexed with pg_trgm by the schema conversion, for STARTS WITH, CONTAINS and =~ searches.
+    private List<String> trigramIndexColumns = new ArrayList<>();
 
     /**
      * Constructor method. Sets the location of the properties file (c2s_props.properties)
@@ -74,6 +88,25 @@ public class C2SProperties {
             setPostUN(prop.getProperty("postgresUser"));
             setPostPW(prop.getProperty("postgresPW"));
 
+            // optional bounds of the translation cache (0 turns the cache off).
+            if (prop.getProperty("translationCacheSize") != null)
+                cacheSize = Integer.parseInt(prop.getProperty("translationCacheSize").trim());
+            if (prop.getProperty("translationCacheWeight") != null)
+                cacheWeight = Long.parseLong(prop.getProperty("translationCacheWeight").trim());
+            if (prop.getProperty("maxPathLength") != null)
+                maxPathLength = Integer.parseInt(prop.getProperty("maxPathLength").trim());
+            if (prop.getProperty("shortestPathInMemory") != null)
+                shortestPathInMemory = Boolean.parseBoolean(prop.getProperty("shortestPathInMemory").trim());
+            if (prop.getProperty("costBasedPlanning") != null)
+                costBasedPlanning = Boolean.parseBoolean(prop.getProperty("costBasedPlanning").trim());
+            if (prop.getProperty("inListArraySize") != null)
+                inListArraySize = Integer.parseInt(prop.getProperty("inListArraySize").trim());
+            if (prop.getProperty("trigramIndexColumns") != null) {
+                for (String column : prop.getProperty("trigramIndexColumns").split(",")) {
+                    if (!column.trim().isEmpty()) trigramIndexColumns.add(column.trim().toLowerCase());
+                }
+            }
+
             // get the fields that need to look out for lists when parsing the schema
             // dump from Neo4j.
             setLists(prop.getProperty("listsLocation"));
@@ -146,6 +179,34 @@ public class C2SProperties {
         this.postPW = postPW;
     }
 
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public long getCacheWeight() {
+        return cacheWeight;
+    }
+
+    public int getMaxPathLength() {
+        return maxPathLength;
+    }
+
+    public boolean isShortestPathInMemory() {
+        return shortestPathInMemory;
+    }
+
+    public boolean isCostBasedPlanning() {
+        return costBasedPlanning;
+    }
+
+    public int getInListArraySize() {
+        return inListArraySize;
+    }
+
+    public List<String> getTrigramIndexColumns() {
+        return trigramIndexColumns;
+    }
+
     public String getWspace() {
         return wspace;
     }
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package production;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Estimates the cost of executing a translation, so that the cheapest of the alternative translations of a
+ * query can be chosen (see Planner). Used when the costBasedPlanning property is set.
+ */
+public interface CostEstimator {
+    /**
+     * Estimate the cost of a single SQL statement, without executing it.
+     *
+     * @param sql       SQL statement, with ? placeholders for any parameters.
+     * @param bindOrder Names of the parameters bound to the placeholders, in order.
+     * @return Estimated cost, in the (arbitrary) units of the database planner.
+     * @throws SQLException Error planning the statement.
+     */
+    double cost(String sql, List<String> bindOrder) throws SQLException;
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package production;
+
+import exceptions.DQInvalidException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Continuation token of a query read a page at a time. The token holds the sort key and id of the last row
+ * of the previous page, so that the next page is read by seeking past that row (see KeysetPage) rather than
+ * by skipping over every row before it with OFFSET.
+ * <p>
+ * The token is opaque to the caller: it is encoded as a URL safe string, and is tied to the Cypher input it
+ * was created for.
+ */
+public class PageToken {
+    // columns holding the sort key and id of each row of a page.
+    public static final String KEY_COLUMN = "page_key";
+    public static final String ID_COLUMN = "page_id";
+
+    // hash of the Cypher input the token was created for (a token cannot be used with another query).
+    private final int queryHash;
+    // sort key of the last row of the previous page (null if the key was NULL).
+    private final String key;
+    // id of the last row of the previous page (-1 for the first page).
+    private final long id;
+
+    private PageToken(int queryHash, String key, long id) {
+        this.queryHash = queryHash;
+        this.key = key;
+        this.id = id;
+    }
+
+    /**
+     * @param cypherInput Cypher input read a page at a time.
+     * @return Token reading the first page of the query.
+     */
+    public static PageToken first(String cypherInput) {
+        return new PageToken(cypherInput.hashCode(), null, -1);
+    }
+
+    /**
+     * @param cypherInput Cypher input read a page at a time.
+     * @param key         Sort key of the last row of the page just read (null if NULL).
+     * @param id          Id of the last row of the page just read.
+     * @return Token reading the page following that row.
+     */
+    public static PageToken after(String cypherInput, String key, long id) {
+        return new PageToken(cypherInput.hashCode(), key, id);
+    }
+
+    /**
+     * Decode a token previously returned by encode.
+     *
+     * @param token       The encoded token.
+     * @param cypherInput Cypher input the token is used with.
+     * @return The decoded token.
+     * @throws DQInvalidException The token is malformed, or was created for another query.
+     */
+    public static PageToken decode(String token, String cypherInput) throws DQInvalidException {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 3);
+        } catch (IllegalArgumentException e) {
+            throw new DQInvalidException("Invalid page token: " + token);
+        }
+        if (parts.length != 3 || parts[2].isEmpty() || (parts[2].charAt(0) != 'N' && parts[2].charAt(0) != 'V'))
+            throw new DQInvalidException("Invalid page token: " + token);
+
+        PageToken page;
+        try {
+            page = new PageToken(Integer.parseInt(parts[0]), parts[2].charAt(0) == 'N' ? null : parts[2].substring(1),
+                    Long.parseLong(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new DQInvalidException("Invalid page token: " + token);
+        }
+        if (page.queryHash != cypherInput.hashCode())
+            throw new DQInvalidException("The page token was created for a different query.");
+        return page;
+    }
+
+    /**
+     * @return The token as an opaque, URL safe, string.
+     */
+    public String encode() {
+        String value = queryHash + "|" + id + "|" + (key == null ? "N" : "V" + key);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return True if the token reads the first page (there is no row to seek past).
+     */
+    public boolean isFirst() {
+        return id == -1;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package production;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Answers the search part of a shortestPath query outside of the SQL, so that only the projection of the
+ * properties of the nodes reached is left to the database. Set on the TranslationContext of a query when the
+ * shortestPathInMemory property is set.
+ */
+public interface PathSearch {
+    /**
+     * Find the length of the shortest path from every start node to every end node it can reach.
+     *
+     * @param startSQL SQL returning the ids of the nodes the path may start at.
+     * @param endSQL   SQL returning the ids of the nodes the path may end at (null if any node may end the path).
+     * @param minHops  Lower bound on the length of the path.
+     * @param maxHops  Upper bound on the length of the path.
+     * @return Rows of {start id, end id, length}, one for each pair of nodes with a path between them.
+     * @throws SQLException Error obtaining the nodes or edges from the database.
+     */
+    List<int[]> shortestPaths(String startSQL, String endSQL, int minHops, int maxHops) throws SQLException;
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package production;
+
+import translator.QueryFingerprint;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Chooses between the alternative translations of a query (see TranslationContext.setVariant). The first
+ * time a query shape is seen, every distinct translation of it is costed by a CostEstimator, and the
+ * cheapest is used for every query of that shape afterwards.
+ * <p>
+ * The choice is revised as the queries are executed: the measured runtimes of a translation replace its
+ * estimate, and the estimates of the translations not yet run are converted to milliseconds using the
+ * ratio of runtime to estimated cost seen so far. A translation that runs much slower than its estimate
+ * therefore loses to the next cheapest one, which is then measured in turn.
+ * <p>
+ * Like the templates of the TranslationCache, only the choices for a bounded number of query shapes are kept,
+ * evicting those of the shapes least recently translated.
+ */
+public class Planner {
+    // the choice for each query shape, keyed on the fingerprint of the Cypher input (see QueryFingerprint),
+    // access ordered so that iteration starts at the least recently used plan.
+    private final LinkedHashMap<String, Plan> plans = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxPlans;
+    // lists of IN predicates with more values than this take a single slot of the fingerprint.
+    private final int inListArraySize;
+
+    // total runtime (in milliseconds) and total estimated cost of the translations measured.
+    private double measuredMillis = 0;
+    private double measuredCost = 0;
+
+    /**
+     * @param maxPlans        Maximum number of query shapes to keep the choice for.
+     * @param inListArraySize Lists of IN predicates with more values than this are bound as one array (see
+     *                        C2SProperties), and so take a single slot of the fingerprint of a query.
+     */
+    public Planner(int maxPlans, int inListArraySize) {
+        this.maxPlans = maxPlans;
+        this.inListArraySize = inListArraySize;
+    }
+
+    /**
+     * Translate Cypher to SQL, using the translation the planner considers cheapest for its shape.
+     *
+     * @param t           Translator to translate the input with.
+     * @param cypherInput Cypher input to translate.
+     * @param ctx         Context of the translation (its variant is set to the one chosen).
+     * @param estimator   Estimator of the cost of each translation.
+     * @return SQL equivalent of Cypher (null if the translation failed).
+     */
+    public String translate(Translator t, String cypherInput, TranslationContext ctx, CostEstimator estimator) {
+        QueryFingerprint fp = QueryFingerprint.of(cypherInput, inListArraySize);
+        if (!fp.isCacheable()) return t.translate(cypherInput, ctx);
+
+        Plan plan;
+        synchronized (this) {
+            plan = plans.get(fp.getKey());
+        }
+        if (plan == null) {
+            plan = costVariants(t, cypherInput, ctx, estimator);
+            synchronized (this) {
+                plans.put(fp.getKey(), plan);
+                Iterator<String> it = plans.keySet().iterator();
+                while (plans.size() > maxPlans && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+        }
+
+        ctx.setVariant(plan.choice);
+        return t.translate(cypherInput, ctx);
+    }
+
+    /**
+     * Translate the input once with each variant, and estimate the cost of the distinct translations.
+     */
+    private static Plan costVariants(Translator t, String cypherInput, TranslationContext ctx,
+                                     CostEstimator estimator) {
+        Plan plan = new Plan();
+        Map<String, Integer> seen = new HashMap<>();
+
+        for (int v = 0; v < TranslationContext.NUM_VARIANTS; v++) {
+            TranslationContext vCtx = t.newContext();
+            vCtx.setPathSearch(ctx.getPathSearch());
+            vCtx.setVariant(v);
+            String sql = t.translate(cypherInput, vCtx);
+
+            if (sql == null || !isSingleRead(sql)) {
+                // statements that write, or create views, are not costed (so the default is kept).
+                if (v == 0) return plan;
+                plan.costs[v] = Double.MAX_VALUE;
+            } else if (seen.containsKey(sql)) {
+                // the variant makes no difference to this query.
+                plan.costs[v] = Double.MAX_VALUE;
+            } else {
+                seen.put(sql, v);
+                try {
+                    plan.costs[v] = estimator.cost(sql, vCtx.getBindOrder());
+                } catch (SQLException e) {
+                    plan.costs[v] = Double.MAX_VALUE;
+                }
+            }
+        }
+
+        // nothing to choose between.
+        if (seen.size() < 2) return plan;
+        plan.choose(0);
+        return plan;
+    }
+
+    /**
+     * @param sql Translation of a query.
+     * @return True if the translation is a single statement reading from the database.
+     */
+    private static boolean isSingleRead(String sql) {
+        String s = sql.trim();
+        if (s.indexOf(';') != s.length() - 1) return false;
+        String noLiterals = s.replaceAll("'([^']|'')*'", "''");
+        return (s.startsWith("SELECT") || s.startsWith("WITH")) && !noLiterals.contains("DELETE FROM ")
+                && !noLiterals.contains("INSERT INTO ") && !noLiterals.contains("UPDATE ");
+    }
+
+    /**
+     * Record the runtime of a query translated by this planner, so that later choices for its shape are
+     * based on how long its translations actually take.
+     *
+     * @param cypherInput Cypher input that was executed.
+     * @param ctx         Context the input was translated with.
+     * @param millis      Time taken to execute the translation on the database.
+     */
+    public synchronized void record(String cypherInput, TranslationContext ctx, double millis) {
+        QueryFingerprint fp = QueryFingerprint.of(cypherInput, inListArraySize);
+        if (!fp.isCacheable()) return;
+        Plan plan = plans.get(fp.getKey());
+        if (plan == null || !plan.costed()) return;
+
+        int v = ctx.getVariant();
+        plan.runs[v]++;
+        plan.millis[v] += millis;
+        if (plan.costs[v] > 0 && plan.costs[v] < Double.MAX_VALUE) {
+            measuredMillis += millis;
+            measuredCost += plan.costs[v];
+        }
+        plan.choose(measuredCost > 0 ? measuredMillis / measuredCost : 0);
+    }
+
+    /**
+     * @param cypherInput Cypher input.
+     * @return The variant chosen for the shape of the input (0 if the shape has not been planned).
+     */
+    public synchronized int getChoice(String cypherInput) {
+        Plan plan = plans.get(QueryFingerprint.of(cypherInput, inListArraySize).getKey());
+        return plan == null ? 0 : plan.choice;
+    }
+
+    /**
+     * Estimated costs and measured runtimes of the variants of one query shape.
+     */
+    private static class Plan {
+        private final double[] costs = new double[TranslationContext.NUM_VARIANTS];
+        private final double[] millis = new double[TranslationContext.NUM_VARIANTS];
+        private final int[] runs = new int[TranslationContext.NUM_VARIANTS];
+        private int choice = 0;
+
+        private boolean costed() {
+            for (double cost : costs) if (cost > 0) return true;
+            return false;
+        }
+
+        /**
+         * Choose the variant with the smallest expected runtime: its mean measured runtime if it has been
+         * run, otherwise its estimated cost (converted to milliseconds if the ratio is known).
+         *
+         * @param millisPerCost Ratio of runtime to estimated cost (0 if no translation has been measured).
+         */
+        private void choose(double millisPerCost) {
+            double best = Double.MAX_VALUE;
+            for (int v = 0; v < costs.length; v++) {
+                if (costs[v] == Double.MAX_VALUE) continue;
+
+                double expected;
+                if (runs[v] > 0) expected = millis[v] / runs[v];
+                else if (millisPerCost > 0) expected = costs[v] * millisPerCost;
+                else expected = costs[v];
+
+                if (expected < best) {
+                    best = expected;
+                    choice = v;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package production;
+
+import translator.SqlTemplate;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of SQL templates, keyed on the fingerprint of the Cypher input they were translated from (see
+ * QueryFingerprint). The least recently used templates are evicted once either the number of templates
+ * or their total weight (in characters) goes above its bound. Hits and misses are counted.
+ * <p>
+ * Building the template of a query with literals takes a second translation, so the cache also keeps the
+ * keys of (a bounded number of) the query shapes seen without a template, to build one only once a shape
+ * is seen again, and never for a shape that cannot be templated.
+ */
+public class TranslationCache {
+    private final int maxEntries;
+    private final long maxWeight;
+    // access ordered, so that iteration starts at the least recently used template.
+    private final LinkedHashMap<String, SqlTemplate> templates = new LinkedHashMap<>(16, 0.75f, true);
+    // keys seen without a template, mapped to true if the query shape cannot be templated (access ordered).
+    private final LinkedHashMap<String, Boolean> seen = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Create a new, empty, cache.
+     *
+     * @param maxEntries Maximum number of templates stored (0 turns off the cache).
+     * @param maxWeight  Maximum total weight of the templates stored.
+     */
+    public TranslationCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0 && maxWeight > 0;
+    }
+
+    /**
+     * Look up the template for a fingerprint, counting a hit or a miss.
+     *
+     * @param key Key of the fingerprint of the Cypher input.
+     * @return The template, or null if there is none.
+     */
+    public synchronized SqlTemplate get(String key) {
+        SqlTemplate template = templates.get(key);
+        if (template == null) misses++;
+        else hits++;
+        return template;
+    }
+
+    /**
+     * Store a template, evicting the least recently used templates if the cache is now too large.
+     *
+     * @param key      Key of the fingerprint of the Cypher input.
+     * @param template Template translated from the Cypher input.
+     */
+    public synchronized void put(String key, SqlTemplate template) {
+        long entryWeight = weightOf(key, template);
+        if (!isEnabled() || entryWeight > maxWeight) return;
+
+        seen.remove(key);
+        SqlTemplate previous = templates.put(key, template);
+        if (previous != null) weight -= weightOf(key, previous);
+        weight += entryWeight;
+
+        Iterator<Map.Entry<String, SqlTemplate>> it = templates.entrySet().iterator();
+        while ((templates.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+            Map.Entry<String, SqlTemplate> eldest = it.next();
+            weight -= weightOf(eldest.getKey(), eldest.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Record that a query shape without a template was translated.
+     *
+     * @param key Key of the fingerprint of the Cypher input.
+     * @return True if the shape was seen before, and so its template should now be built (false if it was
+     * not, or if it cannot be templated).
+     */
+    public synchronized boolean seenBefore(String key) {
+        if (!isEnabled()) return false;
+        Boolean untemplatable = seen.get(key);
+        if (untemplatable != null) return !untemplatable;
+
+        seen.put(key, false);
+        Iterator<String> it = seen.keySet().iterator();
+        while (seen.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+        return false;
+    }
+
+    /**
+     * Record that the translation of a query shape cannot be expressed as a template, so that no template
+     * is built for it again.
+     *
+     * @param key Key of the fingerprint of the Cypher input.
+     */
+    public synchronized void markUntemplatable(String key) {
+        if (seen.containsKey(key)) seen.put(key, true);
+    }
+
+    private static long weightOf(String key, SqlTemplate template) {
+        return key.length() + template.getWeight();
+    }
+
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits: " + hits + ", misses: " + misses + ", evictions: " + evictions + ", templates: " +
+                templates.size() + ", weight: " + weight;
+    }
+}
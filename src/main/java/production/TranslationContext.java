@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package production;
+
+import database.SchemaConstants;
+import translator.ParsedCypher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * State belonging to the translation of a single Cypher input. A new context is created by the Translator
+ * for every query, and is passed down through the conversion and translation classes in place of the
+ * static fields previously used, so that several queries may be translated at the same time.
+ * <p>
+ * The schema metadata (labelProps, allRelTypes, tableStats, tableColumns and schemaParts) is shared between all
+ * contexts created by the same Translator, and is never modified once loaded.
+ */
+public class TranslationContext {
+    // number of alternative translations of a query (see setVariant).
+    public static final int NUM_VARIANTS = 4;
+    // the variant translating the nodes of a pattern from the nodes table rather than from their label tables.
+    private static final int NO_LABEL_TABLES = 1;
+    // the variant evaluating a pattern in the order it is written rather than from its most selective node.
+    private static final int NO_ANCHOR = 2;
+
+    private final C2SProperties props;
+    // for optimisations based on the return clause of Cypher
+    private final Map<String, String> labelProps;
+    // for use in deleting relationships attached to nodes
+    private final List<String> allRelTypes;
+    // number of rows of each table, for estimating the selectivity of the parts of a pattern.
+    private final Map<String, Long> tableStats;
+    // columns of the nodes table and of each label table, for selecting only the properties of a node.
+    private final Map<String, List<String>> tableColumns;
+    // optional parts of the relational schema that exist, for only generating SQL using those that do.
+    private final Set<String> schemaParts;
+
+    // mapping of the node id returned by the first part of a WITH query to the temporary view storing it.
+    private Map<String, String> withMapping = new HashMap<>();
+    // mapping of the node ids returned by each part of a query with multiple WITH keywords (null otherwise).
+    private Map<String, String> mappingMultipleWith = null;
+    // set if the ID needs to be returned from the Postgres database (by default false, as with Neo4j).
+    private boolean needToPrintID = false;
+    // names of the parameters to bind to the placeholders of the generated SQL, in order.
+    private List<String> bindOrder = new ArrayList<>();
+    // the Cypher input parsed once by getDQ, and reused by getTranslation.
+    private ParsedCypher parsedCypher = null;
+    // search used in place of the recursive SQL for shortestPath queries (null to search with SQL).
+    private PathSearch pathSearch = null;
+    // which of the alternative translations of the query to generate (0 for the default translation).
+    private int variant = 0;
+    // set if nodes returned whole are read as their properties rather than every column (see setPruneColumns).
+    private boolean pruneColumns = false;
+    // page of the query to read, seeking past the last row of the previous page (null to read every row).
+    private PageToken page = null;
+
+    TranslationContext(C2SProperties props, Map<String, String> labelProps, List<String> allRelTypes,
+                       Map<String, Long> tableStats, Map<String, List<String>> tableColumns,
+                       Set<String> schemaParts) {
+        this.props = props;
+        this.labelProps = labelProps;
+        this.allRelTypes = allRelTypes;
+        this.tableStats = tableStats;
+        this.tableColumns = tableColumns;
+        this.schemaParts = schemaParts;
+    }
+
+    public C2SProperties getProps() {
+        return props;
+    }
+
+    public Map<String, String> getLabelProps() {
+        return labelProps;
+    }
+
+    public List<String> getAllRelTypes() {
+        return allRelTypes;
+    }
+
+    public Map<String, Long> getTableStats() {
+        return tableStats;
+    }
+
+    public Map<String, List<String>> getTableColumns() {
+        return tableColumns;
+    }
+
+    /**
+     * @return True if the schema has the table table_counts, so that whole tables may be counted from it (and
+     * the translations of CREATE and DELETE must keep it up to date).
+     */
+    public boolean hasTableCounts() {
+        return schemaParts.contains(SchemaConstants.TABLE_COUNTS);
+    }
+
+    /**
+     * @return True if the id is the primary key of the nodes table and of each label table, so that a node may
+     * be grouped by its id alone.
+     */
+    public boolean hasNodePrimaryKeys() {
+        return schemaParts.contains(SchemaConstants.PRIMARY_KEYS);
+    }
+
+    /**
+     * @return True if the rows deleted from the edges table are deleted from the table of their type by a
+     * trigger, so that the translation of DELETE only has to delete them from the edges table.
+     */
+    public boolean hasTypedEdgesTrigger() {
+        return schemaParts.contains(SchemaConstants.TYPED_EDGES_TRIGGER);
+    }
+
+    public Map<String, String> getWithMapping() {
+        return withMapping;
+    }
+
+    public void resetWithMapping() {
+        this.withMapping = new HashMap<>();
+    }
+
+    public Map<String, String> getMappingMultipleWith() {
+        return mappingMultipleWith;
+    }
+
+    public void setMappingMultipleWith(Map<String, String> mappingMultipleWith) {
+        this.mappingMultipleWith = mappingMultipleWith;
+    }
+
+    public boolean needToPrintID() {
+        return needToPrintID;
+    }
+
+    public void setNeedToPrintID(boolean needToPrintID) {
+        this.needToPrintID = needToPrintID;
+    }
+
+    public List<String> getBindOrder() {
+        return bindOrder;
+    }
+
+    public void setBindOrder(List<String> bindOrder) {
+        this.bindOrder = bindOrder;
+    }
+
+    public ParsedCypher getParsedCypher() {
+        return parsedCypher;
+    }
+
+    public void setParsedCypher(ParsedCypher parsedCypher) {
+        this.parsedCypher = parsedCypher;
+    }
+
+    public PathSearch getPathSearch() {
+        return pathSearch;
+    }
+
+    public void setPathSearch(PathSearch pathSearch) {
+        this.pathSearch = pathSearch;
+    }
+
+    public int getVariant() {
+        return variant;
+    }
+
+    /**
+     * Choose one of the alternative translations of the query (all of them return the same results, but
+     * may be planned very differently by the database).
+     *
+     * @param variant Number between 0 (the default translation) and NUM_VARIANTS - 1.
+     */
+    public void setVariant(int variant) {
+        this.variant = variant;
+    }
+
+    public boolean pruneColumns() {
+        return pruneColumns;
+    }
+
+    /**
+     * Select only the properties of the nodes returned whole. This is only set for queries whose results are
+     * output as they are: the translations of the parts of WITH and ITERATE queries are built on by the
+     * rest of the query, and so keep every column.
+     *
+     * @param pruneColumns True to select only the properties of the nodes returned.
+     */
+    public void setPruneColumns(boolean pruneColumns) {
+        this.pruneColumns = pruneColumns;
+    }
+
+    public PageToken getPage() {
+        return page;
+    }
+
+    public void setPage(PageToken page) {
+        this.page = page;
+    }
+
+    /**
+     * @return True if the nodes of a pattern are read from the tables of their labels where possible.
+     */
+    public boolean useLabelTables() {
+        return (variant & NO_LABEL_TABLES) == 0;
+    }
+
+    /**
+     * @return True if a pattern with several relationships is evaluated from its most selective node.
+     */
+    public boolean anchorPatterns() {
+        return (variant & NO_ANCHOR) == 0;
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package production;
+
+import database.SchemaConstants;
+import exceptions.DQInvalidException;
+import intermediate_rep.DecodedQuery;
+import query_translation.sql.conversion_types.*;
+import translator.CypherParameters;
+import translator.CypherTokenizer;
+import translator.ParsedCypher;
+import translator.QueryFingerprint;
+import translator.QueryType;
+import translator.SqlTemplate;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.*;
+
+/**
+ * Reentrant Cypher to SQL translator. The schema metadata is read (and the parser warmed up) once when the
+ * Translator is created, and every translation afterwards works on its own TranslationContext, so a single
+ * Translator may be shared between threads translating different queries at the same time.
+ */
+public class Translator {
+    private final C2SProperties props;
+    private final Map<String, String> labelProps;
+    private final List<String> allRelTypes;
+    // number of rows of each table of the relational schema (empty if not known).
+    private final Map<String, Long> tableStats;
+    // columns of the nodes table and of each label table (empty if not known).
+    private final Map<String, List<String>> tableColumns;
+    // optional parts of the relational schema created by the schema conversion (see SchemaConstants).
+    private final Set<String> schemaParts;
+    // SQL templates of the query shapes translated before.
+    private final TranslationCache cache;
+    // choices between the alternative translations of the query shapes costed before.
+    private final Planner planner;
+
+    /**
+     * Create a new Translator, reading in the schema metadata from the workspace of props.
+     *
+     * @param props C2SProperties object.
+     */
+    public Translator(C2SProperties props) {
+        this.props = props;
+
+        Map<String, String> lp = new HashMap<>();
+        List<String> rels = new ArrayList<>();
+        getLabelMapping(props, lp, rels);
+
+        this.labelProps = Collections.unmodifiableMap(lp);
+        this.allRelTypes = Collections.unmodifiableList(rels);
+        this.tableStats = Collections.unmodifiableMap(getTableStats(props));
+        this.tableColumns = Collections.unmodifiableMap(getTableColumns(props));
+        this.schemaParts = Collections.unmodifiableSet(getSchemaParts(props));
+        this.cache = new TranslationCache(props.getCacheSize(), props.getCacheWeight());
+        this.planner = new Planner(props.getCacheSize(), props.getInListArraySize());
+
+        // so that the first query translated does not pay for the set up of the parser.
+        CypherTokenizer.warmUp();
+    }
+
+    /**
+     * This method performs two important tasks for the translator tool:
+     * - Firstly, the translator tool checks to see if it can optimise any of the queries by storing a mapping
+     * between unique keys, and the label of the node that tke key will only appear under. These mappings are
+     * stored in the labelProps object.
+     * <p>
+     * - Secondly, it reads in all the possible types of relationships
+     * (used for example when deleting nodes from the relational schema).
+     *
+     * @param props       C2SProperties object.
+     * @param labelProps  Map to fill with the unique keys and their labels.
+     * @param allRelTypes List to fill with the relationship types of the dataset.
+     */
+    private static void getLabelMapping(C2SProperties props, Map<String, String> labelProps,
+                                        List<String> allRelTypes) {
+        // open file and read in property keys, removing duplicates as they are of no use.
+        FileInputStream fis;
+        try {
+            fis = new FileInputStream(props.getWspace() + "/meta_labelProps.txt");
+            BufferedReader br = new BufferedReader(new InputStreamReader(fis));
+            String line;
+            String currentLabelType = null;
+
+            // ArrayList to keep track of duplicates.
+            ArrayList<String> dupKeys = new ArrayList<>();
+
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("*")) {
+                    // view meta_labelProps.txt/README for more information.
+                    // Lines starting with a '*' defines the label that the following properties
+                    // in the file belong to.
+                    currentLabelType = line.substring(1, line.length() - 1);
+                } else {
+                    if (labelProps.containsKey(line)) {
+                        dupKeys.add(line);
+                    } else {
+                        labelProps.put(line, currentLabelType);
+                    }
+                }
+            }
+
+            // remove the duplicate keys.
+            for (String s : dupKeys) labelProps.remove(s);
+
+            br.close();
+            fis.close();
+
+            // Section for reading in all the different types of relationships contained within the dataset.
+            fis = new FileInputStream(props.getWspace() + "/meta_rels.txt");
+            br = new BufferedReader(new InputStreamReader(fis));
+            while ((line = br.readLine()) != null) allRelTypes.add(line);
+            br.close();
+            fis.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Read in the number of rows of each table, stored in the workspace during the schema conversion. The
+     * statistics are optional (workspaces converted before they were gathered do not have them), in which
+     * case the translator falls back on default estimates.
+     *
+     * @param props C2SProperties object.
+     * @return Map from the name of each table to its number of rows.
+     */
+    private static Map<String, Long> getTableStats(C2SProperties props) {
+        Map<String, Long> stats = new HashMap<>();
+        File statsFile = new File(props.getWspace() + "/meta_stats.txt");
+        if (!statsFile.exists()) return stats;
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(statsFile)))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] tableAndCount = line.trim().split(" ");
+                if (tableAndCount.length == 2) stats.put(tableAndCount[0], Long.parseLong(tableAndCount[1]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+        return stats;
+    }
+
+    /**
+     * Read in the columns of the nodes table (meta_nodeProps.txt) and of each label table (meta_labelProps.txt),
+     * so that the translations can select the properties of a node rather than every column of its table.
+     *
+     * @param props C2SProperties object.
+     * @return Map from the name of each table to its columns.
+     */
+    private static Map<String, List<String>> getTableColumns(C2SProperties props) {
+        Map<String, List<String>> columns = new HashMap<>();
+        File nodeProps = new File(props.getWspace() + "/meta_nodeProps.txt");
+        File labelProps = new File(props.getWspace() + "/meta_labelProps.txt");
+        if (!nodeProps.exists() || !labelProps.exists()) return columns;
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(nodeProps)))) {
+            List<String> nodeColumns = new ArrayList<>();
+            String line;
+            while ((line = br.readLine()) != null) nodeColumns.add(line);
+            columns.put("nodes", Collections.unmodifiableList(nodeColumns));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(labelProps)))) {
+            List<String> labelColumns = null;
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("*")) {
+                    labelColumns = new ArrayList<>();
+                    columns.put(line.substring(1, line.length() - 1), Collections.unmodifiableList(labelColumns));
+                } else if (labelColumns != null) labelColumns.add(line);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return columns;
+    }
+
+    /**
+     * Read in the optional parts of the relational schema (such as the table table_counts) that the schema
+     * conversion created, stored in the workspace as meta_schema.txt. Workspaces converted before the file was
+     * written have none of them, so the translations relying on them are not used.
+     *
+     * @param props C2SProperties object.
+     * @return Names of the optional parts of the schema that exist (see SchemaConstants).
+     */
+    private static Set<String> getSchemaParts(C2SProperties props) {
+        Set<String> parts = new HashSet<>();
+        File schemaFile = new File(props.getWspace() + "/meta_schema.txt");
+        if (!schemaFile.exists()) return parts;
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(schemaFile)))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!line.trim().isEmpty()) parts.add(line.trim());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return parts;
+    }
+
+    public C2SProperties getProps() {
+        return props;
+    }
+
+    /**
+     * Create a fresh context for translating a single Cypher input.
+     *
+     * @return New TranslationContext sharing the schema metadata of this Translator.
+     */
+    public TranslationContext newContext() {
+        return new TranslationContext(props, labelProps, allRelTypes, tableStats, tableColumns, schemaParts);
+    }
+
+    public TranslationCache getCache() {
+        return cache;
+    }
+
+    public Planner getPlanner() {
+        return planner;
+    }
+
+    /**
+     * Translate Cypher to SQL in one step, using a new TranslationContext.
+     *
+     * @param cypherInput Cypher input to translate.
+     * @return SQL equivalent of Cypher (null if the translation failed).
+     */
+    public String translate(String cypherInput) {
+        return translate(cypherInput, newContext());
+    }
+
+    /**
+     * Translate Cypher to SQL in one step, using the alternative translation of the query estimated to be
+     * the cheapest (see Planner).
+     *
+     * @param cypherInput Cypher input to translate.
+     * @param ctx         Context of the translation.
+     * @param estimator   Estimator of the cost of each translation.
+     * @return SQL equivalent of Cypher (null if the translation failed).
+     */
+    public String translate(String cypherInput, TranslationContext ctx, CostEstimator estimator) {
+        return planner.translate(this, cypherInput, ctx, estimator);
+    }
+
+    /**
+     * Translate Cypher to SQL in one step. If a query of the same shape (differing only in its literals)
+     * has been translated before, the cached SQL template is filled in with the literals of this input,
+     * and the input is not translated at all. The template of a shape with literals is built the second
+     * time the shape is translated (see TranslationCache).
+     *
+     * @param cypherInput Cypher input to translate.
+     * @param ctx         Context of the translation.
+     * @return SQL equivalent of Cypher (null if the translation failed).
+     */
+    public String translate(String cypherInput, TranslationContext ctx) {
+        if (!cache.isEnabled()) return getTranslation(cypherInput, getDQ(cypherInput, ctx), ctx);
+
+        QueryFingerprint fp = QueryFingerprint.of(cypherInput, props.getInListArraySize());
+        if (!fp.isCacheable()) return getTranslation(cypherInput, getDQ(cypherInput, ctx), ctx);
+
+        // each variant of the translation has its own template.
+        String key = fp.getKey() + (ctx.getVariant() == 0 ? "" : "#" + ctx.getVariant());
+        SqlTemplate template = cache.get(key);
+        if (template != null) {
+            ctx.setNeedToPrintID(template.needToPrintID());
+            ctx.setBindOrder(template.fillBindOrder(fp.getLiterals()));
+            return template.fill(fp.getLiterals());
+        }
+
+        String sql = getTranslation(cypherInput, getDQ(cypherInput, ctx), ctx);
+        if (sql == null) return null;
+
+        // translate the query again with sentinel values in place of its literals, to find where the
+        // literals end up in the SQL (only for shapes seen before, so a shape translated once is translated once).
+        String sentinelSQL = sql;
+        List<String> sentinelBindOrder = ctx.getBindOrder();
+        if (fp.hasSlots()) {
+            if (!cache.seenBefore(key)) return sql;
+            TranslationContext sentinelCtx = newContext();
+            sentinelCtx.setVariant(ctx.getVariant());
+            sentinelSQL = getTranslation(fp.getSentinelCypher(), getDQ(fp.getSentinelCypher(), sentinelCtx),
+                    sentinelCtx);
+            sentinelBindOrder = sentinelCtx.getBindOrder();
+        }
+
+        if (sentinelSQL != null) {
+            template = fp.createTemplate(sentinelSQL, sql, ctx.needToPrintID(), sentinelBindOrder,
+                    ctx.getBindOrder());
+        }
+        if (template != null) cache.put(key, template);
+        else cache.markUntemplatable(key);
+        return sql;
+    }
+
+    /**
+     * Translate a page of a read query, ordered by a single node property and limited to the size of the page.
+     * The page starts after the last row of the previous page, which is found with a seek predicate on the
+     * sort key and id of that row (held in the token) rather than by skipping the rows before it. The rows of
+     * the translation end with the columns page_key and page_id, from which the token of the next page is
+     * created (see PageToken.after).
+     * <p>
+     * The translation depends on the token, so is never cached.
+     *
+     * @param cypherInput Cypher input to translate.
+     * @param page        Token of the page to read (PageToken.first for the first page).
+     * @param ctx         Context of the translation.
+     * @return SQL reading the page.
+     * @throws DQInvalidException The query cannot be read a page at a time.
+     */
+    public String translatePage(String cypherInput, PageToken page, TranslationContext ctx)
+            throws DQInvalidException {
+        if (parse(cypherInput, ctx).getQueryType() != QueryType.READ)
+            throw new DQInvalidException("Only MATCH ... RETURN queries can be read a page at a time.");
+
+        ctx.setPage(page);
+        String sql = getTranslation(cypherInput, getDQ(cypherInput, ctx), ctx);
+        if (sql == null) throw new DQInvalidException("Cannot read the query a page at a time: " + cypherInput);
+        return sql;
+    }
+
+    /**
+     * Lex and parse the Cypher input, reusing the result already stored in the context if the context was
+     * used to parse the same input before (so getDQ and getTranslation parse the input only once).
+     *
+     * @param cypherInput Cypher input to translate.
+     * @param ctx         Context of the translation.
+     * @return ParsedCypher object for the Cypher input.
+     */
+    private static ParsedCypher parse(String cypherInput, TranslationContext ctx) {
+        ParsedCypher parsed = ctx.getParsedCypher();
+        if (parsed == null || !parsed.getCypher().equals(cypherInput)) {
+            parsed = CypherTokenizer.parse(cypherInput);
+            ctx.setParsedCypher(parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Generate DecodedQuery object from a Cypher input.
+     *
+     * @param cypherInput Cypher input to translate.
+     * @param ctx         Context of the translation (the same context should be passed to getTranslation).
+     * @return A new DecodedQuery object (may also contain SQL translation in the object in some instances).
+     */
+    public DecodedQuery getDQ(String cypherInput, TranslationContext ctx) {
+        try {
+            DecodedQuery dQ = generateDQ(parse(cypherInput, ctx), ctx);
+            if (dQ != null) dQ.setContext(ctx);
+            return dQ;
+        } catch (DQInvalidException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    private static DecodedQuery generateDQ(ParsedCypher parsed, TranslationContext ctx) throws DQInvalidException {
+        switch (parsed.getQueryType()) {
+            case FOREACH:
+                return new ForEach_Cypher().generateDQ(parsed, ctx);
+            case MULTIPLE_WITH:
+                return new Multiple_With_Cypher().generateDQ(parsed, ctx);
+            case WITH:
+                return new With_Cypher().generateDQ(parsed, ctx);
+            case SHORTEST_PATH:
+                return new SP_Cypher().generateDQ(parsed, ctx);
+            case ITERATE:
+                return new Iterate_Cypher().generateDQ(parsed, ctx);
+            default:
+                ctx.setPruneColumns(true);
+                return AbstractConversion.genDQAndSQL(parsed, ctx);
+        }
+    }
+
+    /**
+     * Translate a DecodedQuery object to SQL (the original Cypher input must also be passed as an argument).
+     *
+     * @param cypherInput Original Cypher input (must be the same input as the one used to generate dQ).
+     * @param dQ          A non-null DecodedQuery object.
+     * @param ctx         Context of the translation (the same context used to generate dQ).
+     * @return SQL equivalent of Cypher
+     */
+    public String getTranslation(String cypherInput, DecodedQuery dQ, TranslationContext ctx) {
+        try {
+            ParsedCypher parsed = parse(cypherInput, ctx);
+            String sql = convert(parsed, dQ, ctx);
+
+            // the parameters are bound to the placeholders of a PreparedStatement when the SQL is executed.
+            ctx.setBindOrder(new ArrayList<>());
+            if (sql == null || (parsed.getParameters().isEmpty() && !CypherParameters.hasArrays(sql))) return sql;
+            return CypherParameters.toPlaceholders(sql, parsed.getParameters(), ctx.getBindOrder());
+        } catch (DQInvalidException ex) {
+            ex.printStackTrace();
+            return null;
+        } catch (NullPointerException nulle) {
+            System.err.println("No valid DecodedQuery object presented.");
+            return null;
+        }
+    }
+
+    /**
+     * Convert the DecodedQuery object to SQL, using the conversion class for the type of the query.
+     */
+    private static String convert(ParsedCypher parsed, DecodedQuery dQ, TranslationContext ctx)
+            throws DQInvalidException {
+        switch (parsed.getQueryType()) {
+            case FOREACH:
+                return new ForEach_Cypher().convertToSQL(dQ, ctx);
+            case MULTIPLE_WITH:
+                return new Multiple_With_Cypher().convertToSQL(dQ, ctx);
+            case WITH:
+                return new With_Cypher().convertQuery(parsed, ctx);
+            case SHORTEST_PATH:
+                return new SP_Cypher().convertToSQL(dQ, ctx);
+            case ITERATE:
+                return new Iterate_Cypher().convertToSQL(dQ, ctx);
+            default:
+                return dQ.getSqlEquiv();
+        }
+    }
+}
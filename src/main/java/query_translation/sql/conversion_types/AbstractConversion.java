@@ -21,13 +21,17 @@ package query_translation.sql.conversion_types;
 
 import exceptions.DQInvalidException;
 import intermediate_rep.DecodedQuery;
-import production.C2SProperties;
+import parsing_lexing.CypherParser;
+import production.TranslationContext;
 import query_translation.sql.utilities_sql.SQLTranslate;
 import query_translation.sql.utilities_sql.UnionSQL;
 import translator.CypherTokenizer;
+import translator.ParsedCypher;
+import translator.QueryType;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * Class to extend if wishing to extend scope of Cypher that can be converted.
@@ -39,72 +43,87 @@ public abstract class AbstractConversion {
      * Convert Cypher queries to SQL
      *
      * @param cypher Original Cypher query to translate.
-     * @param props  properties object.
+     * @param ctx    context of the translation.
      * @return DecodedQuery object containing all the necessary intermediate representation of the Cypher input.
      * @throws DQInvalidException The Cypher could not be translated to a DecodedQuery object.
      */
-    public static DecodedQuery genDQAndSQL(String cypher, C2SProperties props) throws DQInvalidException {
-        // A DecodedQuery object stores the intermediate representation of the Cypher input.
-        // In theory, this same DecodedQuery object could then be translated to different backend implementations.
-        DecodedQuery dQ = new DecodedQuery();
+    public static DecodedQuery genDQAndSQL(String cypher, TranslationContext ctx) throws DQInvalidException {
+        return genDQAndSQL(CypherTokenizer.parse(cypher), ctx);
+    }
 
-        if (cypher.toLowerCase().contains(" union all ")) {
-            String[] queries = cypher.toLowerCase().split(" union all ");
+    /**
+     * Convert parsed Cypher queries to SQL
+     *
+     * @param parsed Cypher query to translate, already parsed.
+     * @param ctx    context of the translation.
+     * @return DecodedQuery object containing all the necessary intermediate representation of the Cypher input.
+     * @throws DQInvalidException The Cypher could not be translated to a DecodedQuery object.
+     */
+    public static DecodedQuery genDQAndSQL(ParsedCypher parsed, TranslationContext ctx) throws DQInvalidException {
+        if (parsed.getQueryType() == QueryType.UNION || parsed.getQueryType() == QueryType.UNION_ALL) {
+            // A DecodedQuery object stores the intermediate representation of the Cypher input.
+            // In theory, this same DecodedQuery object could then be translated to different backend
+            // implementations.
+            DecodedQuery dQ = new DecodedQuery();
+            String unionType = (parsed.getQueryType() == QueryType.UNION_ALL) ? "UNION ALL" : "UNION";
             ArrayList<String> unionSQL = new ArrayList<>();
 
-            for (String s : queries) {
-                DecodedQuery unionDQ = CypherTokenizer.decode(s, false);
-                if (unionDQ == null) throw new DQInvalidException("Failed to translate part of UNION ALL Cypher" +
-                        "input: " + s);
+            // each side of the UNION is decoded from its own part of the parse tree.
+            for (CypherParser.SingleQueryContext part : parsed.getUnionParts()) {
+                DecodedQuery unionDQ = parsed.decode(ctx, Collections.<String>emptyList(),
+                        Collections.singletonList(part));
+                if (unionDQ == null) throw new DQInvalidException("Failed to translate part of " + unionType +
+                        " Cypher input: " + part.getText());
                 dQ.addToUnionParts(unionDQ);
                 try {
-                    unionSQL.add(SQLTranslate.translateRead(unionDQ, props));
+                    unionSQL.add(SQLTranslate.translateRead(unionDQ, ctx));
                 } catch (IOException e) {
                     System.err.println("Error reading from /meta_nodeProps.txt metafile...");
                     return null;
                 }
             }
 
-            dQ.setSqlEquiv(UnionSQL.genUnion(unionSQL, "UNION ALL"));
-        } else if (cypher.toLowerCase().contains(" union ")) {
-            String[] queries = cypher.toLowerCase().split(" union ");
-            ArrayList<String> unionSQL = new ArrayList<>();
+            dQ.setSqlEquiv(UnionSQL.genUnion(unionSQL, unionType));
+            return dQ;
+        }
 
-            for (String s : queries) {
-                DecodedQuery unionDQ = CypherTokenizer.decode(s, false);
-                if (unionDQ == null) throw new DQInvalidException("Failed to translate part of UNION Cypher" +
-                        "input: " + s);
-                dQ.addToUnionParts(unionDQ);
-                try {
-                    unionSQL.add(SQLTranslate.translateRead(unionDQ, props));
-                } catch (IOException e) {
-                    System.err.println("Error reading from /meta_nodeProps.txt metafile...");
-                    return null;
-                }
-            }
+        // the nodes of a CREATE are all inserted as new nodes, so one joining nodes found by a MATCH would
+        // create blank nodes in their place.
+        if (parsed.getQueryType() == QueryType.CREATE && parsed.hasMatch())
+            throw new DQInvalidException("CREATE queries with a MATCH clause cannot currently be translated: " +
+                    parsed.getCypher());
 
-            dQ.setSqlEquiv(UnionSQL.genUnion(unionSQL, "UNION"));
-        } else {
-            dQ = CypherTokenizer.decode(cypher, false);
-            if (dQ == null) throw new DQInvalidException("Failed to convert Cypher input to " +
-                    "an intermediate representation: " + cypher);
+        DecodedQuery dQ = parsed.decode(ctx);
+        if (dQ == null) throw new DQInvalidException("Failed to convert Cypher input to " +
+                "an intermediate representation: " + parsed.getCypher());
+        return genSQL(dQ, ctx);
+    }
 
-            if (dQ.getRc() != null) {
-                // the translation is for a read query.
-                try {
-                    dQ.setSqlEquiv(SQLTranslate.translateRead(dQ, props));
-                } catch (IOException e) {
-                    System.err.println("Error reading from /meta_nodeProps.txt metafile...");
-                    return null;
-                }
+    /**
+     * Translate a DecodedQuery object of a read, delete or insert query to SQL, storing the SQL in the
+     * DecodedQuery object.
+     *
+     * @param dQ  DecodedQuery object to translate.
+     * @param ctx context of the translation.
+     * @return The same DecodedQuery object, now containing its SQL equivalent (null if the translation failed).
+     * @throws DQInvalidException The DecodedQuery object could not be translated.
+     */
+    static DecodedQuery genSQL(DecodedQuery dQ, TranslationContext ctx) throws DQInvalidException {
+        if (dQ.getRc() != null) {
+            // the translation is for a read query.
+            try {
+                dQ.setSqlEquiv(SQLTranslate.translateRead(dQ, ctx));
+            } catch (IOException e) {
+                System.err.println("Error reading from /meta_nodeProps.txt metafile...");
+                return null;
+            }
+        } else {
+            if (dQ.getCypherAdditionalInfo().hasDelete()) {
+                // the translation is a delete query.
+                dQ.setSqlEquiv(SQLTranslate.translateDelete(dQ, ctx));
             } else {
-                if (dQ.getCypherAdditionalInfo().hasDelete()) {
-                    // the translation is a delete query.
-                    dQ.setSqlEquiv(SQLTranslate.translateDelete(dQ));
-                } else {
-                    // the translation is an insert query.
-                    dQ.setSqlEquiv(SQLTranslate.translateInsert(dQ));
-                }
+                // the translation is an insert query.
+                dQ.setSqlEquiv(SQLTranslate.translateInsert(dQ, ctx));
             }
         }
         return dQ;
@@ -114,20 +133,20 @@ public abstract class AbstractConversion {
      * Abstract method for converting a DecodedQuery object to SQL.
      *
      * @param dQ
-     * @param props
+     * @param ctx
      * @return
      * @throws DQInvalidException
      */
-    public abstract String convertToSQL(DecodedQuery dQ, C2SProperties props) throws DQInvalidException;
+    public abstract String convertToSQL(DecodedQuery dQ, TranslationContext ctx) throws DQInvalidException;
 
     /**
      * Abstract method for converting Cypher to a DecodedQuery object.
      *
-     * @param cypher
-     * @param props
+     * @param parsed
+     * @param ctx
      * @return
      * @throws DQInvalidException
      */
-    public abstract DecodedQuery generateDQ(String cypher, C2SProperties props)
+    public abstract DecodedQuery generateDQ(ParsedCypher parsed, TranslationContext ctx)
             throws DQInvalidException;
 }
@@ -22,8 +22,9 @@ package query_translation.sql.conversion_types;
 import exceptions.DQInvalidException;
 import intermediate_rep.CypForEach;
 import intermediate_rep.DecodedQuery;
-import production.C2SProperties;
+import production.TranslationContext;
 import query_translation.sql.utilities_sql.ForEach;
+import translator.ParsedCypher;
 
 /**
  * Class for dealing with FOREACH keyword in Cypher.
@@ -32,17 +33,18 @@ import query_translation.sql.utilities_sql.ForEach;
  */
 public class ForEach_Cypher extends AbstractConversion {
     @Override
-    public String convertToSQL(DecodedQuery dQ, C2SProperties props) {
+    public String convertToSQL(DecodedQuery dQ, TranslationContext ctx) {
         ForEach fe = new ForEach();
-        return fe.translate(new StringBuilder(), dQ, props).toString();
+        return fe.translate(new StringBuilder(), dQ, ctx).toString();
     }
 
     @Override
-    public DecodedQuery generateDQ(String cypher, C2SProperties props) throws DQInvalidException {
-        String changeLine = cypher.toLowerCase().replace("with", "return");
+    public DecodedQuery generateDQ(ParsedCypher parsed, TranslationContext ctx) throws DQInvalidException {
+        // FOREACH is not covered by the grammar, so the input is split up as text.
+        String changeLine = parsed.getCypher().toLowerCase().replace("with", "return");
         String[] feParts = changeLine.toLowerCase().split(" foreach ");
 
-        DecodedQuery dQ = genDQAndSQL(feParts[0].trim() + ";", props);
+        DecodedQuery dQ = genDQAndSQL(feParts[0].trim() + ";", ctx);
 
         CypForEach cypForEach = new CypForEach(feParts[1].trim());
         if (dQ != null) {
@@ -22,8 +22,9 @@ package query_translation.sql.conversion_types;
 import exceptions.DQInvalidException;
 import intermediate_rep.CypIterate;
 import intermediate_rep.DecodedQuery;
-import production.C2SProperties;
+import production.TranslationContext;
 import query_translation.sql.utilities_sql.IterateSQL;
+import translator.ParsedCypher;
 
 /**
  * Class for dealing with the ITERATE keyword. NOTE: this is currently not an accepted keyword
@@ -32,14 +33,15 @@ import query_translation.sql.utilities_sql.IterateSQL;
  */
 public class Iterate_Cypher extends AbstractConversion {
     @Override
-    public String convertToSQL(DecodedQuery dQ, C2SProperties props) throws DQInvalidException {
+    public String convertToSQL(DecodedQuery dQ, TranslationContext ctx) throws DQInvalidException {
         IterateSQL it = new IterateSQL();
-        return it.translate(new StringBuilder(), dQ, props).toString();
+        return it.translate(new StringBuilder(), dQ, ctx).toString();
     }
 
     @Override
-    public DecodedQuery generateDQ(String cypher, C2SProperties props) {
-        CypIterate cypIter = new CypIterate(cypher);
+    public DecodedQuery generateDQ(ParsedCypher parsed, TranslationContext ctx) {
+        // ITERATE is not covered by the grammar, so the input is split up as text.
+        CypIterate cypIter = new CypIterate(parsed.getCypher());
 
         String line = cypIter.getOriginalCypherInput();
         String matchClause = line.substring(8, line.indexOf("LOOP"));
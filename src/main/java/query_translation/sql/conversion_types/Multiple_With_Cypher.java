@@ -21,35 +21,51 @@ package query_translation.sql.conversion_types;
 
 import exceptions.DQInvalidException;
 import intermediate_rep.DecodedQuery;
-import production.C2SProperties;
+import org.antlr.v4.runtime.tree.ParseTree;
+import parsing_lexing.CypherParser;
+import production.TranslationContext;
 import query_translation.sql.utilities_sql.WithSQL;
+import translator.ParsedCypher;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Class for dealing with the WITH keyword in Cypher (in the specific cases of more than one WITH).
  */
 public class Multiple_With_Cypher extends AbstractConversion {
-    public static Map<String, String> mappingMultipleWith;
-
     @Override
-    public String convertToSQL(DecodedQuery dQ, C2SProperties props) throws DQInvalidException {
-        mappingMultipleWith = new HashMap<>();
-
-        int numParts = dQ.getWithParts().size();
+    public String convertToSQL(DecodedQuery dQ, TranslationContext ctx) throws DQInvalidException {
+        Map<String, String> mappingMultipleWith = new HashMap<>();
+        ctx.setMappingMultipleWith(mappingMultipleWith);
+
+        ParsedCypher parsed = dQ.getParsedCypher();
+        CypherParser.MultiPartQueryContext mpq = parsed.getMultiPartQuery();
+        List<List<ParseTree>> withParts = ParsedCypher.getWithParts(mpq);
+        int numParts = withParts.size() + 1;
         StringBuilder multipleWithSQL = new StringBuilder();
 
         for (int i = 0; i < numParts - 1; i++) {
-            String withQuery = dQ.getWithParts().get(numParts - (i + 1)).replace(" with ", " return ");
-            DecodedQuery withPartDQ = genDQAndSQL(withQuery, props);
+            if (mpq.with(i).where() != null)
+                throw new DQInvalidException("WITH ... WHERE cannot currently be translated in queries " +
+                        "with multiple WITH clauses.");
+            DecodedQuery withPartDQ = parsed.decode(ctx, Collections.<String>emptyList(), withParts.get(i));
+            if (withPartDQ == null || genSQL(withPartDQ, ctx) == null)
+                throw new DQInvalidException("Failed to translate part of the WITH Cypher input: " +
+                        parsed.getCypher());
             mappingMultipleWith.put(withPartDQ.getRc().getItems().get(0).getNodeID(),
                     "w" + String.valueOf(alphabet[i]).toUpperCase());
-            multipleWithSQL.append(WithSQL.genTemp(withPartDQ.getSqlEquiv(), i, withPartDQ)).append(" ");
+            if (i > 0) multipleWithSQL.append(", ");
+            multipleWithSQL.append(WithSQL.genView(withPartDQ.getSqlEquiv(), i, withPartDQ, ctx));
         }
 
-        DecodedQuery finalPartDQ = genDQAndSQL(dQ.getWithParts().get(0), props);
+        DecodedQuery finalPartDQ = parsed.decode(ctx, Collections.<String>emptyList(),
+                Collections.singletonList(mpq.singlePartQuery()));
+        if (finalPartDQ == null || genSQL(finalPartDQ, ctx) == null)
+            throw new DQInvalidException("Failed to translate the final part of the WITH Cypher input: " +
+                    parsed.getCypher());
         String finalSQL = finalPartDQ.getSqlEquiv();
 
         // if ORDER BY and/or LIMIT/SKIP have been appended, temporarily remove them, then add back after
@@ -79,29 +95,23 @@ public class Multiple_With_Cypher extends AbstractConversion {
             finalSQL = finalSQL + correctPart + " = w" + letter + ".id";
         } else finalSQL = finalSQL.replace(" nodes n01 ", " nodes n01, w" + letter + " ");
 
-        multipleWithSQL.append(finalSQL).append(tempEnd);
-        if (!multipleWithSQL.toString().endsWith(";")) multipleWithSQL.append(";");
-        mappingMultipleWith = null;
-        return multipleWithSQL.toString();
+        // the views of each part and the final part are executed as a single statement.
+        String sql = WithSQL.chain(multipleWithSQL.toString(), finalSQL + tempEnd);
+        if (!sql.endsWith(";")) sql = sql + ";";
+        ctx.setMappingMultipleWith(null);
+        return sql;
     }
 
     @Override
-    public DecodedQuery generateDQ(String cypher, C2SProperties props) throws DQInvalidException {
-        DecodedQuery dQ = new DecodedQuery();
-
-        ArrayList<String> withParts = new ArrayList<>();
-        String cypherCopy = cypher.toLowerCase();
+    public DecodedQuery generateDQ(ParsedCypher parsed, TranslationContext ctx) throws DQInvalidException {
+        if (parsed.getMultiPartQuery() == null)
+            throw new DQInvalidException("Original Cypher input looks malformed, " +
+                    "or cannot currently be translated, please check.");
 
-        while (!cypherCopy.isEmpty()) {
-            int lastMatchIndex = cypherCopy.lastIndexOf("match");
-            if (lastMatchIndex == -1)
-                throw new DQInvalidException("Original Cypher input looks malformed, " +
-                        "or cannot currently be translated, please check.");
-            withParts.add(cypherCopy.substring(lastMatchIndex, cypherCopy.length() - 1) + ";");
-            cypherCopy = cypherCopy.substring(0, lastMatchIndex);
-        }
-
-        dQ.setWithParts(withParts);
+        // the parts of the query are decoded from the parse tree when converting to SQL, as the
+        // decoding of each part depends on the translation of the parts before it.
+        DecodedQuery dQ = new DecodedQuery();
+        dQ.setParsedCypher(parsed);
         return dQ;
     }
 }
@@ -21,117 +21,161 @@ package query_translation.sql.conversion_types;
 
 import exceptions.DQInvalidException;
 import intermediate_rep.DecodedQuery;
-import production.C2SProperties;
+import org.antlr.v4.runtime.tree.ParseTree;
+import parsing_lexing.CypherParser;
+import production.TranslationContext;
 import query_translation.sql.utilities_sql.WithSQL;
+import translator.ParsedCypher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Class for dealing with the WITH keyword in Cypher.
  */
 public class With_Cypher extends AbstractConversion {
     /**
-     * Method for converting Cypher queries containing the WITH keyword.
+     * Method for converting Cypher queries containing the WITH keyword. The query is split into the part
+     * ending with the WITH clause, and the final part of the query, using its parse tree.
      *
-     * @param cypher Original Cypher input containing the WITH keyword.
+     * @param parsed Original Cypher input containing the WITH keyword, already parsed.
+     * @param ctx    Context of the translation.
      * @return SQL string equivalent of the original Cypher input.
      */
-    public String convertQuery(String cypher, C2SProperties props) {
-        int posOfMatch = cypher.toLowerCase().lastIndexOf("match");
-        int posOfWhere = cypher.toLowerCase().indexOf("where");
-        int posOfOrderBy = cypher.toLowerCase().indexOf("order by");
-
-        // from the tokens in the original Cypher query, decide on the most appropriate method for translation.
+    public String convertQuery(ParsedCypher parsed, TranslationContext ctx) {
+        // from the structure of the original Cypher query, decide on the most appropriate method for translation.
         try {
-            if (posOfMatch != -1 && posOfMatch != 0) return withMatch(cypher, props);
-            if (posOfOrderBy == -1 || (posOfWhere != -1 && (posOfWhere < posOfOrderBy)))
-                return withWhere(cypher, props);
-            else return withOB(cypher, props);
+            CypherParser.MultiPartQueryContext mpq = parsed.getMultiPartQuery();
+            if (mpq == null || mpq.with().size() != 1)
+                throw new DQInvalidException("Original Cypher input looks malformed, " +
+                        "or cannot currently be translated, please check.");
+
+            List<ParseTree> firstPart = ParsedCypher.getWithParts(mpq).get(0);
+            CypherParser.WithContext with = mpq.with(0);
+            CypherParser.SinglePartQueryContext finalPart = mpq.singlePartQuery();
+
+            if (hasReadingClause(finalPart)) return withMatch(parsed, firstPart, with, finalPart, ctx);
+            if (with.where() != null || !hasOrderBy(with, finalPart))
+                return withWhere(parsed, firstPart, with, finalPart, ctx);
+            else return withOB(parsed, firstPart, finalPart, ctx);
         } catch (DQInvalidException ex) {
             ex.printStackTrace();
             return null;
         }
     }
 
+    private static boolean hasReadingClause(CypherParser.SinglePartQueryContext finalPart) {
+        return finalPart.readOnlyEnd() == null || !finalPart.readOnlyEnd().readPart().readingClause().isEmpty();
+    }
+
+    private static boolean hasOrderBy(CypherParser.WithContext with, CypherParser.SinglePartQueryContext finalPart) {
+        return with.returnBody().order() != null || (finalPart.readOnlyEnd() != null &&
+                finalPart.readOnlyEnd().returnX().returnBody().order() != null);
+    }
+
     /**
      * The current method accepts queries of the following type ONLY:
      * MATCH ... WITH ... MATCH ... RETURN ...
      *
-     * @param cypher Original Cypher input.
-     * @param props
+     * @param parsed    Original Cypher input.
+     * @param firstPart The part of the input ending with the WITH clause.
+     * @param with      The WITH clause.
+     * @param finalPart The part of the input after the WITH clause.
+     * @param ctx       Context of the translation.
      * @return SQL equivalent of the Cypher input.
      */
-    private String withMatch(String cypher, C2SProperties props) throws DQInvalidException {
-        String changeLine = cypher.toLowerCase().replace("with", "return");
-        String firstWith = changeLine.toLowerCase()
-                .substring(0, cypher.toLowerCase().lastIndexOf("match") + 1) + ";";
-        DecodedQuery dqFirstWith = genDQAndSQL(firstWith, props);
-
-        String withTemp = null;
-        if (dqFirstWith != null) {
-            withTemp = WithSQL.genTemp(dqFirstWith.getSqlEquiv(), 0, dqFirstWith);
-        }
+    private String withMatch(ParsedCypher parsed, List<ParseTree> firstPart, CypherParser.WithContext with,
+                             CypherParser.SinglePartQueryContext finalPart, TranslationContext ctx)
+            throws DQInvalidException {
+        if (with.where() != null)
+            throw new DQInvalidException("WITH ... WHERE followed by MATCH cannot currently be translated.");
 
-        String secondWith = cypher.toLowerCase().substring(cypher.toLowerCase().lastIndexOf("match"));
-        String sqlSelect = WithSQL.createSelectMatch(secondWith, dqFirstWith, props);
+        DecodedQuery dqFirstWith = decodeAndTranslate(parsed, Collections.<String>emptyList(), firstPart, ctx);
+        String withView = WithSQL.genView(dqFirstWith.getSqlEquiv(), 0, dqFirstWith, ctx);
 
-        return withTemp + " " + sqlSelect;
+        String sqlSelect = WithSQL.createSelectMatch(parsed, finalPart, dqFirstWith, ctx);
+        return WithSQL.chain(withView, sqlSelect);
     }
 
     /**
      * The current method accepts queries of the following type ONLY:
      * MATCH ... WITH ... ORDER BY ... RETURN ...
      *
-     * @param cypher Original Cypher input.
-     * @param props
+     * @param parsed    Original Cypher input.
+     * @param firstPart The part of the input ending with the WITH clause.
+     * @param finalPart The part of the input after the WITH clause.
+     * @param ctx       Context of the translation.
      * @return SQL equivalent of the Cypher input.
      */
-    private String withOB(String cypher, C2SProperties props) throws DQInvalidException {
-        int posOfReturn = cypher.toLowerCase().indexOf("return");
-        String firstWith = cypher.toLowerCase().replace("with", "return");
-        firstWith = firstWith.substring(0, posOfReturn + 1) + ";";
-        DecodedQuery dQ = genDQAndSQL(firstWith, props);
-
-        String withTemp = null;
-        if (dQ != null) {
-            withTemp = WithSQL.genTemp(dQ.getSqlEquiv(), 0, dQ);
-        }
+    private String withOB(ParsedCypher parsed, List<ParseTree> firstPart,
+                          CypherParser.SinglePartQueryContext finalPart, TranslationContext ctx)
+            throws DQInvalidException {
+        DecodedQuery dQ = decodeAndTranslate(parsed, Collections.<String>emptyList(), firstPart, ctx);
+        String withView = WithSQL.genView(dQ.getSqlEquiv(), 0, dQ, ctx);
 
+        // the final part is decoded as if it matched the node returned by the first part.
         String indexName = dQ.getMc().getNodes().get(0).getId();
-        String finalPart = "match (" + indexName + ") " +
-                cypher.toLowerCase().substring(posOfReturn, cypher.length());
-        DecodedQuery decQFinal = genDQAndSQL(finalPart, props);
+        DecodedQuery decQFinal = parsed.decode(ctx, Arrays.asList("match", "(", indexName, ")"),
+                Collections.singletonList(finalPart));
+        if (decQFinal == null) throw new DQInvalidException("Failed to convert the final part of the Cypher " +
+                "input to an intermediate representation: " + parsed.getCypher());
+
         String sqlSelect = WithSQL.createSelectOB(decQFinal);
-        return withTemp + " " + sqlSelect;
+        return WithSQL.chain(withView, sqlSelect);
     }
 
     /**
      * The current method accepts queries of the following type ONLY:
      * MATCH ... WHERE ... WITH ... MATCH ... WHERE ... RETURN ...
      *
-     * @param cypher Original Cypher input.
-     * @param props
+     * @param parsed    Original Cypher input.
+     * @param firstPart The part of the input ending with the WITH clause.
+     * @param with      The WITH clause.
+     * @param finalPart The part of the input after the WITH clause.
+     * @param ctx       Context of the translation.
      * @return SQL equivalent of the Cypher input.
      */
-    private String withWhere(String cypher, C2SProperties props) throws DQInvalidException {
-        String changeLine = cypher.toLowerCase().replace("with", "return");
-        String[] withParts = changeLine.toLowerCase().split(" where ");
-        DecodedQuery dQ = genDQAndSQL(withParts[0] + ";", props);
-
-        String withTemp = null;
-        if (dQ != null) {
-            withTemp = WithSQL.genTemp(dQ.getSqlEquiv(), 0, dQ);
-        }
+    private String withWhere(ParsedCypher parsed, List<ParseTree> firstPart, CypherParser.WithContext with,
+                             CypherParser.SinglePartQueryContext finalPart, TranslationContext ctx)
+            throws DQInvalidException {
+        // the WHERE of the WITH clause filters the results of the first part, so is left out of it.
+        DecodedQuery dQ = decodeAndTranslate(parsed, Collections.<String>emptyList(), firstPart, ctx, with.where());
+        String withView = WithSQL.genView(dQ.getSqlEquiv(), 0, dQ, ctx);
+
+        List<ParseTree> selectPart = new ArrayList<>();
+        if (with.where() != null) selectPart.add(with.where().expression());
+        selectPart.add(finalPart);
+
+        String sqlSelect = WithSQL.createSelectWhere(parsed.getTokenList(selectPart), dQ);
+        return WithSQL.chain(withView, sqlSelect);
+    }
 
-        String sqlSelect = WithSQL.createSelectWhere(withParts[1].trim(), dQ);
-        return withTemp + " " + sqlSelect;
+    /**
+     * Decode part of the parsed Cypher input, and translate it to SQL.
+     */
+    private static DecodedQuery decodeAndTranslate(ParsedCypher parsed, List<String> prefix, List<ParseTree> part,
+                                                   TranslationContext ctx, ParseTree... excluded)
+            throws DQInvalidException {
+        DecodedQuery dQ = parsed.decode(ctx, prefix, part, excluded);
+        if (dQ == null || genSQL(dQ, ctx) == null)
+            throw new DQInvalidException("Failed to translate part of the WITH Cypher input: " +
+                    parsed.getCypher());
+        return dQ;
     }
 
     @Override
-    public String convertToSQL(DecodedQuery dQ, C2SProperties props) {
+    public String convertToSQL(DecodedQuery dQ, TranslationContext ctx) {
         return null;
     }
 
     @Override
-    public DecodedQuery generateDQ(String cypher, C2SProperties props) {
-        return null;
+    public DecodedQuery generateDQ(ParsedCypher parsed, TranslationContext ctx) {
+        // the parts of the query are decoded from the parse tree when converting to SQL (see convertQuery), so
+        // the object only carries the parsed input and the context to translate it in.
+        DecodedQuery dQ = new DecodedQuery();
+        dQ.setParsedCypher(parsed);
+        return dQ;
     }
 }
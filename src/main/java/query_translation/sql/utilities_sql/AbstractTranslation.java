@@ -21,7 +21,7 @@ package query_translation.sql.utilities_sql;
 
 import exceptions.DQInvalidException;
 import intermediate_rep.DecodedQuery;
-import production.C2SProperties;
+import production.TranslationContext;
 
 /**
  * For classes that take a DecodedQuery object and convert to SQL, they should extend this class. Included
@@ -31,7 +31,8 @@ import production.C2SProperties;
 abstract class AbstractTranslation {
     static final char[] alphabet = "abcdefghijklmnopqrstuvwxyz".toCharArray();
     static char[] extendID = "123456789".toCharArray();
-    static boolean usesOptimalTable = false;
+    // set by a translation if it reads from a label specific table rather than the nodes table.
+    boolean usesOptimalTable = false;
 
-    public abstract StringBuilder translate(StringBuilder sql, DecodedQuery decodedQuery, C2SProperties props) throws DQInvalidException;
+    public abstract StringBuilder translate(StringBuilder sql, DecodedQuery decodedQuery, TranslationContext ctx) throws DQInvalidException;
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query_translation.sql.utilities_sql;
+
+import intermediate_rep.*;
+import production.TranslationContext;
+
+import java.util.Map;
+
+/**
+ * Class for translating Cypher counting the neighbours of a node, such as
+ * MATCH (a:Global)--{@literal >}(b) RETURN count(b). The number of matches is the sum of the degrees of the
+ * nodes matching the anchor (a), which is read from the length of the arrays of the adjacency lists
+ * (adjList_from and adjList_to) rather than by joining the edges to the nodes on both sides, so the query
+ * runs in time proportional to the number of anchors rather than the number of edges.
+ */
+class DegreeCount extends AbstractTranslation {
+    /**
+     * The rewrite only applies to a single (fixed length, untyped) relationship with no predicates, where
+     * the node at one end has no labels or predicates (so every edge of the anchor matches), and where the
+     * query returns nothing but a count of one of the parts of the pattern.
+     *
+     * @param decodedQuery DecodedQuery object of the Cypher input.
+     * @param ctx          Context of the translation.
+     * @return True if the query can be answered from the degrees of the anchor nodes.
+     */
+    static boolean matches(DecodedQuery decodedQuery, TranslationContext ctx) {
+        MatchClause matchC = decodedQuery.getMc();
+        ReturnClause returnC = decodedQuery.getRc();
+        if (matchC.getRels().size() != 1 || matchC.isVarRel() || matchC.getNodes().size() != 2) return false;
+        if (!ctx.getWithMapping().isEmpty() || ctx.getMappingMultipleWith() != null) return false;
+        if (decodedQuery.getOc() != null || decodedQuery.getCypherAdditionalInfo().hasDistinct()) return false;
+
+        CypRel cR = matchC.getRels().get(0);
+        if (cR.getType() != null || cR.hasConditions() || cR.getDirection().equals("none")) return false;
+
+        CypNode left = matchC.getNodes().get(0);
+        CypNode right = matchC.getNodes().get(1);
+        // (a)--{@literal >}(a) only matches the loops of a.
+        if (left.getId() != null && left.getId().equals(right.getId())) return false;
+        if (!isUnconstrained(left) && !isUnconstrained(right)) return false;
+        if (comparesNodes(left) || comparesNodes(right)) return false;
+
+        if (returnC.getItems().size() != 1) return false;
+        CypReturn item = returnC.getItems().get(0);
+        if (item.getCount() != 1 || item.getField() != null || item.getCaseString() != null || item.hasAggFunc())
+            return false;
+
+        // count(a), count(r) and count(b) are all the number of matches of the pattern.
+        String id = item.getNodeID();
+        return id != null && (id.equals(left.getId()) || id.equals(right.getId()) || id.equals(cR.getId()));
+    }
+
+    /**
+     * @param cN Node of the pattern.
+     * @return True if every node matches cN.
+     */
+    private static boolean isUnconstrained(CypNode cN) {
+        return cN.getType() == null && !cN.hasConditions();
+    }
+
+    /**
+     * @param cN Node of the pattern.
+     * @return True if a predicate of the node compares it to another node.
+     */
+    private static boolean comparesNodes(CypNode cN) {
+        for (CypWhere cW : cN.getConditions()) {
+            if (cW.getValueType() == CypWhere.ValueType.PROPERTY || cW.getValueType() == CypWhere.ValueType.NODE_ID)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public StringBuilder translate(StringBuilder sql, DecodedQuery decodedQuery, TranslationContext ctx) {
+        MatchClause matchC = decodedQuery.getMc();
+        CypRel cR = matchC.getRels().get(0);
+        CypNode left = matchC.getNodes().get(0);
+        CypNode right = matchC.getNodes().get(1);
+
+        // the anchor is the constrained end of the pattern (the left node if neither end is).
+        boolean anchorLeft = isUnconstrained(right);
+        CypNode anchor = anchorLeft ? left : right;
+
+        // adjList_from holds the edges leaving each node, adjList_to the edges arriving at each node.
+        boolean outgoing = anchorLeft == cR.getDirection().equals("right");
+        String adjList = outgoing ? "adjList_from" : "adjList_to";
+
+        CypReturn item = decodedQuery.getRc().getItems().get(0);
+        Map<String, String> alias = decodedQuery.getCypherAdditionalInfo().getAliasMap();
+
+        // sum is NULL rather than 0 when no anchor has any edges.
+        sql.append("SELECT coalesce(sum(array_length(adj.rightnode, 1)), 0)")
+                .append(TranslateUtils.useAlias("count(" + item.getNodeID() + ")", item.getField(), alias));
+
+        String table = ctx.useLabelTables() ? TranslateUtils.getLabelType(anchor.getType(), ctx) : "nodes";
+        if (!table.equals("nodes")) usesOptimalTable = true;
+        sql.append(" FROM ").append(table).append(" n01 INNER JOIN ").append(adjList)
+                .append(" adj ON adj.leftnode = n01.id");
+
+        boolean includesWhere = false;
+        if (anchor.hasConditions()) {
+            sql.append(" WHERE ");
+            includesWhere = true;
+            sql = TranslateUtils.getWholeWhereClause(sql, anchor, "n01", ctx);
+            if (sql.toString().endsWith(" and ")) sql.setLength(sql.length() - 5);
+            else if (sql.toString().endsWith(" or ")) sql.setLength(sql.length() - 4);
+        }
+
+        if (anchor.getType() != null && table.equals("nodes")) {
+            sql.append(includesWhere ? " AND " : " WHERE ");
+            sql.append("n01.label LIKE ").append(TranslateUtils.genLabelLike(anchor, "n01"));
+        }
+        return sql;
+    }
+}
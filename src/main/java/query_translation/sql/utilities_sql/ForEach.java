@@ -21,21 +21,25 @@ package query_translation.sql.utilities_sql;
 
 import intermediate_rep.CypForEach;
 import intermediate_rep.DecodedQuery;
-import production.C2SProperties;
+import production.TranslationContext;
 
 /**
  * Method for translating Cypher with FOREACH into SQL.
  */
 public class ForEach extends AbstractTranslation {
     @Override
-    public StringBuilder translate(StringBuilder sql, DecodedQuery decodedQuery, C2SProperties props) {
+    public StringBuilder translate(StringBuilder sql, DecodedQuery decodedQuery, TranslationContext ctx) {
         String oldSelect = decodedQuery.getSqlEquiv();
         CypForEach cfe = decodedQuery.getForEachC();
 
         int posOfSelect = oldSelect.lastIndexOf("SELECT");
         int posOfFrom = oldSelect.lastIndexOf("FROM");
+        String matched = oldSelect.substring(posOfFrom, oldSelect.length()).trim();
+        if (matched.endsWith(";")) matched = matched.substring(0, matched.length() - 1).trim();
 
-        String newSelect = "doForEachFunc(array_agg(n01.id), '" +
+        // the ids are collected before being passed to the function, so that any LIMIT applies to the
+        // nodes matched rather than to the single row of the aggregate.
+        String newSelect = "doForEachFunc(ARRAY(SELECT n01.id " + matched + "), '" +
                 cfe.getUpdateMap().keySet().iterator().next() +
                 "', '" +
                 cfe.getUpdateMap().values().iterator().next() +
@@ -43,8 +47,7 @@ public class ForEach extends AbstractTranslation {
 
         sql.append(oldSelect.substring(0, posOfSelect + 7))
                 .append(newSelect)
-                .append(" ")
-                .append(oldSelect.substring(posOfFrom, oldSelect.length()));
+                .append(";");
         return sql;
     }
 }
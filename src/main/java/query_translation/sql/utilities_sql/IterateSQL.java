@@ -19,18 +19,21 @@
 
 package query_translation.sql.utilities_sql;
 
-import com.google.gson.JsonObject;
 import exceptions.DQInvalidException;
 import intermediate_rep.CypIterate;
 import intermediate_rep.CypNode;
+import intermediate_rep.CypWhere;
 import intermediate_rep.DecodedQuery;
-import production.C2SProperties;
+import production.TranslationContext;
 import query_translation.sql.conversion_types.AbstractConversion;
 
 /**
  * Method for translating Cypher with FOREACH into SQL.
  */
 public class IterateSQL extends AbstractTranslation {
+    // prefix of the name of the function performing one step of the loop.
+    private static final String LOOP_WORK = "loop_work_";
+
     private static int calculatePos(String loopIndexFrom, DecodedQuery loopDQ) {
         for (CypNode cN : loopDQ.getMc().getNodes()) {
             if (cN.getId().equals(loopIndexFrom)) return cN.getPosInClause();
@@ -39,7 +42,8 @@ public class IterateSQL extends AbstractTranslation {
     }
 
     @Override
-    public StringBuilder translate(StringBuilder sql, DecodedQuery dQ, C2SProperties props) throws DQInvalidException {
+    public StringBuilder translate(StringBuilder sql, DecodedQuery dQ, TranslationContext ctx)
+            throws DQInvalidException {
         // get correct loop query
         CypIterate ci = dQ.getIterate();
         String firstStep = ci.getFirstQuery();
@@ -49,34 +53,33 @@ public class IterateSQL extends AbstractTranslation {
 
         // generate the traditional translation to SQL for the loop query (store in string as used
         // multiple times)
-        DecodedQuery loopDQ = AbstractConversion.genDQAndSQL(ci.getFirstQuery(), props);
+        DecodedQuery loopDQ = AbstractConversion.genDQAndSQL(ci.getFirstQuery(), ctx);
         String loopSQL = loopDQ.getSqlEquiv();
 
-        String returnSQL = AbstractConversion.genDQAndSQL(ci.getReturnStatement(), props).getSqlEquiv();
+        String returnSQL = AbstractConversion.genDQAndSQL(ci.getReturnStatement(), ctx).getSqlEquiv();
         returnSQL = returnSQL.substring(0, returnSQL.length() - 1);
 
         // need to modify loopSQL for the main SQL statement.
         String[] mainParts = loopSQL.split("SELECT n01\\.\\*");
         String mainInitStmt = mainParts[0].trim() + ", firstStep AS (SELECT (array_agg(n01.id)) AS list_ids ";
         mainInitStmt = mainInitStmt + mainParts[1].substring(0, mainParts[1].length() - 1) + "),  ";
-        mainInitStmt = mainInitStmt + "collectStep AS (SELECT unnest((cypher_iterate(firstStep.list_ids))) " +
-                "AS zz from firstStep) ";
-        mainInitStmt = mainInitStmt + returnSQL + " INNER JOIN collectStep c ON n01.id = c.zz;";
 
         // create the loop_work function with this string
         String loopWorkStr;
 
-        loopDQ = AbstractConversion.genDQAndSQL(ci.getLoopQuery(), props);
+        loopDQ = AbstractConversion.genDQAndSQL(ci.getLoopQuery(), ctx);
         int posLoopFrom = calculatePos(ci.getLoopIndexFrom(), loopDQ);
-        JsonObject obj = loopDQ.getMc().getNodes().get(posLoopFrom - 1).getProps();
-        if (obj == null) {
-            obj = new JsonObject();
-        }
-        obj.addProperty("id", "ANY($1)");
-        loopDQ.getMc().getNodes().get(posLoopFrom - 1).setProps(obj);
+        // the loop function is given the ids of the nodes to loop from, in place of any condition on the id.
+        CypNode loopFrom = loopDQ.getMc().getNodes().get(posLoopFrom - 1);
+        loopFrom.getConditions().removeIf(cW -> "id".equals(cW.getField()));
+        CypWhere loopIds = new CypWhere(0);
+        loopIds.setPredicate("id", CypWhere.Op.EQ);
+        loopIds.setValue("ANY($1)", CypWhere.ValueType.SQL, null, null);
+        if (!loopFrom.getConditions().isEmpty()) loopIds.setBoolOp("and");
+        loopFrom.getConditions().add(0, loopIds);
 
         try {
-            loopDQ.setSqlEquiv(SQLTranslate.translateRead(loopDQ, props));
+            loopDQ.setSqlEquiv(SQLTranslate.translateRead(loopDQ, ctx));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -86,8 +89,15 @@ public class IterateSQL extends AbstractTranslation {
         loopWorkStr += " SELECT array_agg(n01.id)";
         loopWorkStr += mainParts[1].substring(0, mainParts[1].length() - 1);
 
-        String functionLoop = "CREATE OR REPLACE FUNCTION loop_work(int[]) RETURNS int[] AS $$ " + loopWorkStr +
-                " $$ LANGUAGE SQL;";
+        // the loop function is named after its body, so queries of the same shape share the same function
+        // (and it is only created once on the database).
+        String loopWorkName = LOOP_WORK + Integer.toHexString(loopWorkStr.hashCode());
+        String functionLoop = "CREATE OR REPLACE FUNCTION " + loopWorkName + "(int[]) RETURNS int[] AS $$ " +
+                loopWorkStr + " $$ LANGUAGE SQL STABLE;";
+
+        mainInitStmt = mainInitStmt + "collectStep AS (SELECT unnest(cypher_iterate(firstStep.list_ids, '" +
+                loopWorkName + "')) AS zz from firstStep) ";
+        mainInitStmt = mainInitStmt + returnSQL + " INNER JOIN collectStep c ON n01.id = c.zz;";
 
         ci.setSQL(functionLoop + " " + mainInitStmt);
 
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query_translation.sql.utilities_sql;
+
+import intermediate_rep.CypNode;
+import intermediate_rep.CypRel;
+import intermediate_rep.CypWhere;
+import intermediate_rep.MatchClause;
+import production.TranslationContext;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses the node a pattern with multiple relationships is evaluated from (the anchor). The number of rows
+ * matching each node is estimated from the size of its table (see meta_stats.txt) and the selectivity of its
+ * predicates, and the pattern is expanded outwards from the anchor for which the estimated number of rows
+ * produced by all of the hops is smallest.
+ */
+class JoinOrder {
+    // number of rows assumed for the nodes table when the workspace has no statistics.
+    private static final double DEFAULT_ROWS = 1000.0;
+    // fraction of the nodes assumed to carry a label stored in the nodes table itself.
+    private static final double LABEL_SEL = 0.1;
+    // selectivities used by Postgres itself for predicates it has no statistics for.
+    private static final double EQ_SEL = 0.005;
+    private static final double INEQ_SEL = 1.0 / 3.0;
+    private static final double NULL_SEL = 0.5;
+    private static final double MATCH_SEL = 0.005;
+
+    /**
+     * Find the anchor of the pattern.
+     *
+     * @param matchC Match Clause of the original Cypher query.
+     * @param ctx    Context of the translation.
+     * @return Position of the anchor in the list of nodes of the pattern (0 for the leftmost node, which is
+     * also chosen whenever no other node is estimated to be cheaper).
+     */
+    static int anchor(MatchClause matchC, TranslationContext ctx) {
+        List<CypNode> nodes = matchC.getNodes();
+        List<CypRel> rels = matchC.getRels();
+        Map<String, Long> stats = ctx.getTableStats();
+
+        double total = stats.containsKey("nodes") ? Math.max(1, stats.get("nodes")) : DEFAULT_ROWS;
+
+        double[] rows = new double[rels.size() + 1];
+        for (int i = 0; i <= rels.size(); i++) rows[i] = estimateRows(nodes.get(i), total, ctx);
+
+        double[] degree = new double[rels.size()];
+        for (int i = 0; i < rels.size(); i++) degree[i] = estimateDegree(rels.get(i), total, stats);
+
+        int anchor = 0;
+        double cheapest = Double.MAX_VALUE;
+        for (int k = 0; k <= rels.size(); k++) {
+            // rows produced by the hops to the right of the anchor, and then by those to its left.
+            double cost = rows[k];
+            double card = rows[k];
+            for (int i = k; i < rels.size(); i++) {
+                card *= degree[i] * rows[i + 1] / total;
+                cost += card;
+            }
+            card = rows[k];
+            for (int i = k - 1; i >= 0; i--) {
+                card *= degree[i] * rows[i] / total;
+                cost += card;
+            }
+
+            if (cost < cheapest) {
+                cheapest = cost;
+                anchor = k;
+            }
+        }
+        return anchor;
+    }
+
+    /**
+     * @param cN    Node of the pattern.
+     * @param total Number of rows of the nodes table.
+     * @param ctx   Context of the translation.
+     * @return Estimated number of rows matching the labels and predicates of the node.
+     */
+    private static double estimateRows(CypNode cN, double total, TranslationContext ctx) {
+        double rows = total;
+        if (cN.getType() != null) {
+            String table = TranslateUtils.getLabelType(cN.getType(), ctx);
+            Long count = ctx.getTableStats().get(table);
+            rows = (!table.equals("nodes") && count != null) ? count : total * LABEL_SEL;
+        }
+
+        if (cN.getProps() != null) rows *= Math.pow(EQ_SEL, cN.getProps().size());
+
+        List<CypWhere> conditions = cN.getConditions();
+        boolean anyOr = false;
+        for (int i = 0; i < conditions.size() - 1; i++)
+            if ("or".equalsIgnoreCase(conditions.get(i).getBoolOp())) anyOr = true;
+
+        // predicates joined by OR only ever widen the match, so take the sum of their selectivities.
+        double sel = anyOr ? 0 : 1;
+        for (CypWhere cW : conditions) {
+            double s = selectivity(cW, total);
+            sel = anyOr ? sel + s : sel * s;
+        }
+        return Math.max(1, rows * Math.min(1, sel));
+    }
+
+    /**
+     * @param cW    Predicate on a node.
+     * @param total Number of rows of the nodes table.
+     * @return Estimated fraction of the nodes satisfying the predicate.
+     */
+    private static double selectivity(CypWhere cW, double total) {
+        String value = cW.getValue();
+        boolean literal = cW.getValueType() == CypWhere.ValueType.LITERAL;
+
+        // the ids of the nodes are allocated from a sequence, so are (close to) 1 .. total.
+        if (cW.getField().equals("id") && literal) {
+            try {
+                double id = Double.parseDouble(value.replace("'", "").trim());
+                switch (cW.getOp()) {
+                    case EQ:
+                        return 1 / total;
+                    case LT:
+                    case LE:
+                        return Math.max(1 / total, Math.min(1, id / total));
+                    case GT:
+                    case GE:
+                        return Math.max(1 / total, Math.min(1, 1 - id / total));
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException ignored) {
+                // not a number, so fall back on the estimates below.
+            }
+        }
+
+        int listSize = 1;
+        if (cW.getValueType() == CypWhere.ValueType.LIST) listSize = value.split(",").length;
+
+        switch (cW.getOp()) {
+            case EQ:
+            case ANY_EQ:
+                return cW.getField().equals("id") ? 1 / total : EQ_SEL;
+            case IN:
+            case ANY_IN:
+                return Math.min(1, listSize * (cW.getField().equals("id") ? 1 / total : EQ_SEL));
+            case LT:
+            case GT:
+            case LE:
+            case GE:
+                return INEQ_SEL;
+            case IS_NULL:
+            case IS_NOT_NULL:
+                return NULL_SEL;
+            case STARTS_WITH:
+            case ENDS_WITH:
+            case CONTAINS:
+            case MATCHES:
+                return MATCH_SEL;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * @param cR    Relationship of the pattern.
+     * @param total Number of rows of the nodes table.
+     * @param stats Number of rows of each table.
+     * @return Estimated number of relationships of the hop per node it starts from.
+     */
+    private static double estimateDegree(CypRel cR, double total, Map<String, Long> stats) {
+        String table = (cR.getType() == null) ? "edges" : "e$" + cR.getType();
+        Long count = stats.get(table);
+        if (count == null) count = stats.get("edges");
+
+        double degree = (count == null) ? 1 : count / total;
+        if (cR.getDirection().equals("none")) degree *= 2;
+        if (cR.hasConditions()) degree *= EQ_SEL;
+        return degree;
+    }
+}
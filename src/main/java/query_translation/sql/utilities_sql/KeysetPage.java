@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query_translation.sql.utilities_sql;
+
+import exceptions.DQInvalidException;
+import intermediate_rep.*;
+import production.PageToken;
+import production.TranslationContext;
+import translator.CypherWalker;
+
+/**
+ * Reads a page of a query by seeking past the last row of the previous page, rather than skipping every row
+ * before it with OFFSET. The rows are ordered by the sort key of the query and then by the id of the node it
+ * belongs to, so that (key, id) is unique, and the page after a row is found with the predicate
+ * (key, id) {@literal >} (last key, last id), which can be answered from an index on (key, id).
+ * <p>
+ * The sort key and id of every row are returned as the columns page_key and page_id, from which the token of
+ * the next page is created (see PageToken).
+ */
+class KeysetPage {
+    /**
+     * Add the columns, seek predicate and ORDER BY clause of a page to the translation of a read query.
+     * <p>
+     * Only queries ordered on a single property of a node can be read a page at a time, and every row must
+     * belong to a different node: either the pattern is a single node, or the query returns DISTINCT nodes.
+     *
+     * @param sql          Translation of the query, up to (and including) its WHERE clause.
+     * @param decodedQuery DecodedQuery object of the Cypher input.
+     * @param ctx          Context of the translation (holding the token of the page to read).
+     * @return Translation of the query with the seek predicate and ORDER BY clause.
+     * @throws DQInvalidException The query cannot be read a page at a time.
+     */
+    static StringBuilder apply(StringBuilder sql, DecodedQuery decodedQuery, TranslationContext ctx)
+            throws DQInvalidException {
+        String alias = orderedAlias(decodedQuery, ctx);
+        CypOrder order = decodedQuery.getOc().getItems().get(0);
+        String key = alias + "." + order.getField();
+        String id = alias + ".id";
+        boolean desc = order.getAscOrDesc().equalsIgnoreCase("desc");
+
+        int select = indexAtTopLevel(sql.toString(), "SELECT ", 0);
+        int from = (select == -1) ? -1 : indexAtTopLevel(sql.toString(), " FROM ", select);
+        if (from == -1) throw new DQInvalidException("Cannot read the query a page at a time.");
+        sql.insert(from, ", " + key + " AS " + PageToken.KEY_COLUMN + ", " + id + " AS " + PageToken.ID_COLUMN);
+
+        PageToken page = ctx.getPage();
+        if (!page.isFirst()) {
+            String seek = seekPredicate(key, id, page, desc);
+            int where = indexAtTopLevel(sql.toString(), " WHERE ", from);
+            if (where == -1) {
+                sql.append(" WHERE ").append(seek);
+            } else {
+                // the existing conditions are bracketed, as they may be joined by OR.
+                sql.insert(where + " WHERE ".length(), "(");
+                sql.append(") AND ").append(seek);
+            }
+        }
+
+        String dir = desc ? " desc" : " asc";
+        sql.append(" ORDER BY ").append(PageToken.KEY_COLUMN).append(dir).append(", ").append(PageToken.ID_COLUMN).append(dir);
+        return sql;
+    }
+
+    /**
+     * Check the query can be read a page at a time, and find the alias of the node it is ordered by (using
+     * the same naming as the SELECT clause of the translation).
+     */
+    private static String orderedAlias(DecodedQuery decodedQuery, TranslationContext ctx)
+            throws DQInvalidException {
+        OrderClause orderC = decodedQuery.getOc();
+        if (orderC == null || orderC.getItems().size() != 1)
+            throw new DQInvalidException("Reading a page requires the query to be ordered by a single property.");
+        if (decodedQuery.getLimitAmount() == -1)
+            throw new DQInvalidException("Reading a page requires the query to have a LIMIT (the page size).");
+
+        CypherWalker info = decodedQuery.getCypherAdditionalInfo();
+        if (info.hasCount() || info.hasAgg() || !ctx.getWithMapping().isEmpty()
+                || ctx.getMappingMultipleWith() != null)
+            throw new DQInvalidException("Queries with counts or aggregates cannot be read a page at a time.");
+
+        CypOrder order = orderC.getItems().get(0);
+        if (order.getID() == null || order.getField() == null || order.getField().startsWith("count"))
+            throw new DQInvalidException("Reading a page requires the query to be ordered by a node property.");
+
+        // each row must belong to a different node, so that (key, id) tells the rows apart.
+        ReturnClause rc = decodedQuery.getRc();
+        if (info.hasDistinct()) {
+            CypReturn cR = rc.getItems().get(0);
+            if (rc.getItems().size() != 1 || !cR.getType().equals("node") || cR.getField() != null
+                    || !order.getID().equals(cR.getNodeID()))
+                throw new DQInvalidException("Reading a page of DISTINCT results requires the query to return " +
+                        "only the node it is ordered by.");
+        } else if (!decodedQuery.getMc().getRels().isEmpty()) {
+            throw new DQInvalidException("Reading a page of a pattern with relationships requires the query to " +
+                    "return DISTINCT nodes.");
+        }
+
+        int posInReturn = 1;
+        for (CypReturn cR : rc.getItems()) {
+            if (cR.getType().equals("node") && cR.getNodeID().equals(order.getID())) return "n0" + posInReturn;
+            if (cR.getType().equals("node")) posInReturn++;
+        }
+        throw new DQInvalidException("Reading a page requires the node the query is ordered by to be returned.");
+    }
+
+    /**
+     * Predicate keeping the rows after the last row of the previous page. NULL keys sort after every other
+     * key in ascending order (and before them in descending order), as they do in Postgres.
+     */
+    private static String seekPredicate(String key, String id, PageToken page, boolean desc) {
+        if (page.getKey() == null) {
+            if (desc) return "(" + key + " IS NOT NULL OR " + id + " < " + page.getId() + ")";
+            return "(" + key + " IS NULL AND " + id + " > " + page.getId() + ")";
+        }
+
+        String row = "(" + key + ", " + id + ")";
+        String last = "('" + page.getKey().replace("'", "''") + "', " + page.getId() + ")";
+        if (desc) return "(" + row + " < " + last + ")";
+        return "(" + row + " > " + last + " OR " + key + " IS NULL)";
+    }
+
+    /**
+     * Find text in the SQL outside of any brackets or string literals.
+     *
+     * @return Index of the text, or -1 if it is not found at the top level.
+     */
+    private static int indexAtTopLevel(String sql, String text, int from) {
+        int depth = 0;
+        boolean inString = false;
+        for (int i = from; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (inString) {
+                if (c == '\'') inString = false;
+            } else if (c == '\'') {
+                inString = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && sql.startsWith(text, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
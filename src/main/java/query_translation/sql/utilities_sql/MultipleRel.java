@@ -19,88 +19,106 @@
 
 package query_translation.sql.utilities_sql;
 
-import com.google.gson.JsonObject;
 import intermediate_rep.*;
-import production.C2SProperties;
+import production.TranslationContext;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Class for translating Cypher with multiple relationships to SQL.
  */
 public class MultipleRel extends AbstractTranslation {
-    private static boolean needNodeTable = false;
+    private boolean needNodeTable = false;
+    // the hops joined in the final SELECT (the others are only checked to exist, see joinedHops).
+    private int firstJoined = 0;
+    private int lastJoined = 0;
 
     /**
      * Obtain WITH clause (Common Table Expression) for query with relationships.
+     * <p>
+     * The CTEs form a pipeline along the pattern, starting from the hop at its anchor (see JoinOrder): the
+     * edges of every other hop are restricted to those leaving the frontier of the hop next to it which
+     * is nearer the anchor (the ids of the node the two hops share), so (a)--{@literal >}(b)--{@literal >}(c)
+     * only looks at the edges reachable from the matches of (a)--{@literal >}(b), rather than at every edge of
+     * the graph once per hop. The shared node has already been checked by the hop nearer the anchor, so its
+     * table is only joined again when a predicate of the hop compares it to another node.
+     * <p>
+     * A node without labels or predicates only needs its id, which the edge table already holds, so the
+     * table of such a node is not joined at all (the nodes table is by far the widest table of the schema).
+     * Nodes that are returned are joined in the final SELECT, not in the CTEs.
      *
      * @param matchC Match Clause of the original Cypher query.
+     * @param ctx    Context of the translation.
      * @return New SQL.
      */
-    private static StringBuilder obtainWithClause(MatchClause matchC, C2SProperties props) {
+    private static StringBuilder obtainWithClause(MatchClause matchC, TranslationContext ctx) {
         StringBuilder withSQL = new StringBuilder();
         withSQL.append("WITH ");
 
-        int indexRel = 0;
+        // the hops are generated outwards from the anchor: first those to the right of it, then those to
+        // its left (a CTE may only refer to the CTEs defined before it).
+        int numRels = matchC.getRels().size();
+        int firstRel = ctx.anchorPatterns() ? Math.min(JoinOrder.anchor(matchC, ctx), numRels - 1) : 0;
+        List<Integer> order = new ArrayList<>();
+        for (int i = firstRel; i < numRels; i++) order.add(i);
+        for (int i = firstRel - 1; i >= 0; i--) order.add(i);
 
         // go through each relationship in the MatchClause, and generate the correct CTE to
         // add to the SQL statement.
-        for (CypRel cR : matchC.getRels()) {
+        for (int indexRel : order) {
+            CypRel cR = matchC.getRels().get(indexRel);
             String withAlias = String.valueOf(alphabet[indexRel]);
-            withSQL.append(withAlias).append(" AS ");
-            withSQL.append("(SELECT n1.id AS ").append(withAlias).append(1).append(", ");
-            withSQL.append("n2.id AS ").append(withAlias).append(2);
-            withSQL.append(", e").append(indexRel + 1).append(".*");
+            withSQL.append(withAlias).append(" AS (");
 
             int posInClause = cR.getPosInClause();
             CypNode c1 = matchC.getNodes().get(posInClause - 1);
             CypNode c2 = matchC.getNodes().get(posInClause);
-            String labelC1 = TranslateUtils.getLabelType(c1.getType(), props);
-            String labelC2 = TranslateUtils.getLabelType(c2.getType(), props);
+            String labelC1 = ctx.useLabelTables() ? TranslateUtils.getLabelType(c1.getType(), ctx) : "nodes";
+            String labelC2 = ctx.useLabelTables() ? TranslateUtils.getLabelType(c2.getType(), ctx) : "nodes";
 
             String typeRel = cR.getType();
             if (typeRel == null) {
                 typeRel = "edges";
             } else typeRel = "e$" + typeRel;
 
+            // the ids reached by the neighbouring hop nearer the anchor, which this hop must start from
+            // (its left node if the hop is right of the anchor, its right node otherwise).
+            String frontier = null;
+            boolean frontierLeft = indexRel > firstRel;
+            if (indexRel != firstRel) {
+                char near = alphabet[frontierLeft ? indexRel - 1 : indexRel + 1];
+                frontier = "(SELECT " + near + "." + near + (frontierLeft ? 2 : 1) + " FROM " + near + ")";
+            }
+            boolean comparesNodes = comparesNodes(c1, c2, cR);
+            boolean joinLeftNode = comparesNodes || ((frontier == null || !frontierLeft) && needsTable(c1));
+            boolean joinRightNode = comparesNodes || ((frontier == null || frontierLeft) && needsTable(c2));
+
             switch (cR.getDirection()) {
                 case "right":
-                    withSQL.append(" FROM ").append(labelC1).append(" n1 " + "INNER JOIN ").append(typeRel).append(" e")
-                            .append(indexRel + 1)
-                            .append(" on n1.id = e").append(indexRel + 1).append(".idl ")
-                            .append("INNER JOIN ").append(labelC2).append(" n2 on e").append(indexRel + 1)
-                            .append(".idr = n2.id");
-                    withSQL = obtainWhereInWithClause(cR, matchC, withSQL, false, indexRel, labelC1, labelC2);
+                    appendHop(withSQL, withAlias, indexRel, typeRel, labelC1, labelC2, "idl", "idr",
+                            joinLeftNode, joinRightNode);
+                    withSQL = obtainWhereInWithClause(cR, matchC, withSQL, false, indexRel, labelC1, labelC2,
+                            frontierLeft ? "idl" : "idr", frontier, joinLeftNode, joinRightNode, ctx);
                     break;
                 case "left":
-                    withSQL.append(" FROM ").append(labelC1).append(" n1 " + "INNER JOIN ").append(typeRel).append(" e")
-                            .append(indexRel + 1)
-                            .append(" on n1.id = e").append(indexRel + 1).append(".idr ")
-                            .append("INNER JOIN ").append(labelC2).append(" n2 on e").append(indexRel + 1)
-                            .append(".idl = n2.id");
-                    withSQL = obtainWhereInWithClause(cR, matchC, withSQL, false, indexRel, labelC1, labelC2);
+                    appendHop(withSQL, withAlias, indexRel, typeRel, labelC1, labelC2, "idr", "idl",
+                            joinLeftNode, joinRightNode);
+                    withSQL = obtainWhereInWithClause(cR, matchC, withSQL, false, indexRel, labelC1, labelC2,
+                            frontierLeft ? "idr" : "idl", frontier, joinLeftNode, joinRightNode, ctx);
                     break;
                 case "none":
-                    withSQL.append(" FROM ").append(labelC1).append(" n1 INNER JOIN ").append(typeRel).append(" e")
-                            .append(indexRel + 1)
-                            .append(" on n1.id = e").append(indexRel + 1).append(".idl ")
-                            .append("INNER JOIN ").append(labelC2).append(" n2 on e").append(indexRel + 1)
-                            .append(".idr = n2.id");
-                    withSQL = obtainWhereInWithClause(cR, matchC, withSQL, true, indexRel, labelC1, labelC2);
-                    withSQL.append("SELECT n1.id AS ").append(withAlias).append(1).append(", ");
-                    withSQL.append("n2.id AS ").append(withAlias).append(2);
-                    withSQL.append(", e").append(indexRel + 1).append(".*");
-                    withSQL.append(" FROM ").append(labelC1).append(" n1 INNER JOIN ").append(typeRel).append(" e")
-                            .append(indexRel + 1)
-                            .append(" on n1.id = e").append(indexRel + 1).append(".idr ")
-                            .append("INNER JOIN ").append(labelC2).append(" n2 on e").append(indexRel + 1)
-                            .append(".idl = n2.id");
-                    withSQL = obtainWhereInWithClause(cR, matchC, withSQL, false, indexRel, labelC1, labelC2);
+                    appendHop(withSQL, withAlias, indexRel, typeRel, labelC1, labelC2, "idl", "idr",
+                            joinLeftNode, joinRightNode);
+                    withSQL = obtainWhereInWithClause(cR, matchC, withSQL, true, indexRel, labelC1, labelC2,
+                            frontierLeft ? "idl" : "idr", frontier, joinLeftNode, joinRightNode, ctx);
+                    appendHop(withSQL, withAlias, indexRel, typeRel, labelC1, labelC2, "idr", "idl",
+                            joinLeftNode, joinRightNode);
+                    withSQL = obtainWhereInWithClause(cR, matchC, withSQL, false, indexRel, labelC1, labelC2,
+                            frontierLeft ? "idr" : "idl", frontier, joinLeftNode, joinRightNode, ctx);
                     break;
             }
-
-            indexRel++;
         }
 
         withSQL.setLength(withSQL.length() - 2);
@@ -108,6 +126,69 @@ public class MultipleRel extends AbstractTranslation {
         return withSQL;
     }
 
+    /**
+     * Append the SELECT and FROM of one hop of the pattern, going from the column leftCol of the edge table
+     * to its column rightCol.
+     *
+     * @param sql          The current SQL being created.
+     * @param withAlias    Name of the CTE for the hop.
+     * @param indexRel     The position of the relationship within the context of the whole MatchClause.
+     * @param typeRel      Table storing the relationships of the hop.
+     * @param labelC1      Table storing the left node of the relationship.
+     * @param labelC2      Table storing the right node of the relationship.
+     * @param leftCol      Column of the edge table holding the id of the left node (idl or idr).
+     * @param rightCol     Column of the edge table holding the id of the right node.
+     * @param joinLeftNode  False if the left node is only needed by its id (so its table is not joined).
+     * @param joinRightNode False if the right node is only needed by its id.
+     */
+    private static void appendHop(StringBuilder sql, String withAlias, int indexRel, String typeRel,
+                                  String labelC1, String labelC2, String leftCol, String rightCol,
+                                  boolean joinLeftNode, boolean joinRightNode) {
+        String edge = "e" + (indexRel + 1);
+
+        sql.append("SELECT ").append(joinLeftNode ? "n1.id" : edge + "." + leftCol)
+                .append(" AS ").append(withAlias).append(1).append(", ");
+        sql.append(joinRightNode ? "n2.id" : edge + "." + rightCol).append(" AS ").append(withAlias).append(2);
+        sql.append(", ").append(edge).append(".*");
+
+        sql.append(" FROM ");
+        if (joinLeftNode) {
+            sql.append(labelC1).append(" n1 INNER JOIN ").append(typeRel).append(" ").append(edge)
+                    .append(" on n1.id = ").append(edge).append(".").append(leftCol);
+        } else sql.append(typeRel).append(" ").append(edge);
+        if (joinRightNode) {
+            sql.append(" INNER JOIN ").append(labelC2).append(" n2 on ").append(edge).append(".").append(rightCol)
+                    .append(" = n2.id");
+        }
+    }
+
+    /**
+     * @param cN Node of the pattern.
+     * @return True if the node has labels or predicates, so the CTEs must join the table storing it.
+     */
+    private static boolean needsTable(CypNode cN) {
+        return cN.getType() != null || cN.hasConditions();
+    }
+
+    /**
+     * @param c1 Left node of the hop.
+     * @param c2 Right node of the hop.
+     * @param cR Relationship of the hop.
+     * @return True if one of their predicates compares them to the property (or id) of another node.
+     */
+    private static boolean comparesNodes(CypNode c1, CypNode c2, CypRel cR) {
+        List<CypWhere> conditions = new ArrayList<>();
+        if (c1.getConditions() != null) conditions.addAll(c1.getConditions());
+        if (c2.getConditions() != null) conditions.addAll(c2.getConditions());
+        if (cR.getConditions() != null) conditions.addAll(cR.getConditions());
+
+        for (CypWhere cW : conditions) {
+            if (cW.getValueType() == CypWhere.ValueType.PROPERTY || cW.getValueType() == CypWhere.ValueType.NODE_ID)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Augmenting the WITH clauses with the correct predicates (that may be associated with either the nodes
      * or properties of the relationship itself).
@@ -120,42 +201,57 @@ public class MultipleRel extends AbstractTranslation {
      * @param indexRel        The position of the relationship within the context of the whole MatchClause.
      * @param nodeLabel1      Label(s) of the left node of the relationship.
      * @param nodeLabel2      Label(s) of the right node of the relationship.
+     * @param frontierCol     Column of the edge table holding the id of the node shared with the frontier.
+     * @param frontier        Subquery of the ids reached by the neighbouring hop (null for the first hop).
+     * @param joinLeftNode    False if the table of the left node was not joined (its predicates were then
+     *                        already applied by the neighbouring hop, or it has none).
+     * @param joinRightNode   False if the table of the right node was not joined.
+     * @param ctx             Context of the translation.
      * @return SQL string with additional information as a result of this method.
      */
     private static StringBuilder obtainWhereInWithClause(CypRel cR, MatchClause matchC, StringBuilder sql,
                                                          boolean isBiDirectional, int indexRel,
-                                                         String nodeLabel1, String nodeLabel2) {
+                                                         String nodeLabel1, String nodeLabel2,
+                                                         String frontierCol, String frontier,
+                                                         boolean joinLeftNode, boolean joinRightNode,
+                                                         TranslationContext ctx) {
         boolean includesWhere = false;
         int posOfRel = cR.getPosInClause();
 
         CypNode leftNode = obtainNode(matchC, posOfRel);
-        JsonObject leftNodeProps = leftNode.getProps();
         CypNode rightNode = obtainNode(matchC, posOfRel + 1);
-        JsonObject rightNodeProps = rightNode.getProps();
-        JsonObject relProps = cR.getProps();
 
-        if (leftNodeProps != null) {
-            sql.append(" WHERE ( ");
+        if (frontier != null) {
+            sql.append(" WHERE e").append(indexRel + 1).append(".").append(frontierCol).append(" IN ")
+                    .append(frontier).append(" AND ");
             includesWhere = true;
-            sql = TranslateUtils.getWholeWhereClause(sql, leftNode, "n1");
+        }
+
+        if (joinLeftNode && leftNode.hasConditions()) {
+            if (!includesWhere) {
+                sql.append(" WHERE ( ");
+                includesWhere = true;
+            } else sql.append(" ( ");
+
+            sql = TranslateUtils.getWholeWhereClause(sql, leftNode, "n1", ctx);
             if (sql.toString().endsWith(" and ")) sql.setLength(sql.length() - 5);
             else if (sql.toString().endsWith(" or ")) sql.setLength(sql.length() - 4);
             sql.append(") AND ");
         }
 
-        if (rightNodeProps != null) {
+        if (joinRightNode && rightNode.hasConditions()) {
             if (!includesWhere) {
                 sql.append(" WHERE ( ");
                 includesWhere = true;
             } else sql.append(" ( ");
 
-            sql = TranslateUtils.getWholeWhereClause(sql, rightNode, "n2");
+            sql = TranslateUtils.getWholeWhereClause(sql, rightNode, "n2", ctx);
             if (sql.toString().endsWith(" and ")) sql.setLength(sql.length() - 5);
             else if (sql.toString().endsWith(" or ")) sql.setLength(sql.length() - 4);
             sql.append(") AND ");
         }
 
-        if (leftNode.getType() != null && nodeLabel1.equals("nodes")) {
+        if (joinLeftNode && leftNode.getType() != null && nodeLabel1.equals("nodes")) {
             if (!includesWhere) {
                 sql.append(" WHERE ");
                 includesWhere = true;
@@ -164,7 +260,7 @@ public class MultipleRel extends AbstractTranslation {
             sql.append(TranslateUtils.genLabelLike(leftNode, "n1")).append(" AND ");
         }
 
-        if (rightNode.getType() != null && nodeLabel2.equals("nodes")) {
+        if (joinRightNode && rightNode.getType() != null && nodeLabel2.equals("nodes")) {
             if (!includesWhere) {
                 sql.append(" WHERE ");
                 includesWhere = true;
@@ -173,12 +269,12 @@ public class MultipleRel extends AbstractTranslation {
             sql.append(TranslateUtils.genLabelLike(rightNode, "n2")).append(" AND ");
         }
 
-        if (relProps != null) {
+        if (cR.hasConditions()) {
             if (!includesWhere) {
                 sql.append(" WHERE ");
                 includesWhere = true;
             }
-            sql = TranslateUtils.getWholeWhereClauseRel(sql, cR, "e" + (indexRel + 1));
+            sql = TranslateUtils.getWholeWhereClauseRel(sql, cR, "e" + (indexRel + 1), ctx);
             if (sql.toString().endsWith(" and ")) sql.setLength(sql.length() - 5);
             else if (sql.toString().endsWith(" or ")) sql.setLength(sql.length() - 4);
             sql.append(" AND ");
@@ -207,9 +303,10 @@ public class MultipleRel extends AbstractTranslation {
         return null;
     }
 
-    private static StringBuilder obtainSelectAndFromClause(ReturnClause returnC, MatchClause matchC,
-                                                           boolean hasDistinct,
-                                                           Map<String, String> alias) {
+    private StringBuilder obtainSelectAndFromClause(ReturnClause returnC, MatchClause matchC,
+                                                    boolean hasDistinct,
+                                                    Map<String, String> alias, TranslationContext ctx) {
+        Map<String, String> withMapping = ctx.getWithMapping();
         StringBuilder safSQL = new StringBuilder();
 
         safSQL.append("SELECT ");
@@ -219,6 +316,7 @@ public class MultipleRel extends AbstractTranslation {
         ArrayList<String> nodesSoFar = new ArrayList<>();
         String relsNeeded = "";
         needNodeTable = false;
+        String table = TranslateUtils.findOptimisedTable(returnC, ctx);
 
         for (CypReturn cR : returnC.getItems()) {
             boolean isNode = false;
@@ -240,7 +338,7 @@ public class MultipleRel extends AbstractTranslation {
             } else {
                 boolean usesExistingWith = false;
 
-                for (String z : WithSQL.withMapping.keySet()) {
+                for (String z : withMapping.keySet()) {
                     if (cR.getNodeID().equals(z)) {
                         usesExistingWith = true;
 
@@ -254,15 +352,15 @@ public class MultipleRel extends AbstractTranslation {
                         }
                         if (cR.getCaseString() != null) {
                             String caseString = cR.getCaseString().replace(cR.getNodeID() + "." + cR.getField(),
-                                    WithSQL.withMapping.get(z) + "." + cR.getField());
+                                    withMapping.get(z) + "." + cR.getField());
                             safSQL.append(caseString).append(", ");
                         } else {
                             if (prop != null) {
-                                safSQL.append(WithSQL.withMapping.get(z)).append(".").append(prop)
+                                safSQL.append(withMapping.get(z)).append(".").append(prop)
                                         .append(TranslateUtils.useAlias(cR.getNodeID(), cR.getField(), alias))
                                         .append(", ");
                             } else {
-                                safSQL.append(WithSQL.withMapping.get(z))
+                                safSQL.append(withMapping.get(z))
                                         .append(".*").append(TranslateUtils.useAlias(cR.getNodeID(), cR.getField(), alias))
                                         .append(", ");
                             }
@@ -315,9 +413,12 @@ public class MultipleRel extends AbstractTranslation {
                                     safSQL.append(TranslateUtils.useAlias(cR.getNodeID(), cR.getField(), alias))
                                             .append(", ");
                             } else {
-                                safSQL.append("n0").append(nodeTableCount)
-                                        .append(".*").append(TranslateUtils.useAlias(cR.getNodeID(), cR.getField(), alias))
-                                        .append(", ");
+                                String as = TranslateUtils.useAlias(cR.getNodeID(), cR.getField(), alias);
+                                // a node returned whole only needs its properties, not every column of the table.
+                                if (cR.hasAggFunc() || cR.getCount() > 0 || !as.isEmpty())
+                                    safSQL.append("n0").append(nodeTableCount).append(".*");
+                                else safSQL.append(TranslateUtils.nodeColumns(table, "n0" + nodeTableCount, ctx));
+                                safSQL.append(as).append(", ");
                             }
                         }
                         if (cR.getCount() > 0) {
@@ -386,8 +487,6 @@ public class MultipleRel extends AbstractTranslation {
 
         safSQL.setLength(safSQL.length() - 2);
 
-        String table = TranslateUtils.findOptimisedTable(returnC);
-
         boolean fromAdded = false;
         if (needNodeTable) {
             safSQL.append(" FROM ");
@@ -401,13 +500,13 @@ public class MultipleRel extends AbstractTranslation {
             fromAdded = true;
         }
 
-        if (!WithSQL.withMapping.isEmpty()) {
+        if (!withMapping.isEmpty()) {
             safSQL.append((!fromAdded) ? " FROM " : " ").append("wA, ");
         }
 
         int numRels = matchC.getRels().size();
 
-        for (int i = 0; i < numRels; i++)
+        for (int i = firstJoined; i <= lastJoined; i++)
             if (!relsNeeded.contains(String.valueOf(alphabet[i])))
                 safSQL.append(alphabet[i]).append(", ");
 
@@ -417,33 +516,48 @@ public class MultipleRel extends AbstractTranslation {
     }
 
     private static StringBuilder obtainWhereClause(ReturnClause returnC, MatchClause matchC,
-                                                   boolean partOfWithQ) {
+                                                   boolean partOfWithQ, Map<String, String> withMapping,
+                                                   int firstJoined, int lastJoined) {
         StringBuilder whereSQL = new StringBuilder();
 
         whereSQL.append(" WHERE ");
         int numRels = matchC.getRels().size();
 
+        // the hops that are not joined are nested inside each other as EXISTS subqueries, going outwards
+        // from the joined hops (first to the left, then to the right); level 0 is the main query.
+        List<Integer> semiJoined = new ArrayList<>();
+        for (int i = firstJoined - 1; i >= 0; i--) semiJoined.add(i);
+        for (int i = lastJoined + 1; i < numRels; i++) semiJoined.add(i);
+        List<List<String>> levels = new ArrayList<>();
+        for (int i = 0; i <= semiJoined.size(); i++) levels.add(new ArrayList<>());
+
         // where there is more than one relationship, the CTEs need to join together appropriately,
-        // to make sure the semantics are correct.
+        // to make sure the semantics are correct. Each predicate is checked at the innermost level of
+        // the hops it refers to.
         for (int i = 0; i < numRels - 1; i++) {
-            whereSQL.append(alphabet[i]).append(".").append(alphabet[i]).append(2);
-            whereSQL.append(" = ");
-            whereSQL.append(alphabet[i + 1]).append(".").append(alphabet[i + 1]).append(1);
-            whereSQL.append(" AND ");
+            levels.get(Math.max(semiJoined.indexOf(i), semiJoined.indexOf(i + 1)) + 1)
+                    .add(alphabet[i] + "." + alphabet[i] + 2 + " = " + alphabet[i + 1] + "." + alphabet[i + 1] + 1);
 
             // think there is some logic here which may need addressing...
             // if the nodes do not have an id attached to them, then some additional logic,
             // such as a.a1 != b.b2 may be needed to make sure the semantics are consistent.
             // for example, MATCH (:Local)<--(:Global)-->(c:Global) RETURN DISTINCT c.name works
             // but, MATCH (:Local)<--(:Global)-->(c:Local) RETURN DISTINCT c.name does not without additional logic.
-            if (i == 0) {
-                //whereSQL.append("a.a1 != b.b2");
-                whereSQL.setLength(whereSQL.length() - 5);
-            } else {
-                whereSQL.append(alphabet[i - 1]).append(".").append(alphabet[i - 1]).append(2);
-                whereSQL.append(" != ");
-                whereSQL.append(alphabet[i + 1]).append(".").append(alphabet[i + 1]).append(2);
+            if (i > 0) {
+                levels.get(Math.max(semiJoined.indexOf(i - 1), semiJoined.indexOf(i + 1)) + 1)
+                        .add(alphabet[i - 1] + "." + alphabet[i - 1] + 2 + " != " +
+                                alphabet[i + 1] + "." + alphabet[i + 1] + 2);
             }
+        }
+
+        for (String predicate : levels.get(0)) whereSQL.append(predicate).append(" AND ");
+        if (!semiJoined.isEmpty()) {
+            for (int level = 1; level <= semiJoined.size(); level++) {
+                whereSQL.append("EXISTS (SELECT 1 FROM ").append(alphabet[semiJoined.get(level - 1)])
+                        .append(" WHERE ").append(String.join(" AND ", levels.get(level)));
+                if (level < semiJoined.size()) whereSQL.append(" AND ");
+            }
+            for (int level = 1; level <= semiJoined.size(); level++) whereSQL.append(")");
             whereSQL.append(" AND ");
         }
 
@@ -474,7 +588,7 @@ public class MultipleRel extends AbstractTranslation {
                 switch (cR.getType()) {
                     case "node":
                         if (!(cR.getCount() > 0 && returnC.getItems().size() > 1)) {
-                            if (WithSQL.withMapping.containsKey(cR.getNodeID())) break;
+                            if (withMapping.containsKey(cR.getNodeID())) break;
 
                             if (!nodesSeenSoFar.contains(cR.getNodeID())) {
                                 nodesSeenSoFar.add(cR.getNodeID());
@@ -544,20 +658,93 @@ public class MultipleRel extends AbstractTranslation {
         return whereSQL;
     }
 
+    /**
+     * Work out which hops of the pattern the final SELECT has to join. When the query ignores duplicate
+     * rows (see ignoresDuplicates), the hops at either end of the pattern that bind nothing returned are
+     * only checked to exist (with EXISTS), so that, in
+     * MATCH (a:Local)--{@literal >}(b){@literal <}--(c:Process){@literal <}--(d) RETURN min(d.node_id),
+     * the rows for d are not multiplied by the number of paths reaching it from a.
+     *
+     * @param decodedQuery DecodedQuery object of the Cypher input.
+     * @param ctx          Context of the translation.
+     * @return The first and last hop to join.
+     */
+    private static int[] joinedHops(DecodedQuery decodedQuery, TranslationContext ctx) {
+        MatchClause matchC = decodedQuery.getMc();
+        int numRels = matchC.getRels().size();
+        int[] all = new int[]{0, numRels - 1};
+        if (!ctx.getWithMapping().isEmpty() || ctx.getMappingMultipleWith() != null) return all;
+        if (!ignoresDuplicates(decodedQuery)) return all;
+
+        // a node appearing twice in the pattern is matched by comparing the hops it appears in.
+        List<String> ids = new ArrayList<>();
+        for (CypNode cN : matchC.getNodes()) {
+            if (cN.getId() == null) continue;
+            if (ids.contains(cN.getId())) return all;
+            ids.add(cN.getId());
+        }
+
+        int first = numRels;
+        int last = -1;
+        for (CypReturn item : decodedQuery.getRc().getItems()) {
+            int hop = -1;
+            if (item.getNodeID() != null && ids.contains(item.getNodeID())) {
+                // the final SELECT reads the first node from a.a1, and every other from the hop before it.
+                hop = Math.max(item.getPosInClause() - 2, 0);
+            } else if (item.getNodeID() != null) {
+                for (CypRel cR : matchC.getRels()) {
+                    if (item.getNodeID().equals(cR.getId())) hop = cR.getPosInClause() - 1;
+                }
+                // the GROUP BY and ORDER BY of returned relationships refer to the first hop.
+                first = 0;
+            }
+            if (hop == -1) return all;
+            first = Math.min(first, hop);
+            last = Math.max(last, hop);
+        }
+        // the ORDER BY of a single returned relationship also refers to the first hop.
+        if (decodedQuery.getOc() != null) first = 0;
+        return new int[]{first, last};
+    }
+
+    /**
+     * @param decodedQuery DecodedQuery object of the Cypher input.
+     * @return True if the results are the same however many times each row is repeated (the query returns
+     * DISTINCT rows, or aggregates only with min, max and count(distinct ...)).
+     */
+    private static boolean ignoresDuplicates(DecodedQuery decodedQuery) {
+        if (decodedQuery.getCypherAdditionalInfo().hasDistinct()) return true;
+
+        boolean aggregates = false;
+        for (CypReturn item : decodedQuery.getRc().getItems()) {
+            if (item.getCount() == 2 || item.getAggFunc() == CypAggFuncs.AGG_MIN
+                    || item.getAggFunc() == CypAggFuncs.AGG_MAX) {
+                aggregates = true;
+            } else if (item.getCount() > 0 || item.hasAggFunc()) return false;
+        }
+        // the other items are then grouped by, and duplicates of a group do not change it.
+        return aggregates;
+    }
+
     @Override
-    public StringBuilder translate(StringBuilder sql, DecodedQuery decodedQuery, C2SProperties props) {
-        StringBuilder withParts = obtainWithClause(decodedQuery.getMc(), props);
+    public StringBuilder translate(StringBuilder sql, DecodedQuery decodedQuery, TranslationContext ctx) {
+        int[] joined = joinedHops(decodedQuery, ctx);
+        firstJoined = joined[0];
+        lastJoined = joined[1];
+        StringBuilder withParts = obtainWithClause(decodedQuery.getMc(), ctx);
 
         StringBuilder selectAndFrom = obtainSelectAndFromClause(decodedQuery.getRc(), decodedQuery.getMc(),
                 decodedQuery.getCypherAdditionalInfo().hasDistinct(),
-                decodedQuery.getCypherAdditionalInfo().getAliasMap());
+                decodedQuery.getCypherAdditionalInfo().getAliasMap(), ctx);
 
+        Map<String, String> withMapping = ctx.getWithMapping();
         StringBuilder where = null;
         if (needNodeTable) {
-            where = obtainWhereClause(decodedQuery.getRc(), decodedQuery.getMc(), false);
-            if (!WithSQL.withMapping.isEmpty()) {
+            where = obtainWhereClause(decodedQuery.getRc(), decodedQuery.getMc(), false, withMapping,
+                    firstJoined, lastJoined);
+            if (!withMapping.isEmpty()) {
                 for (CypNode cN : decodedQuery.getMc().getNodes()) {
-                    if (WithSQL.withMapping.containsKey(cN.getId())) {
+                    if (withMapping.containsKey(cN.getId())) {
                         int pos = cN.getPosInClause();
                         if (pos == 1) where.append(" AND wA.id = a.a1");
                         else {
@@ -568,16 +755,17 @@ public class MultipleRel extends AbstractTranslation {
                 }
 
             }
-        } else if (!WithSQL.withMapping.isEmpty()) {
+        } else if (!withMapping.isEmpty()) {
             if (decodedQuery.getMc().getRels().size() > 1) {
-                where = obtainWhereClause(decodedQuery.getRc(), decodedQuery.getMc(), true)
-                        .append(" AND wA.id = a.a2");
+                where = obtainWhereClause(decodedQuery.getRc(), decodedQuery.getMc(), true, withMapping,
+                        firstJoined, lastJoined).append(" AND wA.id = a.a2");
             } else {
                 where = new StringBuilder();
                 where.append(" WHERE wA.id = a.a2");
             }
         } else if (decodedQuery.getMc().getRels().size() > 1)
-            where = obtainWhereClause(decodedQuery.getRc(), decodedQuery.getMc(), false);
+            where = obtainWhereClause(decodedQuery.getRc(), decodedQuery.getMc(), false, withMapping,
+                    firstJoined, lastJoined);
 
         sql.append(withParts).append(selectAndFrom);
         if (where != null) sql.append(where);
@@ -20,7 +20,7 @@
 package query_translation.sql.utilities_sql;
 
 import intermediate_rep.*;
-import production.C2SProperties;
+import production.TranslationContext;
 
 import java.util.ArrayList;
 import java.util.Map;
@@ -31,7 +31,8 @@ import java.util.Map;
 public class NoRels extends AbstractTranslation {
 
     private static StringBuilder getSelect(ReturnClause rc, MatchClause mc, boolean hasDistinct,
-                                           Map<String, String> alias) {
+                                           Map<String, String> alias, String table, TranslationContext ctx) {
+        Map<String, String> withMapping = ctx.getWithMapping();
         StringBuilder selectSQL = new StringBuilder();
 
         // add the initial keywords to the translation.
@@ -63,14 +64,16 @@ public class NoRels extends AbstractTranslation {
                         if (cR.hasAggFunc() || cR.getCount() > 0) selectSQL.append(") ");
                         selectSQL.append(TranslateUtils.useAlias(cR.getNodeID(), cR.getField(), alias)).append(", ");
                     } else {
-                        selectSQL.append("n01.*");
+                        String as = TranslateUtils.useAlias("count(" + cR.getNodeID() + ")", cR.getField(), alias);
+                        // a node returned whole only needs its properties, not every column of the table.
+                        if (cR.hasAggFunc() || cR.getCount() > 0 || !as.isEmpty()) selectSQL.append("n01.*");
+                        else selectSQL.append(TranslateUtils.nodeColumns(table, "n01", ctx));
                         if (cR.hasAggFunc() || cR.getCount() > 0) selectSQL.append(") ");
-                        selectSQL.append(TranslateUtils.useAlias("count(" + cR.getNodeID() + ")", cR.getField(), alias))
-                                .append(", ");
+                        selectSQL.append(as).append(", ");
                     }
                 }
 
-                for (String s : WithSQL.withMapping.keySet()) {
+                for (String s : withMapping.keySet()) {
                     if (cR.getNodeID().equals(s)) {
                         String prop = cR.getField();
 
@@ -84,11 +87,11 @@ public class NoRels extends AbstractTranslation {
                         }
 
                         if (prop != null) {
-                            selectSQL.append(WithSQL.withMapping.get(s)).append(".").append(prop);
+                            selectSQL.append(withMapping.get(s)).append(".").append(prop);
                             if (cR.hasAggFunc() || cR.getCount() > 0) selectSQL.append(") ");
                             selectSQL.append(TranslateUtils.useAlias(cR.getNodeID(), cR.getField(), alias)).append(", ");
                         } else {
-                            selectSQL.append(WithSQL.withMapping.get(s)).append(".*");
+                            selectSQL.append(withMapping.get(s)).append(".*");
                             if (cR.hasAggFunc() || cR.getCount() > 0) selectSQL.append(") ");
                             selectSQL.append(TranslateUtils.useAlias("count(" + cR.getNodeID() + ")", cR.getField(), alias))
                                     .append(", ");
@@ -104,25 +107,31 @@ public class NoRels extends AbstractTranslation {
         return selectSQL;
     }
 
-    private static StringBuilder getFrom(MatchClause mc, ReturnClause rc, C2SProperties props) {
-        StringBuilder fromSQL = new StringBuilder();
-
-        fromSQL.append("FROM ");
-        String table = TranslateUtils.getLabelType(mc.getNodes().get(0).getType(), props);
+    /**
+     * @return Table to read the node from (setting usesOptimalTable if it is the table of its label).
+     */
+    private String getTable(MatchClause mc, ReturnClause rc, TranslationContext ctx) {
+        String table = TranslateUtils.getLabelType(mc.getNodes().get(0).getType(), ctx);
 
         if (!table.equals("nodes")) {
             usesOptimalTable = true;
         } else {
-            table = TranslateUtils.findOptimisedTable(rc);
+            table = TranslateUtils.findOptimisedTable(rc, ctx);
         }
+        return table;
+    }
 
+    private StringBuilder getFrom(String table, TranslationContext ctx) {
+        StringBuilder fromSQL = new StringBuilder();
+
+        fromSQL.append("FROM ");
         fromSQL.append(table).append(" n01");
 
-        if (!WithSQL.withMapping.isEmpty()) fromSQL.append(", wA");
+        if (!ctx.getWithMapping().isEmpty()) fromSQL.append(", wA");
         return fromSQL;
     }
 
-    private static StringBuilder getWhere(ReturnClause returnC, MatchClause matchC) {
+    private StringBuilder getWhere(ReturnClause returnC, MatchClause matchC, TranslationContext ctx) {
         StringBuilder where = new StringBuilder();
 
         boolean hasWhere = false;
@@ -136,9 +145,9 @@ public class NoRels extends AbstractTranslation {
             if (cR.getNodeID() == null && cR.getField().equals("*")) {
                 CypNode cN = matchC.getNodes().get(0);
                 where.append(" WHERE n01.label LIKE ").append(TranslateUtils.genLabelLike(cN, "n01"));
-                if (cN.getProps() != null) {
+                if (cN.hasConditions()) {
                     where.append(" AND ");
-                    where = TranslateUtils.getWholeWhereClause(where, cN);
+                    where = TranslateUtils.getWholeWhereClause(where, cN, ctx);
                 }
             } else {
                 CypNode cN = null;
@@ -151,12 +160,12 @@ public class NoRels extends AbstractTranslation {
                 }
 
                 if (cN != null) {
-                    if (cN.getProps() != null) {
+                    if (cN.hasConditions()) {
                         if (!hasWhere) {
                             where.append(" WHERE ");
                             hasWhere = true;
                         }
-                        where = TranslateUtils.getWholeWhereClause(where, cN);
+                        where = TranslateUtils.getWholeWhereClause(where, cN, ctx);
                     }
 
                     if (cN.getType() != null && !usesOptimalTable) {
@@ -169,14 +178,14 @@ public class NoRels extends AbstractTranslation {
                         }
                         where.append(" ").append(TranslateUtils.genLabelLike(cN, "n01"));
                     }
-                } else if (!WithSQL.withMapping.isEmpty()) {
+                } else if (!ctx.getWithMapping().isEmpty()) {
                     cN = matchC.getNodes().get(0);
-                    if (cN.getProps() != null) {
+                    if (cN.hasConditions()) {
                         if (!hasWhere) {
                             where.append(" WHERE ");
                             hasWhere = true;
                         }
-                        where = TranslateUtils.getWholeWhereClause(where, cN);
+                        where = TranslateUtils.getWholeWhereClause(where, cN, ctx);
                     }
                 }
             }
@@ -186,14 +195,15 @@ public class NoRels extends AbstractTranslation {
     }
 
     @Override
-    public StringBuilder translate(StringBuilder sql, DecodedQuery decodedQuery, C2SProperties props) {
+    public StringBuilder translate(StringBuilder sql, DecodedQuery decodedQuery, TranslationContext ctx) {
         usesOptimalTable = false;
+        String table = getTable(decodedQuery.getMc(), decodedQuery.getRc(), ctx);
         StringBuilder select = getSelect(decodedQuery.getRc(), decodedQuery.getMc(),
                 decodedQuery.getCypherAdditionalInfo().hasDistinct(),
-                decodedQuery.getCypherAdditionalInfo().getAliasMap());
+                decodedQuery.getCypherAdditionalInfo().getAliasMap(), table, ctx);
 
-        StringBuilder from = getFrom(decodedQuery.getMc(), decodedQuery.getRc(), props);
-        StringBuilder where = getWhere(decodedQuery.getRc(), decodedQuery.getMc());
+        StringBuilder from = getFrom(table, ctx);
+        StringBuilder where = getWhere(decodedQuery.getRc(), decodedQuery.getMc(), ctx);
 
         sql.append(select).append(from).append(where);
         return sql;
@@ -21,14 +21,17 @@ package query_translation.sql.utilities_sql;
 
 import exceptions.DQInvalidException;
 import intermediate_rep.*;
-import production.C2SMain;
-import production.C2SProperties;
+import production.TranslationContext;
 
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static intermediate_rep.CypCount.COUNT_FALSE;
 
@@ -37,6 +40,8 @@ import static intermediate_rep.CypCount.COUNT_FALSE;
  * <p>
  * Read individual methods documentation for more understanding.
  * - MultipleRel
+ * - TableCount
+ * - DegreeCount
  * - NoRels
  * - SingleVarRel
  * <p>
@@ -45,7 +50,7 @@ import static intermediate_rep.CypCount.COUNT_FALSE;
 public class SQLTranslate {
     private static final char[] alphabet = "abcdefghijklmnopqrstuvwxyz".toCharArray();
 
-    public static String translateRead(DecodedQuery decodedQuery, C2SProperties props)
+    public static String translateRead(DecodedQuery decodedQuery, TranslationContext ctx)
             throws DQInvalidException, IOException {
         // SQL built up from a StringBuilder object.
         StringBuilder sql = new StringBuilder();
@@ -53,133 +58,321 @@ public class SQLTranslate {
         if (decodedQuery.getMc().getNodes().isEmpty()) throw new DQInvalidException("MATCH CLAUSE INVALID");
         if (decodedQuery.getRc().getItems() == null) throw new DQInvalidException("RETURN CLAUSE INVALID");
 
-        // There are 3 Cypher query types that can be translated:
+        // There are 5 Cypher query types that can be translated:
+        // - queries counting every node with a label, or every relationship of a type (answered from table_counts)
         // - queries with no relations in
+        // - queries counting the neighbours of a node (answered from the adjacency views)
         // - queries with one variable length path in
         // - queries with multiple relationships in (excluding multiple variable length path options).
-        if (decodedQuery.getMc().getRels().isEmpty()) {
+        if (TableCount.matches(decodedQuery, ctx)) {
+            TableCount tc = new TableCount();
+            sql = tc.translate(sql, decodedQuery, ctx);
+        } else if (decodedQuery.getMc().getRels().isEmpty()) {
             NoRels nr = new NoRels();
-            sql = nr.translate(sql, decodedQuery, props);
+            sql = nr.translate(sql, decodedQuery, ctx);
+        } else if (DegreeCount.matches(decodedQuery, ctx)) {
+            DegreeCount dc = new DegreeCount();
+            sql = dc.translate(sql, decodedQuery, ctx);
         } else if (decodedQuery.getMc().isVarRel() && decodedQuery.getMc().getRels().size() == 1) {
             SingleVar singleV = new SingleVar();
-            sql = singleV.translate(sql, decodedQuery, props);
+            sql = singleV.translate(sql, decodedQuery, ctx);
         } else {
             MultipleRel mr = new MultipleRel();
-            sql = mr.translate(sql, decodedQuery, props);
+            sql = mr.translate(sql, decodedQuery, ctx);
             if ((decodedQuery.getCypherAdditionalInfo().hasCount() || decodedQuery.getCypherAdditionalInfo().hasAgg())
                     && decodedQuery.getRc().getItems().size() > 1)
-                sql = obtainGroupByClause(decodedQuery.getRc(), sql, props);
+                sql = obtainGroupByClause(decodedQuery.getRc(), sql, ctx);
         }
 
-        if (decodedQuery.getOc() != null) {
+        // a page of the query is read by seeking past the last row of the previous page (see KeysetPage).
+        if (ctx.getPage() != null) {
+            sql = KeysetPage.apply(sql, decodedQuery, ctx);
+        } else if (decodedQuery.getOc() != null) {
             sql = obtainOrderByClause(decodedQuery.getOc(), decodedQuery.getRc(), sql, "n01");
         }
 
         int skipAmount = decodedQuery.getSkipAmount();
         int limitAmount = decodedQuery.getLimitAmount();
-        if (skipAmount != -1) sql.append(" OFFSET ").append(skipAmount);
+        // SKIP only applies to the first page, the later pages start after the last row read.
+        if (skipAmount != -1 && (ctx.getPage() == null || ctx.getPage().isFirst()))
+            sql.append(" OFFSET ").append(skipAmount);
         if (limitAmount != -1) sql.append(" LIMIT ").append(limitAmount);
 
         sql.append(";");
         return sql.toString();
     }
 
-    public static String translateInsert(DecodedQuery decodedQuery) {
-        StringBuilder sql = new StringBuilder();
+    /**
+     * Translate a CREATE to a single SQL statement. Each node is inserted into the nodes table first, returning
+     * its id, and the rows of the label tables and of the relationships are then made from those ids (through
+     * the WITH query) rather than by finding the new nodes again from their properties. The counts of the
+     * tables inserted into (see updateCounts) are updated by the main statement, if the schema has them.
+     *
+     * @param decodedQuery DecodedQuery object of the Cypher input.
+     * @param ctx          Context of the translation.
+     * @return SQL inserting the nodes and relationships.
+     */
+    public static String translateInsert(DecodedQuery decodedQuery, TranslationContext ctx) {
         MatchClause createC = decodedQuery.getMc();
+        // name of the view in the WITH query of each part of the statement (all but the last part are views).
+        List<String> names = new ArrayList<>();
+        List<String> parts = new ArrayList<>();
+        List<String> nodeViews = new ArrayList<>();
+        Map<String, Integer> added = new LinkedHashMap<>();
+
+        for (int i = 0; i < createC.getNodes().size(); i++) {
+            int first = firstWithId(createC, i);
+            if (first != i) {
+                nodeViews.add(nodeViews.get(first));
+                continue;
+            }
 
-        sql = translateInsertNodes(sql, createC);
-        sql = translateInsertEdges(sql, createC);
+            String view = "n" + (i + 1);
+            nodeViews.add(view);
+            String[] colsAndValues = InsertUtils.findColsAndValues(createC, i);
+            String label = findLabel(createC, i);
+            countRow(added, createC, i);
+
+            names.add(view);
+            if (label == null && colsAndValues[0].isEmpty()) {
+                parts.add("INSERT INTO nodes DEFAULT VALUES RETURNING id");
+            } else {
+                parts.add("INSERT INTO nodes" + columns(colsAndValues[0], (label == null) ? null : "label") +
+                        " VALUES (" + values(colsAndValues[1], label) + ") RETURNING id");
+            }
 
-        return sql.toString();
-    }
+            if (label != null) {
+                names.add("l" + (i + 1));
+                parts.add("INSERT INTO " + InsertUtils.findRelation(createC, i) +
+                        columns(colsAndValues[0], "id, label") + " SELECT " +
+                        values(colsAndValues[1], "id, " + label) + " FROM " + view);
+            }
+        }
 
-    private static StringBuilder translateInsertEdges(StringBuilder sql, MatchClause createC) {
-        String[] colsAndValues;
+        for (int i = 0; i < createC.getRels().size(); i++) {
+            CypRel cR = createC.getRels().get(i);
+            String[] colsAndValues = InsertUtils.findColsAndValuesRels(cR);
+            String left = nodeViews.get(cR.getDirection().equals("left") ? i + 1 : i);
+            String right = nodeViews.get(cR.getDirection().equals("left") ? i : i + 1);
+
+            String rowSQL = columns(colsAndValues[0], "idl, idr, type") + " SELECT " +
+                    values(colsAndValues[1], left + ".id, " + right + ".id, '" + cR.getType() + "'") + " FROM " +
+                    (left.equals(right) ? left : left + ", " + right);
+
+            names.add("r" + (i + 1));
+            parts.add("INSERT INTO edges" + rowSQL);
+            names.add("t" + (i + 1));
+            parts.add("INSERT INTO e$" + cR.getType() + rowSQL);
+            countRow(added, cR);
+        }
 
-        StringBuilder insertEdgesString = new StringBuilder();
+        // every insert is part of the WITH query, and the main statement updates the counts (without the
+        // counts, the last insert is the main statement, and returns nothing).
+        String last = ctx.hasTableCounts() ? updateCounts(added)
+                : parts.remove(parts.size() - 1).replace(" RETURNING id", "");
 
-        colsAndValues = InsertUtils.findColsAndValuesRels(createC.getRels().get(0));
+        StringBuilder sql = new StringBuilder();
+        if (!parts.isEmpty()) {
+            sql.append("WITH ");
+            for (int i = 0; i < parts.size(); i++) {
+                sql.append(names.get(i)).append(" AS (").append(parts.get(i)).append("), ");
+            }
+            sql.setLength(sql.length() - 2);
+            sql.append(" ");
+        }
+        sql.append(last).append(";");
+        return sql.toString();
+    }
 
-        if (!colsAndValues[0].equals("")) insertEdgesString.append(colsAndValues[0]).append(", idl, idr, type) ");
-        else insertEdgesString.append("idl, idr, type) ");
+    /**
+     * Translate a number of CREATE queries together, as one multi-row INSERT for each table (and set of columns)
+     * rather than statements for each query. The ids of the new nodes are allocated before the translation
+     * (see countInsertNodes), so that the rows of the label tables and of the relationships can use them directly.
+     *
+     * @param creates DecodedQuery objects of the CREATE queries.
+     * @param ids     Ids of the nodes created, in the order of the queries and of the nodes within them.
+     * @param ctx     Context of the translation.
+     * @return INSERT statements to execute, in order.
+     */
+    public static List<String> translateInsertBatch(List<DecodedQuery> creates, int[] ids,
+                                                    TranslationContext ctx) {
+        // rows of each INSERT, keyed by the start of the INSERT (the nodes are inserted before relationships).
+        Map<String, StringBuilder> nodeRows = new LinkedHashMap<>();
+        Map<String, StringBuilder> relRows = new LinkedHashMap<>();
+        Map<String, Integer> added = new LinkedHashMap<>();
+        int nextId = 0;
+
+        for (DecodedQuery dQ : creates) {
+            MatchClause createC = dQ.getMc();
+            int[] nodeIds = new int[createC.getNodes().size()];
+
+            for (int i = 0; i < createC.getNodes().size(); i++) {
+                int first = firstWithId(createC, i);
+                if (first != i) {
+                    nodeIds[i] = nodeIds[first];
+                    continue;
+                }
 
-        insertEdgesString.append("VALUES ((");
-        if (!colsAndValues[1].equals("")) insertEdgesString.append(colsAndValues[1]).append(", ");
+                nodeIds[i] = ids[nextId++];
+                String[] colsAndValues = InsertUtils.findColsAndValues(createC, i);
+                String label = findLabel(createC, i);
+                countRow(added, createC, i);
+
+                String nodeCols = columns("id", colsAndValues[0], (label == null) ? null : "label");
+                addRow(nodeRows, "INSERT INTO nodes" + nodeCols, values(nodeIds[i] + "", colsAndValues[1], label));
+                if (label != null) {
+                    addRow(nodeRows, "INSERT INTO " + InsertUtils.findRelation(createC, i) +
+                                    columns(colsAndValues[0], "id, label"),
+                            values(colsAndValues[1], nodeIds[i] + ", " + label));
+                }
+            }
 
-        StringBuilder selectA = new StringBuilder("SELECT id FROM " + InsertUtils.findRelation(createC, 0) + " WHERE ");
-        String[] selectAColsAndValues = InsertUtils.findColsAndValues(createC, 0);
-        String[] values = selectAColsAndValues[1].split(", ");
-        int i = 0;
+            for (int i = 0; i < createC.getRels().size(); i++) {
+                CypRel cR = createC.getRels().get(i);
+                String[] colsAndValues = InsertUtils.findColsAndValuesRels(cR);
+                int left = nodeIds[cR.getDirection().equals("left") ? i + 1 : i];
+                int right = nodeIds[cR.getDirection().equals("left") ? i : i + 1];
+
+                String cols = columns(colsAndValues[0], "idl, idr, type");
+                String row = values(colsAndValues[1], left + ", " + right + ", '" + cR.getType() + "'");
+                addRow(relRows, "INSERT INTO edges" + cols, row);
+                addRow(relRows, "INSERT INTO e$" + cR.getType() + cols, row);
+                countRow(added, cR);
+            }
+        }
 
-        for (String col : selectAColsAndValues[0].split(", ")) {
-            selectA.append(col).append(" = ").append(values[i++].replace("eq#", "").replace("#qe", "")).append(" AND ");
+        List<String> statements = new ArrayList<>();
+        for (Map<String, StringBuilder> rows : Arrays.asList(nodeRows, relRows)) {
+            for (Map.Entry<String, StringBuilder> insert : rows.entrySet()) {
+                StringBuilder values = insert.getValue();
+                values.setLength(values.length() - 2);
+                statements.add(insert.getKey() + " VALUES " + values + ";");
+            }
         }
-        selectA = new StringBuilder(selectA.substring(0, selectA.length() - 5));
-        selectA.append(")");
-
-        StringBuilder selectB = new StringBuilder("SELECT id FROM " + InsertUtils.findRelation(createC, 1) + " WHERE ");
-        String[] selectBColsAndValues = InsertUtils.findColsAndValues(createC, 1);
-        values = selectBColsAndValues[1].split(", ");
-        i = 0;
-        for (String col : selectBColsAndValues[0].split(", ")) {
-            selectB.append(col).append(" = ").append(values[i++].replace("eq#", "").replace("#qe", "")).append(" AND ");
+        if (!added.isEmpty() && ctx.hasTableCounts()) statements.add(updateCounts(added) + ";");
+        return statements;
+    }
+
+    /**
+     * @param decodedQuery DecodedQuery object of a CREATE query.
+     * @return Number of nodes the query creates (the number of ids translateInsertBatch needs for it).
+     */
+    public static int countInsertNodes(DecodedQuery decodedQuery) {
+        int count = 0;
+        for (int i = 0; i < decodedQuery.getMc().getNodes().size(); i++) {
+            if (firstWithId(decodedQuery.getMc(), i) == i) count++;
         }
-        selectB = new StringBuilder(selectB.substring(0, selectB.length() - 5));
-        selectB.append(")");
+        return count;
+    }
 
-        String relType = createC.getRels().get(0).getType();
+    /**
+     * Add the rows inserted for the node at index to the number of rows added to each table.
+     */
+    private static void countRow(Map<String, Integer> added, MatchClause createC, int index) {
+        addCount(added, "nodes");
+        if (createC.getNodes().get(index).getType() != null)
+            addCount(added, InsertUtils.findRelation(createC, index).toLowerCase());
+    }
 
-        insertEdgesString.append(selectA).append(", (")
-                .append(selectB).append(", '").append(relType).append("'");
+    /**
+     * Add the rows inserted for the relationship cR to the number of rows added to each table.
+     */
+    private static void countRow(Map<String, Integer> added, CypRel cR) {
+        addCount(added, "edges");
+        addCount(added, "e$" + cR.getType().toLowerCase());
+    }
 
-        sql.append("INSERT INTO edges (").append(insertEdgesString.toString()).append("); ");
-        sql.append("INSERT INTO e$").append(relType).append(" (").append(insertEdgesString.toString()).append(");");
+    private static void addCount(Map<String, Integer> added, String table) {
+        Integer count = added.get(table);
+        added.put(table, (count == null) ? 1 : count + 1);
+    }
 
-        return sql;
+    /**
+     * The table table_counts holds the number of rows of each node and relationship table, so that counts of
+     * whole tables are answered without scanning them (see TableCount). Every insert adds to the counts in
+     * the same statement (or batch) that inserts the rows.
+     *
+     * @param added Number of rows added to each table.
+     * @return UPDATE of the counts (without a semicolon).
+     */
+    private static String updateCounts(Map<String, Integer> added) {
+        StringBuilder sb = new StringBuilder("UPDATE table_counts c SET total = c.total + d.k FROM (VALUES ");
+        for (Map.Entry<String, Integer> e : added.entrySet()) {
+            sb.append("('").append(e.getKey()).append("', ").append(e.getValue()).append("), ");
+        }
+        sb.setLength(sb.length() - 2);
+        sb.append(") AS d(name, k) WHERE c.name = d.name");
+        return sb.toString();
     }
 
-    private static StringBuilder translateInsertNodes(StringBuilder sql, MatchClause createC) {
-        String[] colsAndValues;
-
-        for (int i = 0; i < 2; i++) {
-            String relation = InsertUtils.findRelation(createC, i);
-            colsAndValues = InsertUtils.findColsAndValues(createC, i);
-
-            sql.append("INSERT INTO nodes");
-            sql.append("(");
-            sql.append(colsAndValues[0]).append(", label) ");
-            sql.append("VALUES (");
-            sql.append(colsAndValues[1]).append(", '").append(relation.replace("_", ", ")).append("');");
-
-            sql.append("INSERT INTO ");
-            sql.append(relation).append("(");
-            sql.append(colsAndValues[0]).append(", id, label) ");
-            sql.append("VALUES (");
-            sql.append(colsAndValues[1]).append(", (SELECT id FROM nodes WHERE ");
-
-            String[] values = colsAndValues[1].split(", ");
-            int j = 0;
-            for (String col : colsAndValues[0].split(", ")) {
-                sql.append(col).append(" = ").append(values[j++]).append(" AND ");
-            }
-            sql.setLength(sql.length() - 5);
-            sql.append("), '").append(relation.replace("_", ", ")).append("'); ");
+    private static void addRow(Map<String, StringBuilder> rows, String insert, String values) {
+        StringBuilder sb = rows.get(insert);
+        if (sb == null) {
+            sb = new StringBuilder();
+            rows.put(insert, sb);
         }
+        sb.append("(").append(values).append("), ");
+    }
 
-        return sql;
+    /**
+     * @return Position of the first node of the CREATE clause with the same id as the node at index (a node
+     * appearing more than once in the pattern is only created once).
+     */
+    private static int firstWithId(MatchClause createC, int index) {
+        String id = createC.getNodes().get(index).getId();
+        if (id == null) return index;
+        for (int i = 0; i < index; i++) {
+            if (id.equals(createC.getNodes().get(i).getId())) return i;
+        }
+        return index;
+    }
+
+    /**
+     * @return Value of the label column for the node at index (quoted), or null if it has no label.
+     */
+    private static String findLabel(MatchClause createC, int index) {
+        if (createC.getNodes().get(index).getType() == null) return null;
+        return "'" + InsertUtils.findRelation(createC, index).replace("_", ", ") + "'";
+    }
+
+    /**
+     * Join lists of columns (or values) that may be empty, or null, with commas.
+     */
+    private static String joinLists(String... lists) {
+        StringBuilder sb = new StringBuilder();
+        for (String list : lists) {
+            if (list == null || list.isEmpty()) continue;
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(list);
+        }
+        return sb.toString();
+    }
+
+    private static String columns(String... lists) {
+        String cols = joinLists(lists);
+        return cols.isEmpty() ? "" : "(" + cols + ")";
     }
 
-    public static String translateDelete(DecodedQuery decodedQuery) {
+    private static String values(String... lists) {
+        return joinLists(lists);
+    }
+
+    /**
+     * Translate a (DETACH) DELETE to a single SQL statement. The ids of the nodes matched are found once, and
+     * each delete is a data-modifying part of the same WITH query, driven by those ids. The main statement
+     * takes the rows deleted from each table off its count (see updateCounts), if the schema has them.
+     *
+     * @param decodedQuery DecodedQuery object of the Cypher input.
+     * @param ctx          Context of the translation.
+     * @return SQL deleting the nodes and their relationships.
+     */
+    public static String translateDelete(DecodedQuery decodedQuery, TranslationContext ctx) {
         StringBuilder sql = new StringBuilder();
         MatchClause deleteC = decodedQuery.getMc();
         String relation = InsertUtils.findRelation(deleteC, 0);
         String[] colsAndValues = InsertUtils.findColsAndValues(deleteC, 0);
 
-        // delete the relationships belonging to the node/nodes.
-        sql = deleteFromEdgeRelations(sql, colsAndValues);
-
-        sql.append("DELETE FROM nodes WHERE ");
+        sql.append("WITH matched AS (SELECT id FROM nodes WHERE ");
 
         String[] values = colsAndValues[1].split(", ");
         int i = 0;
@@ -189,39 +382,50 @@ public class SQLTranslate {
 
         if (sql.toString().endsWith(" AND ")) sql.setLength(sql.length() - 5);
 
-        sql.append(";");
+        sql.append("), ");
 
-        sql.append("DELETE FROM ");
-        sql.append(relation).append(" WHERE ");
-        i = 0;
-        for (String col : colsAndValues[0].split(", ")) {
-            sql.append(col).append(" = ").append(values[i++]).append(" AND ");
+        // delete the relationships belonging to the node/nodes.
+        sql = deleteFromEdgeRelations(sql, ctx);
+
+        if (!ctx.hasTableCounts()) {
+            sql.append("delNodes AS (DELETE FROM nodes WHERE id IN (SELECT id FROM matched)) ");
+            sql.append("DELETE FROM ").append(relation).append(" WHERE id IN (SELECT id FROM matched);");
+            return sql.toString();
         }
 
-        if (sql.toString().endsWith(" AND ")) sql.setLength(sql.length() - 5);
+        sql.append("delNodes AS (DELETE FROM nodes WHERE id IN (SELECT id FROM matched) RETURNING id), ");
+        sql.append("delLabel AS (DELETE FROM ").append(relation)
+                .append(" WHERE id IN (SELECT id FROM matched) RETURNING id) ");
 
-        sql.append(";");
+        sql.append("UPDATE table_counts c SET total = c.total - d.k FROM (");
+        sql.append("SELECT 'edges' AS name, count(*) AS k FROM delEdges UNION ALL ");
+        sql.append("SELECT 'e$' || lower(type), count(*) FROM delEdges GROUP BY lower(type) UNION ALL ");
+        sql.append("SELECT 'nodes', count(*) FROM delNodes UNION ALL ");
+        sql.append("SELECT '").append(relation.toLowerCase())
+                .append("', count(*) FROM delLabel) AS d WHERE c.name = d.name;");
         return sql.toString();
     }
 
-    private static StringBuilder deleteFromEdgeRelations(StringBuilder sql, String[] colsAndValues) {
-        StringBuilder whereString = new StringBuilder();
-
-        sql.append("DELETE FROM edges WHERE idl in (SELECT id FROM nodes WHERE ");
-
-        String[] values = colsAndValues[1].split(", ");
-        int i = 0;
-        for (String col : colsAndValues[0].split(", ")) {
-            whereString.append(col).append(" = ").append(values[i++]).append(" AND ");
-        }
-
-        if (whereString.toString().endsWith(" AND ")) whereString.setLength(whereString.length() - 5);
-
-        sql.append(whereString).append(") OR idr in (SELECT id FROM nodes WHERE ").append(whereString).append("); ");
-
-        for (String s : C2SMain.allRelTypes) {
-            sql.append(" DELETE FROM e$").append(s).append(" WHERE idl in (SELECT id FROM nodes WHERE ");
-            sql.append(whereString).append("); ");
+    /**
+     * Delete the relationships of the nodes matched from the edges table, and from the table of each type of
+     * relationship. If the schema has the trigger doing so, the trigger deletes them from the tables of only
+     * the types present in the rows deleted. Otherwise there is a delete for every type of relationship, and
+     * only the relationships removed from the edges table are looked for in the table of each type.
+     *
+     * @param sql SQL generated so far (the WITH query with the ids of the nodes matched in the view matched).
+     * @param ctx Context of the translation.
+     * @return SQL with the deletes of the relationships added.
+     */
+    private static StringBuilder deleteFromEdgeRelations(StringBuilder sql, TranslationContext ctx) {
+        sql.append("delEdges AS (DELETE FROM edges WHERE idl IN (SELECT id FROM matched) ");
+        sql.append("OR idr IN (SELECT id FROM matched) RETURNING idl, idr, type), ");
+        if (ctx.hasTypedEdgesTrigger()) return sql;
+
+        int i = 1;
+        for (String s : ctx.getAllRelTypes()) {
+            sql.append("delRel").append(i++).append(" AS (DELETE FROM e$").append(s);
+            sql.append(" WHERE (idl, idr) IN (SELECT idl, idr FROM delEdges WHERE type = '").append(s);
+            sql.append("')), ");
         }
 
         return sql;
@@ -273,11 +477,11 @@ public class SQLTranslate {
      *
      * @param rc    Return Clause of the Cypher query.
      * @param sql   Query before GROUP BY
-     * @param props Properties file (see C2S_props.properties for further details).
+     * @param ctx   Context of the translation.
      * @return Query after GROUP BY
      * @throws IOException Error reading the associated metafile from the workarea location.
      */
-    private static StringBuilder obtainGroupByClause(ReturnClause rc, StringBuilder sql, C2SProperties props)
+    private static StringBuilder obtainGroupByClause(ReturnClause rc, StringBuilder sql, TranslationContext ctx)
             throws IOException {
         sql.append(" GROUP BY ");
 
@@ -295,8 +499,13 @@ public class SQLTranslate {
                 if (cR.getType().equals("node")) ident = "n0" + nodeTableCount;
                 else ident = "a";
                 sql.append(ident).append(".").append(cR.getField()).append(", ");
+            } else if (cR.getCount() == COUNT_FALSE && !cR.hasAggFunc() && "node".equals(cR.getType())
+                    && (cR.getField() != null || ctx.hasNodePrimaryKeys())) {
+                // a node is grouped by its primary key (the other columns depend on it), and a property by itself.
+                sql.append("n0").append(nodeTableCount).append(".")
+                        .append(cR.getField() == null ? "id" : cR.getField()).append(", ");
             } else if (cR.getCount() == COUNT_FALSE && !cR.hasAggFunc()) {
-                FileInputStream fis = new FileInputStream(props.getWspace() + "/meta_nodeProps.txt");
+                FileInputStream fis = new FileInputStream(ctx.getProps().getWspace() + "/meta_nodeProps.txt");
                 BufferedReader br = new BufferedReader(new InputStreamReader(fis));
                 String line;
                 while ((line = br.readLine()) != null) {
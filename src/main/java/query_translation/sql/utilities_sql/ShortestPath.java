@@ -20,63 +20,152 @@
 package query_translation.sql.utilities_sql;
 
 import intermediate_rep.*;
-import production.C2SProperties;
+import production.TranslationContext;
+import translator.CypherParameters;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Class for translating Cypher with the shortestPath function to SQL.
  */
 public class ShortestPath extends AbstractTranslation {
+    // name of the view of the nodes reached by the search, with the length of the shortest path to them.
+    private static final String REACHED = "spReached";
+
     /**
-     * Use properties of the first node in the path, and if there are any, add them to the SQL statement
-     * being generated.
+     * Use the label and properties of a node in the path, and if there are any, add them to the SQL statement
+     * being generated as a WHERE clause.
      *
-     * @param cypNode Cypher node for whom the properties/label are being extracted and used.
+     * @param cypNode  Cypher node for whom the properties/label are being extracted and used.
+     * @param sqlLabel Alias of the nodes table in the SQL.
+     * @param ctx      Context of the translation.
      * @return String of newly generated section of SQL.
      */
-    private static String getFirstStep(CypNode cypNode) {
+    private static String getNodeWhere(CypNode cypNode, String sqlLabel, TranslationContext ctx) {
         StringBuilder sql = new StringBuilder();
-        sql.append("nodes q ON leftnode = id");
 
         boolean hasWhere = false;
 
         if (cypNode.getType() != null) {
             sql.append(" WHERE label LIKE ");
             hasWhere = true;
-            sql.append(TranslateUtils.genLabelLike(cypNode, "q"));
+            sql.append(TranslateUtils.genLabelLike(cypNode, sqlLabel));
         }
 
-        if (cypNode.getProps() != null) {
+        if (cypNode.hasConditions()) {
             if (hasWhere) sql.append(" AND ");
             else sql.append(" WHERE ");
-            sql = TranslateUtils.getWholeWhereClause(sql, cypNode, "q");
+            sql = TranslateUtils.getWholeWhereClause(sql, cypNode, sqlLabel, ctx);
         }
 
         return sql.toString();
     }
 
     /**
-     * As part of the translation to SQL, multiple views are built up for each step in the path. To return
-     * the correct shortestPath, the individual results from each step need to be combined together, and
-     * that is what the SQL in this method is doing.
+     * Breadth first search from every node the path may start at. Each row of the recursive query holds the
+     * nodes first reached at one depth from one start node (the frontier), and all the nodes reached so far
+     * from it (visited), so a node is never expanded twice for the same start node. The search stops when
+     * the frontier is empty, at the maximum depth, or once every node the path may end at has been reached.
+     * <p>
+     * With a lower bound above one, the frontier holds every node at the end of a path of exactly that many
+     * edges from the start, visited or not, until the lower bound is reached; the search from there on finds
+     * the shortest path of at least that length, rather than dropping the nodes with a shorter path.
      *
-     * @param lastIndex  The lastIndex value ensures that the name of this view will be distinct from the ones
-     *                   previously created in this same query.
-     * @param amountHigh To make sure all the views are combined, need to know how many were created.
-     * @return SQL representing the joining of all the individual views previously created.
+     * @param cN1        Node the path starts at.
+     * @param cN2        Node the path ends at.
+     * @param amountLow  Lower bound on the length of the path.
+     * @param amountHigh Upper bound on the length of the path.
+     * @param ctx        Context of the translation.
+     * @return SQL of the recursive query, and of the view of the nodes reached (with their depth and start).
      */
-    private static String joinViewsTogether(int lastIndex, int amountHigh) {
+    private static String getSearch(CypNode cN1, CypNode cN2, int amountLow, int amountHigh,
+                                    TranslationContext ctx) {
         StringBuilder sql = new StringBuilder();
-        sql.append(alphabet[lastIndex]).append(" AS (SELECT * FROM a");
-        for (int i = 1; i < amountHigh; i++) {
-            sql.append(" UNION ALL SELECT * FROM ").append(alphabet[i]);
+        boolean targetsKnown = cN2.getType() != null || cN2.hasConditions();
+
+        sql.append("WITH RECURSIVE ");
+        if (targetsKnown) {
+            sql.append("spTargets AS (SELECT array_agg(id) AS ids FROM nodes n01")
+                    .append(getNodeWhere(cN2, "n01", ctx)).append("), ");
+        }
+
+        sql.append("bfs(Start, Frontier, Visited, Depth) AS (SELECT id, ARRAY[id], ARRAY[id], 0 FROM nodes q");
+        sql.append(getNodeWhere(cN1, "q", ctx));
+        if (amountLow > 1) {
+            sql.append(" UNION ALL SELECT Start, NewNodes, CASE WHEN Depth < ").append(amountLow);
+            sql.append(" THEN NewNodes ELSE Visited || NewNodes END, Depth + 1 FROM bfs, LATERAL ");
+        } else {
+            sql.append(" UNION ALL SELECT Start, NewNodes, Visited || NewNodes, Depth + 1 FROM bfs, LATERAL ");
+        }
+        sql.append("(SELECT array_agg(DISTINCT x) AS NewNodes FROM adjList_from, unnest(rightnode) AS x ");
+        if (amountLow > 1) {
+            sql.append("WHERE leftnode = ANY(Frontier) AND (Depth < ").append(amountLow)
+                    .append(" OR NOT x = ANY(Visited))) step ");
+        } else {
+            sql.append("WHERE leftnode = ANY(Frontier) AND NOT x = ANY(Visited)) step ");
+        }
+        sql.append("WHERE NewNodes IS NOT NULL AND Depth < ").append(amountHigh);
+        if (targetsKnown) {
+            sql.append(" AND ");
+            if (amountLow > 1) sql.append("(Depth < ").append(amountLow).append(" OR ");
+            sql.append("NOT (SELECT ids FROM spTargets) <@ Visited");
+            if (amountLow > 1) sql.append(")");
         }
         sql.append("), ");
+
+        sql.append(REACHED).append(" AS (SELECT unnest(Frontier) AS xx, Depth, Start FROM bfs WHERE Depth >= ")
+                .append(amountLow).append("), ");
+        return sql.toString();
+    }
+
+    /**
+     * Run the search with the PathSearch of the context rather than in SQL, and bind the nodes reached (with
+     * the length of the shortest path to them, and the node the path started at) to the SQL as arrays, so the
+     * text of the SQL does not grow with the number of nodes reached.
+     *
+     * @param cN1        Node the path starts at.
+     * @param cN2        Node the path ends at.
+     * @param amountLow  Lower bound on the length of the path.
+     * @param amountHigh Upper bound on the length of the path.
+     * @param ctx        Context of the translation (with a PathSearch set).
+     * @return SQL of the view of the nodes reached, or null if the search failed.
+     */
+    private static String getReached(CypNode cN1, CypNode cN2, int amountLow, int amountHigh,
+                                     TranslationContext ctx) {
+        String startSQL = "SELECT id FROM nodes q" + getNodeWhere(cN1, "q", ctx) + ";";
+        String endSQL = (cN2.getType() != null || cN2.hasConditions()) ?
+                "SELECT id FROM nodes n01" + getNodeWhere(cN2, "n01", ctx) + ";" : null;
+
+        List<int[]> paths;
+        try {
+            paths = ctx.getPathSearch().shortestPaths(startSQL, endSQL, amountLow, amountHigh);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        List<Integer> xx = new ArrayList<>();
+        List<Integer> depth = new ArrayList<>();
+        List<Integer> start = new ArrayList<>();
+        for (int[] path : paths) {
+            start.add(path[0]);
+            xx.add(path[1]);
+            depth.add(path[2]);
+        }
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("WITH ").append(REACHED).append("(xx, Depth, Start) AS (SELECT * FROM unnest(");
+        sql.append(CypherParameters.arrayMarker(xx)).append("::int[], ");
+        sql.append(CypherParameters.arrayMarker(depth)).append("::int[], ");
+        sql.append(CypherParameters.arrayMarker(start)).append("::int[])), ");
         return sql.toString();
     }
 
-    private static String getFinalSelect(int lastIndex, CypNode cN2, ReturnClause rc, Map<String, String> alias) {
+    private static String getFinalSelect(CypNode cN2, ReturnClause rc, Map<String, String> alias,
+                                         TranslationContext ctx) {
         StringBuilder sql = new StringBuilder();
         StringBuilder thingsToGroupBy = new StringBuilder();
 
@@ -95,13 +184,13 @@ public class ShortestPath extends AbstractTranslation {
             } else thingsToGroupBy.append("id").append(", ");
         }
 
-        String table = TranslateUtils.findOptimisedTable(rc);
+        String table = TranslateUtils.findOptimisedTable(rc, ctx);
 
         if (sql.toString().endsWith(", ")) {
             sql.setLength(sql.length() - 2);
         }
         sql.append(", min(Depth), xx, Start ");
-        sql.append("FROM ").append(table).append(" n01 INNER JOIN ").append(alphabet[lastIndex]);
+        sql.append("FROM ").append(table).append(" n01 INNER JOIN ").append(REACHED);
         sql.append(" ON xx = id");
 
         boolean hasWhere = false;
@@ -112,10 +201,10 @@ public class ShortestPath extends AbstractTranslation {
             sql.append(TranslateUtils.genLabelLike(cN2, "n01"));
         }
 
-        if (cN2.getProps() != null) {
+        if (cN2.hasConditions()) {
             if (hasWhere) sql.append(" AND ");
             else sql.append(" WHERE ");
-            sql = TranslateUtils.getWholeWhereClause(sql, cN2, "n01");
+            sql = TranslateUtils.getWholeWhereClause(sql, cN2, "n01", ctx);
         }
 
         thingsToGroupBy = new StringBuilder(thingsToGroupBy.substring(0, thingsToGroupBy.length() - 2));
@@ -151,21 +240,19 @@ public class ShortestPath extends AbstractTranslation {
     }
 
     @Override
-    public StringBuilder translate(StringBuilder shortPath, DecodedQuery dQMainPath, C2SProperties props) {
-        shortPath.append("WITH a AS(SELECT unnest(rightnode) AS xx, 1 AS Depth, ARRAY[id] AS Path, id AS Start ");
-        shortPath.append("FROM adjList_from INNER JOIN ");
-
+    public StringBuilder translate(StringBuilder shortPath, DecodedQuery dQMainPath, TranslationContext ctx) {
         MatchClause matchC = dQMainPath.getMc();
         String direction = "none";
+        int amountLow = 1;
         int amountHigh = 0;
 
         // work out direction of query and upper and lower bound on number of edges
         // the query is allowed to traverse.
         for (CypRel cR : matchC.getRels()) {
-            if (cR.getDirection().contains("var")) {
-                String dirAndAmount[] = cR.getDirection().split("#");
-                direction = dirAndAmount[1];
-                amountHigh = Integer.parseInt(dirAndAmount[0].split("-")[1]);
+            if (cR.isVarLength()) {
+                direction = cR.getVarDirection();
+                amountLow = cR.getMinHops();
+                amountHigh = (cR.getMaxHops() == -1) ? ctx.getProps().getMaxPathLength() : cR.getMaxHops();
             }
         }
 
@@ -181,30 +268,15 @@ public class ShortestPath extends AbstractTranslation {
             cN2 = matchC.getNodes().get(1);
         }
 
-        shortPath.append(getFirstStep(cN1));
-        shortPath.append("), ");
-
-        int lastIndex = 1;
-
-        for (int i = 1; i < amountHigh; i++) {
-            shortPath.append(alphabet[i]).append(" AS (SELECT unnest(rightnode) AS xx, ");
-            shortPath.append(i + 1).append(" AS Depth, ");
-            shortPath.append(alphabet[i - 1]).append(".Path || ARRAY[xx] AS Path, ");
-            shortPath.append(alphabet[i - 1]).append(".Path[1] AS Start FROM adjList_from INNER JOIN ");
-            shortPath.append(alphabet[i - 1]).append(" ON leftnode = xx), ");
-            lastIndex = i;
-        }
-
-        if (!shortPath.toString().endsWith(", ")) {
-            shortPath.append(", ");
-        }
-
-        lastIndex++;
-
-        shortPath.append(joinViewsTogether(lastIndex, amountHigh));
+        // parameters are only bound when the SQL is executed, so those searches are left to the SQL.
+        String reached = null;
+        if (ctx.getPathSearch() != null && ctx.getParsedCypher() != null
+                && ctx.getParsedCypher().getParameters().isEmpty())
+            reached = getReached(cN1, cN2, amountLow, amountHigh, ctx);
+        shortPath.append((reached != null) ? reached : getSearch(cN1, cN2, amountLow, amountHigh, ctx));
 
-        shortPath.append(getFinalSelect(lastIndex, cN2, dQMainPath.getRc(),
-                dQMainPath.getCypherAdditionalInfo().getAliasMap()));
+        shortPath.append(getFinalSelect(cN2, dQMainPath.getRc(),
+                dQMainPath.getCypherAdditionalInfo().getAliasMap(), ctx));
 
         if (dQMainPath.getOc() != null)
             shortPath = SQLTranslate.obtainOrderByClause(dQMainPath.getOc(), dQMainPath.getRc(), shortPath, "n01");
@@ -20,7 +20,7 @@
 package query_translation.sql.utilities_sql;
 
 import intermediate_rep.*;
-import production.C2SProperties;
+import production.TranslationContext;
 
 import java.util.Map;
 
@@ -28,9 +28,12 @@ import java.util.Map;
  * Class for translating Cypher with a single variable length path to SQL.
  */
 public class SingleVar extends AbstractTranslation {
+    // name of the recursive query finding the nodes at the end of the path.
+    private static final String VAR_PATH = "varPath";
+
     private static StringBuilder getFinalSelect(StringBuilder sql, ReturnClause returnC,
                                                 Map<String, String> alias, CypNode cn2,
-                                                int amountHigh, boolean usesDistinct) {
+                                                int amountLow, boolean usesDistinct, TranslationContext ctx) {
         sql.append(" SELECT ");
         if (usesDistinct) sql.append("DISTINCT ");
 
@@ -58,18 +61,18 @@ public class SingleVar extends AbstractTranslation {
         sql.setLength(sql.length() - 2);
         sql.append(" ");
 
-        String table = TranslateUtils.findOptimisedTable(returnC);
+        String table = TranslateUtils.findOptimisedTable(returnC, ctx);
         sql.append("FROM ").append(table).append(" n01 ");
 
-        sql.append(" INNER JOIN ").append(alphabet[amountHigh % 26])
-                .append(extendID[amountHigh / 26]).append(" ON xx = id");
+        sql.append(" INNER JOIN ").append(VAR_PATH).append(" ON xx = id");
+        if (amountLow > 0) sql.append(" AND depth >= ").append(amountLow);
 
         boolean hasWhere = false;
 
-        if (cn2.getProps() != null) {
+        if (cn2.hasConditions()) {
             sql.append(" WHERE ");
             hasWhere = true;
-            TranslateUtils.getWholeWhereClause(sql, cn2, "n01");
+            TranslateUtils.getWholeWhereClause(sql, cn2, "n01", ctx);
         }
 
         if (cn2.getType() != null && table.equals("nodes")) {
@@ -86,7 +89,7 @@ public class SingleVar extends AbstractTranslation {
     }
 
     @Override
-    public StringBuilder translate(StringBuilder sql, DecodedQuery decodedQuery, C2SProperties props) {
+    public StringBuilder translate(StringBuilder sql, DecodedQuery decodedQuery, TranslationContext ctx) {
         MatchClause matchC = decodedQuery.getMc();
 
         String direction = "none";
@@ -96,11 +99,10 @@ public class SingleVar extends AbstractTranslation {
         // work out direction of query and upper and lower bound on number of edges
         // the query is allowed to traverse.
         for (CypRel cR : matchC.getRels()) {
-            if (cR.getDirection().contains("var")) {
-                String dirAndAmount[] = cR.getDirection().split("#");
-                direction = dirAndAmount[1];
-                amountLow = Integer.parseInt(dirAndAmount[0].split("-")[0].substring(3));
-                amountHigh = Integer.parseInt(dirAndAmount[0].split("-")[1]);
+            if (cR.isVarLength()) {
+                direction = cR.getVarDirection();
+                amountLow = cR.getMinHops();
+                amountHigh = (cR.getMaxHops() == -1) ? ctx.getProps().getMaxPathLength() : cR.getMaxHops();
             }
         }
 
@@ -109,43 +111,47 @@ public class SingleVar extends AbstractTranslation {
         CypNode cN1 = matchC.getNodes().get(0);
         CypNode cN2 = matchC.getNodes().get(1);
 
-        sql.append("WITH ");
-
-        for (int i = 0; i <= amountHigh; i++) {
-            sql.append(alphabet[i % 26]).append(extendID[i / 26]).append(" AS (SELECT ");
+        // the nodes reached are found by a recursive query, where each step follows the edges from the nodes
+        // reached by the step before (the frontier), until amountHigh hops or until no nodes are left to follow.
+        // If the number of paths reaching each node does not change the results, the frontier only keeps each
+        // node once per depth (UNION), otherwise it keeps a row for every path (UNION ALL).
+        sql.append("WITH RECURSIVE ").append(VAR_PATH).append("(xx, depth) AS (SELECT zz.id, 0 FROM ");
 
-            if (i == amountHigh) {
-                sql.append("xx FROM ");
-                int j = i;
-                while (j > (amountLow - 1)) {
-                    j--;
-                    sql.append(alphabet[j % 26]).append(extendID[j / 26]).append(" UNION ALL SELECT xx FROM ");
-                }
-                sql.setLength(sql.length() - 26);
-                sql.append(")");
-            } else {
-                sql.append("unnest(rightnode) AS xx FROM ").append(matView).append(" INNER JOIN ");
-
-                if (i == 0) {
-                    // use node data
-                    String relToUse = TranslateUtils.getLabelType(cN1.getType(), props);
-                    sql.append(relToUse).append(" zz ON leftnode = zz.id");
-                    if (cN1.getProps() != null) {
-                        sql.append(" WHERE ");
-                        TranslateUtils.getWholeWhereClause(sql, cN1, "zz");
-                        if (sql.toString().endsWith(" and ")) sql.setLength(sql.length() - 5);
-                        else if (sql.toString().endsWith(" or ")) sql.setLength(sql.length() - 4);
-                    }
-                } else {
-                    sql.append(alphabet[(i - 1) % 26]).append(extendID[(i - 1) / 26]).append(" ON leftnode = xx");
-                }
-                sql.append("), ");
-            }
+        // use node data
+        String relToUse = TranslateUtils.getLabelType(cN1.getType(), ctx);
+        sql.append(relToUse).append(" zz");
+        if (cN1.hasConditions()) {
+            sql.append(" WHERE ");
+            TranslateUtils.getWholeWhereClause(sql, cN1, "zz", ctx);
+            if (sql.toString().endsWith(" and ")) sql.setLength(sql.length() - 5);
+            else if (sql.toString().endsWith(" or ")) sql.setLength(sql.length() - 4);
         }
 
+        sql.append((pathCountMatters(decodedQuery)) ? " UNION ALL " : " UNION ");
+        sql.append("SELECT unnest(rightnode), depth + 1 FROM ").append(matView).append(" INNER JOIN ")
+                .append(VAR_PATH).append(" ON leftnode = xx WHERE depth < ").append(amountHigh).append(")");
+
         sql = getFinalSelect(sql, decodedQuery.getRc(), decodedQuery.getCypherAdditionalInfo().getAliasMap(),
-                cN2, amountHigh, decodedQuery.getCypherAdditionalInfo().hasDistinct());
+                cN2, amountLow, decodedQuery.getCypherAdditionalInfo().hasDistinct(), ctx);
 
         return sql;
     }
+
+    /**
+     * Checks whether the results of the query depend on the number of paths reaching each node, or only on
+     * which nodes are reached (as when returning DISTINCT items, count(DISTINCT ...), min(...), or max(...)).
+     *
+     * @param decodedQuery DecodedQuery object of the Cypher input.
+     * @return True if every path must be kept.
+     */
+    private static boolean pathCountMatters(DecodedQuery decodedQuery) {
+        if (decodedQuery.getCypherAdditionalInfo().hasDistinct()) return false;
+
+        for (CypReturn cR : decodedQuery.getRc().getItems()) {
+            boolean setOnly = cR.getCount() == CypCount.COUNT_DISTINCT || cR.getAggFunc() == CypAggFuncs.AGG_MIN
+                    || cR.getAggFunc() == CypAggFuncs.AGG_MAX;
+            if (!setOnly) return true;
+        }
+        return false;
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query_translation.sql.utilities_sql;
+
+import intermediate_rep.*;
+import production.TranslationContext;
+
+import java.util.Map;
+
+/**
+ * Class for translating Cypher counting every node with a label, or every relationship of a type, such as
+ * MATCH (n:Meta) RETURN count(n) or MATCH ()-[r:LOC_OBJ]-{@literal >}() RETURN count(r). The answer is the
+ * number of rows of a single table, which is kept in the table table_counts (created by the schema conversion,
+ * and updated by the translations of CREATE and DELETE), so the query is a lookup rather than a scan. Schemas
+ * converted without the table are counted by scanning the table as before.
+ */
+class TableCount extends AbstractTranslation {
+    /**
+     * The rewrite only applies to a node, or a single (fixed length, directed) relationship between two nodes,
+     * with no predicates or labels other than the one being counted, and where the query returns nothing but
+     * a count of one of the parts of the pattern.
+     *
+     * @param decodedQuery DecodedQuery object of the Cypher input.
+     * @param ctx          Context of the translation.
+     * @return True if the query can be answered from the count of a table.
+     */
+    static boolean matches(DecodedQuery decodedQuery, TranslationContext ctx) {
+        if (!ctx.hasTableCounts()) return false;
+        if (!ctx.getWithMapping().isEmpty() || ctx.getMappingMultipleWith() != null) return false;
+        if (decodedQuery.getOc() != null || decodedQuery.getCypherAdditionalInfo().hasDistinct()) return false;
+        if (countedTable(decodedQuery.getMc(), ctx) == null) return false;
+
+        ReturnClause returnC = decodedQuery.getRc();
+        if (returnC.getItems().size() != 1) return false;
+        CypReturn item = returnC.getItems().get(0);
+        if (item.getCount() != 1 || item.getField() != null || item.getCaseString() != null || item.hasAggFunc())
+            return false;
+
+        // every part of the pattern is counted once for each match of it.
+        String id = item.getNodeID();
+        if (id == null) return false;
+        for (CypNode cN : decodedQuery.getMc().getNodes()) {
+            if (id.equals(cN.getId())) return true;
+        }
+        for (CypRel cR : decodedQuery.getMc().getRels()) {
+            if (id.equals(cR.getId())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param matchC MatchClause of the Cypher input.
+     * @param ctx    Context of the translation.
+     * @return Table holding exactly the matches of the pattern (in lower case, as in table_counts), or null if
+     * there is no such table.
+     */
+    private static String countedTable(MatchClause matchC, TranslationContext ctx) {
+        if (matchC.isVarRel()) return null;
+
+        if (matchC.getRels().isEmpty()) {
+            if (matchC.getNodes().size() != 1) return null;
+            CypNode cN = matchC.getNodes().get(0);
+            if (cN.hasConditions()) return null;
+            if (cN.getType() == null) return "nodes";
+
+            // nodes with the label are only all in one table if the table is named after the label alone.
+            String table = TranslateUtils.getLabelType(cN.getType(), ctx);
+            return table.equals(cN.getType().replace(", ", "_")) ? table.toLowerCase() : null;
+        }
+
+        if (matchC.getRels().size() != 1 || matchC.getNodes().size() != 2) return null;
+        CypRel cR = matchC.getRels().get(0);
+        CypNode left = matchC.getNodes().get(0);
+        CypNode right = matchC.getNodes().get(1);
+        // (a)--{@literal >}(a) only matches loops, and an undirected pattern matches most edges twice.
+        if (left.getId() != null && left.getId().equals(right.getId())) return null;
+        if (cR.hasConditions() || cR.getDirection().equals("none")) return null;
+        if (left.getType() != null || left.hasConditions() || right.getType() != null || right.hasConditions())
+            return null;
+
+        if (cR.getType() == null) return "edges";
+        for (String type : ctx.getAllRelTypes()) {
+            if (type.equalsIgnoreCase(cR.getType())) return "e$" + type.toLowerCase();
+        }
+        return null;
+    }
+
+    @Override
+    public StringBuilder translate(StringBuilder sql, DecodedQuery decodedQuery, TranslationContext ctx) {
+        CypReturn item = decodedQuery.getRc().getItems().get(0);
+        Map<String, String> alias = decodedQuery.getCypherAdditionalInfo().getAliasMap();
+        String as = TranslateUtils.useAlias("count(" + item.getNodeID() + ")", item.getField(), alias);
+
+        String table = countedTable(decodedQuery.getMc(), ctx);
+        if (!table.equals("nodes") && !table.equals("edges")) usesOptimalTable = true;
+
+        // the column is named count (as with count(...)) unless the query gives it another name.
+        sql.append("SELECT total").append(as.isEmpty() ? " AS count" : as)
+                .append(" FROM table_counts WHERE name = '").append(table).append("'");
+        return sql;
+    }
+}
@@ -24,73 +24,59 @@ import com.google.gson.JsonObject;
 import intermediate_rep.CypNode;
 import intermediate_rep.CypRel;
 import intermediate_rep.CypReturn;
+import intermediate_rep.CypWhere;
 import intermediate_rep.ReturnClause;
-import production.C2SMain;
 import production.C2SProperties;
-import query_translation.sql.conversion_types.Multiple_With_Cypher;
+import production.TranslationContext;
+import translator.CypherParameters;
 
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
 
 /**
  * Class with useful translation methods that can be used regardless of the type of Cypher query
  * actually being translated.
  */
 class TranslateUtils {
-    private static StringBuilder genWhere(StringBuilder sql, JsonObject obj, String sqlLabel) {
-        Set<Map.Entry<String, JsonElement>> entries = obj.entrySet();
-
-        TreeMap<Integer, StringBuilder> whereComps = new TreeMap<>();
-
+    /**
+     * Generate the SQL for the properties and WHERE predicates of a node or relationship. The properties are
+     * joined with AND, and the predicates follow in the order they appear in the original WHERE clause, each
+     * with its brackets and the boolean operator following it.
+     *
+     * @param sql        Original SQL statement.
+     * @param props      Properties of the node/relationship (may be null).
+     * @param conditions WHERE predicates about the node/relationship.
+     * @param sqlLabel   Alias of the table storing the node/relationship in the SQL.
+     * @param ctx        Context of the translation.
+     * @return New SQL with the conditions added.
+     */
+    private static StringBuilder genWhere(StringBuilder sql, JsonObject props, List<CypWhere> conditions,
+                                          String sqlLabel, TranslationContext ctx) {
         StringBuilder beginningWhere = new StringBuilder();
 
-        for (Map.Entry<String, JsonElement> entry : entries) {
-            String value;
-            if (entry.getValue().isJsonArray()) {
-                value = "ARRAY" + entry.getValue().getAsJsonArray().toString();
-            } else if (C2SProperties.listFields.contains(entry.getKey())) {
-                value = "ARRAY[" + entry.getValue().toString() + "]";
-            } else value = entry.getValue().getAsString();
-
-            for (String innerVal : value.split("~")) {
-                if (!innerVal.contains("$") && !innerVal.contains("@") && !innerVal.contains("#")) {
-                    beginningWhere.append(sqlLabel).append(".").append(entry.getKey());
-                    beginningWhere = (addWhereClause(beginningWhere, innerVal, sqlLabel));
-                    beginningWhere.append(" and ");
-                } else {
-                    boolean isArray = innerVal.startsWith("ARRAY[");
-                    if (isArray) innerVal = innerVal.substring(7, innerVal.length() - 2);
-
-                    int pos = Integer.parseInt(String.valueOf(innerVal.charAt(1)));
-                    String boolOp = innerVal.substring(2, innerVal.indexOf("@"));
-                    String bracketing = innerVal.split("@")[1].split("\\$")[0];
-                    innerVal = innerVal.split("\\$")[1];
-
-                    StringBuilder temp = new StringBuilder();
-                    if (!bracketing.equals("null") && bracketing.startsWith("(")) temp.append(bracketing);
-                    temp.append(sqlLabel).append(".").append(entry.getKey());
-
-                    if (isArray) innerVal = "ARRAY[\"" + innerVal + "\"]";
-                    temp = addWhereClause(temp, innerVal, sqlLabel);
-
-                    if (!bracketing.equals("null") && bracketing.startsWith(")")) temp.append(bracketing).append(" ");
-                    if (!boolOp.equals("null")) temp.append(boolOp);
-                    temp.append(" ");
-
-                    whereComps.put(pos, temp);
-                }
+        if (props != null) {
+            for (Map.Entry<String, JsonElement> entry : props.entrySet()) {
+                beginningWhere.append(sqlLabel).append(".").append(entry.getKey()).append(" = ");
+                appendPropertyValue(beginningWhere, entry.getKey(), entry.getValue());
+                beginningWhere.append(" and ");
             }
         }
 
         StringBuilder whereBit = new StringBuilder();
-        for (StringBuilder x : whereComps.values()) {
-            whereBit.append(x.toString());
+        for (CypWhere cW : conditions) {
+            if (cW.hasLeftBrackets()) whereBit.append(cW.getBracketing());
+            appendPredicate(whereBit, cW, sqlLabel, ctx);
+
+            if (cW.hasRightBrackets()) whereBit.append(cW.getBracketing()).append(" ");
+            if (cW.hasBoolOp()) whereBit.append(cW.getBoolOp());
+            whereBit.append(" ");
         }
+
         if (whereBit.length() == 0) {
             if (beginningWhere.toString().endsWith(" and ")) beginningWhere.setLength(beginningWhere.length() - 5);
         }
@@ -100,9 +86,8 @@ class TranslateUtils {
         return sql;
     }
 
-    static StringBuilder getWholeWhereClause(StringBuilder sql, CypNode cN, String sqlLabel) {
-        JsonObject obj = cN.getProps();
-        return genWhere(sql, obj, sqlLabel);
+    static StringBuilder getWholeWhereClause(StringBuilder sql, CypNode cN, String sqlLabel, TranslationContext ctx) {
+        return genWhere(sql, cN.getProps(), cN.getConditions(), sqlLabel, ctx);
     }
 
     /**
@@ -111,144 +96,276 @@ class TranslateUtils {
      *
      * @param sql Original SQL statement.
      * @param cN  CypNode with properties.
+     * @param ctx Context of the translation.
      * @return New SQL with WHERE part added.
      */
-    static StringBuilder getWholeWhereClause(StringBuilder sql, CypNode cN) {
-        return getWholeWhereClause(sql, cN, "n01");
+    static StringBuilder getWholeWhereClause(StringBuilder sql, CypNode cN, TranslationContext ctx) {
+        return getWholeWhereClause(sql, cN, "n01", ctx);
     }
 
-    static StringBuilder getWholeWhereClauseRel(StringBuilder sql, CypRel cR, String sqlLabel) {
-        JsonObject obj = cR.getProps();
-        return genWhere(sql, obj, sqlLabel);
+    static StringBuilder getWholeWhereClauseRel(StringBuilder sql, CypRel cR, String sqlLabel,
+                                                TranslationContext ctx) {
+        return genWhere(sql, cR.getProps(), cR.getConditions(), sqlLabel, ctx);
     }
 
-    private static StringBuilder addWhereClause(StringBuilder sql, String value, String sqlLabel) {
-        // format part of the where clause correctly for further parsing.
-        if (!value.contains("#")) value = "eq#" + value + "#qe";
-        sql = getProperWhereValue(value, sql, sqlLabel);
-        return sql;
+    /**
+     * Append the value of a property given in the MATCH clause (such as {name: 'omega'}). Fields that may
+     * contain lists are compared to arrays.
+     */
+    private static void appendPropertyValue(StringBuilder sql, String key, JsonElement value) {
+        if (value.isJsonArray()) {
+            sql.append("ARRAY").append(value.toString().replace("\"", "'")).append(" ");
+        } else if (C2SProperties.listFields.contains(key)) {
+            sql.append("ARRAY[").append(value.toString().replace("\"", "'")).append("] ");
+        } else {
+            sql.append("'").append(value.getAsString().replace("'", "")).append("' ");
+        }
     }
 
-    private static StringBuilder getProperWhereValue(String value, StringBuilder sql, String sqlLabel) {
-        // remove anything to do with ARRAYS from the value
-        boolean array = value.startsWith("ARRAY[");
-        boolean list = false;
-        if (array) value = value.substring(7, value.length() - 2);
-        else if (value.contains("ARRAY[")) {
-            array = true;
-            value = value.replace("ARRAY[", "").replace("]#", "#");
+    /**
+     * Append the SQL for a single WHERE predicate about the node/relationship stored in the table sqlLabel.
+     */
+    private static void appendPredicate(StringBuilder sql, CypWhere cW, String sqlLabel, TranslationContext ctx) {
+        String column = sqlLabel + "." + cW.getField();
+
+        if ((cW.getOp() == CypWhere.Op.IN || cW.getOp() == CypWhere.Op.NOT_IN) && appendArrayIn(sql, cW, column, ctx))
+            return;
+
+        switch (cW.getOp()) {
+            case STARTS_WITH:
+            case NOT_STARTS_WITH:
+            case ENDS_WITH:
+            case NOT_ENDS_WITH:
+            case CONTAINS:
+            case NOT_CONTAINS:
+            case MATCHES:
+            case NOT_MATCHES:
+                appendStringMatch(sql, cW, column);
+                return;
+            case IS_NULL:
+                sql.append(column).append(" IS NULL ");
+                return;
+            case IS_NOT_NULL:
+                sql.append(column).append(" IS NOT NULL ");
+                return;
+            case ANY_IN:
+                sql.append(column).append(" = any(ARRAY").append(cW.getValue()).append(")");
+                return;
+            case ANY_EQ:
+                sql.append(cW.getValue()).append(" = any(").append(column).append(") ");
+                return;
+            case EQ:
+                sql.append(column).append(" = ");
+                break;
+            case NE:
+                sql.append(column).append(" <> ");
+                break;
+            case LT:
+                sql.append(column).append(" < ");
+                break;
+            case GT:
+                sql.append(column).append(" > ");
+                break;
+            case LE:
+                sql.append(column).append(" <= ");
+                break;
+            case GE:
+                sql.append(column).append(" >= ");
+                break;
+            case IN:
+                sql.append(column).append(" IN ");
+                break;
+            case NOT_IN:
+                sql.append(column).append(" NOT IN ");
+                break;
         }
+        appendPredicateValue(sql, cW, C2SProperties.listFields.contains(cW.getField()), sqlLabel, ctx);
+    }
 
-        String v = "";
-
-        if (value.startsWith("eq#")) {
-            sql.append(" = ");
-            v = value.substring(3, value.indexOf("#qe"));
-        } else if (value.startsWith("ne#")) {
-            sql.append(" <> ");
-            v = value.substring(3, value.indexOf("#en"));
-        } else if (value.startsWith("lt#")) {
-            sql.append(" < ");
-            v = value.substring(3, value.indexOf("#tl"));
-        } else if (value.startsWith("gt#")) {
-            sql.append(" > ");
-            v = value.substring(3, value.indexOf("#tg"));
-        } else if (value.startsWith("le#")) {
-            sql.append(" <= ");
-            v = value.substring(3, value.indexOf("#el"));
-        } else if (value.startsWith("ge#")) {
-            sql.append(" >= ");
-            v = value.substring(3, value.indexOf("#eg"));
-        } else if (value.startsWith("ex#")) {
-            sql.append(" IS NOT NULL ");
-            return sql;
-        } else if (value.startsWith("isn#")) {
-            sql.append(" IS NULL ");
-            return sql;
-        } else if (value.startsWith("non#")) {
-            sql.append(" IS NOT NULL ");
-            return sql;
-        } else if (value.startsWith("nx#")) {
-            sql.append(" IS NULL ");
-            return sql;
-        } else if (value.startsWith("in#")) {
-            sql.append(" IN ");
-            list = true;
-            v = value.substring(3, value.indexOf("#ni"))
-                    .replace("[", "(").replace("]", ")");
-        } else if (value.startsWith("anyin#")) {
-            sql.append(" = any(ARRAY");
-            v = value.substring(6, value.indexOf("#niyna"));
-            sql.append(v).append(")");
-            return sql;
-        } else if (value.startsWith("anyeq#")) {
-            String currentSQL = sql.toString();
-            String[] findParts = currentSQL.split(" ");
-
-            int lBrackCount = 0;
-            while (findParts[findParts.length - 1].startsWith("(")) {
-                lBrackCount++;
-                findParts[findParts.length - 1] = findParts[findParts.length - 1].substring(1);
-            }
-
-            findParts[findParts.length - 1] = "any(" + findParts[findParts.length - 1] + ") ";
+    /**
+     * Append a STARTS WITH, ENDS WITH or CONTAINS predicate as LIKE, and =~ as a regular expression anchored at
+     * both ends (Cypher matches the whole string). Both can be answered from a trigram index on the column (see
+     * InsertSchemaPostgres.addTrigramIndexes). Fields that may contain lists are stored as arrays, so their
+     * (single) value is matched.
+     *
+     * @param sql    SQL being generated.
+     * @param cW     The predicate (with a string literal or a parameter as its value).
+     * @param column Column the predicate is about.
+     */
+    private static void appendStringMatch(StringBuilder sql, CypWhere cW, String column) {
+        if (C2SProperties.listFields.contains(cW.getField())) column = column + "[1]";
+        String value = cW.getValue().substring(1, cW.getValue().length() - 1);
+        boolean param = CypherParameters.isMarker(value);
+        CypWhere.Op op = cW.getOp();
+
+        if (op == CypWhere.Op.MATCHES || op == CypWhere.Op.NOT_MATCHES) {
+            // the values are stored in lower case, so the expression ignores case (it keeps the case it was
+            // written in, as escapes such as \D change meaning in lower case).
+            sql.append(column).append(op == CypWhere.Op.MATCHES ? " ~* " : " !~* ");
+            if (param) sql.append("('^(?:' || '").append(value).append("' || ')$') ");
+            else sql.append("'^(?:").append(value.replace("\\\\", "\\").replace("'", "''"))
+                    .append(")$' ");
+            return;
+        }
 
-            v = value.substring(6, value.indexOf("#qeyna"));
-            sql = new StringBuilder();
+        boolean prefix = op == CypWhere.Op.ENDS_WITH || op == CypWhere.Op.NOT_ENDS_WITH
+                || op == CypWhere.Op.CONTAINS || op == CypWhere.Op.NOT_CONTAINS;
+        boolean suffix = op == CypWhere.Op.STARTS_WITH || op == CypWhere.Op.NOT_STARTS_WITH
+                || op == CypWhere.Op.CONTAINS || op == CypWhere.Op.NOT_CONTAINS;
+        boolean not = op == CypWhere.Op.NOT_STARTS_WITH || op == CypWhere.Op.NOT_ENDS_WITH
+                || op == CypWhere.Op.NOT_CONTAINS;
+
+        sql.append(column).append(not ? " NOT LIKE " : " LIKE ");
+        if (param) {
+            // the wildcards of LIKE in the value of the parameter are escaped when the statement is executed.
+            if (prefix) sql.append("'%' || ");
+            sql.append("replace(replace(replace('").append(value)
+                    .append("', '\\', '\\\\'), '%', '\\%'), '_', '\\_')");
+            if (suffix) sql.append(" || '%'");
+            sql.append(" ");
+        } else {
+            sql.append("'").append(prefix ? "%" : "").append(likeLiteral(value))
+                    .append(suffix ? "%" : "").append("' ");
+        }
+    }
 
-            for (int i = 0; i < findParts.length - 1; i++) {
-                sql.append(findParts[i]).append(" ");
-            }
+    /**
+     * The value of a string literal (without its outer quotes) as the body of a LIKE pattern matching it exactly.
+     * The escapes of the Cypher string (\\, \' and \", or a quote written twice) are read first, then the
+     * wildcards and the escape character of LIKE are escaped, and the quotes doubled for the SQL literal.
+     *
+     * @param value Value of the string literal, as it is written in the Cypher input.
+     * @return Body of the LIKE pattern (to be put in single quotes).
+     */
+    static String likeLiteral(String value) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            boolean hasNext = i + 1 < value.length();
+            if (c == '\\' && hasNext && "\\'\"".indexOf(value.charAt(i + 1)) != -1) c = value.charAt(++i);
+            else if (c == '\'' && hasNext && value.charAt(i + 1) == '\'') i++;
+
+            if (c == '\\' || c == '%' || c == '_') sb.append('\\');
+            else if (c == '\'') sb.append('\'');
+            sb.append(c);
+        }
+        return sb.toString();
+    }
 
-            for (int z = lBrackCount; z > 0; z--) sql.append("(");
-            sql.append(v).append(" = ").append(findParts[findParts.length - 1]);
-            return sql;
+    /**
+     * Append an IN predicate comparing against a single array, rather than a list of values: either a list
+     * given as a parameter (IN $ids), or a list literal of more than inListArraySize values, both bound as one
+     * array. The text of the SQL then does not depend on the values of the list, so the statement is prepared
+     * once and Postgres can reuse its plan.
+     *
+     * @param sql    SQL being generated.
+     * @param cW     The IN (or NOT IN) predicate.
+     * @param column Column the predicate is about.
+     * @param ctx    Context of the translation.
+     * @return True if the predicate was appended, false if it should be appended as a list of values.
+     */
+    private static boolean appendArrayIn(StringBuilder sql, CypWhere cW, String column, TranslationContext ctx) {
+        String value = cW.getValue();
+        String array;
+
+        if (cW.getValueType() == CypWhere.ValueType.LITERAL && value.startsWith("'")
+                && CypherParameters.isMarker(value.substring(1))) {
+            array = value;
+        } else if (cW.getValueType() == CypWhere.ValueType.LIST) {
+            List<String> elements = listElements(value);
+            if (elements.size() <= ctx.getProps().getInListArraySize()) return false;
+            array = CypherParameters.arrayMarker(elements);
+        } else return false;
+
+        // fields that may contain lists are stored as arrays, and are in the list if they hold a single value of it.
+        if (C2SProperties.listFields.contains(cW.getField())) {
+            if (cW.getOp() == CypWhere.Op.NOT_IN) sql.append("NOT ");
+            sql.append("(cardinality(").append(column).append(") = 1 AND ")
+                    .append(column).append("[1] = ANY(").append(array).append(")) ");
+        } else if (cW.getOp() == CypWhere.Op.NOT_IN) {
+            sql.append(column).append(" <> ALL(").append(array).append(") ");
+        } else {
+            sql.append(column).append(" = ANY(").append(array).append(") ");
         }
+        return true;
+    }
 
+    /**
+     * Split a list literal of the Cypher input ([1, 'a, b', 3]) into its values, without the quotes of strings.
+     */
+    private static List<String> listElements(String list) {
+        List<String> elements = new ArrayList<>();
+        StringBuilder element = new StringBuilder();
+        char quote = 0;
+
+        for (char c : list.substring(1, list.length() - 1).toCharArray()) {
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+                else element.append(c);
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == ',') {
+                elements.add(element.toString());
+                element.setLength(0);
+            } else if (!Character.isWhitespace(c)) element.append(c);
+        }
+        if (!elements.isEmpty() || element.length() > 0) elements.add(element.toString());
+        return elements;
+    }
 
+    /**
+     * Append the value on the right hand side of a WHERE predicate.
+     *
+     * @param sql      SQL being generated.
+     * @param cW       The predicate.
+     * @param array    True if the field compared may contain a list (so is stored as an array).
+     * @param sqlLabel Alias of the table storing the node/relationship the predicate is about.
+     * @param ctx      Context of the translation.
+     */
+    private static void appendPredicateValue(StringBuilder sql, CypWhere cW, boolean array, String sqlLabel,
+                                             TranslationContext ctx) {
         // this bit of code helps the WITH translation to work
         // see WithSQL.java and the method createSelectMatch() for further information.
-
-        if (!WithSQL.withMapping.isEmpty() && WithSQL.withMapping.containsKey(v.split("\\.")[0])) {
-            sql.append(v.replace(v.split("\\.")[0] + ".",
-                    WithSQL.withMapping.get(v.split("\\.")[0]) + "."));
-        } else {
-            if (array) {
-                if (list) {
-                    sql.append("(");
-                    v = v.replace("(", "").replace(")", "");
-                }
-                String arrayItems[] = v.split(", ");
-                for (String x : arrayItems) {
-                    sql.append("ARRAY[").append(x.replace("\"", "'")).append("] ").append(", ");
+        Map<String, String> withMapping = ctx.getWithMapping();
+        Map<String, String> mappingMultipleWith = ctx.getMappingMultipleWith();
+
+        String value = cW.getValue();
+        CypWhere.ValueType type = cW.getValueType();
+
+        if (type == CypWhere.ValueType.PROPERTY && withMapping.containsKey(cW.getValueId())) {
+            sql.append(withMapping.get(cW.getValueId())).append(".").append(cW.getValueField());
+        } else if (type == CypWhere.ValueType.SQL) {
+            sql.append(value).append(" ");
+        } else if (array) {
+            if (type == CypWhere.ValueType.LIST) {
+                sql.append("(");
+                for (String x : value.substring(1, value.length() - 1).split(", ")) {
+                    sql.append("ARRAY[").append(x).append("] ").append(", ");
                 }
                 sql.setLength(sql.length() - 2);
-                if (list) sql.append(")");
-            } else if (v.equals("ANY($1)")) sql.append(v).append(" ");
-            else if (list) sql.append(v).append(" ");
-            else if (v.startsWith("id(")) {
-                String id = v.substring(v.indexOf("(") + 1, v.length() - 1);
-                String withTable;
-                if (Multiple_With_Cypher.mappingMultipleWith != null)
-                    withTable = Multiple_With_Cypher.mappingMultipleWith.get(id);
-                else withTable = "n2";
-                sql.append(withTable).append(".id");
-            } else if (v.contains(".")) {
-                String idAndValue[] = v.split("\\.");
-                String withTable;
-
-                // swap n1 for n2 and vice versa.
-                sqlLabel = (sqlLabel.equals("n1")) ? "n2" : "n1";
-
-                if (Multiple_With_Cypher.mappingMultipleWith != null) {
-                    withTable = Multiple_With_Cypher.mappingMultipleWith.get(idAndValue[0]);
-                } else withTable = sqlLabel;
-
-                if (withTable == null) withTable = sqlLabel;
-                sql.append(withTable).append(".").append(idAndValue[1]).append(" ");
-            } else sql.append("'").append(v.replace("'", "")).append("' ");
-        }
-        return sql;
+                sql.append(")");
+            } else sql.append("ARRAY[").append(value).append("] ");
+        } else if (type == CypWhere.ValueType.LIST) {
+            sql.append(value.replace("[", "(").replace("]", ")")).append(" ");
+        } else if (type == CypWhere.ValueType.NODE_ID) {
+            String withTable;
+            if (mappingMultipleWith != null)
+                withTable = mappingMultipleWith.get(cW.getValueId());
+            else withTable = "n2";
+            sql.append(withTable).append(".id");
+        } else if (type == CypWhere.ValueType.PROPERTY) {
+            String withTable;
+
+            // swap n1 for n2 and vice versa.
+            sqlLabel = (sqlLabel.equals("n1")) ? "n2" : "n1";
+
+            if (mappingMultipleWith != null) {
+                withTable = mappingMultipleWith.get(cW.getValueId());
+            } else withTable = sqlLabel;
+
+            if (withTable == null) withTable = sqlLabel;
+            sql.append(withTable).append(".").append(cW.getValueField()).append(" ");
+        } else sql.append("'").append(value.replace("'", "")).append("' ");
     }
 
     static String genLabelLike(CypNode cN, String id) {
@@ -263,7 +380,7 @@ class TranslateUtils {
         return stmt;
     }
 
-    static String getLabelType(String type, C2SProperties props) {
+    static String getLabelType(String type, TranslationContext ctx) {
         if (type == null) return "nodes";
 
         // nodes is the default table with all the data inside it.
@@ -275,7 +392,7 @@ class TranslateUtils {
         int changed = 0;
 
         try {
-            fis = new FileInputStream(props.getWspace() + "/meta_labelNames.txt");
+            fis = new FileInputStream(ctx.getProps().getWspace() + "/meta_labelNames.txt");
             br = new BufferedReader(new InputStreamReader(fis));
             String line;
             while ((line = br.readLine()) != null) {
@@ -330,16 +447,41 @@ class TranslateUtils {
         return "";
     }
 
-    static String findOptimisedTable(ReturnClause rc) {
+    /**
+     * Columns to select for a node returned whole, in place of alias.*: its id and the properties of the
+     * table storing it. The label column is left out, as the results never show it (nor the id, unless it
+     * is asked for, but the id keeps the rows of different nodes apart for DISTINCT).
+     *
+     * @param table Table storing the node.
+     * @param alias Alias of the table in the SQL.
+     * @param ctx   Context of the translation.
+     * @return Columns separated by commas (alias.* if the columns of the table are not known, or if the SQL is
+     * built on by the rest of the translation, see TranslationContext.setPruneColumns).
+     */
+    static String nodeColumns(String table, String alias, TranslationContext ctx) {
+        List<String> columns = ctx.getTableColumns().get(table);
+        if (!ctx.pruneColumns() || columns == null || columns.isEmpty()) return alias + ".*";
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(alias).append(".id");
+        for (String column : columns) {
+            if (column.equals("id") || column.equals("label")) continue;
+            sb.append(", ").append(alias).append(".").append(column);
+        }
+        return sb.toString();
+    }
+
+    static String findOptimisedTable(ReturnClause rc, TranslationContext ctx) {
+        Map<String, String> labelProps = ctx.getLabelProps();
         boolean possibleOpti = true;
         String possTable = "nodes";
 
         for (CypReturn cR : rc.getItems()) {
-            if (!C2SMain.labelProps.containsKey(cR.getField())) {
+            if (!labelProps.containsKey(cR.getField())) {
                 possibleOpti = false;
                 break;
             } else {
-                String newTable = C2SMain.labelProps.get(cR.getField());
+                String newTable = labelProps.get(cR.getField());
                 if (!possTable.equals(newTable) && !possTable.equals("nodes")) {
                     possibleOpti = false;
                     break;
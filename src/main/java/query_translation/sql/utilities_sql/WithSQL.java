@@ -23,13 +23,12 @@ import exceptions.DQInvalidException;
 import intermediate_rep.CypAggFuncs;
 import intermediate_rep.CypReturn;
 import intermediate_rep.DecodedQuery;
-import production.C2SProperties;
-import query_translation.sql.conversion_types.AbstractConversion;
-import query_translation.sql.conversion_types.Multiple_With_Cypher;
-import translator.CypherTokenizer;
+import parsing_lexing.CypherParser;
+import production.TranslationContext;
+import translator.ParsedCypher;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 
 import static query_translation.sql.utilities_sql.SQLTranslate.obtainOrderByClause;
@@ -40,21 +39,32 @@ public class WithSQL {
     private static final String s = "skip";
     private static final String l = "limit";
     private static final char[] alphabet = "abcdefghijklmnopqrstuvwxyz".toCharArray();
-    public static Map<String, String> withMapping = new HashMap<>();
 
-    public static String genTemp(String query, int numWith, DecodedQuery withPartDQ) {
-        String initial = "CREATE TEMP VIEW w" + String.valueOf(alphabet[numWith]).toUpperCase() + " AS (";
-        String resultingView = initial + query.substring(0, query.length() - 1) + ");";
+    /**
+     * Generate the view (in a WITH query) holding the results of one part of a query with WITH clauses. The
+     * views of all the parts, and the SQL of the final part, are then put together by chain, so that the query
+     * is executed as a single statement.
+     *
+     * @param query      SQL of the part of the query.
+     * @param numWith    Position of the part in the query (0 for the first part).
+     * @param withPartDQ DecodedQuery object of the part.
+     * @param ctx        Context of the translation.
+     * @return Definition of the view (such as wA AS (...)).
+     */
+    public static String genView(String query, int numWith, DecodedQuery withPartDQ, TranslationContext ctx) {
+        String initial = "w" + String.valueOf(alphabet[numWith]).toUpperCase() + " AS (";
+        String resultingView = initial + query.substring(0, query.length() - 1) + ")";
         if (numWith > 0 && withPartDQ.getMc().getRels().size() > 0) {
             String prevView = String.valueOf(alphabet[numWith - 1]);
             int indexLastWhere = resultingView.lastIndexOf("WHERE");
             resultingView = resultingView.substring(0, indexLastWhere) + ", w" + prevView + " WHERE " +
                     resultingView.substring(indexLastWhere + 6);
-            for (String s : Multiple_With_Cypher.mappingMultipleWith.keySet()) {
-                if (Multiple_With_Cypher.mappingMultipleWith.get(s).endsWith(String.valueOf(alphabet[numWith - 1]).toUpperCase())) {
-                    resultingView = resultingView.substring(0, resultingView.length() - 2);
+            Map<String, String> mappingMultipleWith = ctx.getMappingMultipleWith();
+            for (String s : mappingMultipleWith.keySet()) {
+                if (mappingMultipleWith.get(s).endsWith(String.valueOf(alphabet[numWith - 1]).toUpperCase())) {
+                    resultingView = resultingView.substring(0, resultingView.length() - 1);
                     resultingView = resultingView + " AND w" + alphabet[numWith - 1]
-                            + ".id = a.a2);";
+                            + ".id = a.a2)";
                 }
             }
         } else if (numWith > 0) {
@@ -64,10 +74,25 @@ public class WithSQL {
         return resultingView;
     }
 
+    /**
+     * Put the views of the parts of a query with WITH clauses in front of the SQL of its final part, as a
+     * single WITH query. If the final part is itself a WITH query, its views are added to the same list.
+     *
+     * @param views    Definitions of the views, separated by commas.
+     * @param finalSQL SQL of the final part of the query.
+     * @return SQL of the whole query.
+     */
+    public static String chain(String views, String finalSQL) {
+        finalSQL = finalSQL.trim();
+        if (finalSQL.startsWith("WITH RECURSIVE "))
+            return "WITH RECURSIVE " + views + ", " + finalSQL.substring("WITH RECURSIVE ".length());
+        if (finalSQL.startsWith("WITH ")) return "WITH " + views + ", " + finalSQL.substring("WITH ".length());
+        return "WITH " + views + " " + finalSQL;
+    }
+
     // current WITH statement setup presumes no aliasing of return in second part of the WITH clause.
-    public static String createSelectWhere(String query, DecodedQuery dQ) {
+    public static String createSelectWhere(ArrayList<String> tokens, DecodedQuery dQ) {
         StringBuilder sWith = new StringBuilder();
-        ArrayList<String> tokens = CypherTokenizer.getTokenList(query, false);
 
         // get SELECT
         sWith = getSelectForWith(sWith, tokens, dQ);
@@ -229,19 +254,23 @@ public class WithSQL {
         return sWith.toString();
     }
 
-    public static String createSelectMatch(String secondWith, DecodedQuery dqFirstWith, C2SProperties props)
+    public static String createSelectMatch(ParsedCypher parsed, CypherParser.SinglePartQueryContext secondWith,
+                                           DecodedQuery dqFirstWith, TranslationContext ctx)
             throws DQInvalidException {
-        withMapping.put(dqFirstWith.getRc().getItems().get(0).getNodeID(), "wA");
+        ctx.getWithMapping().put(dqFirstWith.getRc().getItems().get(0).getNodeID(), "wA");
 
         StringBuilder resSecWith = new StringBuilder();
-        DecodedQuery dQSecWith = AbstractConversion.genDQAndSQL(secondWith, props);
+        DecodedQuery dQSecWith = parsed.decode(ctx, Collections.<String>emptyList(),
+                Collections.singletonList(secondWith));
+        if (dQSecWith == null) throw new DQInvalidException("Failed to convert the part of the Cypher input " +
+                "after WITH to an intermediate representation: " + parsed.getCypher());
 
         if (dQSecWith.getMc().getRels().isEmpty()) {
             NoRels nr = new NoRels();
-            resSecWith = nr.translate(resSecWith, dQSecWith, props);
+            resSecWith = nr.translate(resSecWith, dQSecWith, ctx);
         } else {
             MultipleRel mr = new MultipleRel();
-            resSecWith = mr.translate(resSecWith, dQSecWith, props);
+            resSecWith = mr.translate(resSecWith, dQSecWith, ctx);
         }
 
         if (dQSecWith.getOc() != null)
@@ -254,7 +283,7 @@ public class WithSQL {
 
         resSecWith.append(";");
 
-        withMapping = new HashMap<>();
+        ctx.resetWithMapping();
         return resSecWith.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package translator;
+
+import exceptions.DQInvalidException;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Token;
+import parsing_lexing.CypherLexer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Support for Cypher parameters ($name). When the input is lexed, each parameter is replaced by a string
+ * literal marking it, so the rest of the translator treats it as it would any other literal value. Once
+ * the SQL has been generated, the markers are replaced by the ? placeholders of a JDBC PreparedStatement,
+ * and the names of the parameters to bind to them are recorded in order.
+ * <p>
+ * Arrays computed by the translator itself (rather than given as parameters) are bound in the same way, so
+ * that the text of the SQL does not depend on their values. The generated SQL holds each of them as a string
+ * literal marking it, and the array literal is recorded in the bind order in place of the name of a parameter.
+ */
+public class CypherParameters {
+    private static final String MARKER = "c2sparam_";
+    // a marker in the generated SQL (with or without the quotes added to literal values).
+    private static final String ARRAY_MARKER = "c2sarray";
+    // an array marker (group 1) or a parameter marker, with or without the quotes added to literal values
+    // (group 2), in the generated SQL.
+    private static final Pattern SQL_MARKER = Pattern.compile("'" + ARRAY_MARKER + "((?:[^']|'')*)'|'?" +
+            MARKER + "(\\w+)'?");
+
+    /**
+     * Replace the parameters in the tokens of a Cypher input with string literals marking them. The
+     * name of each parameter is hidden from the parser (and from the token lists of the translator).
+     *
+     * @param tokens All the tokens of the Cypher input.
+     */
+    static void markParameters(List<Token> tokens) {
+        for (int i = 0; i < tokens.size() - 1; i++) {
+            CommonToken dollar = (CommonToken) tokens.get(i);
+            CommonToken name = (CommonToken) tokens.get(i + 1);
+            if (!dollar.getText().equals("$") || name.getText().trim().isEmpty() ||
+                    name.getType() == Token.EOF) continue;
+
+            dollar.setType(CypherLexer.StringLiteral);
+            dollar.setText("'" + MARKER + name.getText() + "'");
+            name.setText(" ");
+            name.setChannel(Token.HIDDEN_CHANNEL);
+        }
+    }
+
+    /**
+     * Obtain the names of the parameters of a Cypher input (after markParameters has been called).
+     *
+     * @param tokens All the tokens of the Cypher input.
+     * @return The names of the parameters, in the order they first appear in the input.
+     */
+    static List<String> getNames(List<Token> tokens) {
+        List<String> names = new ArrayList<>();
+        for (Token t : tokens) {
+            String text = t.getText();
+            if (t.getType() != CypherLexer.StringLiteral || !isMarker(text.substring(1))) continue;
+
+            String name = text.substring(MARKER.length() + 1, text.length() - 1);
+            if (!names.contains(name)) names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * @param literal Text of a string literal, without its quotes.
+     * @return True if the literal marks a parameter.
+     */
+    public static boolean isMarker(String literal) {
+        return literal.toLowerCase().startsWith(MARKER);
+    }
+
+    /**
+     * Put an array computed by the translator in the generated SQL, to be bound as a single value (the
+     * marker is replaced by a placeholder in toPlaceholders).
+     *
+     * @param values Values of the array.
+     * @return Marker of the array, as an SQL string literal.
+     */
+    public static String arrayMarker(Collection<?> values) {
+        return "'" + ARRAY_MARKER + toArrayLiteral(values).replace("'", "''") + "'";
+    }
+
+    /**
+     * @param sql Generated SQL.
+     * @return True if the SQL holds an array to bind (see arrayMarker).
+     */
+    public static boolean hasArrays(String sql) {
+        return sql.contains("'" + ARRAY_MARKER);
+    }
+
+    /**
+     * Replace the parameter and array markers in the generated SQL with JDBC placeholders.
+     *
+     * @param sql        SQL generated from a Cypher input with parameters.
+     * @param names      Names of the parameters of the Cypher input.
+     * @param bindOrder  List to add the name of the parameter (or the array literal) to bind to each
+     *                   placeholder to, in order.
+     * @return The SQL with ? placeholders.
+     * @throws DQInvalidException The SQL refers to a parameter that is not in names.
+     */
+    public static String toPlaceholders(String sql, List<String> names, List<String> bindOrder)
+            throws DQInvalidException {
+        StringBuffer jdbcSQL = new StringBuffer();
+        Matcher m = SQL_MARKER.matcher(sql);
+
+        while (m.find()) {
+            if (m.group(1) != null) bindOrder.add(m.group(1).replace("''", "'"));
+            else bindOrder.add(originalName(m.group(2), names));
+            m.appendReplacement(jdbcSQL, "?");
+        }
+        m.appendTail(jdbcSQL);
+        return jdbcSQL.toString();
+    }
+
+    // the generated SQL is lower case, so find the name of the parameter as it was written in the input.
+    private static String originalName(String sqlName, List<String> names) throws DQInvalidException {
+        String found = null;
+        for (String name : names) {
+            if (name.equalsIgnoreCase(sqlName)) {
+                if (found != null) throw new DQInvalidException("Parameters " + found + " and " + name +
+                        " differ only in case, which the translator cannot tell apart.");
+                found = name;
+            }
+        }
+        if (found == null) throw new DQInvalidException("Unknown parameter in the generated SQL: " + sqlName);
+        return found;
+    }
+
+    /**
+     * Take the values to bind to the placeholders of one statement, from the values to bind to SQL
+     * containing several statements (separated by semi colons).
+     *
+     * @param statement A single statement of the SQL.
+     * @param binds     Values still to bind, in order (those of statement are removed from the list).
+     * @return Values to bind to the placeholders of the statement, in order.
+     */
+    public static List<String> takeBinds(String statement, List<String> binds) {
+        List<String> statementBinds = new ArrayList<>();
+        boolean inLiteral = false;
+
+        for (char c : statement.toCharArray()) {
+            if (c == '\'') inLiteral = !inLiteral;
+            else if (c == '?' && !inLiteral && !binds.isEmpty()) statementBinds.add(binds.remove(0));
+        }
+        return statementBinds;
+    }
+
+    /**
+     * Obtain the values to bind to a statement. As the relational representation of the graph stores all
+     * of its values in lower case (see schema_conversion), values are bound as lower case strings, in the
+     * same way as literals in the Cypher input are translated. The arrays computed by the translator (array
+     * literals in the bind order, see arrayMarker) are bound as they are.
+     *
+     * @param bindOrder Names of the parameters to bind, in order.
+     * @param values    Values of the parameters, by name.
+     * @return Values to bind to the placeholders of the statement, in order.
+     * @throws DQInvalidException A parameter has no value.
+     */
+    public static List<String> bindValues(List<String> bindOrder, Map<String, Object> values)
+            throws DQInvalidException {
+        List<String> binds = new ArrayList<>();
+        for (String name : bindOrder) {
+            if (name.startsWith("{")) {
+                binds.add(name);
+                continue;
+            }
+            if (!values.containsKey(name)) throw new DQInvalidException("No value for parameter $" + name);
+            Object value = values.get(name);
+            // a list (such as the ids of IN $ids) is bound as a single array.
+            if (value instanceof Collection) value = toArrayLiteral((Collection<?>) value);
+            binds.add(String.valueOf(value).toLowerCase());
+        }
+        return binds;
+    }
+
+    /**
+     * Write a list of values as a Postgres array literal ({"a","b"}). Every value is quoted, which Postgres
+     * accepts for arrays of numbers as well as of strings, so the type of the array is left to Postgres to
+     * infer from where it is used.
+     *
+     * @param values Values of the list (null values are written as NULL).
+     * @return Text of the array literal (without the single quotes of an SQL string).
+     */
+    public static String toArrayLiteral(Collection<?> values) {
+        StringBuilder array = new StringBuilder("{");
+        for (Object v : values) {
+            if (v == null) array.append("NULL");
+            else array.append('"').append(String.valueOf(v).replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append('"');
+            array.append(',');
+        }
+        if (!values.isEmpty()) array.setLength(array.length() - 1);
+        return array.append('}').toString();
+    }
+
+    /**
+     * Replace the placeholders of a statement with the values of its parameters, as quoted literals. Used
+     * when the SQL is run through psql, where parameters cannot be bound.
+     *
+     * @param statement A single statement, with ? placeholders.
+     * @param binds     Values to bind to the placeholders, in order.
+     * @return The statement with the values of its parameters inlined.
+     */
+    public static String inline(String statement, List<String> binds) {
+        StringBuilder sql = new StringBuilder();
+        boolean inLiteral = false;
+        int next = 0;
+
+        for (char c : statement.toCharArray()) {
+            if (c == '\'') inLiteral = !inLiteral;
+            if (c == '?' && !inLiteral && next < binds.size()) {
+                sql.append('\'').append(binds.get(next++).replace("'", "''")).append('\'');
+            } else sql.append(c);
+        }
+        return sql.toString();
+    }
+}
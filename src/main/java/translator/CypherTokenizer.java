@@ -19,74 +19,168 @@
 
 package translator;
 
-import intermediate_rep.DecodedQuery;
 import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CommonToken;
 import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import parsing_lexing.CypherLexer;
 import parsing_lexing.CypherParser;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Generates tokens from the Cypher input. Uses ANTLRv4 tool.
+ * <p>
+ * Each thread reuses one lexer and one parser for all of its inputs (the prediction DFA built up by the
+ * ANTLR classes is shared between all instances anyway, so only the per-input state is reset).
  */
 public class CypherTokenizer {
-    private static CypherWalker cypherWalker;
+    // representative inputs parsed by warmUp, covering the commonly used parts of the grammar.
+    private static final String[] WARM_UP_QUERIES = {
+            "MATCH (a:Meta)-[:LOC_OBJ]->(b) WHERE a.name = 'x' AND id(b) > 2 " +
+                    "RETURN DISTINCT a.name AS name, count(b) ORDER BY name DESC SKIP 1 LIMIT 5;",
+            "MATCH (a)-[*1..3]-(b) WITH a MATCH (a)<--(c) RETURN c UNION ALL MATCH (d) RETURN d;",
+            "MATCH (n) DETACH DELETE n;",
+            "CREATE (a:Global {name: 'x'});"
+    };
+
+    private static final ThreadLocal<CypherLexer> lexers = ThreadLocal.withInitial(() -> new CypherLexer(null));
+
+    private static final ThreadLocal<CypherParser> parsers = ThreadLocal.withInitial(() -> {
+        CypherParser parser = new CypherParser(null);
+
+        // dangerous - comment out if something is going wrong.
+        parser.removeErrorListeners();
+        return parser;
+    });
+
+    /**
+     * Parse a few representative inputs, so that the first real input to be translated does not pay for
+     * loading the ANTLR classes and building up their prediction DFA. Should be called once at startup.
+     */
+    public static void warmUp() {
+        for (String cypher : WARM_UP_QUERIES) parse(cypher);
+    }
 
     /**
-     * Takes Cypher query as input and returns a DecodedQuery object representing it.
+     * Lex and parse the Cypher input once, deciding the type of the query. Inputs using the extensions
+     * to Cypher that the grammar does not cover (see QueryType) are only lexed, except for shortestPath,
+     * where the path inside the function is parsed as the pattern of a plain MATCH clause.
      *
-     * @param cypher      Cypher input.
-     * @param DEBUG_PRINT Print out debug statements or not.
-     * @return DecodedQuery object representing the Cypher input.
+     * @param cypher Cypher input.
+     * @return ParsedCypher object holding the tokens and parse tree of the input.
      */
-    public static DecodedQuery decode(String cypher, boolean DEBUG_PRINT) {
-        return CypherTranslator.generateDecodedQuery(getTokenList(cypher, DEBUG_PRINT), cypherWalker);
+    public static ParsedCypher parse(String cypher) {
+        CommonTokenStream tokens = lex(cypher);
+
+        QueryType extension = ParsedCypher.classifyExtension(tokens.getTokens());
+        if (extension == QueryType.SHORTEST_PATH) {
+            CommonTokenStream pathTokens = shortestPathTokens(tokens.getTokens());
+            return new ParsedCypher(cypher, pathTokens.getTokens(), parseTree(pathTokens), extension);
+        }
+        if (extension != null) return new ParsedCypher(cypher, tokens.getTokens(), null, extension);
+
+        CypherParser.CypherContext tree = parseTree(tokens);
+        return new ParsedCypher(cypher, tokens.getTokens(), tree, ParsedCypher.classify(tree));
     }
 
     /**
-     * Extract the token list from the Cypher input. Uses ANTLR classes to perform this. Some tokens
-     * are excluded, such as EOF and semi colons.
+     * Lex the Cypher input with the lexer of the current thread. Any parameters in the input are
+     * replaced by literals marking them (see CypherParameters).
      *
-     * @param cyp         Cypher input as text.
-     * @param DEBUG_PRINT Print out debug statements or not.
-     * @return A list of tokens as deciphered by the ANTLR classes, based on the openCypher grammar.
+     * @param cypher Cypher input.
+     * @return All the tokens of the input.
      */
-    public static ArrayList<String> getTokenList(String cyp, boolean DEBUG_PRINT) {
-        CypherLexer lexer = new CypherLexer(new ANTLRInputStream(cyp));
+    static CommonTokenStream lex(String cypher) {
+        CypherLexer lexer = lexers.get();
+        lexer.setInputStream(new ANTLRInputStream(cypher));
 
         CommonTokenStream tokens = new CommonTokenStream(lexer);
         tokens.fill();
-        CypherParser parser = new CypherParser(tokens);
-
-        // dangerous - comment out if something is going wrong.
-        parser.removeErrorListeners();
+        CypherParameters.markParameters(tokens.getTokens());
+        return tokens;
+    }
 
-        ParseTree tree = parser.cypher();
-        ParseTreeWalker walker = new ParseTreeWalker();
+    /**
+     * Rewrite the tokens of MATCH p = shortestPath((a)-[*]-&gt;(b)) ... as those of MATCH (a)-[*]-&gt;(b) ...,
+     * leaving out the variable bound to the path, the function and its brackets (the tokens are copied, the
+     * input is not lexed again).
+     *
+     * @param tokens All the tokens of a shortestPath query.
+     * @return Tokens of the query with the path as its MATCH pattern.
+     */
+    private static CommonTokenStream shortestPathTokens(List<Token> tokens) {
+        int function = 0;
+        while (function < tokens.size() - 1 && !tokens.get(function).getText().equalsIgnoreCase("shortestpath"))
+            function++;
+        int match = function;
+        while (match > 0 && tokens.get(match).getType() != CypherLexer.MATCH) match--;
 
-        cypherWalker = null;
-        cypherWalker = new CypherWalker();
-        walker.walk(cypherWalker, tree);
+        List<Token> path = new ArrayList<>();
+        // brackets opened inside the function so far (-1 once the function has been closed).
+        int depth = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token tok = tokens.get(i);
+            String s = tok.getText();
 
-        if (DEBUG_PRINT) cypherWalker.printInformation();
+            // the space after MATCH is kept, the rest up to the opening bracket of the function is not.
+            if (i > match && i <= function + 1) {
+                if (i == match + 1 && s.trim().isEmpty()) path.add(new CommonToken(tok));
+                continue;
+            }
+            if (i > function + 1 && depth >= 0) {
+                if (s.equals("(")) depth++;
+                else if (s.equals(")") && depth-- == 0) continue;
+            }
+            path.add(new CommonToken(tok));
+        }
 
-        ArrayList<String> tokenList = new ArrayList<>();
+        CommonTokenStream pathTokens = new CommonTokenStream(new ListTokenSource(path));
+        pathTokens.fill();
+        return pathTokens;
+    }
 
-        for (Object t : tokens.getTokens()) {
-            CommonToken tok = (CommonToken) t;
-            String s = tok.getText().toLowerCase();
+    /**
+     * Parse the tokens with the parser of the current thread. The faster SLL prediction mode is tried
+     * first, failing on the first syntax error. Only if that fails are the tokens parsed again with full
+     * LL prediction (which reports and recovers from syntax errors, as all the inputs used to be parsed).
+     *
+     * @param tokens Tokens of the Cypher input.
+     * @return Parse tree of the input.
+     */
+    private static CypherParser.CypherContext parseTree(CommonTokenStream tokens) {
+        CypherParser parser = parsers.get();
+        parser.setTokenStream(tokens);
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
 
-            // exclude some tokens from the list of tokens. This includes the EOF pointer,
-            // semi-colons, and alias artifacts.
-            if (!" ".equals(s) && !"<eof>".equals(s) && !";".equals(s) && !"as".equals(s) &&
-                    !cypherWalker.getAlias().contains(s)) {
-                tokenList.add(s);
-            }
+        try {
+            return parser.cypher();
+        } catch (ParseCancellationException ex) {
+            tokens.seek(0);
+            parser.setTokenStream(tokens);
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            return parser.cypher();
         }
-        return tokenList;
+    }
+
+    /**
+     * Exclude some tokens from the list of tokens. This includes the EOF pointer, semi-colons,
+     * and alias artifacts.
+     *
+     * @param s            Lower case text of the token.
+     * @param cypherWalker CypherWalker object that has walked the parse tree of the input.
+     * @return True if the token should be kept in the list of tokens.
+     */
+    static boolean keepToken(String s, CypherWalker cypherWalker) {
+        return !" ".equals(s) && !"<eof>".equals(s) && !";".equals(s) && !"as".equals(s) &&
+                !cypherWalker.getAlias().contains(s);
     }
 }
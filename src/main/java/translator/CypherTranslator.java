@@ -23,7 +23,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import exceptions.DQInvalidException;
 import intermediate_rep.*;
-import production.C2SMain;
+import production.TranslationContext;
 
 import java.util.*;
 
@@ -47,9 +47,11 @@ class CypherTranslator {
      *
      * @param tokenList Token list generated from the ANTLR framework.
      * @param cypWalker CypherWalker object containing additional info about the Cypher input.
+     * @param ctx       Context of the translation the Cypher input is part of.
      * @return DecodedQuery object representing the Cypher input.
      */
-    static DecodedQuery generateDecodedQuery(ArrayList<String> tokenList, CypherWalker cypWalker) {
+    static DecodedQuery generateDecodedQuery(ArrayList<String> tokenList, CypherWalker cypWalker,
+                                             TranslationContext ctx) {
         // find positions of the tokens in the query (-1 means not found)
         int posOfMatch = tokenList.indexOf("match");
         int posOfWhere = tokenList.indexOf("where");
@@ -109,7 +111,7 @@ class CypherTranslator {
 
             try {
                 MatchClause matchC = matchDecode(matchClause);
-                ReturnClause returnC = returnDecode(returnClause, matchC, cypWalker);
+                ReturnClause returnC = returnDecode(returnClause, matchC, cypWalker, ctx);
 
                 // if ORDER BY is present in the query
                 OrderClause orderC = null;
@@ -509,6 +511,8 @@ class CypherTranslator {
      * Method to calculate the direction for a variable path length relationship. The # separates the lengths
      * specified for the variable length (the -[*1..9]- part), and the direction of the path (whether it is
      * 'left', 'right', or 'none'. The latter part is defined by the argument varDirection.
+     * The lengths are always stored as a lower and upper bound (var1-9), with the upper bound left empty if the
+     * path has none (-[*]- is stored as var1-, and is capped when translated; see C2SProperties).
      *
      * @param varRel       The token list describing the variable length path.
      * @param internalID   ID of the relationship in the context of the MatchClause object.
@@ -516,22 +520,24 @@ class CypherTranslator {
      * @return A CypRel object to be stored.
      */
     private static CypRel extractVarRel(List<String> varRel, int internalID, String varDirection) {
-        String direction;
+        String low = "1";
+        String high = "";
 
-        if (varRel.size() == 1 && varRel.get(0).equals("*")) {
-            // hack that deals with arbitrary long paths
-            direction = "var1-100" + "#" + varDirection;
-        } else {
-            varRel = varRel.subList(1, varRel.size());
+        // varRel is one of [*], [*, 3], [*, 1, .., 3], [*, 2, ..] or [*, .., 3]
+        varRel = varRel.subList(1, varRel.size());
+        int posOfDots = varRel.indexOf("..");
 
+        if (posOfDots == -1) {
             if (varRel.size() == 1) {
-                direction = "var" + varRel.get(0) + "#" + varDirection;
-            } else {
-                direction = "var" + varRel.get(0) + "-" + varRel.get(2) + "#" + varDirection;
+                low = varRel.get(0);
+                high = varRel.get(0);
             }
+        } else {
+            if (posOfDots == 1) low = varRel.get(0);
+            if (posOfDots + 1 < varRel.size()) high = varRel.get(posOfDots + 1);
         }
 
-        return new CypRel(internalID, null, null, null, direction);
+        return new CypRel(internalID, null, null, null, "var" + low + "-" + high + "#" + varDirection);
     }
 
     /**
@@ -541,11 +547,12 @@ class CypherTranslator {
      * @param matchC       MatchClause object for the same Cypher input (the MATCH part of the input MUST BE decoded before
      *                     the RETURN part can be).
      * @param cypWalker    Additional information about the query.
+     * @param ctx          Context of the translation.
      * @return ReturnClause object
      * @throws DQInvalidException Error in creating the ReturnClause object (exception thrown in extractReturn method).
      */
-    private static ReturnClause returnDecode(List<String> returnClause, MatchClause matchC, CypherWalker cypWalker)
-            throws DQInvalidException {
+    private static ReturnClause returnDecode(List<String> returnClause, MatchClause matchC, CypherWalker cypWalker,
+                                             TranslationContext ctx) throws DQInvalidException {
         ReturnClause r = new ReturnClause();
 
         List<CypReturn> items = new ArrayList<>();
@@ -557,11 +564,11 @@ class CypherTranslator {
             int posComma = returnClause.indexOf(",");
             currentWorkingTokens = returnClause.subList(0, posComma);
             returnClause = returnClause.subList(posComma + 1, returnClause.size());
-            items.add(extractReturn(currentWorkingTokens, matchC, cypWalker));
+            items.add(extractReturn(currentWorkingTokens, matchC, cypWalker, ctx));
         }
 
         if (!returnClause.isEmpty()) {
-            items.add(extractReturn(returnClause, matchC, cypWalker));
+            items.add(extractReturn(returnClause, matchC, cypWalker, ctx));
         }
 
         r.setItems(items);
@@ -576,10 +583,11 @@ class CypherTranslator {
      * @param clause    List of tokens describing the individual return component.
      * @param matchC    MatchClause of same Cypher input.
      * @param cypWalker CypherWalker object used in the parsing process.
+     * @param ctx       Context of the translation.
      * @return CypReturn object generated from the list of tokens passed as an argument to this function.
      */
-    private static CypReturn extractReturn(List<String> clause, MatchClause matchC, CypherWalker cypWalker)
-            throws DQInvalidException {
+    private static CypReturn extractReturn(List<String> clause, MatchClause matchC, CypherWalker cypWalker,
+                                           TranslationContext ctx) throws DQInvalidException {
         /*
 
         In order below of the types of return items that can be successfully parsed, and te string representation
@@ -604,28 +612,28 @@ class CypherTranslator {
          */
         // 1.
         if (clause.size() == 4 && clause.get(0).equals("id") && clause.get(1).equals("(")) {
-            C2SMain.needToPrintID = true;
-            return new CypReturn(clause.get(2), "id", COUNT_FALSE, AGG_NONE, null, matchC);
+            ctx.setNeedToPrintID(true);
+            return new CypReturn(clause.get(2), "id", COUNT_FALSE, AGG_NONE, null, matchC, ctx);
         }
         // 2.
         else if (clause.size() == 3 && clause.contains(".")) {
-            return new CypReturn(clause.get(0), clause.get(2), COUNT_FALSE, AGG_NONE, null, matchC);
+            return new CypReturn(clause.get(0), clause.get(2), COUNT_FALSE, AGG_NONE, null, matchC, ctx);
         }
         // 4.
         else if (clause.size() == 1) {
-            return new CypReturn(clause.get(0), null, COUNT_FALSE, AGG_NONE, null, matchC);
+            return new CypReturn(clause.get(0), null, COUNT_FALSE, AGG_NONE, null, matchC, ctx);
         }
         // 5. and 6. and 6a.
         else if (cypWalker.hasCount()) {
             if (clause.size() == 7 && clause.get(2).equals("distinct"))
-                return new CypReturn(clause.get(3), clause.get(5), COUNT_DISTINCT, AGG_NONE, null, matchC);
+                return new CypReturn(clause.get(3), clause.get(5), COUNT_DISTINCT, AGG_NONE, null, matchC, ctx);
             String field = (clause.size() == 6) ? clause.get(4) : null;
-            return new CypReturn(clause.get(2), field, COUNT_TRUE, AGG_NONE, null, matchC);
+            return new CypReturn(clause.get(2), field, COUNT_TRUE, AGG_NONE, null, matchC, ctx);
         }
         // 7. and 8.
         else if (cypWalker.hasCollect()) {
             String field = (clause.size() == 6) ? clause.get(4) : null;
-            return new CypReturn(clause.get(2), field, COUNT_FALSE, AGG_COLLECT, null, matchC);
+            return new CypReturn(clause.get(2), field, COUNT_FALSE, AGG_COLLECT, null, matchC, ctx);
         }
         // 9.
         else if (cypWalker.hasCase()) {
@@ -638,13 +646,14 @@ class CypherTranslator {
                     caseString.append(s).append(" ");
                 }
             }
-            return new CypReturn(clause.get(1), clause.get(3), COUNT_FALSE, AGG_NONE, caseString.toString(), matchC);
+            return new CypReturn(clause.get(1), clause.get(3), COUNT_FALSE, AGG_NONE, caseString.toString(), matchC,
+                    ctx);
         }
         // 10a.
         else if (cypWalker.hasAverage() || cypWalker.hasSum() || cypWalker.hasMin() || cypWalker.hasMax()) {
             String field = (clause.size() == 6) ? clause.get(4) : null;
             int typeAgg = CypAggFuncs.convert(clause.get(0));
-            return new CypReturn(clause.get(2), field, COUNT_FALSE, typeAgg, null, matchC);
+            return new CypReturn(clause.get(2), field, COUNT_FALSE, typeAgg, null, matchC, ctx);
         } else throw new DQInvalidException("Return clause is malformed: " + clause);
     }
 
@@ -726,6 +735,8 @@ class CypherTranslator {
      */
     private static void whereDecode(MatchClause matchC, CypherWalker cypWalker) throws DQInvalidException {
         String fullClause = cypWalker.getWhereClause().toLowerCase();
+        // regular expressions are kept in the case they were written in (see addStringMatch).
+        String originalClause = cypWalker.getWhereClause();
 
         // store the individual parts of the full WHERE clause of the Cypher input.
         ArrayList<String> whereComponents = new ArrayList<>();
@@ -801,13 +812,21 @@ class CypherTranslator {
                 String collection = clause.substring(clause.indexOf("in") + 3, clause.indexOf("where") - 1);
                 if (clause.contains("in [")) {
                     String predicateValue = clause.substring(clause.lastIndexOf("in [") + 3, clause.length() - 1);
-                    addAnyWhere(collection, predicateValue, matchC, not, cW, "in");
+                    addAnyWhere(collection, predicateValue, matchC, not, cW, CypWhere.Op.ANY_IN);
                 } else {
                     String predicateValue = clause.split(" = ")[1];
                     predicateValue = predicateValue.substring(0, predicateValue.length() - 1);
-                    addAnyWhere(collection, predicateValue, matchC, not, cW, "=");
+                    addAnyWhere(collection, predicateValue, matchC, not, cW, CypWhere.Op.ANY_EQ);
                 }
-            } else if (clause.contains("id(") && !clause.contains("[")) {
+            } else if (clause.contains(" starts with ")) {
+                addStringMatch(clause.split(" starts with ", 2), matchC, CypWhere.Op.STARTS_WITH, not, cW, null);
+            } else if (clause.contains(" ends with ")) {
+                addStringMatch(clause.split(" ends with ", 2), matchC, CypWhere.Op.ENDS_WITH, not, cW, null);
+            } else if (clause.contains(" contains ")) {
+                addStringMatch(clause.split(" contains ", 2), matchC, CypWhere.Op.CONTAINS, not, cW, null);
+            } else if (clause.contains(" =~ ")) {
+                addStringMatch(clause.split(" =~ ", 2), matchC, CypWhere.Op.MATCHES, not, cW, originalClause);
+            } else if (clause.contains("id(") && !clause.contains("[") && !clause.contains(" in ")) {
                 String[] idAndValue = clause.split("\\) ");
                 addIDWhere(idAndValue, matchC, not, cW);
             } else if (clause.contains("exists(")) {
@@ -818,22 +837,22 @@ class CypherTranslator {
                 addLabelsWhere(idAndValue, matchC, not, cW);
             } else if (clause.contains(" = ")) {
                 String[] idAndValue = clause.split(" = ");
-                addCondition(idAndValue, matchC, "equals", not, cW);
+                addCondition(idAndValue, matchC, CypWhere.Op.EQ, not, cW);
             } else if (clause.contains(" <> ")) {
                 String[] idAndValue = clause.split(" <> ");
-                addCondition(idAndValue, matchC, "nequals", not, cW);
+                addCondition(idAndValue, matchC, CypWhere.Op.NE, not, cW);
             } else if (clause.contains(" < ")) {
                 String[] idAndValue = clause.split(" < ");
-                addCondition(idAndValue, matchC, "lt", not, cW);
+                addCondition(idAndValue, matchC, CypWhere.Op.LT, not, cW);
             } else if (clause.contains(" > ")) {
                 String[] idAndValue = clause.split(" > ");
-                addCondition(idAndValue, matchC, "gt", not, cW);
+                addCondition(idAndValue, matchC, CypWhere.Op.GT, not, cW);
             } else if (clause.contains(" <= ")) {
                 String[] idAndValue = clause.split(" <= ");
-                addCondition(idAndValue, matchC, "le", not, cW);
+                addCondition(idAndValue, matchC, CypWhere.Op.LE, not, cW);
             } else if (clause.contains(" >= ")) {
                 String[] idAndValue = clause.split(" >= ");
-                addCondition(idAndValue, matchC, "ge", not, cW);
+                addCondition(idAndValue, matchC, CypWhere.Op.GE, not, cW);
             } else if (clause.contains(":")) {
                 String[] idAndLabel = clause.split(":");
                 String x = "'" + idAndLabel[1] + "' in labels(" + idAndLabel[0] + ")";
@@ -845,10 +864,10 @@ class CypherTranslator {
                             + clause.substring(clause.indexOf(")") + 1);
                 }
                 String[] idAndValue = clause.split(" in ");
-                addCondition(idAndValue, matchC, "in", not, cW);
+                addCondition(idAndValue, matchC, CypWhere.Op.IN, not, cW);
             } else if (clause.contains(" is ")) {
                 String[] idAndValue = clause.split(" is ");
-                String op = (idAndValue[1].contains("not")) ? "is_not_null" : "is_null";
+                CypWhere.Op op = (idAndValue[1].contains("not")) ? CypWhere.Op.IS_NOT_NULL : CypWhere.Op.IS_NULL;
                 addCondition(idAndValue, matchC, op, not, cW);
             } else throw new DQInvalidException("WHERE component could not be translated to an intermediate" +
                     "representation: " + clause);
@@ -865,13 +884,12 @@ class CypherTranslator {
      * @param matchC         MatchClause of the Cypher input.
      * @param not            If the NOT keyword is used in this component, this flag is set to true.
      * @param cW             CypWhere object.
-     * @param typeAny        Either set to 'in' or '='; in the former case of 'in', this is true when the WHERE
-     *                       component is of the format (any(... IN [...])). In the latter case of 'in', the
-     *                       WHERE component is of the form (any(... = ...)). See a list of the example queries
-     *                       for more info.
+     * @param op             Either ANY_IN or ANY_EQ; in the former case, the WHERE component is of the format
+     *                       (any(... IN [...])). In the latter case, the WHERE component is of the form
+     *                       (any(... = ...)). See a list of the example queries for more info.
      */
     private static void addAnyWhere(String collection, String predicateValue, MatchClause matchC, boolean not,
-                                    CypWhere cW, String typeAny) throws DQInvalidException {
+                                    CypWhere cW, CypWhere.Op op) throws DQInvalidException {
         String[] idAndProp;
 
         if (collection.startsWith("labels(")) {
@@ -883,27 +901,11 @@ class CypherTranslator {
             idAndProp[1] = "label";
         } else idAndProp = collection.split("\\.");
 
-        String op;
-        if (typeAny.equals("in")) op = "anyin";
-        else op = "any=";
+        if (not) throw new DQInvalidException("NOT any(...) cannot currently be translated: " + collection);
 
-        for (CypNode cN : matchC.getNodes()) {
-            if (cN.getId() != null && cN.getId().equals(idAndProp[0])) {
-                JsonObject obj = addToJSONObject(cN.getProps(), idAndProp[1], predicateValue, op, not, cW);
-                cN.setProps(obj);
-                return;
-            }
-        }
-
-        for (CypRel cR : matchC.getRels()) {
-            if (cR.getId() != null && cR.getId().equals(idAndProp[0])) {
-                JsonObject obj = addToJSONObject(cR.getProps(), idAndProp[1], predicateValue, op, not, cW);
-                cR.setProps(obj);
-                return;
-            }
-        }
-
-        throw new DQInvalidException("WHERE CLAUSE MALFORMED!");
+        cW.setPredicate(idAndProp[1], op);
+        setWhereValue(cW, predicateValue);
+        attachCondition(idAndProp[0], matchC, cW);
     }
 
     /**
@@ -924,23 +926,9 @@ class CypherTranslator {
         // opAndValue[1] will contain the value (such as 349, [1, 2], etc.)
         String opAndValue[] = idAndValue[1].split(" ");
 
-        for (CypNode cN : matchC.getNodes()) {
-            if (cN.getId() != null && cN.getId().equals(id)) {
-                JsonObject obj = addToJSONObject(cN.getProps(), "id", opAndValue[1], opAndValue[0], not, cW);
-                cN.setProps(obj);
-                return;
-            }
-        }
-
-        for (CypRel cR : matchC.getRels()) {
-            if (cR.getId() != null && cR.getId().equals(id)) {
-                JsonObject obj = addToJSONObject(cR.getProps(), "id", opAndValue[1], opAndValue[0], not, cW);
-                cR.setProps(obj);
-                return;
-            }
-        }
-
-        throw new DQInvalidException("WHERE CLAUSE MALFORMED");
+        cW.setPredicate("id", applyNot(comparisonOp(opAndValue[0]), not));
+        setWhereValue(cW, opAndValue[1]);
+        attachCondition(id, matchC, cW);
     }
 
     /**
@@ -957,23 +945,8 @@ class CypherTranslator {
             throws DQInvalidException {
         String[] idAndProp = clause.split("\\.");
 
-        for (CypNode cN : matchC.getNodes()) {
-            if (cN.getId() != null && cN.getId().equals(idAndProp[0])) {
-                JsonObject obj = addToJSONObject(cN.getProps(), idAndProp[1], "null", "exists", not, cW);
-                cN.setProps(obj);
-                return;
-            }
-        }
-
-        for (CypRel cR : matchC.getRels()) {
-            if (cR.getId() != null && cR.getId().equals(idAndProp[0])) {
-                JsonObject obj = addToJSONObject(cR.getProps(), idAndProp[1], "null", "exists", not, cW);
-                cR.setProps(obj);
-                return;
-            }
-        }
-
-        throw new DQInvalidException("WHERE CLAUSE MALFORMED");
+        cW.setPredicate(idAndProp[1], applyNot(CypWhere.Op.IS_NOT_NULL, not));
+        attachCondition(idAndProp[0], matchC, cW);
     }
 
     /**
@@ -989,12 +962,14 @@ class CypherTranslator {
     private static void addLabelsWhere(String[] idAndValue, MatchClause matchC, boolean not, CypWhere cW)
             throws DQInvalidException {
         String id = idAndValue[1].substring(7, idAndValue[1].length() - 1);
-        String val = idAndValue[0].replace("'", "");
+        String val = idAndValue[0].replace("'", "").replace("\"", "");
+
+        cW.setPredicate("label", applyNot(CypWhere.Op.EQ, not));
+        cW.setValue("'" + val + "'", CypWhere.ValueType.LITERAL, null, null);
 
         for (CypNode cN : matchC.getNodes()) {
             if (cN.getId() != null && cN.getId().equals(id)) {
-                JsonObject obj = addToJSONObject(cN.getProps(), "label", val, "=", not, cW);
-                cN.setProps(obj);
+                cN.addCondition(cW);
                 return;
             }
         }
@@ -1011,22 +986,67 @@ class CypherTranslator {
      * @param not        If the NOT keyword is used in this component, this flag is set to true.
      * @param cW         CypWhere object.
      */
-    private static void addCondition(String[] idAndValue, MatchClause matchC, String op, boolean not, CypWhere cW)
-            throws DQInvalidException {
+    private static void addCondition(String[] idAndValue, MatchClause matchC, CypWhere.Op op, boolean not,
+                                     CypWhere cW) throws DQInvalidException {
         String[] idAndProp = idAndValue[0].split("\\.");
 
+        cW.setPredicate(idAndProp[1], applyNot(op, not));
+        if (op != CypWhere.Op.IS_NULL && op != CypWhere.Op.IS_NOT_NULL) setWhereValue(cW, idAndValue[1]);
+        attachCondition(idAndProp[0], matchC, cW);
+    }
+
+    /**
+     * If the WHERE component compares a property to a string, such as in:
+     * WHERE n.name STARTS WITH '/usr/' (or ENDS WITH, CONTAINS, or =~ with a regular expression)
+     * then this is the method that will be called to convert it into the intermediate representation.
+     *
+     * @param idAndValue     idAndValue[0] contains the id and property, idAndValue[1] the string.
+     * @param matchC         MatchClause of the Cypher input.
+     * @param op             STARTS_WITH, ENDS_WITH, CONTAINS or MATCHES.
+     * @param not            If the NOT keyword is used in this component, this flag is set to true.
+     * @param cW             CypWhere object.
+     * @param originalClause The WHERE clause before it was made lower case (null to use the lower case value).
+     *                       Escapes such as \D in regular expressions change meaning in lower case.
+     */
+    private static void addStringMatch(String[] idAndValue, MatchClause matchC, CypWhere.Op op, boolean not,
+                                       CypWhere cW, String originalClause) throws DQInvalidException {
+        String[] idAndProp = idAndValue[0].split("\\.");
+        if (idAndProp.length != 2)
+            throw new DQInvalidException("Only properties can be compared to strings: " + idAndValue[0]);
+
+        cW.setPredicate(idAndProp[1], applyNot(op, not));
+        setWhereValue(cW, idAndValue[1]);
+        if (cW.getValueType() != CypWhere.ValueType.LITERAL || !cW.getValue().startsWith("'"))
+            throw new DQInvalidException("Properties can only be compared to a string or a parameter: " +
+                    idAndValue[1]);
+
+        if (originalClause != null && !CypherParameters.isMarker(cW.getValue().substring(1))) {
+            int pos = originalClause.toLowerCase().indexOf(cW.getValue());
+            if (pos != -1) cW.setValue(originalClause.substring(pos, pos + cW.getValue().length()),
+                    CypWhere.ValueType.LITERAL, null, null);
+        }
+        attachCondition(idAndProp[0], matchC, cW);
+    }
+
+    /**
+     * Adds the WHERE component to the conditions of the node or relationship that it refers to.
+     *
+     * @param id     Id of the node/relationship in the Cypher input.
+     * @param matchC MatchClause of the Cypher input.
+     * @param cW     CypWhere object (with the predicate already set).
+     * @throws DQInvalidException No node or relationship in the MATCH clause has the id.
+     */
+    private static void attachCondition(String id, MatchClause matchC, CypWhere cW) throws DQInvalidException {
         for (CypNode cN : matchC.getNodes()) {
-            if (cN.getId() != null && cN.getId().equals(idAndProp[0])) {
-                JsonObject obj = addToJSONObject(cN.getProps(), idAndProp[1], idAndValue[1], op, not, cW);
-                cN.setProps(obj);
+            if (cN.getId() != null && cN.getId().equals(id)) {
+                cN.addCondition(cW);
                 return;
             }
         }
 
         for (CypRel cR : matchC.getRels()) {
-            if (cR.getId() != null && cR.getId().equals(idAndProp[0])) {
-                JsonObject obj = addToJSONObject(cR.getProps(), idAndProp[1], idAndValue[1], op, not, cW);
-                cR.setProps(obj);
+            if (cR.getId() != null && cR.getId().equals(id)) {
+                cR.addCondition(cW);
                 return;
             }
         }
@@ -1035,151 +1055,69 @@ class CypherTranslator {
     }
 
     /**
-     * Adds WHERE component to the properties of either the node or relationship the WHERE component was
-     * referring to. The new JSONObject is then returned from this method.
+     * Work out what the value of a WHERE component is, and store it in the CypWhere object.
+     * '...' and numbers are literals, [...] is a list, id(n) is the id of another node, and n.prop is a
+     * property of another node or relationship.
      *
-     * @param origProps The original properties of the node/relationship.
-     * @param prop      The property to modify.
-     * @param value     The value to add.
-     * @param op        The type of logical operator involved.
-     * @param not       If the NOT keyword was used then this is true, otherwise false.
-     * @param cW        CypWhere object.
-     * @return The modified properties of the node/relationship.
+     * @param cW    CypWhere object.
+     * @param value Value as it appears in the (lower case) WHERE clause.
      */
-    private static JsonObject addToJSONObject(JsonObject origProps, String prop, String value, String op,
-                                              boolean not, CypWhere cW) {
-        JsonObject obj = origProps;
-        if (origProps == null) obj = new JsonObject();
-
-        String valueToAdd = "";
-        if (obj.has(prop)) {
-            // if a key of the node/relationship has multiple conditions (such as in more complex queries,
-            // the conditions should be separated by a tilde symbol).
-            valueToAdd = obj.get(prop).getAsString() + "~";
+    private static void setWhereValue(CypWhere cW, String value) {
+        value = value.trim().replace("\"", "'");
+
+        if (value.startsWith("'")) {
+            cW.setValue(value, CypWhere.ValueType.LITERAL, null, null);
+        } else if (value.startsWith("[")) {
+            cW.setValue(value, CypWhere.ValueType.LIST, null, null);
+        } else if (value.startsWith("id(") && value.endsWith(")")) {
+            cW.setValue(value, CypWhere.ValueType.NODE_ID, value.substring(3, value.length() - 1), "id");
+        } else if (value.matches("[a-z_][a-z0-9_]*\\.[a-z_][a-z0-9_]*")) {
+            String[] idAndProp = value.split("\\.");
+            cW.setValue(value, CypWhere.ValueType.PROPERTY, idAndProp[0], idAndProp[1]);
+        } else {
+            cW.setValue(value, CypWhere.ValueType.LITERAL, null, null);
         }
+    }
 
-        if (not) op = invertOp(op);
-
-        // include this meta string so that during the translation, the right bracketing can be included,
-        // the correct boolean operators are used, and the ordering is consistent with the original
-        // Cypher input.
-        // format: p2and@r1#
-        // meaning: the where component is the second component in the whole clause (p2), it is followed by an
-        // AND, and the string should end with a right parenthesis.
-        String metaString = "p" + cW.getPosInWhere() + cW.getBoolOp() + "@" + cW.getBracketing() + "$";
-
+    /**
+     * Converts the comparison operator of the Cypher input to its intermediate representation.
+     *
+     * @param op Operator as it appears in Cypher (such as =, <, >=).
+     * @return Matching operator.
+     * @throws DQInvalidException The operator is not a comparison operator.
+     */
+    private static CypWhere.Op comparisonOp(String op) throws DQInvalidException {
         switch (op) {
-            case "equals":
             case "=":
-                valueToAdd += metaString + "eq#" + value.replace("\"", "").toLowerCase() + "#qe";
-                obj.addProperty(prop, valueToAdd);
-                break;
-            case "nequals":
+                return CypWhere.Op.EQ;
             case "<>":
-                valueToAdd += metaString + "ne#" + value.replace("\"", "").toLowerCase() + "#en";
-                obj.addProperty(prop, valueToAdd);
-                break;
-            case "lt":
+                return CypWhere.Op.NE;
             case "<":
-                valueToAdd += metaString + "lt#" + value.replace("\"", "").toLowerCase() + "#tl";
-                obj.addProperty(prop, valueToAdd);
-                break;
-            case "gt":
+                return CypWhere.Op.LT;
             case ">":
-                valueToAdd += metaString + "gt#" + value.replace("\"", "").toLowerCase() + "#tg";
-                obj.addProperty(prop, valueToAdd);
-                break;
-            case "le":
+                return CypWhere.Op.GT;
             case "<=":
-                valueToAdd += metaString + "le#" + value.replace("\"", "").toLowerCase() + "#el";
-                obj.addProperty(prop, valueToAdd);
-                break;
-            case "ge":
+                return CypWhere.Op.LE;
             case ">=":
-                valueToAdd += metaString + "ge#" + value.replace("\"", "").toLowerCase() + "#eg";
-                obj.addProperty(prop, valueToAdd);
-                break;
-            case "exists":
-                valueToAdd += metaString + "ex#" + value.replace("\"", "").toLowerCase() + "#xe";
-                obj.addProperty(prop, valueToAdd);
-                break;
-            case "not exists":
-                valueToAdd += metaString + "nx#" + value.replace("\"", "").toLowerCase() + "#xn";
-                obj.addProperty(prop, valueToAdd);
-                break;
-            case "in":
-                valueToAdd += metaString + "in#" + value.replace("\"", "").toLowerCase() + "#ni";
-                obj.addProperty(prop, valueToAdd);
-                break;
-            case "anyin":
-                valueToAdd += metaString + "anyin#" + value.replace("\"", "").toLowerCase() + "#niyna";
-                obj.addProperty(prop, valueToAdd);
-                break;
-            case "any=":
-                valueToAdd += metaString + "anyeq#" + value.replace("\"", "").toLowerCase() + "#qeyna";
-                obj.addProperty(prop, valueToAdd);
-                break;
-            case "is_null":
-                valueToAdd += metaString + "isn#" + value.replace("\"", "").toLowerCase() + "#nsi";
-                obj.addProperty(prop, valueToAdd);
-                break;
-            case "is_not_null":
-                valueToAdd += metaString + "non#" + value.replace("\"", "").toLowerCase() + "#non";
-                obj.addProperty(prop, valueToAdd);
-                break;
+                return CypWhere.Op.GE;
+            default:
+                throw new DQInvalidException("Operator in WHERE clause cannot currently be translated: " + op);
         }
-        return obj;
     }
 
     /**
-     * Inverts the operator in cases of NOT being used.
-     * = --{@literal >} {@literal <}{@literal >}
-     * {@literal <}= --{@literal >} {@literal >}=
-     * exists --{@literal >} not exists
+     * Inverts the operator in cases of NOT being used (= becomes {@literal <}{@literal >},
+     * {@literal <}= becomes {@literal >}, exists becomes IS NULL, etc.).
      *
-     * @param op Original operator.
-     * @return String of the inverted operator.
+     * @param op  Original operator.
+     * @param not If the NOT keyword was used then this is true, otherwise false.
+     * @return Operator to use.
+     * @throws DQInvalidException The operator has no inverse.
      */
-    private static String invertOp(String op) {
-        String invertedOp = "";
-        switch (op) {
-            case "equals":
-            case "=":
-                invertedOp = "<>";
-                break;
-            case "nequals":
-            case "<>":
-                invertedOp = "=";
-                break;
-            case "lt":
-            case "<":
-                invertedOp = ">=";
-                break;
-            case "gt":
-            case ">":
-                invertedOp = "<=";
-                break;
-            case "le":
-            case "<=":
-                invertedOp = ">";
-                break;
-            case "ge":
-            case ">=":
-                invertedOp = "<";
-                break;
-            case "exists":
-                invertedOp = "not exists";
-                break;
-            case "not exists":
-                invertedOp = "exists";
-                break;
-            case "is_null":
-                invertedOp = "is_not_null";
-                break;
-            case "is_not_null":
-                invertedOp = "is_null";
-                break;
-        }
-        return invertedOp;
+    private static CypWhere.Op applyNot(CypWhere.Op op, boolean not) throws DQInvalidException {
+        if (!not) return op;
+        CypWhere.Op inverted = op.invert();
+        if (inverted == null) throw new DQInvalidException("NOT cannot currently be translated for: " + op);
+        return inverted;
     }
 }
@@ -124,29 +124,48 @@ public class CypherWalker extends CypherBaseListener {
      * @param ctx See CypherParser.ReturnXContext for further information.
      */
     public void enterReturnX(CypherParser.ReturnXContext ctx) {
+        recordReturnFunctions(ctx.getText().toLowerCase());
+    }
+
+    /**
+     * A WITH clause is decoded as the RETURN clause of the part of the query it ends, so the same
+     * information is recorded for it as for a RETURN clause.
+     *
+     * @param ctx See CypherParser.WithContext for further information.
+     */
+    public void enterWith(CypherParser.WithContext ctx) {
+        recordReturnFunctions(ctx.getText().toLowerCase());
+    }
+
+    /**
+     * Record the keywords and functions used by a RETURN (or WITH) clause.
+     *
+     * @param clause Lower case text of the clause.
+     */
+    private void recordReturnFunctions(String clause) {
         //distinct keyword attached or not
-        if (ctx.getText().toLowerCase().contains(" distinct "))
+        if (clause.contains(" distinct "))
             hasDistinct = true;
         // is the return query looking at a count
-        if (ctx.getText().toLowerCase().contains("count("))
+        if (clause.contains("count("))
             hasCount = true;
         // is the return query looking at a collect
-        if (ctx.getText().toLowerCase().contains("collect("))
+        if (clause.contains("collect("))
             hasCollect = true;
         // is the return query looking at a case expression
-        if (ctx.getText().toLowerCase().contains("case"))
+        if (clause.contains("case"))
             hasCase = true;
         // is the return query looking at a average function
-        if (ctx.getText().toLowerCase().contains("avg("))
+        if (clause.contains("avg("))
             hasAverage = true;
         // is the return query looking at a sum function
-        if (ctx.getText().toLowerCase().contains("sum("))
+        if (clause.contains("sum("))
             hasSum = true;
         // is the return query looking at a min function
-        if (ctx.getText().toLowerCase().contains("min("))
+        if (clause.contains("min("))
             hasMin = true;
         // is the return query looking at a max function
-        if (ctx.getText().toLowerCase().contains("max("))
+        if (clause.contains("max("))
             hasMax = true;
     }
 
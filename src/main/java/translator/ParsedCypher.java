@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package translator;
+
+import exceptions.DQInvalidException;
+import intermediate_rep.DecodedQuery;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import parsing_lexing.CypherLexer;
+import parsing_lexing.CypherParser;
+import production.TranslationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Cypher input that has been lexed and parsed once by the ANTLR classes (see CypherTokenizer.parse).
+ * The type of the query is decided from the parse tree, and the whole input, or any part of it (such as
+ * one side of a UNION, or the part of the input before a WITH clause), can be decoded to a DecodedQuery
+ * object from the tokens and parse tree stored here, without lexing or parsing the text again.
+ */
+public class ParsedCypher {
+    private final String cypher;
+    private final List<Token> tokens;
+    // null if the input is one of the extensions to Cypher that the grammar does not cover.
+    private final CypherParser.CypherContext tree;
+    private final QueryType queryType;
+    // names of the parameters ($name) of the input.
+    private final List<String> parameters;
+
+    ParsedCypher(String cypher, List<Token> tokens, CypherParser.CypherContext tree, QueryType queryType) {
+        this.cypher = cypher;
+        this.tokens = tokens;
+        this.tree = tree;
+        this.queryType = queryType;
+        this.parameters = CypherParameters.getNames(tokens);
+    }
+
+    public String getCypher() {
+        return cypher;
+    }
+
+    public QueryType getQueryType() {
+        return queryType;
+    }
+
+    public CypherParser.CypherContext getTree() {
+        return tree;
+    }
+
+    public List<String> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Decide the type of the query from the tokens of the input only. This is done for the extensions to
+     * Cypher supported by the translator that the grammar does not cover (they cannot be parsed).
+     *
+     * @param tokens All the tokens of the Cypher input.
+     * @return The type of the query, or null if the input should be parsed to decide its type.
+     */
+    static QueryType classifyExtension(List<Token> tokens) {
+        String firstToken = null;
+        boolean hasWith = false;
+        boolean hasShortestPath = false;
+
+        for (Token t : tokens) {
+            String s = t.getText().toLowerCase();
+            if (t.getType() == Token.EOF || s.trim().isEmpty()) continue;
+            if (firstToken == null) firstToken = s;
+
+            if (s.equals("foreach")) return QueryType.FOREACH;
+            if (t.getType() == CypherLexer.WITH) hasWith = true;
+            if (s.equals("shortestpath")) hasShortestPath = true;
+        }
+
+        if (hasShortestPath && !hasWith) return QueryType.SHORTEST_PATH;
+        if ("iterate".equals(firstToken)) return QueryType.ITERATE;
+        return null;
+    }
+
+    /**
+     * Decide the type of the query from its parse tree.
+     *
+     * @param tree Parse tree of the Cypher input.
+     * @return The type of the query.
+     */
+    static QueryType classify(CypherParser.CypherContext tree) {
+        int numWith = findAll(tree, CypherParser.WithContext.class).size();
+        if (numWith > 1) return QueryType.MULTIPLE_WITH;
+        if (numWith == 1) return QueryType.WITH;
+
+        CypherParser.RegularQueryContext rq = findFirst(tree, CypherParser.RegularQueryContext.class);
+        if (rq != null && !rq.union().isEmpty())
+            return (rq.union(0).ALL() != null) ? QueryType.UNION_ALL : QueryType.UNION;
+
+        if (findFirst(tree, CypherParser.DeleteContext.class) != null) return QueryType.DELETE;
+        if (findFirst(tree, CypherParser.CreateContext.class) != null) return QueryType.CREATE;
+        return QueryType.READ;
+    }
+
+    /**
+     * @return True if the input has a MATCH clause.
+     */
+    public boolean hasMatch() {
+        return findFirst(tree, CypherParser.MatchContext.class) != null;
+    }
+
+    /**
+     * Obtain the single queries joined together by UNION or UNION ALL, in the order they appear in the input.
+     *
+     * @return List of the single queries of the input.
+     */
+    public List<CypherParser.SingleQueryContext> getUnionParts() {
+        List<CypherParser.SingleQueryContext> parts = new ArrayList<>();
+        CypherParser.RegularQueryContext rq = findFirst(tree, CypherParser.RegularQueryContext.class);
+        if (rq == null) return parts;
+
+        parts.add(rq.singleQuery());
+        for (CypherParser.UnionContext u : rq.union()) parts.add(u.singleQuery());
+        return parts;
+    }
+
+    /**
+     * Obtain the part of the parse tree for a query containing one or more WITH clauses.
+     *
+     * @return The MultiPartQueryContext of the input (null if the input contains no WITH clause).
+     */
+    public CypherParser.MultiPartQueryContext getMultiPartQuery() {
+        return findFirst(tree, CypherParser.MultiPartQueryContext.class);
+    }
+
+    /**
+     * Split a query containing WITH clauses into the parts ending with each WITH clause. For example,
+     * MATCH (a) WITH a MATCH (a)-->(b) WITH b MATCH (b)-->(c) RETURN c has the two parts MATCH (a) WITH a
+     * and MATCH (a)-->(b) WITH b (the final part of the query is mpq.singlePartQuery()).
+     *
+     * @param mpq The MultiPartQueryContext of the input.
+     * @return List of the parts ending with each WITH clause, each part being a list of subtrees.
+     */
+    public static List<List<ParseTree>> getWithParts(CypherParser.MultiPartQueryContext mpq) {
+        List<List<ParseTree>> withParts = new ArrayList<>();
+        List<ParseTree> current = new ArrayList<>();
+
+        for (ParseTree child : mpq.children) {
+            if (child instanceof TerminalNode || child instanceof CypherParser.SinglePartQueryContext) continue;
+            current.add(child);
+            if (child instanceof CypherParser.WithContext) {
+                withParts.add(current);
+                current = new ArrayList<>();
+            }
+        }
+        return withParts;
+    }
+
+    /**
+     * Decode the whole of the Cypher input to a DecodedQuery object.
+     *
+     * @param ctx Context of the translation.
+     * @return DecodedQuery object representing the Cypher input.
+     * @throws DQInvalidException The input could not be parsed.
+     */
+    public DecodedQuery decode(TranslationContext ctx) throws DQInvalidException {
+        CypherWalker cypherWalker = new CypherWalker();
+        new ParseTreeWalker().walk(cypherWalker, checkTree());
+
+        ArrayList<String> tokenList = new ArrayList<>();
+        for (Token tok : tokens) {
+            String s = tok.getText().toLowerCase();
+            if (CypherTokenizer.keepToken(s, cypherWalker)) tokenList.add(s);
+        }
+        return withParameters(CypherTranslator.generateDecodedQuery(tokenList, cypherWalker, ctx));
+    }
+
+    /**
+     * Decode part of the Cypher input to a DecodedQuery object, as if the part was the whole input. Any
+     * WITH clause in the part is decoded as a RETURN clause.
+     *
+     * @param ctx      Context of the translation.
+     * @param prefix   Tokens to insert before the tokens of the part (for example, a MATCH clause
+     *                 binding the results of a previous part of the query).
+     * @param part     The subtrees making up the part of the input to decode.
+     * @param excluded Subtrees of the part to leave out of the decoding.
+     * @return DecodedQuery object representing the part of the input.
+     */
+    public DecodedQuery decode(TranslationContext ctx, List<String> prefix, List<? extends ParseTree> part,
+                               ParseTree... excluded) {
+        CypherWalker cypherWalker = new CypherWalker();
+        ParseTreeWalker walker = new PartialTreeWalker(excluded);
+        for (ParseTree p : part) walker.walk(cypherWalker, p);
+
+        ArrayList<String> tokenList = new ArrayList<>(prefix);
+        tokenList.addAll(getTokenList(cypherWalker, part, excluded));
+        return withParameters(CypherTranslator.generateDecodedQuery(tokenList, cypherWalker, ctx));
+    }
+
+    private DecodedQuery withParameters(DecodedQuery dQ) {
+        if (dQ != null) dQ.setParameters(parameters);
+        return dQ;
+    }
+
+    /**
+     * Extract the token list of part of the Cypher input. The same tokens are excluded as in
+     * CypherTokenizer.getTokenList, and the WITH keyword is replaced by RETURN.
+     *
+     * @param part     The subtrees making up the part of the input.
+     * @param excluded Subtrees of the part to leave out.
+     * @return A list of the (lower case) tokens of the part.
+     */
+    public ArrayList<String> getTokenList(List<? extends ParseTree> part, ParseTree... excluded) {
+        CypherWalker cypherWalker = new CypherWalker();
+        ParseTreeWalker walker = new PartialTreeWalker(excluded);
+        for (ParseTree p : part) walker.walk(cypherWalker, p);
+        return getTokenList(cypherWalker, part, excluded);
+    }
+
+    private ArrayList<String> getTokenList(CypherWalker cypherWalker, List<? extends ParseTree> part,
+                                           ParseTree... excluded) {
+        ArrayList<String> tokenList = new ArrayList<>();
+
+        for (ParseTree p : part) {
+            Interval interval = p.getSourceInterval();
+            for (int i = interval.a; i <= interval.b; i++) {
+                if (isExcluded(i, excluded)) continue;
+
+                Token tok = tokens.get(i);
+                String s = (tok.getType() == CypherLexer.WITH) ? "return" : tok.getText().toLowerCase();
+                if (CypherTokenizer.keepToken(s, cypherWalker)) tokenList.add(s);
+            }
+        }
+        return tokenList;
+    }
+
+    private static boolean isExcluded(int tokenIndex, ParseTree... excluded) {
+        for (ParseTree e : excluded) {
+            if (e != null && e.getSourceInterval().properlyContains(Interval.of(tokenIndex, tokenIndex)))
+                return true;
+        }
+        return false;
+    }
+
+    private CypherParser.CypherContext checkTree() throws DQInvalidException {
+        if (tree == null) throw new DQInvalidException("The Cypher input uses an extension to Cypher (" +
+                queryType + ") and cannot be decoded from a parse tree: " + cypher);
+        return tree;
+    }
+
+    private static <T extends ParserRuleContext> T findFirst(ParseTree node, Class<T> type) {
+        List<T> found = findAll(node, type);
+        return (found.isEmpty()) ? null : found.get(0);
+    }
+
+    private static <T extends ParserRuleContext> List<T> findAll(ParseTree node, Class<T> type) {
+        List<T> found = new ArrayList<>();
+        if (node == null) return found;
+        if (type.isInstance(node)) found.add(type.cast(node));
+        for (int i = 0; i < node.getChildCount(); i++) found.addAll(findAll(node.getChild(i), type));
+        return found;
+    }
+
+    /**
+     * Walks a parse tree as ParseTreeWalker does, but does not enter the excluded subtrees.
+     */
+    private static class PartialTreeWalker extends ParseTreeWalker {
+        private final List<ParseTree> excluded;
+
+        PartialTreeWalker(ParseTree... excluded) {
+            this.excluded = Arrays.asList(excluded);
+        }
+
+        @Override
+        public void walk(ParseTreeListener listener, ParseTree t) {
+            if (excluded.contains(t)) return;
+            super.walk(listener, t);
+        }
+    }
+}
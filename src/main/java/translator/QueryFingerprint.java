@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package translator;
+
+import org.antlr.v4.runtime.Token;
+import parsing_lexing.CypherLexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Literal-normalised form of a Cypher input, used as the key of the translation cache. Queries differing
+ * only in the values of their literals (for example id(n) = 345 and id(n) = 346) have the same key.
+ * <p>
+ * Only literals whose value cannot change the shape of the translation are taken out of the key (into
+ * slots): integers (except those of SKIP, LIMIT and variable length relationships), and strings of
+ * plain characters. Every other token is part of the key as it is.
+ * <p>
+ * The list of an IN predicate with more values than are written out in the SQL (see inListArraySize) is
+ * bound as one array, so the whole list takes a single slot, whatever its length. Its sentinel is a
+ * parameter, which is translated to the same placeholder.
+ */
+public class QueryFingerprint {
+    // strings made up of only these characters are translated the same way whatever their value.
+    private static final Pattern PLAIN_STRING = Pattern.compile("[A-Za-z0-9_./:@-]*");
+    // integers with more digits than this are left in the key, so that they stay within an int.
+    private static final int MAX_INT_DIGITS = 9;
+
+    // the sentinel values put in the literal slots when translating the template of a query.
+    private static final String STRING_SENTINEL = "c2sslot";
+    private static final int NUMBER_SENTINEL = 735000000;
+    private static final int MAX_SLOTS = 1000;
+    private static final Pattern SENTINEL = Pattern.compile(STRING_SENTINEL + "(\\d{3})|" +
+            (NUMBER_SENTINEL / 1000) + "(\\d{3})");
+
+    private final String key;
+    private final List<String> literals;
+    private final String sentinelCypher;
+    private final boolean cacheable;
+
+    private QueryFingerprint(String key, List<String> literals, String sentinelCypher, boolean cacheable) {
+        this.key = key;
+        this.literals = literals;
+        this.sentinelCypher = sentinelCypher;
+        this.cacheable = cacheable;
+    }
+
+    /**
+     * Compute the fingerprint of a Cypher input (the input is only lexed, not parsed), with every value of
+     * its lists in a slot of its own.
+     *
+     * @param cypher Cypher input.
+     * @return Fingerprint of the input.
+     */
+    public static QueryFingerprint of(String cypher) {
+        return of(cypher, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Compute the fingerprint of a Cypher input (the input is only lexed, not parsed).
+     *
+     * @param cypher          Cypher input.
+     * @param inListArraySize Lists of IN predicates with more values than this take a single slot.
+     * @return Fingerprint of the input.
+     */
+    public static QueryFingerprint of(String cypher, int inListArraySize) {
+        List<Token> tokens = CypherTokenizer.lex(cypher).getTokens();
+
+        // the extensions to Cypher are translated from the text of the input, so are never cached.
+        if (ParsedCypher.classifyExtension(tokens) != null)
+            return new QueryFingerprint(cypher, Collections.<String>emptyList(), cypher, false);
+
+        StringBuilder key = new StringBuilder();
+        StringBuilder sentinelCypher = new StringBuilder();
+        List<String> literals = new ArrayList<>();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token tok = tokens.get(i);
+            if (tok.getType() == Token.EOF) continue;
+            String text = tok.getText();
+            int listEnd = (literals.size() < MAX_SLOTS) ? listSlotEnd(tokens, i, inListArraySize) : -1;
+
+            if (listEnd != -1) {
+                literals.add(CypherParameters.toArrayLiteral(listValues(tokens, i, listEnd)));
+                key.append("$l");
+                sentinelCypher.append('$').append(STRING_SENTINEL).append(String.format("%03d", literals.size() - 1));
+                i = listEnd;
+            } else if (literals.size() < MAX_SLOTS && isStringSlot(tokens, i)) {
+                // keep the original quotes, so the sentinel is lexed the same way as the literal.
+                char quote = text.charAt(0);
+                String sentinel = STRING_SENTINEL + String.format("%03d", literals.size());
+                literals.add(text.substring(1, text.length() - 1));
+                key.append("$s");
+                sentinelCypher.append(quote).append(sentinel).append(quote);
+            } else if (literals.size() < MAX_SLOTS && isNumberSlot(tokens, i)) {
+                literals.add(text);
+                key.append("$n");
+                sentinelCypher.append(NUMBER_SENTINEL + literals.size() - 1);
+            } else {
+                key.append(isRegex(tokens, i) ? text : text.toLowerCase());
+                sentinelCypher.append(text);
+            }
+        }
+        return new QueryFingerprint(key.toString(), literals, sentinelCypher.toString(), true);
+    }
+
+    /**
+     * @return Index of the closing bracket of the list starting at token i, if the list is that of an IN
+     * predicate and holds more than inListArraySize values, all of them plain literals (otherwise -1).
+     */
+    private static int listSlotEnd(List<Token> tokens, int i, int inListArraySize) {
+        if (!tokens.get(i).getText().equals("[") || !neighbour(tokens, i, -1).equals("in")) return -1;
+
+        int values = 0;
+        boolean expectValue = true;
+        for (int j = i + 1; j < tokens.size(); j++) {
+            Token tok = tokens.get(j);
+            String text = tok.getText();
+            if (text.trim().isEmpty()) continue;
+
+            if (expectValue && isListValue(tok)) {
+                values++;
+                expectValue = false;
+            } else if (!expectValue && text.equals(",")) {
+                expectValue = true;
+            } else if (!expectValue && text.equals("]")) {
+                return (values > inListArraySize) ? j : -1;
+            } else return -1;
+        }
+        return -1;
+    }
+
+    private static boolean isListValue(Token tok) {
+        String text = tok.getText();
+        if (tok.getType() == CypherLexer.DecimalInteger) return text.length() <= MAX_INT_DIGITS;
+        if (tok.getType() != CypherLexer.StringLiteral) return false;
+        String value = text.substring(1, text.length() - 1);
+        return PLAIN_STRING.matcher(value).matches() && !value.toLowerCase().contains(STRING_SENTINEL)
+                && !CypherParameters.isMarker(value);
+    }
+
+    // the values of the list between the brackets at tokens start and end, without the quotes of strings.
+    private static List<String> listValues(List<Token> tokens, int start, int end) {
+        List<String> values = new ArrayList<>();
+        for (int j = start + 1; j < end; j++) {
+            Token tok = tokens.get(j);
+            if (tok.getType() == CypherLexer.DecimalInteger) values.add(tok.getText());
+            else if (tok.getType() == CypherLexer.StringLiteral)
+                values.add(tok.getText().substring(1, tok.getText().length() - 1));
+        }
+        return values;
+    }
+
+    private static boolean isStringSlot(List<Token> tokens, int i) {
+        Token tok = tokens.get(i);
+        if (tok.getType() != CypherLexer.StringLiteral) return false;
+        String value = tok.getText().substring(1, tok.getText().length() - 1);
+
+        // an _ is escaped in the LIKE pattern of STARTS WITH, ENDS WITH and CONTAINS.
+        String previous = neighbour(tokens, i, -1);
+        if (value.contains("_") && (previous.equals("with") || previous.equals("contains"))) return false;
+        if (isRegex(tokens, i)) return false;
+
+        return PLAIN_STRING.matcher(value).matches() && !value.toLowerCase().contains(STRING_SENTINEL)
+                && !CypherParameters.isMarker(value);
+    }
+
+    // regular expressions (=~ '...') keep the case they were written in, so are part of the key as they are.
+    private static boolean isRegex(List<Token> tokens, int i) {
+        return tokens.get(i).getType() == CypherLexer.StringLiteral && neighbour(tokens, i, -1).equals("=~");
+    }
+
+    private static boolean isNumberSlot(List<Token> tokens, int i) {
+        Token tok = tokens.get(i);
+        if (tok.getType() != CypherLexer.DecimalInteger || tok.getText().length() > MAX_INT_DIGITS) return false;
+
+        String previous = neighbour(tokens, i, -1);
+        String next = neighbour(tokens, i, 1);
+        return !previous.equals("skip") && !previous.equals("limit") && !previous.equals("*")
+                && !previous.equals("..") && !next.equals("..");
+    }
+
+    // lower case text of the closest non whitespace token before (step = -1) or after (step = 1) token i.
+    private static String neighbour(List<Token> tokens, int i, int step) {
+        for (int j = i + step; j >= 0 && j < tokens.size(); j += step) {
+            String text = tokens.get(j).getText();
+            if (!text.trim().isEmpty()) return text.toLowerCase();
+        }
+        return "";
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public List<String> getLiterals() {
+        return literals;
+    }
+
+    /**
+     * @return The Cypher input with the sentinel values in place of the literals of the slots.
+     */
+    public String getSentinelCypher() {
+        return sentinelCypher;
+    }
+
+    /**
+     * @return False if translations of the input should not be cached.
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    public boolean hasSlots() {
+        return !literals.isEmpty();
+    }
+
+    /**
+     * Create the SQL template of the query from the translation of the sentinel Cypher, and check that
+     * filling the template with the literals of this input gives the SQL (and the values to bind to it) it
+     * was translated to.
+     *
+     * @param sentinelSQL       Translation of getSentinelCypher().
+     * @param sql               Translation of the original input.
+     * @param printID           Whether the translation requires the IDs of the nodes to be printed.
+     * @param sentinelBindOrder Names of the parameters (or array literals) to bind to the placeholders of the
+     *                          translation of getSentinelCypher(), in order.
+     * @param bindOrder         Names of the parameters (or array literals) to bind to the placeholders of the
+     *                          translation of the original input, in order.
+     * @return The SQL template, or null if the translation cannot be expressed as a template.
+     */
+    public SqlTemplate createTemplate(String sentinelSQL, String sql, boolean printID,
+                                      List<String> sentinelBindOrder, List<String> bindOrder) {
+        SqlTemplate.Text sqlText = toText(sentinelSQL);
+        if (sqlText == null) return null;
+
+        List<SqlTemplate.Text> bindTexts = new ArrayList<>();
+        for (String bind : sentinelBindOrder) {
+            SqlTemplate.Text bindText = toText(bind);
+            if (bindText == null) return null;
+            bindTexts.add(bindText);
+        }
+
+        SqlTemplate template = new SqlTemplate(sqlText, bindTexts, printID);
+        return (template.fill(literals).equals(sql) && template.fillBindOrder(literals).equals(bindOrder)) ?
+                template : null;
+    }
+
+    // the text with a slot in place of each sentinel (null if a sentinel is not one of this input).
+    private SqlTemplate.Text toText(String sentinelText) {
+        List<String> fragments = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+
+        Matcher m = SENTINEL.matcher(sentinelText);
+        int last = 0;
+        while (m.find()) {
+            int slot = Integer.parseInt((m.group(1) != null) ? m.group(1) : m.group(2));
+            if (slot >= literals.size()) return null;
+            fragments.add(sentinelText.substring(last, m.start()));
+            slots.add(slot);
+            last = m.end();
+        }
+        fragments.add(sentinelText.substring(last));
+        return new SqlTemplate.Text(fragments, slots);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package translator;
+
+/**
+ * The types of Cypher input the translator distinguishes between, decided once from the lexed and parsed
+ * input (see ParsedCypher). Each type is translated by its own conversion class.
+ */
+public enum QueryType {
+    // MATCH ... RETURN ... (optionally with WHERE, ORDER BY, SKIP and LIMIT).
+    READ,
+    // CREATE ...
+    CREATE,
+    // MATCH ... DELETE ... or MATCH ... DETACH DELETE ...
+    DELETE,
+    // two or more single queries joined by UNION.
+    UNION,
+    // two or more single queries joined by UNION ALL.
+    UNION_ALL,
+    // a query containing exactly one WITH clause.
+    WITH,
+    // a query containing more than one WITH clause.
+    MULTIPLE_WITH,
+    // the following types are extensions to Cypher that are not covered by the grammar, and so are
+    // recognised from the tokens of the input (only the path of a shortestPath query is then parsed).
+    FOREACH,
+    ITERATE,
+    SHORTEST_PATH;
+
+    /**
+     * Whether the query type is one of the extensions to Cypher that the grammar does not cover (the input
+     * as a whole is therefore not parsed).
+     *
+     * @return True if the query type is an extension to Cypher.
+     */
+    public boolean isExtension() {
+        return this == FOREACH || this == ITERATE || this == SHORTEST_PATH;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package translator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SQL translation of a query with slots in place of its literals (see QueryFingerprint). The template
+ * is filled with the literals of each query of the same shape, instead of translating the query again.
+ * The values bound to the placeholders of the SQL may also hold slots (a list literal taken out of the
+ * fingerprint as a whole is bound as one array).
+ */
+public class SqlTemplate {
+    private final Text sql;
+    // one for each placeholder of the SQL, in order.
+    private final List<Text> bindOrder;
+    private final boolean printID;
+    private final int weight;
+
+    SqlTemplate(Text sql, List<Text> bindOrder, boolean printID) {
+        this.sql = sql;
+        this.bindOrder = Collections.unmodifiableList(new ArrayList<>(bindOrder));
+        this.printID = printID;
+
+        int w = sql.weight();
+        for (Text bind : bindOrder) w += bind.weight();
+        this.weight = w;
+    }
+
+    /**
+     * Fill the slots of the template with the literals of a query.
+     *
+     * @param literals Literals of the query, in the order of its fingerprint.
+     * @return SQL translation of the query.
+     */
+    public String fill(List<String> literals) {
+        return sql.fill(literals);
+    }
+
+    /**
+     * @return True if the IDs of the nodes returned need to be printed (see TranslationContext).
+     */
+    public boolean needToPrintID() {
+        return printID;
+    }
+
+    /**
+     * @param literals Literals of the query, in the order of its fingerprint.
+     * @return Names of the parameters (or array literals) to bind to the placeholders of the SQL, in order.
+     */
+    public List<String> fillBindOrder(List<String> literals) {
+        List<String> binds = new ArrayList<>(bindOrder.size());
+        for (Text bind : bindOrder) binds.add(bind.fill(literals));
+        return binds;
+    }
+
+    /**
+     * @return Approximate size of the template, in characters.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Text with slots for the literals of a query.
+     */
+    static class Text {
+        // fragments.size() == slots.size() + 1, with slot i between fragments i and i + 1.
+        private final List<String> fragments;
+        private final List<Integer> slots;
+
+        Text(List<String> fragments, List<Integer> slots) {
+            this.fragments = fragments;
+            this.slots = slots;
+        }
+
+        String fill(List<String> literals) {
+            StringBuilder text = new StringBuilder(weight() + 16 * slots.size());
+            for (int i = 0; i < slots.size(); i++) {
+                text.append(fragments.get(i)).append(literals.get(slots.get(i)).toLowerCase());
+            }
+            text.append(fragments.get(fragments.size() - 1));
+            return text.toString();
+        }
+
+        int weight() {
+            int w = 0;
+            for (String f : fragments) w += f.length();
+            return w;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package database.postgres;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdjacencyCacheTest {
+    // 1 -> 2 -> 3 -> 4, with a shortcut 1 -> 3, a branch 2 -> 5, and 6 -> 1 (nothing reaches 6).
+    private static final int[] EDGES = {1, 2, 2, 3, 3, 4, 1, 3, 2, 5, 6, 1};
+
+    @Test
+    public void pairSearchFindsTheShortestPath() {
+        assertEquals(Arrays.asList("1 4 2", "1 5 2", "1 6 -"),
+                rows(AdjacencyCache.shortestPaths(EDGES, new int[]{1}, new int[]{4, 5, 6}, 1, 10), 1,
+                        new int[]{4, 5, 6}));
+    }
+
+    @Test
+    public void pairSearchRespectsTheBoundsOnTheLength() {
+        assertEquals(Collections.<String>emptyList(),
+                strings(AdjacencyCache.shortestPaths(EDGES, new int[]{1}, new int[]{4}, 1, 1)));
+        // the shortest path to 3 is too short, but a longer one is within the bounds.
+        assertEquals(Collections.singletonList("1 3 2"),
+                strings(AdjacencyCache.shortestPaths(EDGES, new int[]{1}, new int[]{3}, 2, 5)));
+        assertEquals(Collections.singletonList("1 4 3"),
+                strings(AdjacencyCache.shortestPaths(EDGES, new int[]{1}, new int[]{4}, 3, 5)));
+        assertEquals(Collections.<String>emptyList(),
+                strings(AdjacencyCache.shortestPaths(EDGES, new int[]{1}, new int[]{4}, 4, 5)));
+        assertEquals(Collections.singletonList("1 1 0"),
+                strings(AdjacencyCache.shortestPaths(EDGES, new int[]{1}, new int[]{1}, 0, 5)));
+    }
+
+    @Test
+    public void searchFromTheStartReachesEveryNode() {
+        assertEquals(Arrays.asList("1 2 1", "1 3 1", "1 5 2", "1 4 2"),
+                strings(AdjacencyCache.shortestPaths(EDGES, new int[]{1}, null, 1, 10)));
+        assertEquals(Arrays.asList("6 6 0", "6 1 1", "6 2 2", "6 3 2"),
+                strings(AdjacencyCache.shortestPaths(EDGES, new int[]{6}, null, 0, 2)));
+        assertEquals(Arrays.asList("1 3 2", "1 5 2", "1 4 2"),
+                strings(AdjacencyCache.shortestPaths(EDGES, new int[]{1}, null, 2, 10)));
+        assertEquals(Arrays.asList("6 3 3", "6 5 3", "6 4 3"),
+                strings(AdjacencyCache.shortestPaths(EDGES, new int[]{6}, null, 3, 3)));
+    }
+
+    @Test
+    public void searchFromTheStartStopsAtTheEndNodes() {
+        // more end nodes than are searched for in pairs.
+        int[] ends = {2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(Arrays.asList("1 2 1", "1 3 1", "1 5 2", "1 4 2"),
+                strings(AdjacencyCache.shortestPaths(EDGES, new int[]{1}, ends, 1, 10)));
+        assertEquals(Arrays.asList("1 3 2", "1 5 2", "1 4 2"),
+                strings(AdjacencyCache.shortestPaths(EDGES, new int[]{1}, ends, 2, 10)));
+        assertEquals(Collections.singletonList("4 4 0"),
+                strings(AdjacencyCache.shortestPaths(EDGES, new int[]{4}, new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, 0,
+                        10)));
+    }
+
+    private static List<String> strings(List<int[]> rows) {
+        List<String> s = new ArrayList<>();
+        for (int[] row : rows) s.add(row[0] + " " + row[1] + " " + row[2]);
+        return s;
+    }
+
+    // the row of each end node in turn, or "-" for its length if there is no row for it.
+    private static List<String> rows(List<int[]> rows, int start, int[] ends) {
+        List<String> s = new ArrayList<>();
+        for (int e : ends) {
+            String found = start + " " + e + " -";
+            for (int[] row : rows) if (row[0] == start && row[1] == e) found = start + " " + e + " " + row[2];
+            s.add(found);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package production;
+
+import intermediate_rep.DecodedQuery;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class C2SMainTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private C2SProperties props;
+
+    @Before
+    public void setUp() throws Exception {
+        props = TestWorkspace.props(folder.getRoot(), "translationCacheSize=0");
+    }
+
+    @Test
+    public void twoStepTranslationOfWithQueries() {
+        String[] queries = {
+                "MATCH (n) WHERE 'Process' in labels(n) WITH n MATCH (m) WHERE m.status = n.status RETURN count(n)",
+                "MATCH (n) WHERE id(n) < 3 WITH n MATCH (m) WHERE id(m) < id(n) WITH m " +
+                        "MATCH (p) WHERE p.node_id < m.node_id RETURN count(p)",
+                "MATCH (n:Global) WHERE n.name = 'postgres' RETURN n.node_id"
+        };
+        for (String cypher : queries) {
+            DecodedQuery dQ = C2SMain.getDQ(cypher, props);
+            assertNotNull(cypher, dQ);
+            String sql = C2SMain.getTranslation(cypher, dQ, props);
+
+            assertNotNull(cypher, sql);
+            assertEquals(cypher, new Translator(props).translate(cypher), sql);
+        }
+    }
+}
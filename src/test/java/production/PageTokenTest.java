@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package production;
+
+import exceptions.DQInvalidException;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PageTokenTest {
+    private static final String QUERY = "MATCH (n:Global) RETURN n.name ORDER BY n.name LIMIT 10";
+
+    @Test
+    public void firstPageRoundTrips() throws DQInvalidException {
+        PageToken page = PageToken.decode(PageToken.first(QUERY).encode(), QUERY);
+        assertTrue(page.isFirst());
+        assertNull(page.getKey());
+        assertEquals(-1, page.getId());
+    }
+
+    @Test
+    public void keyAndIdRoundTrip() throws DQInvalidException {
+        // keys may contain the separator of the encoded fields, and characters that are not URL safe.
+        for (String key : new String[]{"abc", "", "a|b|c", "it's / +=?&", "caf\u00e9"}) {
+            String token = PageToken.after(QUERY, key, 42).encode();
+            assertTrue(token.matches("[A-Za-z0-9_-]*"));
+
+            PageToken page = PageToken.decode(token, QUERY);
+            assertFalse(page.isFirst());
+            assertEquals(key, page.getKey());
+            assertEquals(42, page.getId());
+        }
+    }
+
+    @Test
+    public void nullKeyRoundTrips() throws DQInvalidException {
+        PageToken page = PageToken.decode(PageToken.after(QUERY, null, 7).encode(), QUERY);
+        assertNull(page.getKey());
+        assertEquals(7, page.getId());
+    }
+
+    @Test(expected = DQInvalidException.class)
+    public void tokenOfAnotherQueryIsRejected() throws DQInvalidException {
+        PageToken.decode(PageToken.after(QUERY, "abc", 1).encode(), QUERY + " ");
+    }
+
+    @Test
+    public void malformedTokensAreRejected() {
+        String[] tokens = {"not base64!", encode("1|2"), encode(QUERY.hashCode() + "|x|Vabc"),
+                encode(QUERY.hashCode() + "|1|Xabc"), encode(QUERY.hashCode() + "|1|")};
+        for (String token : tokens) {
+            try {
+                PageToken.decode(token, QUERY);
+                throw new AssertionError("Token accepted: " + token);
+            } catch (DQInvalidException e) {
+                assertTrue(e.getMessage().startsWith("Invalid page token"));
+            }
+        }
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
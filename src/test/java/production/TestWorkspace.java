@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package production;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+/**
+ * Properties of the workspace in src/test/resources/workspace (the meta files of a small converted graph, with
+ * the labels Global, Local, Process and Meta), so that queries can be translated in tests without a database.
+ */
+public class TestWorkspace {
+    /**
+     * @param folder          Folder to write the properties file to.
+     * @param extraProperties Further lines of the properties file ('name=value').
+     * @return C2SProperties object using the test workspace.
+     * @throws IOException Error writing the properties file.
+     */
+    public static C2SProperties props(File folder, String... extraProperties) throws IOException {
+        return props(folder, new File(System.getProperty("user.dir"), "src/test/resources/workspace"),
+                extraProperties);
+    }
+
+    /**
+     * @param folder          Folder to write the properties file to.
+     * @param wspace          Workspace to use (a copy of the test workspace, see copy).
+     * @param extraProperties Further lines of the properties file ('name=value').
+     * @return C2SProperties object using the workspace.
+     * @throws IOException Error writing the properties file.
+     */
+    public static C2SProperties props(File folder, File wspace, String... extraProperties) throws IOException {
+        String path = wspace.getPath().replace('\\', '/');
+        File propsFile = new File(folder, "c2s_props.properties");
+        try (PrintWriter writer = new PrintWriter(propsFile, "UTF-8")) {
+            writer.println("workspaceLocation=" + path);
+            writer.println("listsLocation=" + path + "/lists.txt");
+            for (String p : extraProperties) writer.println(p);
+        }
+        return new C2SProperties(propsFile.getPath());
+    }
+
+    /**
+     * Copy the test workspace, so that a test can change its meta files.
+     *
+     * @param folder Folder to copy the workspace into.
+     * @return Folder of the copy.
+     * @throws IOException Error copying the workspace.
+     */
+    public static File copy(File folder) throws IOException {
+        File source = new File(System.getProperty("user.dir"), "src/test/resources/workspace");
+        File wspace = new File(folder, "workspace");
+        File[] files = source.listFiles();
+        if (files == null || !wspace.mkdir()) throw new IOException("Cannot copy the test workspace to " + wspace);
+        for (File f : files) Files.copy(f.toPath(), new File(wspace, f.getName()).toPath());
+        return wspace;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package production;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TranslationCacheTest {
+    @Test
+    public void templateIsOnlyBuiltForAShapeSeenBefore() {
+        TranslationCache cache = new TranslationCache(10, 1000);
+        assertFalse(cache.seenBefore("a"));
+        assertTrue(cache.seenBefore("a"));
+
+        cache.markUntemplatable("a");
+        assertFalse(cache.seenBefore("a"));
+    }
+
+    @Test
+    public void shapesSeenAreBounded() {
+        TranslationCache cache = new TranslationCache(2, 1000);
+        cache.seenBefore("a");
+        cache.seenBefore("b");
+        cache.seenBefore("c");
+        assertFalse(cache.seenBefore("a"));
+        assertTrue(cache.seenBefore("c"));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query_translation.sql.utilities_sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import production.TestWorkspace;
+import production.Translator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MultipleRelTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String translate(String cypher) throws IOException {
+        return new Translator(TestWorkspace.props(folder.getRoot())).translate(cypher);
+    }
+
+    @Test
+    public void eachHopFollowsTheEdgesReachedByTheHopBefore() throws IOException {
+        assertEquals("WITH a AS (SELECT e1.idl AS a1, e1.idr AS a2, e1.* FROM edges e1), " +
+                        "b AS (SELECT e2.idl AS b1, e2.idr AS b2, e2.* FROM edges e2 " +
+                        "WHERE e2.idl IN (SELECT a.a2 FROM a)), " +
+                        "c AS (SELECT e3.idl AS c1, e3.idr AS c2, e3.* FROM edges e3 " +
+                        "WHERE e3.idl IN (SELECT b.b2 FROM b)) " +
+                        "SELECT count(n01.*) FROM nodes n01, a, b, c  WHERE a.a2 = b.b1 AND b.b2 = c.c1 " +
+                        "AND a.a2 != c.c2 AND n01.id = c.c2;",
+                translate("MATCH (a)-->(b)-->(c)-->(d) RETURN count(d)"));
+    }
+
+    @Test
+    public void leftNodeOfALaterHopIsNotJoinedAgain() throws IOException {
+        String sql = translate("MATCH (a:Global)-->(b:Local)-->(c:Process) RETURN a.node_id, c.pid");
+
+        assertTrue(sql, sql.startsWith("WITH a AS (SELECT n1.id AS a1, n2.id AS a2, e1.* FROM global n1 " +
+                "INNER JOIN edges e1 on n1.id = e1.idl INNER JOIN local n2 on e1.idr = n2.id), "));
+        assertTrue(sql, sql.contains("b AS (SELECT e2.idl AS b1, n2.id AS b2, e2.* FROM edges e2 " +
+                "INNER JOIN process n2 on e2.idr = n2.id WHERE e2.idl IN (SELECT a.a2 FROM a))"));
+    }
+
+    @Test
+    public void unconstrainedNodeIsTakenFromTheEdgeTable() throws IOException {
+        assertEquals("WITH a AS (SELECT n1.id AS a1, e1.idr AS a2, e1.* FROM global n1 " +
+                        "INNER JOIN edges e1 on n1.id = e1.idl) SELECT n01.node_id FROM nodes n01, a  " +
+                        "WHERE n01.id = a.a2;",
+                translate("MATCH (a:Global)-->(b) RETURN b.node_id"));
+    }
+
+    @Test
+    public void nodeComparedToAnotherIsJoined() throws IOException {
+        String sql = translate("MATCH (a:Process)-->(b) WHERE a.pid < b.pid RETURN a.node_id");
+
+        assertTrue(sql, sql.startsWith("WITH a AS (SELECT n1.id AS a1, n2.id AS a2, e1.* FROM process n1 " +
+                "INNER JOIN edges e1 on n1.id = e1.idl INNER JOIN nodes n2 on e1.idr = n2.id " +
+                "WHERE (  n1.pid < n2.pid  ))"));
+    }
+
+    @Test
+    public void patternIsExpandedFromTheNodeWithTheFewestRows() throws IOException {
+        File wspace = TestWorkspace.copy(folder.getRoot());
+        try (PrintWriter writer = new PrintWriter(new File(wspace, "meta_stats.txt"), "UTF-8")) {
+            writer.println("nodes 10000");
+            writer.println("global 10");
+            writer.println("local 4000");
+            writer.println("process 4000");
+            writer.println("edges 20000");
+        }
+        String cypher = "MATCH (a:Process)-->(b:Local)-->(c:Global)-->(d:Local) RETURN a.node_id";
+
+        assertEquals("WITH c AS (SELECT n1.id AS c1, n2.id AS c2, e3.* FROM global n1 " +
+                        "INNER JOIN edges e3 on n1.id = e3.idl INNER JOIN local n2 on e3.idr = n2.id), " +
+                        "b AS (SELECT n1.id AS b1, e2.idr AS b2, e2.* FROM local n1 " +
+                        "INNER JOIN edges e2 on n1.id = e2.idl WHERE e2.idr IN (SELECT c.c1 FROM c)), " +
+                        "a AS (SELECT n1.id AS a1, e1.idr AS a2, e1.* FROM process n1 " +
+                        "INNER JOIN edges e1 on n1.id = e1.idl WHERE e1.idr IN (SELECT b.b1 FROM b)) " +
+                        "SELECT n01.node_id FROM nodes n01, a, b, c  WHERE a.a2 = b.b1 AND b.b2 = c.c1 " +
+                        "AND a.a2 != c.c2 AND n01.id = a.a1;",
+                new Translator(TestWorkspace.props(folder.getRoot(), wspace)).translate(cypher));
+        // with no statistics, the labels are equally selective and the leftmost node is kept.
+        String sql = translate(cypher);
+        assertTrue(sql, sql.startsWith("WITH a AS (SELECT n1.id AS a1, n2.id AS a2, e1.* FROM process n1 "));
+    }
+
+    @Test
+    public void predicatesMoveTheAnchor() throws IOException {
+        String sql = translate("MATCH (a)-->(b)-->(c)-->(d) WHERE id(d) < 123 RETURN count(a) AS cool");
+
+        assertTrue(sql, sql.startsWith("WITH c AS (SELECT e3.idl AS c1, n2.id AS c2, e3.* FROM edges e3 " +
+                "INNER JOIN nodes n2 on e3.idr = n2.id WHERE (  n2.id < '123'  )), " +
+                "b AS (SELECT e2.idl AS b1, e2.idr AS b2, e2.* FROM edges e2 WHERE e2.idr IN (SELECT c.c1 FROM c)), " +
+                "a AS (SELECT e1.idl AS a1, e1.idr AS a2, e1.* FROM edges e1 WHERE e1.idr IN (SELECT b.b1 FROM b))"));
+    }
+
+    @Test
+    public void unreturnedEndHopsAreCheckedWithExists() throws IOException {
+        String min = translate("MATCH (a:Local)-->(b)<--(c:Process)<--(d) RETURN min(d.node_id)");
+        String distinct = translate("MATCH (a:Local)-->(b)<--(c:Process)<--(d) RETURN DISTINCT c.pid");
+
+        assertTrue(min, min.endsWith("SELECT min(n01.node_id) FROM nodes n01, c  WHERE EXISTS (SELECT 1 FROM b " +
+                "WHERE b.b2 = c.c1 AND EXISTS (SELECT 1 FROM a WHERE a.a2 = b.b1 AND a.a2 != c.c2)) " +
+                "AND n01.id = c.c2;"));
+        assertTrue(distinct, distinct.endsWith("SELECT DISTINCT n01.pid FROM process n01, b  WHERE EXISTS " +
+                "(SELECT 1 FROM a WHERE a.a2 = b.b1 AND EXISTS (SELECT 1 FROM c WHERE b.b2 = c.c1 " +
+                "AND a.a2 != c.c2)) AND n01.id = b.b2;"));
+    }
+
+    @Test
+    public void everyHopIsJoinedWhenEachPathIsARow() throws IOException {
+        String sql = translate("MATCH (a:Local)-->(b)<--(c:Process)<--(d) RETURN c.pid");
+
+        assertFalse(sql, sql.contains("EXISTS"));
+        assertTrue(sql, sql.endsWith("SELECT n01.pid FROM process n01, a, b, c  WHERE a.a2 = b.b1 " +
+                "AND b.b2 = c.c1 AND a.a2 != c.c2 AND n01.id = b.b2;"));
+    }
+
+    @Test
+    public void nodeReturnedWithAnAggregateIsGroupedByItsPrimaryKey() throws IOException {
+        String cypher = "MATCH (n:Process)-->(m) RETURN n, count(m)";
+        String sql = translate(cypher);
+
+        assertTrue(sql, sql.contains("SELECT n01.id, n01.node_id, n01.name, n01.sys_time, n01.mono_time, n01.type, " +
+                "n01.ref_count, n01.pid, n01.status, n01.value, n01.timestamp, count(n02.*) FROM "));
+        assertTrue(sql, sql.endsWith(" GROUP BY n01.id;"));
+
+        // workspaces converted before id was made the primary key group by every column of the nodes table.
+        File wspace = TestWorkspace.copy(folder.getRoot());
+        try (PrintWriter writer = new PrintWriter(new File(wspace, "meta_schema.txt"), "UTF-8")) {
+            writer.println("table_counts");
+        }
+        sql = new Translator(TestWorkspace.props(folder.getRoot(), wspace)).translate(cypher);
+        assertTrue(sql, sql.endsWith(" GROUP BY n01.id, n01.label, n01.node_id, n01.name, n01.sys_time, " +
+                "n01.mono_time, n01.type, n01.ref_count, n01.pid, n01.status, n01.value, n01.timestamp;"));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query_translation.sql.utilities_sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import production.TestWorkspace;
+import production.Translator;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class NoRelsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String translate(String cypher) throws IOException {
+        return new Translator(TestWorkspace.props(folder.getRoot())).translate(cypher);
+    }
+
+    @Test
+    public void nodeReturnedWholeIsReadAsItsIdAndProperties() throws IOException {
+        assertEquals("SELECT n01.id, n01.node_id, n01.name, n01.pid, n01.status, n01.sys_time, n01.mono_time " +
+                "FROM process n01;", translate("MATCH (n:Process) RETURN n"));
+        assertEquals("SELECT DISTINCT n01.id, n01.node_id, n01.name, n01.pid, n01.status, n01.sys_time, " +
+                "n01.mono_time FROM process n01;", translate("MATCH (n:Process) RETURN DISTINCT n"));
+    }
+
+    @Test
+    public void nodeWithNoLabelIsReadWithThePropertiesOfEveryLabel() throws IOException {
+        assertEquals("SELECT n01.id, n01.node_id, n01.name, n01.sys_time, n01.mono_time, n01.type, " +
+                "n01.ref_count, n01.pid, n01.status, n01.value, n01.timestamp FROM nodes n01;",
+                translate("MATCH (n) RETURN n"));
+    }
+}
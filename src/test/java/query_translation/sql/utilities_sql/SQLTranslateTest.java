@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query_translation.sql.utilities_sql;
+
+import intermediate_rep.DecodedQuery;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import production.TestWorkspace;
+import production.Translator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SQLTranslateTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @param schemaParts Optional parts of the schema of the workspace (the lines of meta_schema.txt).
+     * @return Translator using a copy of the test workspace with only those parts of the schema.
+     * @throws IOException Error copying the workspace.
+     */
+    private Translator translator(String... schemaParts) throws IOException {
+        File wspace = TestWorkspace.copy(folder.getRoot());
+        try (PrintWriter writer = new PrintWriter(new File(wspace, "meta_schema.txt"), "UTF-8")) {
+            for (String part : schemaParts) writer.println(part);
+        }
+        return new Translator(TestWorkspace.props(folder.getRoot(), wspace));
+    }
+
+    @Test
+    public void deleteIsOneStatementDrivenByTheIdsMatched() throws IOException {
+        assertEquals("WITH matched AS (SELECT id FROM nodes WHERE node_id = '1001'), " +
+                        "delEdges AS (DELETE FROM edges WHERE idl IN (SELECT id FROM matched) " +
+                        "OR idr IN (SELECT id FROM matched) RETURNING idl, idr, type), " +
+                        "delRel1 AS (DELETE FROM e$LOC_OBJ WHERE (idl, idr) IN " +
+                        "(SELECT idl, idr FROM delEdges WHERE type = 'LOC_OBJ')), " +
+                        "delRel2 AS (DELETE FROM e$PROC_OBJ WHERE (idl, idr) IN " +
+                        "(SELECT idl, idr FROM delEdges WHERE type = 'PROC_OBJ')), " +
+                        "delRel3 AS (DELETE FROM e$PROC_OBJ_PREV WHERE (idl, idr) IN " +
+                        "(SELECT idl, idr FROM delEdges WHERE type = 'PROC_OBJ_PREV')), " +
+                        "delRel4 AS (DELETE FROM e$GLOB_OBJ_PREV WHERE (idl, idr) IN " +
+                        "(SELECT idl, idr FROM delEdges WHERE type = 'GLOB_OBJ_PREV')), " +
+                        "delNodes AS (DELETE FROM nodes WHERE id IN (SELECT id FROM matched) RETURNING id), " +
+                        "delLabel AS (DELETE FROM global WHERE id IN (SELECT id FROM matched) RETURNING id) " +
+                        "UPDATE table_counts c SET total = c.total - d.k FROM (SELECT 'edges' AS name, count(*) AS k " +
+                        "FROM delEdges UNION ALL SELECT 'e$' || lower(type), count(*) FROM delEdges " +
+                        "GROUP BY lower(type) UNION ALL SELECT 'nodes', count(*) FROM delNodes UNION ALL " +
+                        "SELECT 'global', count(*) FROM delLabel) AS d WHERE c.name = d.name;",
+                translator("table_counts", "primary_keys").translate("MATCH (n:Global {node_id:1001}) DELETE n"));
+    }
+
+    @Test
+    public void deleteWithoutTableCountsEndsWithTheLabelTable() throws IOException {
+        String sql = translator("primary_keys").translate("MATCH (n:Global {node_id:1001, name:'x'}) DELETE n");
+
+        assertTrue(sql, sql.startsWith("WITH matched AS (SELECT id FROM nodes " +
+                "WHERE node_id = '1001' AND name = 'x'), "));
+        assertTrue(sql, sql.endsWith("delNodes AS (DELETE FROM nodes WHERE id IN (SELECT id FROM matched)) " +
+                "DELETE FROM global WHERE id IN (SELECT id FROM matched);"));
+        assertFalse(sql, sql.contains("table_counts"));
+    }
+
+    @Test
+    public void typedEdgesTriggerDeletesTheRelationshipsOfEachType() throws IOException {
+        String sql = translator("table_counts", "primary_keys", "typed_edges_trigger")
+                .translate("MATCH (n:Global {node_id:1001}) DELETE n");
+
+        assertTrue(sql, sql.contains("RETURNING idl, idr, type), delNodes AS ("));
+        assertFalse(sql, sql.contains("delRel"));
+        assertFalse(sql, sql.contains("e$LOC_OBJ"));
+        assertTrue(sql, sql.contains("SELECT 'e$' || lower(type), count(*) FROM delEdges GROUP BY lower(type)"));
+    }
+
+    @Test
+    public void createInsertsTheNodesOnceAndReusesTheirIds() throws IOException {
+        assertEquals("WITH n1 AS (INSERT INTO nodes(node_id, label) VALUES ('2001', 'global') RETURNING id), " +
+                        "l1 AS (INSERT INTO global(node_id, id, label) SELECT '2001', id, 'global' FROM n1), " +
+                        "n2 AS (INSERT INTO nodes(node_id, label) VALUES ('2002', 'global') RETURNING id), " +
+                        "l2 AS (INSERT INTO global(node_id, id, label) SELECT '2002', id, 'global' FROM n2), " +
+                        "r1 AS (INSERT INTO edges(idl, idr, type) SELECT n1.id, n2.id, 'glob_obj_prev' FROM n1, n2), " +
+                        "t1 AS (INSERT INTO e$glob_obj_prev(idl, idr, type) SELECT n1.id, n2.id, 'glob_obj_prev' " +
+                        "FROM n1, n2) UPDATE table_counts c SET total = c.total + d.k FROM (VALUES ('nodes', 2), " +
+                        "('global', 2), ('edges', 1), ('e$glob_obj_prev', 1)) AS d(name, k) WHERE c.name = d.name;",
+                translator("table_counts", "primary_keys").translate(
+                        "CREATE (a:Global {node_id:2001})-[:GLOB_OBJ_PREV]->(b:Global {node_id:2002})"));
+    }
+
+    @Test
+    public void createWithAMatchClauseIsRejected() throws IOException {
+        assertNull(translator("table_counts", "primary_keys")
+                .translate("MATCH (a:Global) CREATE (b:Global {node_id:2002})"));
+    }
+
+    @Test
+    public void batchOfCreatesIsOneInsertForEachTable() throws IOException {
+        Translator t = translator("table_counts", "primary_keys");
+        List<DecodedQuery> creates = new ArrayList<>();
+        for (String cypher : Arrays.asList(
+                "CREATE (a:Global {node_id:2001})-[:GLOB_OBJ_PREV]->(b:Global {node_id:2002})",
+                "CREATE (a:Global {node_id:2003})",
+                "CREATE (a:Local {node_id:2004, name:'y'})")) {
+            creates.add(t.getDQ(cypher, t.newContext()));
+        }
+        int numNodes = 0;
+        for (DecodedQuery dQ : creates) numNodes += SQLTranslate.countInsertNodes(dQ);
+
+        assertEquals(4, numNodes);
+        assertEquals(Arrays.asList(
+                "INSERT INTO nodes(id, node_id, label) VALUES (50, '2001', 'global'), (51, '2002', 'global'), " +
+                        "(52, '2003', 'global');",
+                "INSERT INTO global(node_id, id, label) VALUES ('2001', 50, 'global'), ('2002', 51, 'global'), " +
+                        "('2003', 52, 'global');",
+                "INSERT INTO nodes(id, node_id, name, label) VALUES (53, '2004', 'y', 'local');",
+                "INSERT INTO local(node_id, name, id, label) VALUES ('2004', 'y', 53, 'local');",
+                "INSERT INTO edges(idl, idr, type) VALUES (50, 51, 'glob_obj_prev');",
+                "INSERT INTO e$glob_obj_prev(idl, idr, type) VALUES (50, 51, 'glob_obj_prev');",
+                "UPDATE table_counts c SET total = c.total + d.k FROM (VALUES ('nodes', 4), ('global', 3), " +
+                        "('edges', 1), ('e$glob_obj_prev', 1), ('local', 1)) AS d(name, k) WHERE c.name = d.name;"),
+                SQLTranslate.translateInsertBatch(creates, new int[]{50, 51, 52, 53}, t.newContext()));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query_translation.sql.utilities_sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import production.TestWorkspace;
+import production.Translator;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShortestPathTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String translate(String cypher) throws IOException {
+        return new Translator(TestWorkspace.props(folder.getRoot())).translate(cypher);
+    }
+
+    @Test
+    public void searchIsBreadthFirstOverUnvisitedNodes() throws IOException {
+        assertEquals("WITH RECURSIVE bfs(Start, Frontier, Visited, Depth) AS (SELECT id, ARRAY[id], ARRAY[id], 0 " +
+                        "FROM nodes q WHERE label LIKE '%process%' UNION ALL SELECT Start, NewNodes, " +
+                        "Visited || NewNodes, Depth + 1 FROM bfs, LATERAL (SELECT array_agg(DISTINCT x) AS NewNodes " +
+                        "FROM adjList_from, unnest(rightnode) AS x WHERE leftnode = ANY(Frontier) " +
+                        "AND NOT x = ANY(Visited)) step WHERE NewNodes IS NOT NULL AND Depth < 3), " +
+                        "spReached AS (SELECT unnest(Frontier) AS xx, Depth, Start FROM bfs WHERE Depth >= 1), " +
+                        "finStep AS (SELECT id, min(Depth), xx, Start FROM nodes n01 INNER JOIN spReached " +
+                        "ON xx = id GROUP BY id, xx, Start) SELECT count(id)  FROM finStep n01;",
+                translate("MATCH p=shortestPath((f:Process)-[*1..3]->(t)) RETURN count(t)"));
+    }
+
+    @Test
+    public void searchStopsOnceEveryCandidateEndNodeIsVisited() throws IOException {
+        String sql = translate("MATCH p=shortestPath((f:Process)-[*]->(t:Meta)) RETURN count(t)");
+
+        assertTrue(sql, sql.startsWith("WITH RECURSIVE spTargets AS (SELECT array_agg(id) AS ids FROM nodes n01 " +
+                "WHERE label LIKE '%meta%'), bfs("));
+        assertTrue(sql, sql.contains("AND Depth < 100 AND NOT (SELECT ids FROM spTargets) <@ Visited)"));
+    }
+
+    @Test
+    public void nodesAreRevisitedBelowTheLowerBound() throws IOException {
+        String sql = translate("MATCH p=shortestPath((f:Process)-[*3..6]->(t:Meta)) RETURN count(t)");
+
+        assertTrue(sql, sql.contains("CASE WHEN Depth < 3 THEN NewNodes ELSE Visited || NewNodes END"));
+        assertTrue(sql, sql.contains("WHERE leftnode = ANY(Frontier) AND (Depth < 3 OR NOT x = ANY(Visited))"));
+        assertTrue(sql, sql.contains("AND Depth < 6 AND (Depth < 3 OR NOT (SELECT ids FROM spTargets) <@ Visited)"));
+        assertTrue(sql, sql.contains("FROM bfs WHERE Depth >= 3)"));
+        assertFalse(sql, sql.contains("AND NOT x = ANY(Visited)"));
+    }
+}
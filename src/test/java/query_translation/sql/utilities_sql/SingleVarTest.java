@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query_translation.sql.utilities_sql;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import production.TestWorkspace;
+import production.Translator;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SingleVarTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String translate(String cypher, String... extraProperties) throws IOException {
+        return new Translator(TestWorkspace.props(folder.getRoot(), extraProperties)).translate(cypher);
+    }
+
+    @Test
+    public void pathIsFollowedByOneRecursiveQuery() throws IOException {
+        assertEquals("WITH RECURSIVE varPath(xx, depth) AS (SELECT zz.id, 0 FROM nodes zz UNION ALL " +
+                        "SELECT unnest(rightnode), depth + 1 FROM adjList_from INNER JOIN varPath ON leftnode = xx " +
+                        "WHERE depth < 3) SELECT count(*)  FROM nodes n01  INNER JOIN varPath ON xx = id " +
+                        "AND depth >= 1 WHERE n01.label LIKE '%process%';",
+                translate("MATCH (a)-[*1..3]->(c:Process) RETURN count(c)"));
+    }
+
+    @Test
+    public void lowerBoundIsADepthFilter() throws IOException {
+        String sql = translate("MATCH (a:Process)<-[*3]-(b) RETURN b.node_id");
+
+        assertTrue(sql, sql.contains("SELECT zz.id, 0 FROM process zz"));
+        assertTrue(sql, sql.contains("FROM adjList_to INNER JOIN varPath ON leftnode = xx WHERE depth < 3)"));
+        assertTrue(sql, sql.contains("INNER JOIN varPath ON xx = id AND depth >= 3"));
+    }
+
+    @Test
+    public void reachedNodesAreExpandedOnceWhenOnlyTheSetOfThemIsReturned() throws IOException {
+        String distinct = translate("MATCH (a:Local)-[*2..4]->(b) RETURN DISTINCT b.node_id");
+        String all = translate("MATCH (a:Local)-[*2..4]->(b) RETURN b.node_id");
+
+        assertTrue(distinct, distinct.contains(" UNION SELECT unnest(rightnode)"));
+        assertFalse(distinct, distinct.contains("UNION ALL"));
+        assertTrue(all, all.contains(" UNION ALL SELECT unnest(rightnode)"));
+    }
+
+    @Test
+    public void pathWithNoUpperBoundIsCappedByMaxPathLength() throws IOException {
+        String sql = translate("MATCH (a:Process)-[*2..]->(b) RETURN DISTINCT b.node_id", "maxPathLength=5");
+        assertTrue(sql, sql.contains("WHERE depth < 5)"));
+        assertTrue(sql, sql.contains("AND depth >= 2"));
+
+        sql = translate("MATCH (a:Process)-[*..2]->(b) RETURN b.node_id");
+        assertTrue(sql, sql.contains("WHERE depth < 2)"));
+        assertTrue(sql, sql.contains("AND depth >= 1"));
+    }
+}
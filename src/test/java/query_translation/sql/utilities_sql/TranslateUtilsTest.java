@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package query_translation.sql.utilities_sql;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TranslateUtilsTest {
+    @Test
+    public void plainValueIsUnchanged() {
+        assertEquals("abc", TranslateUtils.likeLiteral("abc"));
+        assertEquals("", TranslateUtils.likeLiteral(""));
+    }
+
+    @Test
+    public void wildcardsAndTheEscapeCharacterAreEscaped() {
+        assertEquals("100\\%", TranslateUtils.likeLiteral("100%"));
+        assertEquals("a\\_b", TranslateUtils.likeLiteral("a_b"));
+        // the Cypher string 'a\\b' is a single backslash.
+        assertEquals("a\\\\b", TranslateUtils.likeLiteral("a\\\\b"));
+    }
+
+    @Test
+    public void escapedQuotesAreKept() {
+        assertEquals("it''s", TranslateUtils.likeLiteral("it's"));
+        assertEquals("it''s", TranslateUtils.likeLiteral("it\\'s"));
+        assertEquals("it''s", TranslateUtils.likeLiteral("it''s"));
+        assertEquals("say \"hi\"", TranslateUtils.likeLiteral("say \\\"hi\\\""));
+    }
+
+    @Test
+    public void otherBackslashesAreMatchedLiterally() {
+        assertEquals("a\\\\d", TranslateUtils.likeLiteral("a\\d"));
+        assertEquals("a\\\\", TranslateUtils.likeLiteral("a\\"));
+    }
+}
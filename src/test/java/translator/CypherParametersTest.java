@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package translator;
+
+import exceptions.DQInvalidException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class CypherParametersTest {
+    @Test
+    public void placeholdersAreBoundInTheOrderTheyAppearInTheSQL() throws DQInvalidException {
+        List<String> bindOrder = new ArrayList<>();
+        String sql = CypherParameters.toPlaceholders(
+                "SELECT * FROM nodes WHERE pid = 'c2sparam_pid' AND name = c2sparam_name OR pid = 'c2sparam_pid';",
+                Arrays.asList("name", "pid"), bindOrder);
+
+        assertEquals("SELECT * FROM nodes WHERE pid = ? AND name = ? OR pid = ?;", sql);
+        assertEquals(Arrays.asList("pid", "name", "pid"), bindOrder);
+    }
+
+    @Test
+    public void arraysOfTheTranslatorAreBoundAsTheyAre() throws DQInvalidException {
+        List<String> bindOrder = new ArrayList<>();
+        String sql = CypherParameters.toPlaceholders("SELECT * FROM unnest(" +
+                CypherParameters.arrayMarker(Arrays.asList(1, 2)) + "::int[]) WHERE name = 'c2sparam_name' AND " +
+                "name <> ALL(" + CypherParameters.arrayMarker(Arrays.asList("it's", "b")) + ");",
+                Collections.singletonList("name"), bindOrder);
+
+        assertEquals("SELECT * FROM unnest(?::int[]) WHERE name = ? AND name <> ALL(?);", sql);
+        assertEquals(Arrays.asList("{\"1\",\"2\"}", "name", "{\"it's\",\"b\"}"), bindOrder);
+
+        Map<String, Object> values = new HashMap<>();
+        values.put("name", "X");
+        assertEquals(Arrays.asList("{\"1\",\"2\"}", "x", "{\"it's\",\"b\"}"),
+                CypherParameters.bindValues(bindOrder, values));
+    }
+
+    @Test
+    public void namesAreMatchedToTheInputIgnoringCase() throws DQInvalidException {
+        List<String> bindOrder = new ArrayList<>();
+        CypherParameters.toPlaceholders("SELECT * FROM nodes WHERE name = 'c2sparam_nodename';",
+                Collections.singletonList("nodeName"), bindOrder);
+        assertEquals(Collections.singletonList("nodeName"), bindOrder);
+    }
+
+    @Test(expected = DQInvalidException.class)
+    public void unknownParameterIsRejected() throws DQInvalidException {
+        CypherParameters.toPlaceholders("SELECT * FROM nodes WHERE name = 'c2sparam_other';",
+                Collections.singletonList("name"), new ArrayList<String>());
+    }
+
+    @Test(expected = DQInvalidException.class)
+    public void parametersDifferingOnlyInCaseAreRejected() throws DQInvalidException {
+        CypherParameters.toPlaceholders("SELECT * FROM nodes WHERE name = 'c2sparam_name';",
+                Arrays.asList("name", "NAME"), new ArrayList<String>());
+    }
+
+    @Test
+    public void valuesFollowTheBindOrder() throws DQInvalidException {
+        Map<String, Object> values = new HashMap<>();
+        values.put("name", "Abc");
+        values.put("pid", 12);
+
+        assertEquals(Arrays.asList("12", "abc", "12"),
+                CypherParameters.bindValues(Arrays.asList("pid", "name", "pid"), values));
+    }
+
+    @Test(expected = DQInvalidException.class)
+    public void missingValueIsRejected() throws DQInvalidException {
+        CypherParameters.bindValues(Collections.singletonList("name"), new HashMap<String, Object>());
+    }
+
+    @Test
+    public void eachStatementTakesTheValuesOfItsOwnPlaceholders() {
+        List<String> binds = new ArrayList<>(Arrays.asList("1", "2", "3"));
+
+        // a ? inside a string literal is not a placeholder.
+        assertEquals(Arrays.asList("1", "2"),
+                CypherParameters.takeBinds("SELECT * FROM nodes WHERE a = ? AND b = '?' AND c = ?", binds));
+        assertEquals(Collections.singletonList("3"),
+                CypherParameters.takeBinds(" DELETE FROM nodes WHERE a = ?", binds));
+        assertEquals(Collections.<String>emptyList(), binds);
+    }
+
+    @Test
+    public void inlinedValuesAreQuoted() {
+        assertEquals("SELECT * FROM nodes WHERE a = 'it''s' AND b = '?' AND c = '2'",
+                CypherParameters.inline("SELECT * FROM nodes WHERE a = ? AND b = '?' AND c = ?",
+                        Arrays.asList("it's", "2")));
+    }
+}
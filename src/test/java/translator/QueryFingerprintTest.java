@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017.
+ *
+ * Oliver Crawford <o.crawford@hotmail.co.uk>
+ * Lucian Carata <lc525@cam.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package translator;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryFingerprintTest {
+    @Test
+    public void queriesOfTheSameShapeShareAKey() {
+        QueryFingerprint a = QueryFingerprint.of("MATCH (n:Global) WHERE n.name = 'abc' AND n.pid = 12 RETURN n");
+        QueryFingerprint b = QueryFingerprint.of("match (n:Global) where n.name = 'xyz' and n.pid = 7 return n");
+
+        assertEquals(a.getKey(), b.getKey());
+        assertEquals(Arrays.asList("abc", "12"), a.getLiterals());
+        assertEquals(Arrays.asList("xyz", "7"), b.getLiterals());
+        assertTrue(a.isCacheable());
+        assertTrue(a.hasSlots());
+    }
+
+    @Test
+    public void limitAndVariableLengthBoundsAreNotSlots() {
+        assertNotEquals(QueryFingerprint.of("MATCH (n) RETURN n LIMIT 5").getKey(),
+                QueryFingerprint.of("MATCH (n) RETURN n LIMIT 6").getKey());
+        assertNotEquals(QueryFingerprint.of("MATCH (a)-[*1..2]->(b) RETURN b").getKey(),
+                QueryFingerprint.of("MATCH (a)-[*1..3]->(b) RETURN b").getKey());
+        assertFalse(QueryFingerprint.of("MATCH (n) RETURN n LIMIT 5").hasSlots());
+    }
+
+    @Test
+    public void stringsThatTranslateDifferentlyAreNotSlots() {
+        // an _ is escaped in the LIKE pattern, regular expressions keep their case, and quotes are escaped.
+        assertFalse(QueryFingerprint.of("MATCH (n) WHERE n.name STARTS WITH 'a_b' RETURN n").hasSlots());
+        assertNotEquals(QueryFingerprint.of("MATCH (n) WHERE n.name =~ '\\\\D' RETURN n").getKey(),
+                QueryFingerprint.of("MATCH (n) WHERE n.name =~ '\\\\d' RETURN n").getKey());
+        assertFalse(QueryFingerprint.of("MATCH (n) WHERE n.name = \"it's\" RETURN n").hasSlots());
+    }
+
+    @Test
+    public void sentinelCypherReplacesTheSlots() {
+        QueryFingerprint fp = QueryFingerprint.of("MATCH (n) WHERE n.name = \"abc\" RETURN n");
+        assertEquals("MATCH (n) WHERE n.name = \"c2sslot000\" RETURN n", fp.getSentinelCypher());
+    }
+
+    @Test
+    public void longListOfInTakesASingleSlot() {
+        QueryFingerprint a = QueryFingerprint.of("MATCH (n) WHERE n.pid IN [1, 2, 'x'] RETURN n", 2);
+        QueryFingerprint b = QueryFingerprint.of("MATCH (n) WHERE n.pid IN [4, 5, 6, 7] RETURN n", 2);
+        assertEquals(a.getKey(), b.getKey());
+        assertEquals(Collections.singletonList("{\"1\",\"2\",\"x\"}"), a.getLiterals());
+        assertEquals("MATCH (n) WHERE n.pid IN $c2sslot000 RETURN n", a.getSentinelCypher());
+
+        // short lists keep a slot for each value.
+        assertEquals(Arrays.asList("1", "2"), QueryFingerprint.of("MATCH (n) WHERE n.pid IN [1, 2] RETURN n", 2)
+                .getLiterals());
+    }
+
+    @Test
+    public void templateFillsTheArraysBoundToTheSQL() {
+        QueryFingerprint fp = QueryFingerprint.of("MATCH (n) WHERE n.pid IN [1, 2, 3] RETURN n", 2);
+        String sql = "SELECT * FROM nodes n01 WHERE n01.pid = ANY(?);";
+
+        SqlTemplate template = fp.createTemplate(sql, sql, false, Collections.singletonList("c2sslot000"),
+                Collections.singletonList("{\"1\",\"2\",\"3\"}"));
+        assertNotNull(template);
+
+        QueryFingerprint other = QueryFingerprint.of("MATCH (n) WHERE n.pid IN [7, 8, 9, 10] RETURN n", 2);
+        assertEquals(Collections.singletonList("{\"7\",\"8\",\"9\",\"10\"}"),
+                template.fillBindOrder(other.getLiterals()));
+    }
+
+    @Test
+    public void templateIsFilledWithTheLiteralsOfAnotherQuery() {
+        QueryFingerprint fp = QueryFingerprint.of("MATCH (n:Global) WHERE n.name = 'Abc' AND n.pid = 12 RETURN n");
+        String sentinelSQL = "SELECT * FROM global n01 WHERE n01.name = 'c2sslot000' AND n01.pid = 735000001;";
+        String sql = "SELECT * FROM global n01 WHERE n01.name = 'abc' AND n01.pid = 12;";
+
+        SqlTemplate template = fp.createTemplate(sentinelSQL, sql, false, Collections.<String>emptyList(),
+                Collections.<String>emptyList());
+        assertNotNull(template);
+
+        QueryFingerprint other = QueryFingerprint.of("MATCH (n:Global) WHERE n.name = 'XYZ' AND n.pid = 7 RETURN n");
+        assertEquals("SELECT * FROM global n01 WHERE n01.name = 'xyz' AND n01.pid = 7;",
+                template.fill(other.getLiterals()));
+    }
+
+    @Test
+    public void templateIsRejectedIfItDoesNotReproduceTheTranslation() {
+        QueryFingerprint fp = QueryFingerprint.of("MATCH (n) WHERE n.name = 'abc' RETURN n");
+        String sentinelSQL = "SELECT * FROM nodes n01 WHERE n01.name LIKE 'c2sslot000%';";
+        String sql = "SELECT * FROM nodes n01 WHERE n01.name = 'abc';";
+
+        assertNull(fp.createTemplate(sentinelSQL, sql, false, Collections.<String>emptyList(),
+                Collections.<String>emptyList()));
+    }
+}